@@ -0,0 +1,445 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.common.file;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A LRU cache of {@link File}s with maximum filesystem size, designed for concurrent access.
+ * <p>
+ * Files are stored in directories sharded by the first characters of their key (usually a digest), so that no
+ * directory grows too big. The cache entries are tracked in memory: reading a file doesn't touch the filesystem
+ * metadata, and the updates of a key are serialized by a lock chosen among a fixed set of locks (lock striping).
+ * <p>
+ * Cache entries that are old enough and whose size makes the cache bigger than its maximum size are deleted
+ * asynchronously. Entries that haven't been accessed for longer than the maximum age, if any, are deleted as well.
+ * <p>
+ * The cache keys are restricted to a subset of ASCII: letters, digits and dashes.
+ *
+ * @since 10.1
+ */
+public class ShardedFileCache implements FileCache {
+
+    private static final Log log = LogFactory.getLog(ShardedFileCache.class);
+
+    private static final String TMP_PREFIX = "nxbin_";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Number of key characters used for a directory name. */
+    protected static final int SHARD_LENGTH = 2;
+
+    /** Number of directory levels. */
+    protected static final int SHARD_DEPTH = 2;
+
+    /** Directory name used when the key is too short. */
+    protected static final String SHORT_KEY_SHARD = "__";
+
+    public static final int STRIPES_DEFAULT = 64;
+
+    public static final long CLEAR_OLD_ENTRIES_INTERVAL_MILLIS_DEFAULT = 5000; // 5 s
+
+    /** Shared by all the caches, eviction is rare and quick. */
+    protected static final Executor EVICTION_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Nuxeo-FileCache-Eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    protected static class Entry {
+
+        protected final Path path;
+
+        protected final long size;
+
+        protected volatile long lastAccess;
+
+        public Entry(Path path, long size, long lastAccess) {
+            this.path = path;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    protected final Path dir;
+
+    protected final long maxSize;
+
+    protected final long maxCount;
+
+    protected final long minAgeMillis;
+
+    protected final long maxAgeMillis;
+
+    protected final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    protected final AtomicLong size = new AtomicLong();
+
+    protected final Lock[] locks;
+
+    protected final AtomicBoolean clearing = new AtomicBoolean();
+
+    protected volatile long clearOldEntriesLast = System.currentTimeMillis();
+
+    protected long clearOldEntriesIntervalMillis = CLEAR_OLD_ENTRIES_INTERVAL_MILLIS_DEFAULT;
+
+    protected Executor evictionExecutor = EVICTION_EXECUTOR;
+
+    /**
+     * Constructs a cache in the given directory with the given maximum size (in bytes).
+     *
+     * @param dir the directory to use to store cached files
+     * @param maxSize the maximum size of the cache (in bytes)
+     * @param maxCount the maximum number of files in the cache
+     * @param minAge the minimum age of a file in the cache to be eligible for removal (in seconds)
+     */
+    public ShardedFileCache(File dir, long maxSize, long maxCount, long minAge) {
+        this(dir, maxSize, maxCount, minAge, 0);
+    }
+
+    /**
+     * Constructs a cache in the given directory with the given maximum size (in bytes).
+     *
+     * @param dir the directory to use to store cached files
+     * @param maxSize the maximum size of the cache (in bytes)
+     * @param maxCount the maximum number of files in the cache
+     * @param minAge the minimum age of a file in the cache to be eligible for removal (in seconds)
+     * @param maxAge the age after which a file not accessed is removed, or {@code 0} for no limit (in seconds)
+     */
+    public ShardedFileCache(File dir, long maxSize, long maxCount, long minAge, long maxAge) {
+        this.dir = dir.toPath();
+        this.maxSize = maxSize;
+        this.maxCount = maxCount;
+        this.minAgeMillis = minAge * 1000;
+        this.maxAgeMillis = maxAge * 1000;
+        locks = new Lock[STRIPES_DEFAULT];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        loadEntries();
+    }
+
+    // for tests
+    public void setClearOldEntriesIntervalMillis(long millis) {
+        clearOldEntriesIntervalMillis = millis;
+    }
+
+    // for tests
+    public void setEvictionExecutor(Executor executor) {
+        evictionExecutor = executor;
+    }
+
+    /**
+     * Registers the files already present in the cache directory.
+     */
+    protected void loadEntries() {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        migrateFlatFiles();
+        try (Stream<Path> paths = Files.walk(dir, SHARD_DEPTH + 1)) {
+            paths.filter(path -> dir.relativize(path).getNameCount() == SHARD_DEPTH + 1)
+                 .filter(Files::isRegularFile)
+                 .forEach(path -> {
+                     try {
+                         Entry entry = new Entry(path, Files.size(path),
+                                 Files.getLastModifiedTime(path).toMillis());
+                         entries.put(path.getFileName().toString(), entry);
+                         size.addAndGet(entry.size);
+                     } catch (IOException e) {
+                         log.error(e, e);
+                     }
+                 });
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+    }
+
+    /**
+     * Moves the files left at the root of the cache directory by a non-sharded cache (like {@link LRUFileCache}) to
+     * their sharded location, so that they are tracked and evicted. Leftover temporary files and files whose name is
+     * not a valid key are deleted.
+     */
+    protected void migrateFlatFiles() {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(dir)) {
+            paths.filter(Files::isRegularFile).forEach(files::add);
+        } catch (IOException e) {
+            log.error(e, e);
+            return;
+        }
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            try {
+                if (name.startsWith(TMP_PREFIX) && name.endsWith(TMP_SUFFIX)
+                        || !LRUFileCache.SIMPLE_ASCII.matcher(name).matches()) {
+                    Files.delete(path);
+                } else {
+                    Path target = getPath(name);
+                    Files.createDirectories(target.getParent());
+                    Files.move(path, target, REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+        }
+    }
+
+    protected Lock getLock(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    /**
+     * Gets the path of the file for a key, for instance {@code ab/cd/abcdef} for the key {@code abcdef}.
+     */
+    protected Path getPath(String key) {
+        Path path = dir;
+        for (int i = 0; i < SHARD_DEPTH; i++) {
+            int start = i * SHARD_LENGTH;
+            int end = start + SHARD_LENGTH;
+            path = path.resolve(key.length() >= end ? key.substring(start, end) : SHORT_KEY_SHARD);
+        }
+        return path.resolve(key);
+    }
+
+    protected void checkKey(String key) throws IllegalArgumentException {
+        if (!LRUFileCache.SIMPLE_ASCII.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return size.get();
+    }
+
+    @Override
+    public int getNumberOfItems() {
+        return entries.size();
+    }
+
+    @Override
+    public File getTempFile() throws IOException {
+        return Files.createTempFile(dir, TMP_PREFIX, TMP_SUFFIX).toFile();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is used as a file name in a sharded directory of the cache.
+     */
+    @Override
+    public File putFile(String key, InputStream in) throws IOException {
+        File tmp;
+        try {
+            // check the cache
+            File file = getFile(key);
+            if (file != null) {
+                return file;
+            }
+
+            // store the stream in a temporary file
+            tmp = getTempFile();
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                IOUtils.copy(in, out);
+            }
+        } finally {
+            in.close();
+        }
+        return putFile(key, tmp);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is used as a file name in a sharded directory of the cache.
+     */
+    @Override
+    public File putFile(String key, File file) throws IllegalArgumentException, IOException {
+        checkKey(key);
+        Path source = file.toPath();
+        Path path;
+        Lock lock = getLock(key);
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && Files.exists(entry.path)) {
+                // already something there
+                entry.lastAccess = System.currentTimeMillis();
+                // remove unused tmp file
+                try {
+                    Files.delete(source);
+                } catch (IOException e) {
+                    log.error(e, e);
+                }
+                return entry.path.toFile();
+            }
+            path = getPath(key);
+            Files.createDirectories(path.getParent());
+            long fileSize = Files.size(source);
+            Files.move(source, path, REPLACE_EXISTING);
+            Entry old = entries.put(key, new Entry(path, fileSize, System.currentTimeMillis()));
+            size.addAndGet(old == null ? fileSize : fileSize - old.size);
+        } finally {
+            lock.unlock();
+        }
+        clearOldEntries();
+        return path.toFile();
+    }
+
+    @Override
+    public File getFile(String key) {
+        checkKey(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!Files.exists(entry.path)) {
+            // deleted behind our back
+            remove(key, entry);
+            return null;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        if (maxAgeMillis > 0) {
+            clearOldEntries();
+        }
+        return entry.path.toFile();
+    }
+
+    @Override
+    public void clear() {
+        entries.forEach(this::remove);
+    }
+
+    /**
+     * Removes an entry if it's still the current one for the key, and deletes its file.
+     */
+    protected void remove(String key, Entry entry) {
+        Lock lock = getLock(key);
+        lock.lock();
+        try {
+            if (!entries.remove(key, entry)) {
+                return;
+            }
+            size.addAndGet(-entry.size);
+            Files.deleteIfExists(entry.path);
+        } catch (IOException e) {
+            log.error(e, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected boolean isOverLimits() {
+        return size.get() > maxSize || entries.size() > maxCount;
+    }
+
+    /**
+     * Schedules the removal of old entries if needed. Only one removal is running at a time.
+     */
+    protected void clearOldEntries() {
+        if (!isOverLimits() && maxAgeMillis == 0) {
+            return;
+        }
+        if (System.currentTimeMillis() < clearOldEntriesLast + clearOldEntriesIntervalMillis) {
+            return;
+        }
+        if (!clearing.compareAndSet(false, true)) {
+            // another thread is already clearing old entries
+            return;
+        }
+        evictionExecutor.execute(() -> {
+            try {
+                doClearOldEntries();
+            } catch (RuntimeException e) {
+                log.error(e, e);
+            } finally {
+                clearOldEntriesLast = System.currentTimeMillis();
+                clearing.set(false);
+            }
+        });
+    }
+
+    protected void doClearOldEntries() {
+        // the access times are updated concurrently, sort on a copy to keep the order consistent
+        List<Candidate> candidates = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> es : entries.entrySet()) {
+            candidates.add(new Candidate(es.getKey(), es.getValue()));
+        }
+        // least recently used first
+        candidates.sort(Comparator.comparingLong(c -> c.lastAccess));
+        long now = System.currentTimeMillis();
+        for (Candidate candidate : candidates) {
+            if (candidate.entry.lastAccess != candidate.lastAccess) {
+                // used since the candidates were listed
+                continue;
+            }
+            long age = now - candidate.lastAccess;
+            boolean expired = maxAgeMillis > 0 && age > maxAgeMillis;
+            if (expired || (age >= minAgeMillis && isOverLimits())) {
+                remove(candidate.key, candidate.entry);
+            } else {
+                // next ones are more recent, they can't be removed either
+                break;
+            }
+        }
+    }
+
+    /**
+     * An entry considered for eviction, with its access time when the candidates were listed.
+     */
+    protected static class Candidate {
+
+        protected final String key;
+
+        protected final Entry entry;
+
+        protected final long lastAccess;
+
+        protected Candidate(String key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+            lastAccess = entry.lastAccess;
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.common.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestShardedFileCache {
+
+    public File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("nxtestshardedfilecache.", "", new File(System.getProperty("java.io.tmpdir")));
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    protected ShardedFileCache newCache(long maxSize, long maxCount, long maxAge) {
+        ShardedFileCache cache = new ShardedFileCache(dir, maxSize, maxCount, 0, maxAge);
+        cache.setClearOldEntriesIntervalMillis(0); // clear immediately
+        cache.setEvictionExecutor(Runnable::run); // synchronously
+        return cache;
+    }
+
+    @Test
+    public void testShardedLayout() throws Exception {
+        ShardedFileCache cache = newCache(1000, 1000, 0);
+        File file = cache.putFile("abcdef", new ByteArrayInputStream(new byte[10]));
+        assertEquals(new File(dir, "ab/cd/abcdef"), file);
+        assertTrue(file.exists());
+        assertEquals(file, cache.getFile("abcdef"));
+        file = cache.putFile("a", new ByteArrayInputStream(new byte[10]));
+        assertEquals(new File(dir, "__/__/a"), file);
+        assertNull(cache.getFile("unknown"));
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(20, cache.getSize());
+
+        // a new cache on the same directory finds the existing files
+        cache = newCache(1000, 1000, 0);
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(20, cache.getSize());
+        assertNotNull(cache.getFile("abcdef"));
+    }
+
+    @Test
+    public void testMigrateFlatLayout() throws Exception {
+        // files left by a non-sharded cache
+        FileUtils.writeByteArrayToFile(new File(dir, "abcdef"), new byte[10]);
+        FileUtils.writeByteArrayToFile(new File(dir, "ghijkl"), new byte[10]);
+        FileUtils.writeByteArrayToFile(new File(dir, "nxbin_123.tmp"), new byte[10]);
+        FileUtils.writeByteArrayToFile(new File(dir, "not a key"), new byte[10]);
+
+        ShardedFileCache cache = newCache(25, 1000, 0);
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(20, cache.getSize());
+        assertEquals(new File(dir, "ab/cd/abcdef"), cache.getFile("abcdef"));
+        assertEquals(new File(dir, "gh/ij/ghijkl"), cache.getFile("ghijkl"));
+        String[] remaining = dir.list();
+        Arrays.sort(remaining);
+        assertEquals(Arrays.asList("ab", "gh"), Arrays.asList(remaining));
+
+        // the migrated files count toward the maximum size and are evicted
+        Thread.sleep(2);
+        cache.getFile("ghijkl");
+        cache.putFile("mnopqr", new ByteArrayInputStream(new byte[10]));
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(20, cache.getSize());
+        assertNull(cache.getFile("abcdef"));
+        assertFalse(new File(dir, "ab/cd/abcdef").exists());
+    }
+
+    @Test
+    public void testEvictionBySize() throws Exception {
+        ShardedFileCache cache = newCache(100, 9999, 0); // 100 bytes max
+        byte[] buf = new byte[30];
+        cache.putFile("key1", new ByteArrayInputStream(buf));
+        Thread.sleep(10);
+        cache.putFile("key2", new ByteArrayInputStream(buf));
+        Thread.sleep(10);
+        cache.putFile("key3", new ByteArrayInputStream(buf));
+        Thread.sleep(10);
+        // key1 is the most recently used
+        assertNotNull(cache.getFile("key1"));
+        Thread.sleep(10);
+        cache.putFile("key4", new ByteArrayInputStream(buf));
+        assertEquals(3, cache.getNumberOfItems());
+        assertEquals(90, cache.getSize());
+        assertNotNull(cache.getFile("key1"));
+        assertNull(cache.getFile("key2"));
+        assertTrue(!new File(dir, "ke/y2/key2").exists());
+
+        // clear
+        cache.clear();
+        assertEquals(0, cache.getNumberOfItems());
+        assertEquals(0, cache.getSize());
+        assertTrue(!new File(dir, "ke/y1/key1").exists());
+    }
+
+    @Test
+    public void testEvictionByCount() throws Exception {
+        ShardedFileCache cache = newCache(10000, 2, 0); // 2 files max
+        byte[] buf = new byte[30];
+        cache.putFile("key1", new ByteArrayInputStream(buf));
+        Thread.sleep(10);
+        cache.putFile("key2", new ByteArrayInputStream(buf));
+        Thread.sleep(10);
+        cache.putFile("key3", new ByteArrayInputStream(buf));
+        assertEquals(2, cache.getNumberOfItems());
+        assertNull(cache.getFile("key1"));
+    }
+
+    @Test
+    public void testEvictionByAge() throws Exception {
+        ShardedFileCache cache = newCache(10000, 9999, 1); // 1s max age
+        cache.putFile("key1", new ByteArrayInputStream(new byte[10]));
+        Thread.sleep(1100);
+        cache.putFile("key2", new ByteArrayInputStream(new byte[10]));
+        assertEquals(1, cache.getNumberOfItems());
+        assertNull(cache.getFile("key1"));
+        assertNotNull(cache.getFile("key2"));
+    }
+
+    @Test
+    public void testConcurrentPut() throws Exception {
+        ShardedFileCache cache = newCache(100000, 9999, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<File>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String key = "key" + (i % 20);
+                futures.add(executor.submit(() -> cache.putFile(key, new ByteArrayInputStream(new byte[10]))));
+            }
+            for (Future<File> future : futures) {
+                assertTrue(future.get().exists());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(20, cache.getNumberOfItems());
+        assertEquals(200, cache.getSize());
+    }
+
+    @Test
+    public void testEvictionWithConcurrentReads() throws Exception {
+        ShardedFileCache cache = newCache(1000000, 50, 0); // 50 files max
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // readers updating the access times while the entries are sorted for eviction
+            List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                readers.add(executor.submit(() -> {
+                    Random random = new Random();
+                    while (!stop.get()) {
+                        cache.getFile("key" + random.nextInt(1000));
+                    }
+                }));
+            }
+            for (int i = 0; i < 1000; i++) {
+                cache.putFile("key" + i, new ByteArrayInputStream(new byte[10]));
+            }
+            stop.set(true);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            stop.set(true);
+            executor.shutdown();
+        }
+        // eviction was never interrupted
+        cache.putFile("last", new ByteArrayInputStream(new byte[10]));
+        assertTrue(cache.getNumberOfItems() <= 50);
+    }
+
+}
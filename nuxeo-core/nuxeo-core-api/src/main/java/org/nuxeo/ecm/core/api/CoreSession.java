@@ -25,7 +25,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import org.nuxeo.ecm.core.api.DocumentModel.DocumentModelRefresh;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
@@ -240,6 +242,23 @@ public interface CoreSession {
      */
     DocumentModelList getDocuments(DocumentRef[] docRefs) throws DocumentNotFoundException;
 
+    /**
+     * Gets a list of documents given their references, fetching their data in bulk.
+     * <p>
+     * The documents are returned in the same order as the references. Documents that are not accessible are skipped.
+     * <p>
+     * The given schemas are loaded for all the documents, which is much more efficient than loading them one document
+     * at a time. If {@code null}, the default prefetched schemas of each document type are loaded.
+     *
+     * @param docRefs the document references
+     * @param schemas the schemas to load, or {@code null} for the default ones
+     * @return the documents
+     * @throws DocumentNotFoundException if a document cannot be found
+     * @since 10.1
+     */
+    DocumentModelList getDocuments(Collection<DocumentRef> docRefs, Set<String> schemas)
+            throws DocumentNotFoundException;
+
     /**
      * Gets a child document given its name and the parent reference.
      * <p>
@@ -1045,6 +1064,22 @@ public interface CoreSession {
      */
     DocumentModelList query(String query, String queryType, Filter filter, long limit, long offset, long countUpTo);
 
+    /**
+     * Executes the given NXQL document query and returns the matching documents as a lazily-evaluated stream.
+     * <p>
+     * The results are read from a database cursor, and documents are loaded in bulk {@code fetchSize} at a time, so
+     * that arbitrarily large results can be walked in constant memory.
+     * <p>
+     * The stream holds database resources and <b>must</b> be closed after use, usually with a try-with-resources
+     * block. It must be consumed in the thread and transaction that created it.
+     *
+     * @param query the NXQL query, which must select documents ({@code SELECT * FROM ...})
+     * @param fetchSize the number of results to fetch and documents to load at a time
+     * @return the stream of documents, which <b>must</b> be closed after use
+     * @since 10.1
+     */
+    Stream<DocumentModel> queryStream(String query, int fetchSize);
+
     /**
      * Executes the given query and returns an iterable of maps containing the requested properties (which must be
      * closed when done).
@@ -22,11 +22,18 @@
 package org.nuxeo.ecm.core.api.model.impl;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.nuxeo.common.utils.Path;
 import org.nuxeo.ecm.core.api.PropertyException;
 import org.nuxeo.ecm.core.api.model.DocumentPart;
 import org.nuxeo.ecm.core.api.model.Property;
+import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
 import org.nuxeo.ecm.core.api.model.PropertyVisitor;
 import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.ecm.core.schema.types.Field;
@@ -44,6 +51,57 @@ public class DocumentPartImpl extends ComplexProperty implements DocumentPart {
 
     protected boolean clearComplexPropertyBeforeSet;
 
+    /**
+     * Values read from storage for which no property has been created yet, by field position.
+     *
+     * @since 10.1
+     */
+    protected Serializable[] lazyValues;
+
+    /** @since 10.1 */
+    protected transient FieldIndex fieldIndex;
+
+    /**
+     * Positions of the fields of a schema, shared by all the document parts of this schema.
+     *
+     * @since 10.1
+     */
+    protected static final class FieldIndex {
+
+        protected final Schema schema;
+
+        protected final Field[] fields;
+
+        protected final Map<String, Integer> positions;
+
+        protected FieldIndex(Schema schema) {
+            this.schema = schema;
+            Collection<Field> schemaFields = schema.getFields();
+            fields = schemaFields.toArray(new Field[schemaFields.size()]);
+            positions = new HashMap<>();
+            for (int i = 0; i < fields.length; i++) {
+                positions.put(fields[i].getName().getPrefixedName(), Integer.valueOf(i));
+            }
+        }
+
+        protected int getPosition(Field field) {
+            Integer position = positions.get(field.getName().getPrefixedName());
+            return position == null ? -1 : position.intValue();
+        }
+    }
+
+    protected static final ConcurrentMap<String, FieldIndex> FIELD_INDEXES = new ConcurrentHashMap<>();
+
+    protected static FieldIndex getFieldIndex(Schema schema) {
+        FieldIndex index = FIELD_INDEXES.get(schema.getName());
+        if (index == null || index.schema != schema) {
+            // new or redeployed schema
+            index = new FieldIndex(schema);
+            FIELD_INDEXES.put(schema.getName(), index);
+        }
+        return index;
+    }
+
     public DocumentPartImpl(Schema schema) {
         super(null);
         this.schema = schema;
@@ -87,9 +145,110 @@ public class DocumentPartImpl extends ComplexProperty implements DocumentPart {
 
     @Override
     public Object clone() throws CloneNotSupportedException {
+        // the clone must not share the values not yet loaded
+        loadLazyValues();
         return super.clone();
     }
 
+    protected FieldIndex getFieldIndex() {
+        if (fieldIndex == null) {
+            fieldIndex = getFieldIndex(schema);
+        }
+        return fieldIndex;
+    }
+
+    /**
+     * Initializes a field with a value read from storage. Unlike {@link Property#init}, the property itself is only
+     * created when the field is first accessed.
+     *
+     * @param field a field of this part's schema
+     * @param value the value, as it would be passed to {@link Property#init}
+     * @since 10.1
+     */
+    public void initLazy(Field field, Serializable value) {
+        if (value == null || (value instanceof Object[] && ((Object[]) value).length == 0)) {
+            // property will be considered phantom, like with init
+            return;
+        }
+        FieldIndex index = getFieldIndex();
+        int position = index.getPosition(field);
+        if (position < 0) {
+            throw new PropertyNotFoundException(field.getName().getPrefixedName());
+        }
+        if (lazyValues == null) {
+            lazyValues = new Serializable[index.fields.length];
+        }
+        lazyValues[position] = value;
+        removePhantomFlag();
+    }
+
+    @Override
+    protected Property internalGetChild(Field field) {
+        if (lazyValues == null) {
+            return null;
+        }
+        int position = getFieldIndex().getPosition(field);
+        if (position < 0 || lazyValues[position] == null) {
+            return null;
+        }
+        Serializable value = lazyValues[position];
+        lazyValues[position] = null;
+        Property property = createProperty(this, field, IS_PHANTOM);
+        property.init(value);
+        return property;
+    }
+
+    /**
+     * Creates the properties for all the values not yet loaded, before accessing the children directly.
+     *
+     * @since 10.1
+     */
+    protected void loadLazyValues() {
+        if (lazyValues == null) {
+            return;
+        }
+        for (Field field : getFieldIndex().fields) {
+            getNonPhantomChild(field);
+        }
+        lazyValues = null;
+    }
+
+    @Override
+    public void setValue(Object value) throws PropertyException {
+        loadLazyValues();
+        super.setValue(value);
+    }
+
+    @Override
+    public Set<Entry<String, Property>> entrySet() {
+        loadLazyValues();
+        return super.entrySet();
+    }
+
+    @Override
+    public Property get(Object key) {
+        loadLazyValues();
+        return super.get(key);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        loadLazyValues();
+        return super.isEmpty();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        loadLazyValues();
+        return super.keySet();
+    }
+
+    @Override
+    public Collection<Property> values() {
+        loadLazyValues();
+        return super.values();
+    }
+
     @Override
     public void accept(PropertyVisitor visitor, Object arg) throws PropertyException {
         visitChildren(visitor, arg);
@@ -53,6 +53,27 @@ public interface BinaryGarbageCollector {
      */
     void mark(String digest);
 
+    /**
+     * Checks if all the binaries referenced by a repository have already been marked, by a previous run of this GC
+     * that was interrupted and is now resumed.
+     *
+     * @param repositoryName the repository name
+     * @return {@code true} if the repository doesn't need to be marked again
+     * @since 10.1
+     */
+    default boolean isRepositoryMarked(String repositoryName) {
+        return false;
+    }
+
+    /**
+     * Records that all the binaries referenced by a repository have been marked, so that a resumed GC can skip it.
+     *
+     * @param repositoryName the repository name
+     * @since 10.1
+     */
+    default void setRepositoryMarked(String repositoryName) {
+    }
+
     /**
      * Stops the garbage collection process and deletes all binaries that have not been marked (sweep).
      *
@@ -64,7 +85,8 @@ public interface BinaryGarbageCollector {
     /**
      * Gets the status of the binaries to GC and of those that won't be.
      * <p>
-     * Available after {@link #stop}.
+     * Available after {@link #stop}. Implementations may also return a live status while the GC is in progress, with
+     * its current {@link BinaryManagerStatus#getPhase phase} and progress.
      *
      * @return the status
      */
@@ -20,9 +20,25 @@ package org.nuxeo.ecm.core.blob.binary;
 
 /**
  * Status of a BinaryManager, including files that may have just been deleted by GC
+ * <p>
+ * While a GC is in progress, the status also reflects its current phase and progress.
  */
 public class BinaryManagerStatus {
 
+    /**
+     * The phase of a GC.
+     *
+     * @since 10.1
+     */
+    public enum Phase {
+        /** The binaries in use are being marked. */
+        MARK,
+        /** The binaries not marked are being deleted. */
+        SWEEP,
+        /** The GC is finished. */
+        DONE
+    }
+
     public long gcDuration;
 
     public long numBinaries;
@@ -33,6 +49,21 @@ public class BinaryManagerStatus {
 
     public long sizeBinariesGC;
 
+    /** @since 10.1 */
+    public volatile Phase phase = Phase.DONE;
+
+    /** @since 10.1 */
+    public volatile long numBinariesMarked;
+
+    /** @since 10.1 */
+    public volatile long sweepUnitsDone;
+
+    /** @since 10.1 */
+    public volatile long sweepUnitsTotal;
+
+    /** @since 10.1 */
+    public volatile boolean resumed;
+
     /**
      * The GC duration, in milliseconds
      */
@@ -68,6 +99,64 @@ public class BinaryManagerStatus {
         return sizeBinariesGC;
     }
 
+    /**
+     * The current phase of the GC.
+     *
+     * @since 10.1
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * The number of binaries marked as being in use so far.
+     *
+     * @since 10.1
+     */
+    public long getNumBinariesMarked() {
+        return numBinariesMarked;
+    }
+
+    /**
+     * The number of units of work (for instance directories) already swept.
+     *
+     * @since 10.1
+     */
+    public long getSweepUnitsDone() {
+        return sweepUnitsDone;
+    }
+
+    /**
+     * The total number of units of work (for instance directories) to sweep, or {@code 0} if unknown.
+     *
+     * @since 10.1
+     */
+    public long getSweepUnitsTotal() {
+        return sweepUnitsTotal;
+    }
+
+    /**
+     * The progress of the sweep phase, between {@code 0} and {@code 1}.
+     *
+     * @since 10.1
+     */
+    public double getSweepProgress() {
+        if (phase == Phase.DONE) {
+            return 1;
+        }
+        long total = sweepUnitsTotal;
+        return total == 0 ? 0 : (double) sweepUnitsDone / total;
+    }
+
+    /**
+     * Whether the GC resumed from a previously interrupted one.
+     *
+     * @since 10.1
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -75,7 +164,12 @@ public class BinaryManagerStatus {
         .append(", numBinaries=").append(numBinaries) //
         .append(", sizeBinaries=").append(sizeBinaries) //
         .append(", numBinariesGC=").append(numBinariesGC) //
-        .append(", sizeBinariesGC=").append(sizeBinariesGC).append("]");
+        .append(", sizeBinariesGC=").append(sizeBinariesGC) //
+        .append(", phase=").append(phase) //
+        .append(", numBinariesMarked=").append(numBinariesMarked) //
+        .append(", sweepUnitsDone=").append(sweepUnitsDone) //
+        .append(", sweepUnitsTotal=").append(sweepUnitsTotal) //
+        .append(", resumed=").append(resumed).append("]");
         return builder.toString();
     }
 
@@ -31,6 +31,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.file.FileCache;
 import org.nuxeo.common.file.LRUFileCache;
+import org.nuxeo.common.file.ShardedFileCache;
 import org.nuxeo.common.utils.SizeUtils;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.runtime.api.Framework;
@@ -47,8 +48,26 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
 
     private static final Log log = LogFactory.getLog(CachingBinaryManager.class);
 
+    /**
+     * Blob provider property to choose the cache implementation: {@value #CACHE_TYPE_SHARDED} (the default) or
+     * {@value #CACHE_TYPE_LRU} for the legacy single directory cache. The files of a legacy cache are moved to the
+     * sharded layout when the sharded cache starts.
+     *
+     * @since 10.1
+     */
+    public static final String CACHE_TYPE_PROPERTY = "cacheType";
+
+    /** @since 10.1 */
+    public static final String CACHE_TYPE_SHARDED = "sharded";
+
+    /** @since 10.1 */
+    public static final String CACHE_TYPE_LRU = "lru";
+
     protected File cachedir;
 
+    /** @since 10.1 */
+    protected String cacheType = CACHE_TYPE_SHARDED;
+
     public FileCache fileCache;
 
     protected FileStorage fileStorage;
@@ -58,6 +77,10 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
         super.initialize(blobProviderId, properties);
         descriptor = new BinaryManagerRootDescriptor();
         descriptor.digest = getDefaultDigestAlgorithm();
+        String type = properties.get(CACHE_TYPE_PROPERTY);
+        if (type != null) {
+            cacheType = type;
+        }
         log.info("Registering binary manager '" + blobProviderId + "' using " + getClass().getSimpleName());
     }
 
@@ -72,7 +95,16 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
      * @since 5.9.2
      */
     protected void initializeCache(File dir, long maxSize, long maxCount, long minAge, FileStorage fileStorage) {
-        fileCache = new LRUFileCache(dir, maxSize, maxCount, minAge);
+        switch (cacheType) {
+        case CACHE_TYPE_SHARDED:
+            fileCache = new ShardedFileCache(dir, maxSize, maxCount, minAge);
+            break;
+        case CACHE_TYPE_LRU:
+            fileCache = new LRUFileCache(dir, maxSize, maxCount, minAge);
+            break;
+        default:
+            throw new NuxeoException("Unknown cache type: " + cacheType + " for blob provider: " + blobProviderId);
+        }
         this.fileStorage = fileStorage;
     }
 
@@ -109,8 +141,8 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
         long maxCount = Long.parseLong(maxCountStr);
         long minAge = Long.parseLong(minAgeStr);
         initializeCache(cachedir, maxSize, maxCount, minAge, fileStorage);
-        log.info("Using binary cache directory: " + cachedir.getPath() + " size: " + maxSizeStr + " maxCount: "
-                + maxCount + " minAge: " + minAge);
+        log.info("Using binary cache directory: " + cachedir.getPath() + " type: " + cacheType + " size: " + maxSizeStr
+                + " maxCount: " + maxCount + " minAge: " + minAge);
 
         // be sure FileTracker won't steal our files !
         FileEventTracker.registerProtectedPath(cachedir.getAbsolutePath());
@@ -28,7 +28,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
@@ -38,6 +52,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.Environment;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus.Phase;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.trackers.files.FileEventTracker;
 
@@ -250,6 +265,14 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         garbageCollector = new DefaultBinaryGarbageCollector(this);
     }
 
+    /**
+     * Garbage collector for a {@link LocalBinaryManager}.
+     * <p>
+     * Binaries are marked by updating their last modification time. The sweep is done in parallel over the top-level
+     * subdirectories of the storage directory, and its progress is saved in a checkpoint file so that an interrupted GC
+     * can be resumed: the next GC reuses the original start time, so that binaries already marked don't need to be
+     * touched again, and doesn't mark again the repositories or sweep again the directories already done.
+     */
     public static class DefaultBinaryGarbageCollector implements BinaryGarbageCollector {
 
         /**
@@ -257,11 +280,47 @@ public class LocalBinaryManager extends AbstractBinaryManager {
          */
         public static final int TIME_RESOLUTION = 2000;
 
+        /**
+         * Framework property for the number of threads used for the sweep.
+         *
+         * @since 10.1
+         */
+        public static final String GC_THREADS_PROP = "nuxeo.binarymanager.gc.threads";
+
+        /** @since 10.1 */
+        public static final String CHECKPOINT_FILE = "gc.checkpoint";
+
+        protected static final String CP_START_TIME = "startTime";
+
+        protected static final String CP_DELETE = "delete";
+
+        protected static final String CP_DONE = "done";
+
+        protected static final String CP_MARKED = "marked";
+
+        protected static final String CP_NUM_BINARIES = "numBinaries";
+
+        protected static final String CP_SIZE_BINARIES = "sizeBinaries";
+
+        protected static final String CP_NUM_BINARIES_GC = "numBinariesGC";
+
+        protected static final String CP_SIZE_BINARIES_GC = "sizeBinariesGC";
+
         protected final LocalBinaryManager binaryManager;
 
         protected volatile long startTime;
 
-        protected BinaryManagerStatus status;
+        protected volatile BinaryManagerStatus status;
+
+        protected final AtomicLong numMarked = new AtomicLong();
+
+        /** Top-level directories already swept, with the delete flag of the sweep, when resuming. */
+        protected Set<String> sweptDirs;
+
+        protected Boolean sweptDelete;
+
+        /** Repositories whose binaries have all been marked. */
+        protected Set<String> markedRepositories;
 
         public DefaultBinaryGarbageCollector(LocalBinaryManager binaryManager) {
             this.binaryManager = binaryManager;
@@ -283,13 +342,49 @@ public class LocalBinaryManager extends AbstractBinaryManager {
             return startTime != 0;
         }
 
+        protected File getCheckpointFile() {
+            return new File(binaryManager.getStorageDir().getParentFile(), CHECKPOINT_FILE);
+        }
+
         @Override
         public void start() {
             if (startTime != 0) {
                 throw new RuntimeException("Alread started");
             }
-            startTime = System.currentTimeMillis();
-            status = new BinaryManagerStatus();
+            BinaryManagerStatus newStatus = new BinaryManagerStatus();
+            numMarked.set(0);
+            sweptDirs = new HashSet<>();
+            sweptDelete = null;
+            markedRepositories = new HashSet<>();
+            Properties checkpoint = readCheckpoint();
+            long time = 0;
+            if (checkpoint != null) {
+                time = Long.parseLong(checkpoint.getProperty(CP_START_TIME, "0"));
+            }
+            if (time != 0) {
+                // resume an interrupted GC, binaries marked since its start don't need to be touched again
+                log.info("Resuming binaries GC started at " + time + " for: " + getId());
+                newStatus.resumed = true;
+                String marked = checkpoint.getProperty(CP_MARKED, "");
+                if (!marked.isEmpty()) {
+                    markedRepositories.addAll(Arrays.asList(marked.split(",")));
+                }
+                String done = checkpoint.getProperty(CP_DONE, "");
+                if (!done.isEmpty()) {
+                    sweptDirs.addAll(Arrays.asList(done.split(",")));
+                    sweptDelete = Boolean.valueOf(checkpoint.getProperty(CP_DELETE));
+                    newStatus.numBinaries = getLong(checkpoint, CP_NUM_BINARIES);
+                    newStatus.sizeBinaries = getLong(checkpoint, CP_SIZE_BINARIES);
+                    newStatus.numBinariesGC = getLong(checkpoint, CP_NUM_BINARIES_GC);
+                    newStatus.sizeBinariesGC = getLong(checkpoint, CP_SIZE_BINARIES_GC);
+                }
+            } else {
+                time = System.currentTimeMillis();
+            }
+            newStatus.phase = Phase.MARK;
+            status = newStatus;
+            startTime = time;
+            writeCheckpoint(false);
         }
 
         @Override
@@ -299,7 +394,24 @@ public class LocalBinaryManager extends AbstractBinaryManager {
                 log.error("Unknown file digest: " + digest);
                 return;
             }
-            touch(file);
+            if (file.lastModified() < startTime) {
+                touch(file);
+            } // else already marked, or created after the GC start
+            status.numBinariesMarked = numMarked.incrementAndGet();
+        }
+
+        @Override
+        public synchronized boolean isRepositoryMarked(String repositoryName) {
+            return markedRepositories != null && markedRepositories.contains(repositoryName);
+        }
+
+        @Override
+        public synchronized void setRepositoryMarked(String repositoryName) {
+            if (startTime == 0) {
+                throw new RuntimeException("Not started");
+            }
+            markedRepositories.add(repositoryName);
+            writeCheckpoint(false);
         }
 
         @Override
@@ -307,15 +419,105 @@ public class LocalBinaryManager extends AbstractBinaryManager {
             if (startTime == 0) {
                 throw new RuntimeException("Not started");
             }
-            deleteOld(binaryManager.getStorageDir(), startTime - TIME_RESOLUTION, 0, delete);
-            status.gcDuration = System.currentTimeMillis() - startTime;
-            startTime = 0;
+            try {
+                if (sweptDelete != null && sweptDelete.booleanValue() != delete) {
+                    // the interrupted sweep was for a different mode, start it over
+                    sweptDirs.clear();
+                    status.numBinaries = status.sizeBinaries = status.numBinariesGC = status.sizeBinariesGC = 0;
+                }
+                status.phase = Phase.SWEEP;
+                sweep(delete);
+                deleteCheckpoint();
+                status.phase = Phase.DONE;
+                status.gcDuration = System.currentTimeMillis() - startTime;
+            } finally {
+                startTime = 0;
+            }
         }
 
-        protected void deleteOld(File file, long minTime, int depth, boolean delete) {
+        protected void sweep(boolean delete) {
+            long minTime = startTime - TIME_RESOLUTION;
+            File[] files = binaryManager.getStorageDir().listFiles();
+            if (files == null) {
+                return;
+            }
+            List<File> dirs = new ArrayList<>();
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    dirs.add(file);
+                } else {
+                    BinaryManagerStatus partial = new BinaryManagerStatus();
+                    deleteOld(file, minTime, 1, delete, partial);
+                    merge(partial, null, delete);
+                }
+            }
+            status.sweepUnitsTotal = dirs.size();
+            status.sweepUnitsDone = sweptDirs.size();
+            int threads = getSweepThreads();
+            AtomicInteger threadNumber = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "Nuxeo-BinaryGC-Sweep-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<?>> futures = new ArrayList<>(dirs.size());
+                for (File dir : dirs) {
+                    if (sweptDirs.contains(dir.getName())) {
+                        continue;
+                    }
+                    futures.add(executor.submit(() -> {
+                        BinaryManagerStatus partial = new BinaryManagerStatus();
+                        deleteOld(dir, minTime, 1, delete, partial);
+                        merge(partial, dir.getName(), delete);
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            } catch (ExecutionException e) {
+                throw new NuxeoException("Error during binaries GC sweep of: " + getId(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        protected int getSweepThreads() {
+            int def = Runtime.getRuntime().availableProcessors();
+            String value = Framework.getProperty(GC_THREADS_PROP);
+            if (StringUtils.isBlank(value)) {
+                return def;
+            }
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                log.error("Invalid value for " + GC_THREADS_PROP + ": " + value);
+                return def;
+            }
+        }
+
+        /**
+         * Adds the counts of a sweep unit to the status, and saves the checkpoint if a directory has been swept.
+         */
+        protected synchronized void merge(BinaryManagerStatus partial, String dir, boolean delete) {
+            status.numBinaries += partial.numBinaries;
+            status.sizeBinaries += partial.sizeBinaries;
+            status.numBinariesGC += partial.numBinariesGC;
+            status.sizeBinariesGC += partial.sizeBinariesGC;
+            if (dir != null) {
+                sweptDirs.add(dir);
+                status.sweepUnitsDone = sweptDirs.size();
+                writeCheckpoint(delete);
+            }
+        }
+
+        protected void deleteOld(File file, long minTime, int depth, boolean delete, BinaryManagerStatus status) {
             if (file.isDirectory()) {
                 for (File f : file.listFiles()) {
-                    deleteOld(f, minTime, depth + 1, delete);
+                    deleteOld(f, minTime, depth + 1, delete, status);
                 }
                 if (depth > 0 && file.list().length == 0) {
                     // empty directory
@@ -338,6 +540,57 @@ public class LocalBinaryManager extends AbstractBinaryManager {
                 }
             }
         }
+
+        protected Properties readCheckpoint() {
+            File file = getCheckpointFile();
+            if (!file.exists()) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                log.error("Cannot read binaries GC checkpoint, ignoring it: " + file, e);
+                return null;
+            }
+            return properties;
+        }
+
+        protected synchronized void writeCheckpoint(boolean delete) {
+            Properties properties = new Properties();
+            properties.setProperty(CP_START_TIME, String.valueOf(startTime));
+            properties.setProperty(CP_DELETE, String.valueOf(delete));
+            properties.setProperty(CP_MARKED, String.join(",", markedRepositories));
+            properties.setProperty(CP_DONE, String.join(",", sweptDirs));
+            properties.setProperty(CP_NUM_BINARIES, String.valueOf(status.numBinaries));
+            properties.setProperty(CP_SIZE_BINARIES, String.valueOf(status.sizeBinaries));
+            properties.setProperty(CP_NUM_BINARIES_GC, String.valueOf(status.numBinariesGC));
+            properties.setProperty(CP_SIZE_BINARIES_GC, String.valueOf(status.sizeBinariesGC));
+            File file = getCheckpointFile();
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                try (OutputStream out = new FileOutputStream(tmp)) {
+                    properties.store(out, null);
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // not fatal, the GC will just not be resumable from this point
+                log.error("Cannot write binaries GC checkpoint: " + file, e);
+            }
+        }
+
+        protected void deleteCheckpoint() {
+            File file = getCheckpointFile();
+            if (file.exists() && !file.delete()) {
+                log.warn("Cannot delete binaries GC checkpoint: " + file);
+            }
+        }
+
+        protected static long getLong(Properties properties, String key) {
+            return Long.parseLong(properties.getProperty(key, "0"));
+        }
+
     }
 
     /**
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.api.model.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.model.Property;
+import org.nuxeo.ecm.core.schema.types.Field;
+import org.nuxeo.ecm.core.schema.types.ListTypeImpl;
+import org.nuxeo.ecm.core.schema.types.SchemaImpl;
+import org.nuxeo.ecm.core.schema.types.primitives.LongType;
+import org.nuxeo.ecm.core.schema.types.primitives.StringType;
+
+public class TestLazyDocumentPart extends AbstractTestProperty {
+
+    protected SchemaImpl schema;
+
+    protected DocumentPartImpl newLazyPart() {
+        schema = getSchema();
+        Field title = schema.addField("title", StringType.INSTANCE, null, 0, Collections.emptySet());
+        Field count = schema.addField("count", LongType.INSTANCE, null, 0, Collections.emptySet());
+        Field tags = schema.addField("tags", new ListTypeImpl("test", "tags", StringType.INSTANCE, null, null, 0,
+                Collections.emptySet(), 0, -1), null, 0, Collections.emptySet());
+        schema.addField("empty", StringType.INSTANCE, null, 0, Collections.emptySet());
+        DocumentPartImpl part = new DocumentPartImpl(schema);
+        part.initLazy(title, "foo");
+        part.initLazy(count, Long.valueOf(3));
+        part.initLazy(tags, new String[] { "a", "b" });
+        return part;
+    }
+
+    @Test
+    public void testLazyRead() {
+        DocumentPartImpl part = newLazyPart();
+        assertFalse(part.isPhantom());
+        assertTrue(part.children.isEmpty());
+
+        assertEquals("foo", part.getValue("title"));
+        assertEquals(1, part.children.size());
+        assertFalse(part.get("title").isPhantom());
+        assertFalse(part.get("title").isDirty());
+        assertTrue(part.get("empty").isPhantom());
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put(part.get("title").getName(), "foo");
+        expected.put(part.get("count").getName(), Long.valueOf(3));
+        expected.put(part.get("empty").getName(), null);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) part.getValue();
+        assertEquals(4, map.size());
+        assertArrayEquals(new String[] { "a", "b" }, (Object[]) map.remove(part.get("tags").getName()));
+        assertEquals(expected, map);
+        assertFalse(part.isDirty());
+    }
+
+    @Test
+    public void testLazyWrite() {
+        DocumentPartImpl part = newLazyPart();
+        part.setValue("count", Long.valueOf(4));
+        assertTrue(part.isDirty());
+        assertTrue(part.get("count").isDirty());
+        assertFalse(part.get("title").isDirty());
+        assertEquals("foo", part.getValue("title"));
+    }
+
+    @Test
+    public void testLazyMapAccess() {
+        DocumentPartImpl part = newLazyPart();
+        // direct access to the children loads all of them
+        assertEquals(3, part.values().size());
+        for (Property property : part.values()) {
+            assertFalse(property.isPhantom());
+        }
+    }
+
+    @Test
+    public void testLazySerialization() throws Exception {
+        DocumentPartImpl part = newLazyPart();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+            out.writeObject(part);
+        }
+        DocumentPartImpl copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            copy = (DocumentPartImpl) in.readObject();
+        }
+        assertEquals("foo", copy.getValue("title"));
+        assertEquals(Long.valueOf(3), copy.getValue("count"));
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.api.model.impl.benchmark;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.DataModel;
+import org.nuxeo.ecm.core.api.impl.DataModelImpl;
+import org.nuxeo.ecm.core.api.model.Property;
+import org.nuxeo.ecm.core.api.model.impl.DocumentPartImpl;
+import org.nuxeo.ecm.core.schema.Namespace;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.ecm.core.schema.SchemaManagerImpl;
+import org.nuxeo.ecm.core.schema.types.Field;
+import org.nuxeo.ecm.core.schema.types.ListTypeImpl;
+import org.nuxeo.ecm.core.schema.types.SchemaImpl;
+import org.nuxeo.ecm.core.schema.types.Type;
+import org.nuxeo.ecm.core.schema.types.primitives.DateType;
+import org.nuxeo.ecm.core.schema.types.primitives.LongType;
+import org.nuxeo.ecm.core.schema.types.primitives.StringType;
+import org.nuxeo.runtime.api.DefaultServiceProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the allocations done when a {@link DataModelImpl} is read from storage into a fully initialized
+ * {@link DocumentPartImpl}, and into a lazy one where properties are only created when accessed.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.ecm.core.api.model.impl.benchmark.DocumentPartBenchmark}, the
+ * {@code gc.alloc.rate.norm} secondary result gives the bytes allocated per operation.
+ *
+ * @since 10.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentPartBenchmark {
+
+    @Param({ "10", "50" })
+    public int fields;
+
+    protected SchemaImpl schema;
+
+    protected Map<String, Serializable> values;
+
+    @Setup
+    public void setup() throws IOException {
+        // no runtime, only the schema manager is needed by the document parts
+        Environment.setDefault(new Environment(Files.createTempDirectory("bench").toFile()));
+        DefaultServiceProvider provider = new DefaultServiceProvider();
+        provider.registerService(SchemaManager.class, new SchemaManagerImpl());
+        DefaultServiceProvider.setProvider(provider);
+
+        schema = new SchemaImpl("bench", new Namespace("http://nuxeo.com/bench", "bench"));
+        Type arrayType = new ListTypeImpl("bench", "strings", StringType.INSTANCE, null, null, 0,
+                Collections.emptySet(), 0, -1);
+        values = new HashMap<>();
+        for (int i = 0; i < fields; i++) {
+            String name = "field" + i;
+            switch (i % 4) {
+            case 0:
+                schema.addField(name, StringType.INSTANCE, null, 0, Collections.emptySet());
+                values.put(name, "value" + i);
+                break;
+            case 1:
+                schema.addField(name, LongType.INSTANCE, null, 0, Collections.emptySet());
+                values.put(name, Long.valueOf(i));
+                break;
+            case 2:
+                schema.addField(name, DateType.INSTANCE, null, 0, Collections.emptySet());
+                values.put(name, Calendar.getInstance());
+                break;
+            default:
+                schema.addField(name, arrayType, null, 0, Collections.emptySet());
+                values.put(name, new String[] { "a", "b" });
+                break;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        DefaultServiceProvider.setProvider(null);
+        Environment.setDefault(null);
+    }
+
+    /** Reads all the values like the storage did before lazy properties. */
+    protected DataModel readEager() {
+        DocumentPartImpl part = new DocumentPartImpl(schema);
+        for (Property property : part) {
+            property.init(values.get(property.getField().getName().getLocalName()));
+        }
+        return new DataModelImpl(part);
+    }
+
+    protected DataModel readLazy() {
+        DocumentPartImpl part = new DocumentPartImpl(schema);
+        for (Field field : schema.getFields()) {
+            part.initLazy(field, values.get(field.getName().getLocalName()));
+        }
+        return new DataModelImpl(part);
+    }
+
+    @Benchmark
+    public Object eagerReadOneField() {
+        return readEager().getData("field0");
+    }
+
+    @Benchmark
+    public Object lazyReadOneField() {
+        return readLazy().getData("field0");
+    }
+
+    @Benchmark
+    public Object eagerReadAllFields() {
+        return readEager().getMap();
+    }
+
+    @Benchmark
+    public Object lazyReadAllFields() {
+        return readLazy().getMap();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DocumentPartBenchmark.class.getSimpleName())
+                                       .addProfiler(GCProfiler.class)
+                                       .build()).run();
+    }
+
+}
@@ -33,6 +33,8 @@ import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.nuxeo.ecm.core.api.Blobs;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus.Phase;
+import org.nuxeo.ecm.core.blob.binary.LocalBinaryManager.DefaultBinaryGarbageCollector;
 import org.nuxeo.runtime.test.NXRuntimeTestCase;
 
 public class TestDefaultBinaryManager extends NXRuntimeTestCase {
@@ -124,6 +126,84 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
         binaryManager.close();
     }
 
+    @Test
+    public void testGarbageCollectorResume() throws Exception {
+        deployBundle("org.nuxeo.ecm.core.api");
+        deployContrib("org.nuxeo.ecm.core.api.tests", "OSGI-INF/test-default-blob-provider.xml");
+
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize("repo", Collections.emptyMap());
+        binaryManager.getBinary(Blobs.createBlob(CONTENT));
+        binaryManager.getBinary(Blobs.createBlob("abc"));
+        assertEquals(2, countFiles(binaryManager.getStorageDir()));
+
+        // sleep before GC to pass its time threshold
+        Thread.sleep(3 * 1000);
+
+        BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+        gc.start();
+        assertEquals(Phase.MARK, gc.getStatus().getPhase());
+        assertFalse(gc.getStatus().isResumed());
+        gc.mark(CONTENT_MD5);
+        assertEquals(1, gc.getStatus().getNumBinariesMarked());
+        File checkpoint = new File(binaryManager.getStorageDir().getParentFile(),
+                DefaultBinaryGarbageCollector.CHECKPOINT_FILE);
+        assertTrue(checkpoint.exists());
+
+        // simulate an interruption, a new GC resumes from the checkpoint and doesn't need to mark again
+        gc = new DefaultBinaryGarbageCollector(binaryManager);
+        gc.start();
+        assertTrue(gc.getStatus().isResumed());
+        gc.stop(true);
+        BinaryManagerStatus status = gc.getStatus();
+        assertEquals(Phase.DONE, status.getPhase());
+        assertEquals(1, status.numBinaries);
+        assertEquals(CONTENT.getBytes("UTF-8").length, status.sizeBinaries);
+        assertEquals(1, status.numBinariesGC);
+        assertEquals(3, status.sizeBinariesGC);
+        assertEquals(status.getSweepUnitsTotal(), status.getSweepUnitsDone());
+        assertEquals(1, status.getSweepProgress(), 0);
+        assertFalse(checkpoint.exists());
+        assertEquals(1, countFiles(binaryManager.getStorageDir()));
+
+        binaryManager.close();
+    }
+
+    @Test
+    public void testGarbageCollectorResumeSkipsMarkedRepositories() throws Exception {
+        deployBundle("org.nuxeo.ecm.core.api");
+        deployContrib("org.nuxeo.ecm.core.api.tests", "OSGI-INF/test-default-blob-provider.xml");
+
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize("repo", Collections.emptyMap());
+        binaryManager.getBinary(Blobs.createBlob(CONTENT));
+
+        BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+        gc.start();
+        assertFalse(gc.isRepositoryMarked("test"));
+        gc.mark(CONTENT_MD5);
+        gc.setRepositoryMarked("test");
+        assertTrue(gc.isRepositoryMarked("test"));
+
+        // simulate an interruption, a new GC knows which repositories don't need to be marked again
+        gc = new DefaultBinaryGarbageCollector(binaryManager);
+        gc.start();
+        assertTrue(gc.getStatus().isResumed());
+        assertTrue(gc.isRepositoryMarked("test"));
+        assertFalse(gc.isRepositoryMarked("other"));
+        gc.stop(true);
+        assertEquals(1, gc.getStatus().numBinaries);
+        assertEquals(0, gc.getStatus().numBinariesGC);
+
+        // the next GC starts over
+        gc.start();
+        assertFalse(gc.getStatus().isResumed());
+        assertFalse(gc.isRepositoryMarked("test"));
+        gc.stop(false);
+
+        binaryManager.close();
+    }
+
     @Test
     public void testTemporaryCopies() throws IOException {
         DefaultBinaryManager binaryManager = new DefaultBinaryManager();
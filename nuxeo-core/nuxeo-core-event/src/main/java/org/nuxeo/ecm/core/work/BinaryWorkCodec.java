@@ -0,0 +1,485 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.work;
+
+import java.io.Externalizable;
+import java.io.ObjectStreamConstants;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.Work.Progress;
+import org.nuxeo.lib.stream.codec.BinaryReader;
+import org.nuxeo.lib.stream.codec.BinaryWriter;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.SerializableCodec;
+
+/**
+ * Compact binary codec for {@link Work} instances.
+ * <p>
+ * The serializable fields of the work (the same ones as for Java serialization) are written in a fixed order without
+ * names, preceded by the class name and a fingerprint of the fields, which must match when decoding. Common field
+ * types (strings, numbers, enums, progress, usual collections) have a compact encoding, other serializable objects are
+ * encoded recursively in the same way when possible, or fall back to Java serialization.
+ * <p>
+ * Only classes with a no-arg constructor (of any visibility) are encoded field by field: decoding calls it, then sets
+ * the serializable fields, so transient fields keep the values set by that constructor. Works whose class has no such
+ * constructor or customizes its Java serialization ({@code writeObject}, {@code readResolve}, ...) are entirely encoded
+ * with Java serialization, and are then larger than with plain Java serialization. Works should therefore provide a
+ * protected no-arg constructor without side effects.
+ * <p>
+ * Java serialized works are also accepted when decoding, to read logs written before switching to this codec.
+ *
+ * @since 10.1
+ */
+public class BinaryWorkCodec implements Codec<Work> {
+
+    public static final String NAME = "binary";
+
+    protected static final byte MAGIC = (byte) 0xC2;
+
+    protected static final byte FORMAT_FIELDS = 1;
+
+    protected static final byte FORMAT_JAVA = 2;
+
+    /** Maximum nesting of objects encoded field by field. */
+    protected static final int MAX_DEPTH = 4;
+
+    protected static final byte T_NULL = 0;
+
+    protected static final byte T_STRING = 1;
+
+    protected static final byte T_LONG = 2;
+
+    protected static final byte T_INTEGER = 3;
+
+    protected static final byte T_TRUE = 4;
+
+    protected static final byte T_FALSE = 5;
+
+    protected static final byte T_DOUBLE = 6;
+
+    protected static final byte T_FLOAT = 7;
+
+    protected static final byte T_ENUM = 8;
+
+    protected static final byte T_PROGRESS_PERCENT = 9;
+
+    protected static final byte T_PROGRESS_COUNT = 10;
+
+    protected static final byte T_STRING_ARRAY = 11;
+
+    protected static final byte T_ARRAY_LIST = 12;
+
+    protected static final byte T_HASH_SET = 13;
+
+    protected static final byte T_LINKED_HASH_SET = 14;
+
+    protected static final byte T_HASH_MAP = 15;
+
+    protected static final byte T_LINKED_HASH_MAP = 16;
+
+    protected static final byte T_OBJECT = 17;
+
+    protected static final byte T_SERIALIZED = 18;
+
+    protected static final Comparator<Field> FIELD_ORDER = Comparator.comparing(Field::getName);
+
+    /** Schemas by class, empty if the class cannot be encoded field by field. */
+    protected static final Map<Class<?>, Optional<Schema>> SCHEMAS = new ConcurrentHashMap<>();
+
+    protected final SerializableCodec<Serializable> javaCodec = new SerializableCodec<>();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Checks if the data was encoded by this codec, otherwise it's a Java serialized work.
+     */
+    public static boolean isBinaryEncoded(byte[] data) {
+        return data.length > 1 && data[0] == MAGIC;
+    }
+
+    protected static boolean isJavaSerialized(byte[] data) {
+        return data.length > 1 && data[0] == (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8)
+                && data[1] == (byte) ObjectStreamConstants.STREAM_MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Work work) {
+        Schema schema = getSchema(work.getClass());
+        if (schema != null) {
+            BinaryWriter writer = new BinaryWriter(256);
+            writer.writeByte(MAGIC);
+            writer.writeByte(FORMAT_FIELDS);
+            try {
+                writeObject(writer, schema, work, 0);
+                return writer.toByteArray();
+            } catch (TooDeepException e) {
+                // fall back to Java serialization
+            }
+        }
+        byte[] serialized = javaCodec.encode(work);
+        BinaryWriter writer = new BinaryWriter(serialized.length + 2);
+        writer.writeByte(MAGIC);
+        writer.writeByte(FORMAT_JAVA);
+        writer.writeBytes(serialized);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public Work decode(byte[] data) {
+        if (!isBinaryEncoded(data)) {
+            if (isJavaSerialized(data)) {
+                return (Work) javaCodec.decode(data);
+            }
+            throw new NuxeoException("Not a binary encoded work");
+        }
+        BinaryReader reader = new BinaryReader(data, 2);
+        switch (data[1]) {
+        case FORMAT_FIELDS:
+            return (Work) readObject(reader);
+        case FORMAT_JAVA:
+            return (Work) javaCodec.decode(reader.readBytes());
+        default:
+            throw new NuxeoException("Unknown work encoding format: " + data[1]);
+        }
+    }
+
+    protected void writeObject(BinaryWriter writer, Schema schema, Object object, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new TooDeepException();
+        }
+        writer.writeString(schema.klass.getName());
+        writer.writeVarInt(schema.fingerprint);
+        try {
+            for (Field field : schema.fields) {
+                writeValue(writer, field.get(object), depth);
+            }
+        } catch (IllegalAccessException e) {
+            throw new NuxeoException("Cannot encode: " + object, e);
+        }
+    }
+
+    protected Object readObject(BinaryReader reader) {
+        String className = reader.readString();
+        int fingerprint = reader.readVarInt();
+        Schema schema;
+        try {
+            schema = getSchema(Class.forName(className, false, getClassLoader()));
+        } catch (ClassNotFoundException e) {
+            throw new NuxeoException("Cannot decode unknown class: " + className, e);
+        }
+        if (schema == null || schema.fingerprint != fingerprint) {
+            throw new NuxeoException("Incompatible fields for class: " + className);
+        }
+        try {
+            Object object = schema.constructor.newInstance();
+            for (Field field : schema.fields) {
+                field.set(object, readValue(reader));
+            }
+            return object;
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new NuxeoException("Cannot decode: " + className, e);
+        }
+    }
+
+    protected void writeValue(BinaryWriter writer, Object value, int depth) {
+        if (value == null) {
+            writer.writeByte(T_NULL);
+        } else if (value instanceof String) {
+            writer.writeByte(T_STRING);
+            writer.writeString((String) value);
+        } else if (value instanceof Long) {
+            writer.writeByte(T_LONG);
+            writer.writeZigZagLong(((Long) value).longValue());
+        } else if (value instanceof Integer) {
+            writer.writeByte(T_INTEGER);
+            writer.writeZigZagLong(((Integer) value).intValue());
+        } else if (value instanceof Boolean) {
+            writer.writeByte(((Boolean) value).booleanValue() ? T_TRUE : T_FALSE);
+        } else if (value instanceof Double) {
+            writer.writeByte(T_DOUBLE);
+            writer.writeDouble(((Double) value).doubleValue());
+        } else if (value instanceof Float) {
+            writer.writeByte(T_FLOAT);
+            writer.writeDouble(((Float) value).floatValue());
+        } else if (value instanceof Enum) {
+            writer.writeByte(T_ENUM);
+            writer.writeString(((Enum<?>) value).getDeclaringClass().getName());
+            writer.writeString(((Enum<?>) value).name());
+        } else if (value instanceof Progress) {
+            writeProgress(writer, (Progress) value);
+        } else if (value.getClass() == String[].class) {
+            String[] array = (String[]) value;
+            writer.writeByte(T_STRING_ARRAY);
+            writer.writeVarInt(array.length);
+            for (String string : array) {
+                writer.writeString(string);
+            }
+        } else if (value.getClass() == ArrayList.class) {
+            writeCollection(writer, T_ARRAY_LIST, (Collection<?>) value, depth);
+        } else if (value.getClass() == HashSet.class) {
+            writeCollection(writer, T_HASH_SET, (Collection<?>) value, depth);
+        } else if (value.getClass() == LinkedHashSet.class) {
+            writeCollection(writer, T_LINKED_HASH_SET, (Collection<?>) value, depth);
+        } else if (value.getClass() == HashMap.class) {
+            writeMap(writer, T_HASH_MAP, (Map<?, ?>) value, depth);
+        } else if (value.getClass() == LinkedHashMap.class) {
+            writeMap(writer, T_LINKED_HASH_MAP, (Map<?, ?>) value, depth);
+        } else {
+            Schema schema = value.getClass().getName().startsWith("java.") ? null : getSchema(value.getClass());
+            if (schema != null) {
+                writer.writeByte(T_OBJECT);
+                writeObject(writer, schema, value, depth + 1);
+            } else if (value instanceof Serializable) {
+                writer.writeByte(T_SERIALIZED);
+                writer.writeBytes(javaCodec.encode((Serializable) value));
+            } else {
+                throw new NuxeoException("Cannot encode non serializable value: " + value.getClass().getName());
+            }
+        }
+    }
+
+    protected Object readValue(BinaryReader reader) {
+        int type = reader.readByte();
+        switch (type) {
+        case T_NULL:
+            return null;
+        case T_STRING:
+            return reader.readString();
+        case T_LONG:
+            return Long.valueOf(reader.readZigZagLong());
+        case T_INTEGER:
+            return Integer.valueOf((int) reader.readZigZagLong());
+        case T_TRUE:
+            return Boolean.TRUE;
+        case T_FALSE:
+            return Boolean.FALSE;
+        case T_DOUBLE:
+            return Double.valueOf(reader.readDouble());
+        case T_FLOAT:
+            return Float.valueOf((float) reader.readDouble());
+        case T_ENUM:
+            return readEnum(reader);
+        case T_PROGRESS_PERCENT:
+            return new Progress((float) reader.readDouble());
+        case T_PROGRESS_COUNT:
+            return new Progress(reader.readZigZagLong(), reader.readZigZagLong());
+        case T_STRING_ARRAY:
+            String[] array = new String[reader.readVarInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = reader.readString();
+            }
+            return array;
+        case T_ARRAY_LIST:
+            int size = reader.readVarInt();
+            return readCollection(reader, new ArrayList<>(size), size);
+        case T_HASH_SET:
+            size = reader.readVarInt();
+            return readCollection(reader, new HashSet<>(), size);
+        case T_LINKED_HASH_SET:
+            size = reader.readVarInt();
+            return readCollection(reader, new LinkedHashSet<>(), size);
+        case T_HASH_MAP:
+            size = reader.readVarInt();
+            return readMap(reader, new HashMap<>(), size);
+        case T_LINKED_HASH_MAP:
+            size = reader.readVarInt();
+            return readMap(reader, new LinkedHashMap<>(), size);
+        case T_OBJECT:
+            return readObject(reader);
+        case T_SERIALIZED:
+            return javaCodec.decode(reader.readBytes());
+        default:
+            throw new NuxeoException("Unknown value type: " + type);
+        }
+    }
+
+    protected void writeProgress(BinaryWriter writer, Progress progress) {
+        if (progress.getPercent() != Progress.PERCENT_INDETERMINATE) {
+            writer.writeByte(T_PROGRESS_PERCENT);
+            writer.writeDouble(progress.getPercent());
+        } else {
+            writer.writeByte(T_PROGRESS_COUNT);
+            writer.writeZigZagLong(progress.getCurrent());
+            writer.writeZigZagLong(progress.getTotal());
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected Object readEnum(BinaryReader reader) {
+        String className = reader.readString();
+        String name = reader.readString();
+        try {
+            Class<? extends Enum> klass = (Class<? extends Enum>) Class.forName(className, false, getClassLoader());
+            return Enum.valueOf(klass, name);
+        } catch (ClassNotFoundException | IllegalArgumentException e) {
+            throw new NuxeoException("Cannot decode enum: " + className + "." + name, e);
+        }
+    }
+
+    protected void writeCollection(BinaryWriter writer, byte type, Collection<?> collection, int depth) {
+        writer.writeByte(type);
+        writer.writeVarInt(collection.size());
+        for (Object value : collection) {
+            writeValue(writer, value, depth);
+        }
+    }
+
+    protected Collection<Object> readCollection(BinaryReader reader, Collection<Object> collection, int size) {
+        for (int i = 0; i < size; i++) {
+            collection.add(readValue(reader));
+        }
+        return collection;
+    }
+
+    protected void writeMap(BinaryWriter writer, byte type, Map<?, ?> map, int depth) {
+        writer.writeByte(type);
+        writer.writeVarInt(map.size());
+        for (Entry<?, ?> entry : map.entrySet()) {
+            writeValue(writer, entry.getKey(), depth);
+            writeValue(writer, entry.getValue(), depth);
+        }
+    }
+
+    protected Map<Object, Object> readMap(BinaryReader reader, Map<Object, Object> map, int size) {
+        for (int i = 0; i < size; i++) {
+            map.put(readValue(reader), readValue(reader));
+        }
+        return map;
+    }
+
+    protected ClassLoader getClassLoader() {
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        return cl == null ? BinaryWorkCodec.class.getClassLoader() : cl;
+    }
+
+    /**
+     * Gets the schema for a class, or {@code null} if it cannot be encoded field by field.
+     */
+    protected static Schema getSchema(Class<?> klass) {
+        return SCHEMAS.computeIfAbsent(klass, k -> Optional.ofNullable(computeSchema(k))).orElse(null);
+    }
+
+    protected static Schema computeSchema(Class<?> klass) {
+        if (!Serializable.class.isAssignableFrom(klass) || Externalizable.class.isAssignableFrom(klass)
+                || klass.isEnum() || klass.isArray()) {
+            return null;
+        }
+        // serializable classes from the topmost one
+        List<Class<?>> classes = new ArrayList<>();
+        Class<?> base = klass;
+        while (Serializable.class.isAssignableFrom(base)) {
+            if (hasCustomSerialization(base)) {
+                return null;
+            }
+            classes.add(0, base);
+            base = base.getSuperclass();
+        }
+        List<Field> fields = new ArrayList<>();
+        int fingerprint = 1;
+        for (Class<?> c : classes) {
+            Field[] declared = c.getDeclaredFields();
+            Arrays.sort(declared, FIELD_ORDER);
+            for (Field field : declared) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.add(field);
+                String signature = c.getName() + '.' + field.getName() + ':' + field.getType().getName();
+                fingerprint = 31 * fingerprint + signature.hashCode();
+            }
+        }
+        Constructor<?> constructor;
+        try {
+            constructor = klass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException | SecurityException e) {
+            // no usable no-arg constructor, use Java serialization
+            return null;
+        }
+        return new Schema(klass, constructor, fields.toArray(new Field[fields.size()]), fingerprint);
+    }
+
+    protected static boolean hasCustomSerialization(Class<?> klass) {
+        for (String name : Arrays.asList("writeObject", "readObject", "readObjectNoData", "writeReplace",
+                "readResolve", "serialPersistentFields")) {
+            if (Arrays.stream(klass.getDeclaredMethods()).anyMatch(m -> m.getName().equals(name))
+                    || Arrays.stream(klass.getDeclaredFields()).anyMatch(f -> f.getName().equals(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The fields of a class encoded by this codec.
+     */
+    protected static class Schema {
+
+        protected final Class<?> klass;
+
+        protected final Constructor<?> constructor;
+
+        protected final Field[] fields;
+
+        protected final int fingerprint;
+
+        protected Schema(Class<?> klass, Constructor<?> constructor, Field[] fields, int fingerprint) {
+            this.klass = klass;
+            this.constructor = constructor;
+            this.fields = fields;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * Thrown when objects are nested too deeply, maybe because of a cycle.
+     */
+    protected static class TooDeepException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        protected TooDeepException() {
+            super(null, null, false, false);
+        }
+    }
+
+}
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
@@ -129,8 +130,26 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
      * @param capacity the capacity, or -1 for unbounded
      */
     public MemoryBlockingQueue(String id, MemoryWorkQueuing queuing, int capacity) {
+        this(id, queuing, capacity, false);
+    }
+
+    /**
+     * Creates a {@link BlockingQueue} with a maximum capacity, optionally ordered by {@link Work#getPriority
+     * priority}.
+     * <p>
+     * A priority queue is always unbounded.
+     *
+     * @param capacity the capacity, or -1 for unbounded
+     * @param priority {@code true} to take the works by decreasing priority rather than in scheduling order
+     * @since 10.1
+     */
+    public MemoryBlockingQueue(String id, MemoryWorkQueuing queuing, int capacity, boolean priority) {
         super(id, queuing);
-        queue = new ReentrantLinkedBlockingQueue<>(capacity);
+        if (priority) {
+            queue = new PriorityBlockingQueue<>(11, WorkHolder.PRIORITY_ORDER);
+        } else {
+            queue = new ReentrantLinkedBlockingQueue<>(capacity);
+        }
     }
 
     @Override
@@ -167,7 +186,8 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
         return r;
     }
 
-    private boolean anotherWorkIsAlreadyRunning(Runnable r) throws InterruptedException {
+    @Override
+    protected synchronized boolean anotherWorkIsAlreadyRunning(Runnable r) {
         Work work = WorkHolder.getWork(r);
         String id = work.getId();
         if (runningWorks.contains(id)) {
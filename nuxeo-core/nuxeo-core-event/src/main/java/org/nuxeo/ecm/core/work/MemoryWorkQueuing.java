@@ -25,6 +25,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.Work.State;
 import org.nuxeo.ecm.core.work.api.WorkQueueDescriptor;
@@ -37,6 +39,8 @@ import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
  */
 public class MemoryWorkQueuing implements WorkQueuing {
 
+    private static final Log log = LogFactory.getLog(MemoryWorkQueuing.class);
+
     protected final Map<String, MemoryBlockingQueue> allQueued = new HashMap<>();
 
     protected Listener listener;
@@ -51,7 +55,11 @@ public class MemoryWorkQueuing implements WorkQueuing {
         if (capacity <= 0) {
             capacity = -1; // unbounded
         }
-        MemoryBlockingQueue queue = new MemoryBlockingQueue(config.id, this, capacity);
+        boolean priority = config.isPriority();
+        if (priority && capacity > 0) {
+            log.warn("Ignoring capacity of priority work queue: " + config.id);
+        }
+        MemoryBlockingQueue queue = new MemoryBlockingQueue(config.id, this, capacity, priority);
         allQueued.put(queue.queueId, queue);
         return queue;
     }
@@ -84,6 +84,33 @@ public abstract class NuxeoBlockingQueue extends AbstractQueue<Runnable> impleme
         return metrics();
     }
 
+    /**
+     * Retrieves and removes the head of the queue like {@link #poll()}, unless another work with the same id is
+     * already running: the work is then put back into the queue and {@code null} is returned.
+     * <p>
+     * Used by the threads that poll the queue instead of calling {@link #take()}, so that two works with the same id
+     * never run at the same time.
+     *
+     * @since 10.1
+     */
+    public Runnable pollIfNotRunning() {
+        Runnable r = poll();
+        if (r != null && anotherWorkIsAlreadyRunning(r)) {
+            offer(r);
+            return null;
+        }
+        return r;
+    }
+
+    /**
+     * Checks whether another work with the same id as the given one is already running.
+     *
+     * @since 10.1
+     */
+    protected boolean anotherWorkIsAlreadyRunning(Runnable r) {
+        return false;
+    }
+
     @Override
     public boolean offer(Runnable r) {
         try {
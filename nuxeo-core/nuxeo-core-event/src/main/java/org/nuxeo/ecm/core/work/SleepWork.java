@@ -37,6 +37,14 @@ public class SleepWork extends AbstractWork {
 
     protected boolean idempotent = true;
 
+    /**
+     * Constructor used by {@link BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected SleepWork() {
+    }
+
     /**
      * Creates a work instance that does nothing but sleep.
      *
@@ -23,11 +23,17 @@ import static org.nuxeo.ecm.core.work.api.WorkManager.Scheduling.CANCEL_SCHEDULE
 
 import java.lang.reflect.Field;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.naming.NamingException;
 import javax.transaction.RollbackException;
@@ -45,6 +51,8 @@ import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkQueueDescriptor;
 import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
 import org.nuxeo.ecm.core.work.api.WorkSchedulePath;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.SerializableCodec;
 import org.nuxeo.lib.stream.computation.Record;
 import org.nuxeo.lib.stream.computation.Settings;
 import org.nuxeo.lib.stream.computation.StreamProcessor;
@@ -82,6 +90,16 @@ public class StreamWorkManager extends WorkManagerImpl {
 
     public static final int DEFAULT_CONCURRENCY = 4;
 
+    /**
+     * The codec used to encode works in records, {@code java} (the default) or {@code binary}. Consumers can decode
+     * both.
+     *
+     * @since 10.1
+     */
+    public static final String WORK_CODEC_PROP = "nuxeo.stream.work.codec";
+
+    public static final String DEFAULT_WORK_CODEC = SerializableCodec.NAME;
+
     protected Topology topology;
 
     protected Settings settings;
@@ -90,8 +108,13 @@ public class StreamWorkManager extends WorkManagerImpl {
 
     protected LogManager logManager;
 
+    protected Codec<Work> workCodec;
+
     protected final Set<String> streamIds = new HashSet<>();
 
+    // works scheduled after commit, by transaction
+    protected final Map<Transaction, WorkBatchScheduling> batchSchedulings = new ConcurrentHashMap<>();
+
     protected int getOverProvisioningFactor() {
         // Enable over provisioning only if the log can be distributed
         if (getLogManager().supportSubscribe()) {
@@ -126,9 +149,75 @@ public class StreamWorkManager extends WorkManagerImpl {
                     getStreamForCategory(work.getCategory())));
             return;
         }
+        WorkCoalescer c = coalescer;
+        if (c != null && c.isCoalescing(queueId) && work.isIdempotent()) {
+            c.offer(queueId, work);
+            return;
+        }
+        String key = work.getPartitionKey();
+        appender.append(key, newRecord(key, work));
+    }
+
+    /**
+     * Appends a work whose coalescing window is over.
+     *
+     * @since 10.1
+     */
+    @Override
+    protected void enqueue(String queueId, Work work) {
         String key = work.getPartitionKey();
-        appender.append(key, new Record(key, WorkComputation.serialize(work),
-                Watermark.ofTimestamp(System.currentTimeMillis()).getValue(), null));
+        logManager.getAppender(queueId).append(key, newRecord(key, work));
+    }
+
+    /**
+     * Schedules the works registered during a transaction, the works of a same partition are appended at once.
+     *
+     * @since 10.1
+     */
+    protected void scheduleAll(List<WorkScheduling> works) {
+        // stream -> partition -> records, in scheduling order
+        Map<String, Map<Integer, List<Record>>> batches = new LinkedHashMap<>();
+        for (WorkScheduling item : works) {
+            Work work = item.work;
+            String queueId = getStreamForCategory(work.getCategory());
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Scheduling after commit: workId: %s, category: %s, queue: %s, scheduling: %s",
+                        work.getId(), work.getCategory(), queueId, item.scheduling));
+            }
+            if (!isQueuingEnabled(queueId)) {
+                log.info("Queue disabled, scheduling canceled: " + queueId);
+                continue;
+            }
+            if (CANCEL_SCHEDULED.equals(item.scheduling)) {
+                log.warn("Canceling a work is not supported by this impl, skipping work: " + work);
+                continue;
+            }
+            WorkSchedulePath.newInstance(work);
+            LogAppender<Record> appender = logManager.getAppender(queueId);
+            if (appender == null) {
+                log.error(String.format("Not scheduled work, unknown category: %s, mapped to %s", work.getCategory(),
+                        queueId));
+                continue;
+            }
+            WorkCoalescer c = coalescer;
+            if (c != null && c.isCoalescing(queueId) && work.isIdempotent()) {
+                c.offer(queueId, work);
+                continue;
+            }
+            String key = work.getPartitionKey();
+            batches.computeIfAbsent(queueId, k -> new HashMap<>())
+                   .computeIfAbsent(appender.partition(key), k -> new ArrayList<>())
+                   .add(newRecord(key, work));
+        }
+        batches.forEach((queueId, partitions) -> {
+            LogAppender<Record> appender = logManager.getAppender(queueId);
+            partitions.forEach(appender::appendAll);
+        });
+    }
+
+    protected Record newRecord(String key, Work work) {
+        return new Record(key, workCodec.encode(work), Watermark.ofTimestamp(System.currentTimeMillis()).getValue(),
+                null);
     }
 
     protected String getStreamForCategory(String category) {
@@ -163,8 +252,10 @@ public class StreamWorkManager extends WorkManagerImpl {
             workQueueConfig.index();
             initTopology();
             this.logManager = getLogManager();
+            this.workCodec = getWorkCodec();
             this.streamProcessor = new LogStreamProcessor(logManager);
             streamProcessor.init(topology, settings);
+            coalescer = newWorkCoalescer(this::enqueue);
             started = true;
             new ComponentListener().install();
             log.info("Initialized");
@@ -208,6 +299,18 @@ public class StreamWorkManager extends WorkManagerImpl {
         return service.getLogManager(getLogConfig());
     }
 
+    protected Codec<Work> getWorkCodec() {
+        String codec = Framework.getProperty(WORK_CODEC_PROP, DEFAULT_WORK_CODEC);
+        switch (codec) {
+        case SerializableCodec.NAME:
+            return new SerializableCodec<>();
+        case BinaryWorkCodec.NAME:
+            return new BinaryWorkCodec();
+        default:
+            throw new NuxeoException("Unknown work codec: " + codec);
+        }
+    }
+
     protected String getLogConfig() {
         return Framework.getProperty(WORK_LOG_CONFIG_PROP, DEFAULT_WORK_LOG_CONFIG);
     }
@@ -295,6 +398,44 @@ public class StreamWorkManager extends WorkManagerImpl {
         }
     }
 
+    /**
+     * Collects the works scheduled after commit during a transaction, to append them in batch once committed.
+     *
+     * @since 10.1
+     */
+    public class WorkBatchScheduling implements Synchronization {
+        protected final Transaction transaction;
+
+        protected final List<WorkScheduling> works = new ArrayList<>();
+
+        public WorkBatchScheduling(Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        public void add(Work work, Scheduling scheduling) {
+            works.add(new WorkScheduling(work, scheduling));
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            try {
+                if (status == Status.STATUS_COMMITTED) {
+                    StreamWorkManager.this.scheduleAll(works);
+                } else {
+                    if (status != Status.STATUS_ROLLEDBACK) {
+                        throw new IllegalArgumentException("Unsupported transaction status " + status);
+                    }
+                }
+            } finally {
+                batchSchedulings.remove(transaction);
+            }
+        }
+    }
+
     @Override
     void activateQueue(WorkQueueDescriptor config) {
         // queue processing is activated only from component listener afterStart
@@ -345,6 +486,7 @@ public class StreamWorkManager extends WorkManagerImpl {
     public boolean shutdown(long timeout, TimeUnit timeUnit) throws InterruptedException {
         log.info("Shutdown WorkManager in " + timeUnit.toMillis(timeout) + " ms");
         shutdownInProgress = true;
+        closeWorkCoalescer();
         try {
             boolean ret = streamProcessor.stop(Duration.ofMillis(timeUnit.toMillis(timeout)));
             if (!ret) {
@@ -388,11 +530,19 @@ public class StreamWorkManager extends WorkManagerImpl {
             // give an approximation that can be higher that actual one because of the over provisioning
             running = min(lag.lag(), settings.getPartitions(queueId));
         }
-        return new WorkQueueMetrics(queueId, lag.lag(), running, lag.lower(), 0);
+        // works held in the coalescing window are reported as scheduled
+        WorkCoalescer c = coalescer;
+        long pending = c == null ? 0 : c.getPendingCount(queueId);
+        return new WorkQueueMetrics(queueId, lag.lag() + pending, running, lag.lower(), 0);
     }
 
     @Override
     public boolean awaitCompletion(String queueId, long duration, TimeUnit unit) throws InterruptedException {
+        WorkCoalescer c = coalescer;
+        if (c != null) {
+            // don't wait for the end of the coalescing window
+            c.flush(queueId);
+        }
         if (queueId != null) {
             return awaitCompletionOnQueue(queueId, duration, unit);
         }
@@ -414,6 +564,7 @@ public class StreamWorkManager extends WorkManagerImpl {
         long deadline = System.currentTimeMillis() + durationMs;
         while (System.currentTimeMillis() < deadline) {
             Thread.sleep(100);
+            // includes the works held in the coalescing window
             int lag = getMetrics(queueId).getScheduled().intValue();
             if (lag == 0) {
                 if (log.isDebugEnabled()) {
@@ -464,24 +615,28 @@ public class StreamWorkManager extends WorkManagerImpl {
 
     @Override
     public Work.State getWorkState(String s) {
-        // always not found
-        return null;
+        // only the works held in the coalescing window are found
+        return find(s, Work.State.SCHEDULED) == null ? null : Work.State.SCHEDULED;
     }
 
     @Override
     public Work find(String s, Work.State state) {
-        // always not found
-        return null;
+        // only the works held in the coalescing window are found
+        WorkCoalescer c = coalescer;
+        if (c == null || state == Work.State.RUNNING) {
+            return null;
+        }
+        return c.findPending(s);
     }
 
     @Override
     public List<Work> listWork(String s, Work.State state) {
-        return Collections.emptyList();
+        return listPendingWork(s, state);
     }
 
     @Override
     public List<String> listWorkIds(String s, Work.State state) {
-        return Collections.emptyList();
+        return listPendingWork(s, state).stream().map(Work::getId).collect(Collectors.toList());
     }
 
     @Override
@@ -509,7 +664,13 @@ public class StreamWorkManager extends WorkManagerImpl {
                 if (log.isDebugEnabled()) {
                     log.debug("Scheduled after commit: " + work.getId());
                 }
-                transaction.registerSynchronization(new StreamWorkManager.WorkScheduling(work, scheduling));
+                WorkBatchScheduling batch = batchSchedulings.get(transaction);
+                if (batch == null) {
+                    batch = new WorkBatchScheduling(transaction);
+                    transaction.registerSynchronization(batch);
+                    batchSchedulings.put(transaction, batch);
+                }
+                batch.add(work, scheduling);
                 return true;
             } else if (status == Status.STATUS_COMMITTED) {
                 // called in afterCompletion, we can schedule immediately
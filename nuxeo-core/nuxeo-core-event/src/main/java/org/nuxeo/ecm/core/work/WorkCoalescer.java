@@ -0,0 +1,290 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.work;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.work.api.Work;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Coalesces the works scheduled with the same {@link Work#getCoalescingKey() coalescing key} during a time window, so
+ * that a burst of schedulings of the same work, or of works on the same document, only enqueues one of them.
+ * <p>
+ * A work offered to the coalescer is kept pending during the coalescing window of its queue, then passed to the sink
+ * that really enqueues it. A work offered while a work with the same key is pending replaces it, without extending the
+ * window, so that the latest instance is enqueued.
+ * <p>
+ * The pending works are spread over a fixed number of partitions by key, and the size of each partition is bounded:
+ * when a partition is full its oldest work is enqueued right away. A work is never dropped, at worst it is not
+ * coalesced.
+ * <p>
+ * A pending work is counted as pending until the sink has enqueued it, so that it's always visible either here or in
+ * its queue.
+ *
+ * @since 10.1
+ */
+public class WorkCoalescer {
+
+    private static final Log log = LogFactory.getLog(WorkCoalescer.class);
+
+    /**
+     * Property holding the maximum number of pending works.
+     */
+    public static final String CAPACITY_PROPERTY = "nuxeo.work.coalescing.capacity";
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    protected static final int PARTITIONS = 16;
+
+    protected static final long MIN_FLUSH_INTERVAL_MILLIS = 10;
+
+    protected static class Pending {
+
+        protected final String queueId;
+
+        protected final long deadline;
+
+        protected Work work;
+
+        protected Pending(String queueId, Work work, long deadline) {
+            this.queueId = queueId;
+            this.work = work;
+            this.deadline = deadline;
+        }
+    }
+
+    protected final Map<String, Long> windows;
+
+    protected final BiConsumer<String, Work> sink;
+
+    protected final MetricRegistry registry;
+
+    protected final int partitionCapacity;
+
+    // each partition is used synchronized
+    protected final List<Map<String, Pending>> partitions;
+
+    protected final ScheduledExecutorService flusher;
+
+    /** Number of pending works by queue, including the ones being enqueued. */
+    protected final Map<String, AtomicInteger> counts = new HashMap<>();
+
+    protected volatile boolean closed;
+
+    /**
+     * Creates a coalescer.
+     *
+     * @param windows the coalescing window of each coalescing queue, in milliseconds
+     * @param capacity the maximum number of pending works
+     * @param sink the consumer enqueuing a work in a queue
+     * @param registry the registry of the {@code nuxeo.works.<queue>.coalesced} counters
+     */
+    public WorkCoalescer(Map<String, Long> windows, int capacity, BiConsumer<String, Work> sink,
+            MetricRegistry registry) {
+        this.windows = windows;
+        this.sink = sink;
+        this.registry = registry;
+        partitionCapacity = Math.max(1, capacity / PARTITIONS);
+        partitions = new ArrayList<>(PARTITIONS);
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions.add(new LinkedHashMap<>());
+        }
+        windows.keySet().forEach(queueId -> counts.put(queueId, new AtomicInteger()));
+        long interval = Math.max(MIN_FLUSH_INTERVAL_MILLIS,
+                windows.values().stream().mapToLong(Long::longValue).min().orElse(0) / 2);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Nuxeo-Work-Coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushExpired, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks whether the works of the given queue are coalesced.
+     */
+    public boolean isCoalescing(String queueId) {
+        return windows.containsKey(queueId);
+    }
+
+    /**
+     * Offers a work to be enqueued at the end of the coalescing window of its queue, or to replace the pending work
+     * with the same coalescing key.
+     */
+    public void offer(String queueId, Work work) {
+        if (closed) {
+            sink.accept(queueId, work);
+            return;
+        }
+        String key = queueId + '/' + work.getCoalescingKey();
+        Map<String, Pending> partition = getPartition(key);
+        Pending overflow = null;
+        synchronized (partition) {
+            Pending pending = partition.get(key);
+            if (pending != null) {
+                pending.work = work;
+                registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "coalesced")).inc();
+                return;
+            }
+            if (partition.size() >= partitionCapacity) {
+                Iterator<Pending> it = partition.values().iterator();
+                overflow = it.next();
+                it.remove();
+            }
+            long deadline = System.currentTimeMillis() + windows.get(queueId).longValue();
+            partition.put(key, new Pending(queueId, work, deadline));
+            counts.get(queueId).incrementAndGet();
+        }
+        if (overflow != null) {
+            enqueue(overflow.queueId, overflow.work);
+        }
+    }
+
+    protected Map<String, Pending> getPartition(String key) {
+        return partitions.get((key.hashCode() & 0x7fffffff) % PARTITIONS);
+    }
+
+    /**
+     * Checks whether some works of the given queue are pending.
+     *
+     * @param queueId the queue, or {@code null} for all queues
+     */
+    public boolean hasPending(String queueId) {
+        return getPendingCount(queueId) > 0;
+    }
+
+    /**
+     * Gets the number of pending works of the given queue.
+     *
+     * @param queueId the queue, or {@code null} for all queues
+     */
+    public int getPendingCount(String queueId) {
+        if (queueId == null) {
+            return counts.values().stream().mapToInt(AtomicInteger::get).sum();
+        }
+        AtomicInteger count = counts.get(queueId);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Finds a pending work by id.
+     *
+     * @return the work, or {@code null} if no work with this id is pending
+     */
+    public Work findPending(String workId) {
+        // the pending works are keyed by coalescing key, their number is bounded by the capacity
+        for (Map<String, Pending> partition : partitions) {
+            synchronized (partition) {
+                for (Pending pending : partition.values()) {
+                    if (workId.equals(pending.work.getId())) {
+                        return pending.work;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lists the pending works of the given queue.
+     *
+     * @param queueId the queue, or {@code null} for all queues
+     */
+    public List<Work> listPending(String queueId) {
+        List<Work> works = new ArrayList<>();
+        for (Map<String, Pending> partition : partitions) {
+            synchronized (partition) {
+                for (Pending pending : partition.values()) {
+                    if (queueId == null || queueId.equals(pending.queueId)) {
+                        works.add(pending.work);
+                    }
+                }
+            }
+        }
+        return works;
+    }
+
+    /**
+     * Enqueues the pending works of the given queue now.
+     *
+     * @param queueId the queue, or {@code null} for all queues
+     */
+    public void flush(String queueId) {
+        flush(p -> queueId == null || queueId.equals(p.queueId));
+    }
+
+    protected void flushExpired() {
+        long now = System.currentTimeMillis();
+        flush(p -> p.deadline <= now);
+    }
+
+    protected void flush(Predicate<Pending> predicate) {
+        for (Map<String, Pending> partition : partitions) {
+            List<Pending> ready = new ArrayList<>();
+            synchronized (partition) {
+                for (Iterator<Pending> it = partition.values().iterator(); it.hasNext();) {
+                    Pending pending = it.next();
+                    if (predicate.test(pending)) {
+                        ready.add(pending);
+                        it.remove();
+                    }
+                }
+            }
+            ready.forEach(pending -> enqueue(pending.queueId, pending.work));
+        }
+    }
+
+    /**
+     * Enqueues a work removed from the pending ones.
+     */
+    protected void enqueue(String queueId, Work work) {
+        try {
+            sink.accept(queueId, work);
+        } catch (RuntimeException e) {
+            log.error("Cannot enqueue coalesced work: " + work.getId() + " in queue: " + queueId, e);
+        } finally {
+            counts.get(queueId).decrementAndGet();
+        }
+    }
+
+    /**
+     * Stops the coalescing and enqueues all the pending works. The works offered afterwards are enqueued right away.
+     */
+    public void close() {
+        closed = true;
+        flusher.shutdownNow();
+        flush((String) null);
+    }
+
+}
@@ -54,6 +54,8 @@ public class WorkComputation extends AbstractComputation {
 
     protected final Timer workTimer;
 
+    protected static final BinaryWorkCodec BINARY_CODEC = new BinaryWorkCodec();
+
     public WorkComputation(String name) {
         super(name, 1, 0);
         MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
@@ -82,6 +84,9 @@ public class WorkComputation extends AbstractComputation {
     }
 
     public static Work deserialize(byte[] data) {
+        if (BinaryWorkCodec.isBinaryEncoded(data)) {
+            return BINARY_CODEC.decode(data);
+        }
         // TODO: switch to commons-lang3 SerializationUtils
         ByteArrayInputStream bis = new ByteArrayInputStream(data);
         ObjectInput in = null;
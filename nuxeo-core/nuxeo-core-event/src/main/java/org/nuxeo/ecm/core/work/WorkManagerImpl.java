@@ -22,17 +22,23 @@ package org.nuxeo.ecm.core.work;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 import javax.naming.NamingException;
 import javax.transaction.RollbackException;
@@ -92,6 +98,15 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     protected static final String THREAD_PREFIX = "Nuxeo-Work-";
 
+    /**
+     * Property holding the number of threads of a pool shared by all the queues, in addition to the threads dedicated
+     * to each queue. The default {@code 0} disables the shared pool, each queue then has {@code maxThreads} dedicated
+     * threads.
+     *
+     * @since 10.1
+     */
+    public static final String SHARED_THREADS_PROPERTY = "nuxeo.work.shared.threads";
+
     protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
 
     // @GuardedBy("itself")
@@ -99,11 +114,25 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     protected final WorkQueuingRegistry workQueuingConfig = new WorkQueuingRegistry();
 
-    // used synchronized
-    protected final Map<String, WorkThreadPoolExecutor> executors = new HashMap<>();
+    // also read by the shared pool threads
+    protected final Map<String, WorkThreadPoolExecutor> executors = new ConcurrentHashMap<>();
 
     protected WorkQueuing queuing;
 
+    /**
+     * The pool shared by all the queues, or {@code null} if each queue only uses its dedicated threads.
+     *
+     * @since 10.1
+     */
+    protected volatile SharedWorkPool sharedPool;
+
+    /**
+     * The coalescer of the works scheduled in queues with a coalescing window, or {@code null} if there is none.
+     *
+     * @since 10.1
+     */
+    protected volatile WorkCoalescer coalescer;
+
     /**
      * Simple synchronizer to wake up when an in-JVM work is completed. Does not wake up on work completion from another
      * node in cluster mode.
@@ -207,8 +236,12 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         NuxeoBlockingQueue queue = queuing.init(config);
         ThreadFactory threadFactory = new NamedThreadFactory(THREAD_PREFIX + config.id + "-");
         int maxPoolSize = config.getMaxThreads();
-        WorkThreadPoolExecutor executor = new WorkThreadPoolExecutor(maxPoolSize, maxPoolSize, 0, TimeUnit.SECONDS,
-                queue, threadFactory);
+        // with a shared pool, only the minimum number of threads is dedicated to the queue
+        int corePoolSize = sharedPool == null ? maxPoolSize : config.getMinThreads();
+        WorkThreadPoolExecutor executor = new WorkThreadPoolExecutor(corePoolSize, Math.max(corePoolSize, 1), 0,
+                TimeUnit.SECONDS, queue, threadFactory);
+        executor.maxThreads = maxPoolSize;
+        executor.weight = config.getWeight();
         // prestart all core threads so that direct additions to the queue
         // (from another Nuxeo instance) can be seen
         executor.prestartAllCoreThreads();
@@ -246,6 +279,10 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         queueMetrics.putGauge(() -> getMetrics(queueId).running, "running");
         queueMetrics.putGauge(() -> getMetrics(queueId).completed, "completed");
         queueMetrics.putGauge(() -> getMetrics(queueId).canceled, "canceled");
+        if (sharedPool != null) {
+            queueMetrics.putGauge(() -> getMetrics(queueId).sharedRunning, "shared-running");
+            queueMetrics.putGauge(() -> getMetrics(queueId).sharedCompleted, "shared-completed");
+        }
         registry.registerAll(queueMetrics);
     }
 
@@ -262,6 +299,43 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         workQueuingConfig.removeContribution(descr);
     }
 
+    /**
+     * Creates the coalescer of the works scheduled in the queues that have a coalescing window.
+     *
+     * @param sink the consumer enqueuing a work in a queue
+     * @return the coalescer, or {@code null} if no queue has a coalescing window
+     * @since 10.1
+     */
+    protected WorkCoalescer newWorkCoalescer(BiConsumer<String, Work> sink) {
+        Map<String, Long> windows = new HashMap<>();
+        for (String id : workQueueConfig.getQueueIds()) {
+            long window = workQueueConfig.get(id).getCoalescingWindowMillis();
+            if (window > 0) {
+                windows.put(id, Long.valueOf(window));
+            }
+        }
+        if (windows.isEmpty()) {
+            return null;
+        }
+        int capacity = Integer.parseInt(Framework.getProperty(WorkCoalescer.CAPACITY_PROPERTY,
+                String.valueOf(WorkCoalescer.DEFAULT_CAPACITY)));
+        log.info("Coalescing works of queues: " + windows);
+        return new WorkCoalescer(windows, capacity, sink, registry);
+    }
+
+    /**
+     * Stops the coalescing, and enqueues the pending works.
+     *
+     * @since 10.1
+     */
+    protected void closeWorkCoalescer() {
+        WorkCoalescer c = coalescer;
+        if (c != null) {
+            coalescer = null;
+            c.close();
+        }
+    }
+
     protected WorkQueuing newWorkQueuing(Class<? extends WorkQueuing> klass) {
         try {
             return klass.getDeclaredConstructor(Listener.class).newInstance(Listener.lookupListener());
@@ -373,9 +447,18 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             completionSynchronizer = new WorkCompletionSynchronizer();
             started = true;
             workQueueConfig.index();
+            int sharedThreads = Integer.parseInt(Framework.getProperty(SHARED_THREADS_PROPERTY, "0"));
+            if (sharedThreads > 0) {
+                sharedPool = new SharedWorkPool(sharedThreads);
+            }
             for (String id : workQueueConfig.getQueueIds()) {
                 initializeQueue(workQueueConfig.get(id));
             }
+            if (sharedPool != null) {
+                sharedPool.start();
+                log.info("Started shared work pool with " + sharedThreads + " threads");
+            }
+            coalescer = newWorkCoalescer(this::enqueue);
 
             Framework.getRuntime().getComponentManager().addListener(new ComponentManager.Listener() {
                 @Override
@@ -467,9 +550,14 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
     @Override
     public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
         shutdownInProgress = true;
+        closeWorkCoalescer();
         try {
             return shutdownExecutors(new ArrayList<>(executors.values()), timeout, unit);
         } finally {
+            if (sharedPool != null) {
+                sharedPool.shutdown();
+                sharedPool = null;
+            }
             shutdownInProgress = false;
             started = false;
         }
@@ -581,6 +669,34 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
         protected final Timer workTimer;
 
+        /**
+         * Maximum number of works of the queue running at the same time, dedicated and shared threads included.
+         *
+         * @since 10.1
+         */
+        protected int maxThreads;
+
+        /**
+         * Relative share of the shared pool given to the queue.
+         *
+         * @since 10.1
+         */
+        protected int weight = WorkQueueDescriptor.DEFAULT_WEIGHT;
+
+        /**
+         * Number of works of the queue currently run by the shared pool.
+         *
+         * @since 10.1
+         */
+        protected final AtomicInteger sharedRunning = new AtomicInteger();
+
+        /**
+         * Number of works of the queue completed by the shared pool.
+         *
+         * @since 10.1
+         */
+        protected final AtomicLong sharedCompleted = new AtomicLong();
+
         protected WorkThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
                 NuxeoBlockingQueue queue, ThreadFactory threadFactory) {
             super(corePoolSize, maximumPoolSize, keepAliveTime, unit, queue, threadFactory);
@@ -691,6 +807,252 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             queuing.removeScheduled(queueId, workId);
         }
 
+        /**
+         * Waits for the termination of the dedicated threads, and for the works of the queue run by the shared pool.
+         */
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = getTimestampAfter(unit.toMillis(timeout));
+            if (!super.awaitTermination(timeout, unit)) {
+                return false;
+            }
+            while (sharedRunning.get() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                completionSynchronizer.waitForCompletedWork(Math.min(remaining, 100));
+            }
+            return true;
+        }
+
+        /**
+         * Gets the number of shared threads running works of this queue, relative to its weight.
+         *
+         * @since 10.1
+         */
+        protected double getSharedLoad() {
+            return (double) sharedRunning.get() / weight;
+        }
+
+        /**
+         * Checks whether a thread of the shared pool can run a work of this queue now.
+         *
+         * @since 10.1
+         */
+        protected boolean acceptsSharedWork() {
+            return !isShutdown() && sharedRunning.get() < getMaxSharedThreads();
+        }
+
+        /**
+         * Gets the maximum number of shared threads running works of this queue, which is what remains of
+         * {@link #maxThreads} after the dedicated threads.
+         *
+         * @since 10.1
+         */
+        protected int getMaxSharedThreads() {
+            return maxThreads - getCorePoolSize();
+        }
+
+        /**
+         * Runs a work of the queue in the current thread of the shared pool, as if it were run by a dedicated thread.
+         * <p>
+         * An {@link Error} thrown by the work is rethrown once the work is completed, as a dedicated thread would do.
+         *
+         * @param backlog the cached number of works waiting in the queue, adjusted to what is taken from it
+         * @return {@code false} if no work could be taken from the queue
+         * @since 10.1
+         */
+        protected boolean runShared(Thread thread, AtomicInteger backlog) {
+            // reserve a slot so that the maximum number of threads of the queue is never exceeded
+            int shared;
+            do {
+                shared = sharedRunning.get();
+                if (shared >= getMaxSharedThreads()) {
+                    return false;
+                }
+            } while (!sharedRunning.compareAndSet(shared, shared + 1));
+            try {
+                NuxeoBlockingQueue queue = (NuxeoBlockingQueue) getQueue();
+                Runnable r = queue.pollIfNotRunning();
+                if (r == null) {
+                    // empty, or its head was put back as a work with the same id is running: wait for the next refresh
+                    backlog.set(0);
+                    return false;
+                }
+                backlog.updateAndGet(size -> Math.max(size - 1, 0));
+                try {
+                    beforeExecute(thread, r);
+                } catch (RejectedExecutionException e) {
+                    log.debug(e.getMessage());
+                    return true;
+                }
+                Throwable error = null;
+                try {
+                    r.run();
+                } catch (RuntimeException | Error e) {
+                    error = e;
+                    log.error(String.format("Uncaught error on thread: %s, current work might be lost, "
+                            + "WorkManager metrics might be corrupted.", thread.getName()), e);
+                    if (e instanceof Error) {
+                        throw e;
+                    }
+                } finally {
+                    afterExecute(r, error);
+                    sharedCompleted.incrementAndGet();
+                }
+                return true;
+            } finally {
+                sharedRunning.decrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * A pool of threads shared by all the queues, in addition to the threads dedicated to each queue.
+     * <p>
+     * An idle thread of the pool takes its next work from the queue that has a backlog and the fewest shared threads
+     * relative to its weight, so that the shared threads go to the queues that are backed up and are divided between
+     * them according to their weights. The shared threads running works of a queue are limited to its
+     * {@code maxThreads} minus its {@code minThreads}, which are dedicated to it.
+     *
+     * @since 10.1
+     */
+    protected class SharedWorkPool {
+
+        /** Wait when all the queues are empty, bounded to see the works scheduled by other nodes. */
+        protected static final long IDLE_WAIT_MILLIS = 1000;
+
+        /** Delay between two reads of the sizes of the queues, which are remote calls with a distributed queuing. */
+        protected static final long BACKLOG_REFRESH_MILLIS = 1000;
+
+        protected final int size;
+
+        protected final ExecutorService executor;
+
+        protected final ReentrantLock lock = new ReentrantLock();
+
+        protected final Condition scheduled = lock.newCondition();
+
+        protected final AtomicInteger idle = new AtomicInteger();
+
+        protected volatile boolean stopped;
+
+        /**
+         * Number of works waiting in each queue: read from the queuing every {@link #BACKLOG_REFRESH_MILLIS}, and kept
+         * up to date in between with the works scheduled and taken on this node.
+         */
+        protected final Map<String, AtomicInteger> backlogs = new ConcurrentHashMap<>();
+
+        protected final AtomicLong backlogsRefreshTime = new AtomicLong();
+
+        protected SharedWorkPool(int size) {
+            this.size = size;
+            executor = Executors.newFixedThreadPool(size, new NamedThreadFactory(THREAD_PREFIX + "shared-"));
+        }
+
+        protected void start() {
+            for (int i = 0; i < size; i++) {
+                executor.execute(this::loop);
+            }
+        }
+
+        protected void shutdown() {
+            stopped = true;
+            executor.shutdownNow();
+        }
+
+        /**
+         * Wakes up an idle thread, if any, when a work has been scheduled on this node.
+         */
+        protected void workScheduled(String queueId) {
+            getBacklog(queueId).incrementAndGet();
+            if (idle.get() == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                scheduled.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected void loop() {
+            Thread thread = Thread.currentThread();
+            try {
+                while (!stopped && !thread.isInterrupted()) {
+                    if (!runNext(thread)) {
+                        awaitScheduled();
+                    }
+                }
+            } catch (Error e) {
+                // the thread dies as a dedicated one would, a new thread of the pool takes over its loop
+                if (!stopped) {
+                    try {
+                        executor.execute(this::loop);
+                    } catch (RejectedExecutionException re) {
+                        e.addSuppressed(re);
+                    }
+                }
+                throw e;
+            }
+        }
+
+        protected AtomicInteger getBacklog(String queueId) {
+            return backlogs.computeIfAbsent(queueId, k -> new AtomicInteger());
+        }
+
+        /**
+         * Reads the sizes of the queues if they have not been read recently, by a single thread of the pool.
+         */
+        protected void refreshBacklogs() {
+            long now = System.currentTimeMillis();
+            long last = backlogsRefreshTime.get();
+            if (now - last < BACKLOG_REFRESH_MILLIS || !backlogsRefreshTime.compareAndSet(last, now)) {
+                return;
+            }
+            for (WorkThreadPoolExecutor queueExecutor : executors.values()) {
+                getBacklog(queueExecutor.queueId).set(queueExecutor.getQueue().size());
+            }
+        }
+
+        protected boolean runNext(Thread thread) {
+            refreshBacklogs();
+            Map<WorkThreadPoolExecutor, Integer> sizes = new HashMap<>();
+            Map<WorkThreadPoolExecutor, Double> loads = new HashMap<>();
+            for (WorkThreadPoolExecutor queueExecutor : executors.values()) {
+                int backlog = getBacklog(queueExecutor.queueId).get();
+                if (backlog > 0 && queueExecutor.acceptsSharedWork()) {
+                    sizes.put(queueExecutor, Integer.valueOf(backlog));
+                    loads.put(queueExecutor, Double.valueOf(queueExecutor.getSharedLoad()));
+                }
+            }
+            List<WorkThreadPoolExecutor> candidates = new ArrayList<>(sizes.keySet());
+            // least loaded first, then biggest backlog first
+            candidates.sort(Comparator.comparing(loads::get).thenComparing(sizes::get, Comparator.reverseOrder()));
+            for (WorkThreadPoolExecutor queueExecutor : candidates) {
+                if (queueExecutor.runShared(thread, getBacklog(queueExecutor.queueId))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        protected void awaitScheduled() {
+            lock.lock();
+            idle.incrementAndGet();
+            try {
+                scheduled.await(IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                idle.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
     }
 
     @Override
@@ -741,7 +1103,25 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             break;
 
         }
+        WorkCoalescer c = coalescer;
+        if (c != null && c.isCoalescing(queueId) && work.isIdempotent()) {
+            c.offer(queueId, work);
+            return;
+        }
+        enqueue(queueId, work);
+    }
+
+    /**
+     * Enqueues a scheduled work.
+     *
+     * @since 10.1
+     */
+    protected void enqueue(String queueId, Work work) {
         queuing.workSchedule(queueId, work);
+        SharedWorkPool pool = sharedPool;
+        if (pool != null) {
+            pool.workScheduled(queueId);
+        }
     }
 
     /**
@@ -803,7 +1183,15 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     @Override
     public Work find(String workId, State state) {
-        return queuing.find(workId, state);
+        Work work = queuing.find(workId, state);
+        if (work == null && (state == null || state == State.SCHEDULED)) {
+            WorkCoalescer c = coalescer;
+            if (c != null) {
+                // held in the coalescing window
+                work = c.findPending(workId);
+            }
+        }
+        return work;
     }
 
     /**
@@ -815,23 +1203,68 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     @Override
     public State getWorkState(String workId) {
-        return queuing.getWorkState(workId);
+        State state = queuing.getWorkState(workId);
+        if (state == null || state == State.UNKNOWN) {
+            WorkCoalescer c = coalescer;
+            if (c != null && c.findPending(workId) != null) {
+                state = State.SCHEDULED;
+            }
+        }
+        return state;
     }
 
     @Override
     public List<Work> listWork(String queueId, State state) {
         // don't return scheduled after commit
-        return queuing.listWork(queueId, state);
+        List<Work> works = queuing.listWork(queueId, state);
+        List<Work> pending = listPendingWork(queueId, state);
+        if (pending.isEmpty()) {
+            return works;
+        }
+        List<Work> all = new ArrayList<>(works);
+        all.addAll(pending);
+        return all;
     }
 
     @Override
     public List<String> listWorkIds(String queueId, State state) {
-        return queuing.listWorkIds(queueId, state);
+        List<String> workIds = queuing.listWorkIds(queueId, state);
+        List<Work> pending = listPendingWork(queueId, state);
+        if (pending.isEmpty()) {
+            return workIds;
+        }
+        List<String> all = new ArrayList<>(workIds);
+        pending.forEach(work -> all.add(work.getId()));
+        return all;
+    }
+
+    /**
+     * Lists the works of a queue held in the coalescing window, they are reported as scheduled.
+     *
+     * @since 10.1
+     */
+    protected List<Work> listPendingWork(String queueId, State state) {
+        WorkCoalescer c = coalescer;
+        if (c == null || !(state == null || state == State.SCHEDULED)) {
+            return Collections.emptyList();
+        }
+        return c.listPending(queueId);
     }
 
     @Override
     public WorkQueueMetrics getMetrics(String queueId) {
-        return queuing.metrics(queueId);
+        WorkQueueMetrics metrics = queuing.metrics(queueId);
+        WorkCoalescer c = coalescer;
+        int pending = c == null ? 0 : c.getPendingCount(queueId);
+        WorkThreadPoolExecutor executor = sharedPool == null ? null : executors.get(queueId);
+        if (pending == 0 && executor == null) {
+            return metrics;
+        }
+        // works held in the coalescing window are reported as scheduled
+        return new WorkQueueMetrics(queueId, metrics.scheduled.longValue() + pending, metrics.running,
+                metrics.completed, metrics.canceled,
+                executor == null ? metrics.sharedRunning : executor.sharedRunning.get(),
+                executor == null ? metrics.sharedCompleted : executor.sharedCompleted.get());
     }
 
     @Override
@@ -859,6 +1292,11 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         if (!isStarted()) {
             return true;
         }
+        WorkCoalescer c = coalescer;
+        if (c != null) {
+            // don't wait for the end of the coalescing window
+            c.flush(queueId);
+        }
         SequenceTracer.start("awaitCompletion on " + ((queueId == null) ? "all queues" : queueId));
         long durationInMs = TimeUnit.MILLISECONDS.convert(duration, unit);
         long deadline = getTimestampAfter(durationInMs);
@@ -894,6 +1332,10 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             }
             return true;
         }
+        WorkCoalescer c = coalescer;
+        if (c != null && c.hasPending(queueId)) {
+            return false;
+        }
         if (!isProcessingEnabled(queueId)) {
             return getExecutor(queueId).runningCount.getCount() == 0L;
         }
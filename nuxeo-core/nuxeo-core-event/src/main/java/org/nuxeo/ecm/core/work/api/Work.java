@@ -395,4 +395,29 @@ public interface Work extends Serializable {
         return true;
     }
 
+    /**
+     * Returns the key of the works that a queue with a coalescing window may replace with this one: among the idempotent
+     * works scheduled with the same key during the window, only the latest one is enqueued.
+     * <p>
+     * Defaults to the id. A work whose result only depends on the current state of a document should return a key
+     * derived from the document, so that the works scheduled by a burst of updates of that document are coalesced.
+     *
+     * @since 10.1
+     */
+    default String getCoalescingKey() {
+        return getId();
+    }
+
+    /**
+     * Gets the priority of the work in its queue. Works with a higher priority are executed first, works with the same
+     * priority are executed in the order they are scheduled.
+     * <p>
+     * The priority is only taken into account by queues configured with {@code <priority>true</priority>}.
+     *
+     * @since 10.1
+     */
+    default int getPriority() {
+        return 0;
+    }
+
 }
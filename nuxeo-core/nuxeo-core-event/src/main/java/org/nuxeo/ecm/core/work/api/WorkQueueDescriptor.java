@@ -42,6 +42,12 @@ public class WorkQueueDescriptor {
 
     public static final int DEFAULT_CAPACITY = -1;
 
+    /** @since 10.1 */
+    public static final int DEFAULT_MIN_THREADS = 1;
+
+    /** @since 10.1 */
+    public static final int DEFAULT_WEIGHT = 1;
+
     @XNode("@id")
     public String id;
 
@@ -75,6 +81,70 @@ public class WorkQueueDescriptor {
         return maxThreads == null ? DEFAULT_MAX_THREADS : maxThreads.intValue();
     }
 
+    /**
+     * The number of threads dedicated to this queue when the work manager uses a shared pool of threads. The shared
+     * threads then process the works of this queue in addition to the dedicated ones, up to {@link #getMaxThreads}.
+     *
+     * @since 10.1
+     */
+    @XNode("minThreads")
+    public Integer minThreads;
+
+    /**
+     * @since 10.1
+     */
+    public int getMinThreads() {
+        return Math.min(minThreads == null ? DEFAULT_MIN_THREADS : minThreads.intValue(), getMaxThreads());
+    }
+
+    /**
+     * The relative share of the shared pool of threads given to this queue when several queues have a backlog.
+     *
+     * @since 10.1
+     */
+    @XNode("weight")
+    public Integer weight;
+
+    /**
+     * @since 10.1
+     */
+    public int getWeight() {
+        return weight == null || weight.intValue() <= 0 ? DEFAULT_WEIGHT : weight.intValue();
+    }
+
+    /**
+     * When enabled, works are taken from the queue by decreasing {@link Work#getPriority priority} instead of the
+     * scheduling order. Only supported by the in-memory queuing, and not with a bounded {@link #capacity}.
+     *
+     * @since 10.1
+     */
+    @XNode("priority")
+    public Boolean priority;
+
+    /**
+     * @since 10.1
+     */
+    public boolean isPriority() {
+        return Boolean.TRUE.equals(priority);
+    }
+
+    /**
+     * When specified, the works scheduled in this queue are enqueued after this delay (in milliseconds), and the
+     * (idempotent) works scheduled with the same {@link Work#getCoalescingKey() coalescing key} in the meantime
+     * replace them.
+     *
+     * @since 10.1
+     */
+    @XNode("coalescingWindowMillis")
+    public Long coalescingWindowMillis;
+
+    /**
+     * @since 10.1
+     */
+    public long getCoalescingWindowMillis() {
+        return coalescingWindowMillis == null ? 0 : coalescingWindowMillis.longValue();
+    }
+
     @XNodeList(value = "category", type = HashSet.class, componentType = String.class)
     public Set<String> categories = Collections.emptySet();
 
@@ -100,6 +170,10 @@ public class WorkQueueDescriptor {
         o.name = name;
         o.maxThreads = maxThreads;
         o.capacity = capacity;
+        o.minThreads = minThreads;
+        o.weight = weight;
+        o.priority = priority;
+        o.coalescingWindowMillis = coalescingWindowMillis;
         o.categories = new HashSet<String>(categories);
         return o;
     }
@@ -120,6 +194,18 @@ public class WorkQueueDescriptor {
         if (other.capacity != null) {
             capacity = other.capacity;
         }
+        if (other.minThreads != null) {
+            minThreads = other.minThreads;
+        }
+        if (other.weight != null) {
+            weight = other.weight;
+        }
+        if (other.priority != null) {
+            priority = other.priority;
+        }
+        if (other.coalescingWindowMillis != null) {
+            coalescingWindowMillis = other.coalescingWindowMillis;
+        }
         categories.addAll(other.categories);
     }
 
@@ -146,6 +232,22 @@ public class WorkQueueDescriptor {
             buf.append(" capacity=");
             buf.append(capacity);
         }
+        if (minThreads != null) {
+            buf.append(" minThreads=");
+            buf.append(minThreads);
+        }
+        if (weight != null) {
+            buf.append(" weight=");
+            buf.append(weight);
+        }
+        if (priority != null) {
+            buf.append(" priority=");
+            buf.append(priority);
+        }
+        if (coalescingWindowMillis != null) {
+            buf.append(" coalescingWindowMillis=");
+            buf.append(coalescingWindowMillis);
+        }
         buf.append("]");
         return buf.toString();
     }
@@ -164,6 +266,14 @@ public class WorkQueueDescriptor {
         buf.append(getMaxThreads());
         buf.append(" capacity=");
         buf.append(getCapacity());
+        buf.append(" minThreads=");
+        buf.append(getMinThreads());
+        buf.append(" weight=");
+        buf.append(getWeight());
+        buf.append(" priority=");
+        buf.append(isPriority());
+        buf.append(" coalescingWindowMillis=");
+        buf.append(getCoalescingWindowMillis());
         buf.append(" clearCompletedAfterSeconds=");
         buf.append(")");
         return buf.toString();
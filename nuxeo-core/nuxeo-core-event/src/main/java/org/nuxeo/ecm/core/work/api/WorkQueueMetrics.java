@@ -37,12 +37,38 @@ public class WorkQueueMetrics implements Serializable {
 
     public final Number canceled;
 
+    /**
+     * Number of works of the queue currently run by the threads of the shared pool, always {@code 0} when the work
+     * manager doesn't use a shared pool.
+     *
+     * @since 10.1
+     */
+    public final Number sharedRunning;
+
+    /**
+     * Number of works of the queue completed by the threads of the shared pool, always {@code 0} when the work manager
+     * doesn't use a shared pool.
+     *
+     * @since 10.1
+     */
+    public final Number sharedCompleted;
+
     public WorkQueueMetrics(String queueId, Number scheduled, Number running, Number completed, Number canceled) {
+        this(queueId, scheduled, running, completed, canceled, 0L, 0L);
+    }
+
+    /**
+     * @since 10.1
+     */
+    public WorkQueueMetrics(String queueId, Number scheduled, Number running, Number completed, Number canceled,
+            Number sharedRunning, Number sharedCompleted) {
         this.queueId = queueId;
         this.scheduled = scheduled;
         this.running = running;
         this.completed = completed;
         this.canceled = canceled;
+        this.sharedRunning = sharedRunning;
+        this.sharedCompleted = sharedCompleted;
     }
 
     @Override
@@ -54,6 +80,8 @@ public class WorkQueueMetrics implements Serializable {
         result = prime * result +  running.hashCode();
         result = prime * result +  completed.hashCode();
         result = prime * result +  canceled.hashCode();
+        result = prime * result +  Long.hashCode(sharedRunning.longValue());
+        result = prime * result +  Long.hashCode(sharedCompleted.longValue());
         return result;
     }
 
@@ -84,6 +112,12 @@ public class WorkQueueMetrics implements Serializable {
         if (canceled.longValue() != other.canceled.longValue()) {
             return false;
         }
+        if (sharedRunning.longValue() != other.sharedRunning.longValue()) {
+            return false;
+        }
+        if (sharedCompleted.longValue() != other.sharedCompleted.longValue()) {
+            return false;
+        }
         return true;
     }
 
@@ -99,8 +133,11 @@ public class WorkQueueMetrics implements Serializable {
                 .append(", ")
                 .append(completed)
                 .append(", ")
-                .append(canceled)
-                .append("]");
+                .append(canceled);
+        if (sharedRunning.longValue() != 0 || sharedCompleted.longValue() != 0) {
+            builder.append(", shared: ").append(sharedRunning).append(", ").append(sharedCompleted);
+        }
+        builder.append("]");
         return builder.toString();
     }
 
@@ -123,4 +160,18 @@ public class WorkQueueMetrics implements Serializable {
     public Number getCanceled() {
         return canceled;
     }
+
+    /**
+     * @since 10.1
+     */
+    public Number getSharedRunning() {
+        return sharedRunning;
+    }
+
+    /**
+     * @since 10.1
+     */
+    public Number getSharedCompleted() {
+        return sharedCompleted;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.api.Work;
+
+/**
+ * @since 10.1
+ */
+public class TestBinaryWorkCodec {
+
+    protected final BinaryWorkCodec codec = new BinaryWorkCodec();
+
+    protected SleepWork newWork() {
+        SleepWork work = new SleepWork(1234, "myCategory", false, "myId");
+        work.setDocuments("test", Arrays.asList("doc1", "doc2"));
+        work.setOriginatingUsername("bob");
+        work.setProgress(new Work.Progress(42.5F));
+        return work;
+    }
+
+    protected void checkWork(Work decoded) {
+        assertTrue(decoded instanceof SleepWork);
+        SleepWork work = (SleepWork) decoded;
+        assertEquals("myId", work.getId());
+        assertEquals("myCategory", work.getCategory());
+        assertEquals(1234, work.durationMillis);
+        assertEquals("test", work.repositoryName);
+        assertEquals(Arrays.asList("doc1", "doc2"), work.docIds);
+        assertEquals("bob", work.getOriginatingUsername());
+        assertEquals(42.5F, work.getProgress().getPercent(), 0);
+        // transient fields are not encoded
+        assertFalse(work.isSuspending());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] data = codec.encode(newWork());
+        assertTrue(BinaryWorkCodec.isBinaryEncoded(data));
+        assertEquals(BinaryWorkCodec.FORMAT_FIELDS, data[1]);
+        checkWork(codec.decode(data));
+    }
+
+    @Test
+    public void testWorkWithoutNoArgConstructor() {
+        NoDefaultConstructorWork work = new NoDefaultConstructorWork("myId", "myValue");
+        byte[] data = codec.encode(work);
+        assertTrue(BinaryWorkCodec.isBinaryEncoded(data));
+        // cannot be instantiated when decoding, falls back to Java serialization
+        assertEquals(BinaryWorkCodec.FORMAT_JAVA, data[1]);
+        Work decoded = codec.decode(data);
+        assertTrue(decoded instanceof NoDefaultConstructorWork);
+        assertEquals("myId", decoded.getId());
+        assertEquals("myValue", ((NoDefaultConstructorWork) decoded).value);
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() {
+        SleepWork work = newWork();
+        assertTrue(codec.encode(work).length < WorkComputation.serialize(work).length);
+    }
+
+    @Test
+    public void testDecodeJavaSerializedWork() {
+        byte[] data = WorkComputation.serialize(newWork());
+        assertFalse(BinaryWorkCodec.isBinaryEncoded(data));
+        checkWork(codec.decode(data));
+    }
+
+    @Test
+    public void testWorkComputationDecodesBinaryWork() {
+        checkWork(WorkComputation.deserialize(codec.encode(newWork())));
+    }
+
+    protected static class NoDefaultConstructorWork extends AbstractWork {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final String value;
+
+        protected NoDefaultConstructorWork(String id, String value) {
+            super(id);
+            this.value = value;
+        }
+
+        @Override
+        public String getTitle() {
+            return value;
+        }
+
+        @Override
+        public void work() {
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.api.Work;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class TestWorkCoalescer {
+
+    protected static final String QUEUE = "queue";
+
+    protected final List<Work> enqueued = new CopyOnWriteArrayList<>();
+
+    protected final MetricRegistry registry = new MetricRegistry();
+
+    protected WorkCoalescer coalescer;
+
+    protected void newCoalescer(long window, int capacity) {
+        coalescer = new WorkCoalescer(Collections.singletonMap(QUEUE, Long.valueOf(window)), capacity,
+                (queueId, work) -> enqueued.add(work), registry);
+    }
+
+    @After
+    public void tearDown() {
+        if (coalescer != null) {
+            coalescer.close();
+        }
+    }
+
+    @Test
+    public void testCoalesceBurst() throws Exception {
+        newCoalescer(200, WorkCoalescer.DEFAULT_CAPACITY);
+        assertTrue(coalescer.isCoalescing(QUEUE));
+        assertFalse(coalescer.isCoalescing("other"));
+        Work last = null;
+        for (int i = 0; i < 50; i++) {
+            last = new SleepWork(0, false, "doc1");
+            coalescer.offer(QUEUE, last);
+        }
+        coalescer.offer(QUEUE, new SleepWork(0, false, "doc2"));
+        assertTrue(enqueued.isEmpty());
+        assertTrue(coalescer.hasPending(QUEUE));
+        assertEquals(2, coalescer.getPendingCount(QUEUE));
+        assertEquals(2, coalescer.getPendingCount(null));
+        assertEquals(0, coalescer.getPendingCount("other"));
+        assertSame(last, coalescer.findPending("doc1"));
+        assertNull(coalescer.findPending("doc3"));
+        assertEquals(2, coalescer.listPending(QUEUE).size());
+
+        // enqueued at the end of the window
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.hasPending(QUEUE) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, enqueued.size());
+        // the works are in different partitions, flushed in no particular order
+        Map<String, Work> byId = enqueued.stream().collect(Collectors.toMap(Work::getId, Function.identity()));
+        assertEquals(new HashSet<>(Arrays.asList("doc1", "doc2")), byId.keySet());
+        // the latest instance is enqueued
+        assertSame(last, byId.get("doc1"));
+        assertFalse(coalescer.hasPending(QUEUE));
+        assertEquals(0, coalescer.getPendingCount(QUEUE));
+        assertNull(coalescer.findPending("doc1"));
+        assertEquals(49, registry.counter(MetricRegistry.name("nuxeo", "works", QUEUE, "coalesced")).getCount());
+    }
+
+    @Test
+    public void testFlush() {
+        newCoalescer(60000, WorkCoalescer.DEFAULT_CAPACITY);
+        coalescer.offer(QUEUE, new SleepWork(0, false, "doc1"));
+        coalescer.offer(QUEUE, new SleepWork(0, false, "doc1"));
+        assertTrue(enqueued.isEmpty());
+        coalescer.flush(QUEUE);
+        assertEquals(1, enqueued.size());
+        // a new scheduling after the flush is not coalesced with the enqueued work
+        coalescer.offer(QUEUE, new SleepWork(0, false, "doc1"));
+        coalescer.close();
+        assertEquals(2, enqueued.size());
+        // offered after close
+        coalescer.offer(QUEUE, new SleepWork(0, false, "doc1"));
+        assertEquals(3, enqueued.size());
+    }
+
+    @Test
+    public void testBoundedCapacity() {
+        // one work per partition
+        newCoalescer(60000, WorkCoalescer.PARTITIONS);
+        for (int i = 0; i < 1000; i++) {
+            coalescer.offer(QUEUE, new SleepWork(0, false, "doc" + i));
+        }
+        // the oldest works of the full partitions are enqueued right away
+        assertTrue(enqueued.size() >= 1000 - WorkCoalescer.PARTITIONS);
+        coalescer.flush((String) null);
+        assertEquals(1000, enqueued.size());
+        assertEquals(0, coalescer.getPendingCount(null));
+    }
+
+}
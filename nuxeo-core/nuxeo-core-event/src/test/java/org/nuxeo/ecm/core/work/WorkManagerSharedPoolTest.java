@@ -0,0 +1,257 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.ecm.core.work.WorkManagerImpl.SharedWorkPool;
+import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RuntimeFeature;
+
+/**
+ * Tests the pool of threads shared by the work queues.
+ *
+ * @since 10.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(RuntimeFeature.class)
+@Deploy({ "org.nuxeo.ecm.core.event", "org.nuxeo.ecm.core.event.test:test-workmanager-shared.xml" })
+public class WorkManagerSharedPoolTest {
+
+    protected static final String BLOCKER = "SharedBlocker";
+
+    protected static final String LOW = "SharedLow";
+
+    protected static final String HIGH = "SharedHigh";
+
+    protected static final String RESERVED = "SharedReserved";
+
+    protected static final String MIXED = "SharedMixed";
+
+    /** Permits to complete the works of each queue, static as the works are serialized. */
+    protected static final Map<String, Semaphore> PERMITS = new ConcurrentHashMap<>();
+
+    protected static class BlockingWork extends AbstractWork {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final String category;
+
+        protected BlockingWork(String category, String id) {
+            super(id);
+            this.category = category;
+        }
+
+        @Override
+        public String getCategory() {
+            return category;
+        }
+
+        @Override
+        public String getTitle() {
+            return getId();
+        }
+
+        @Override
+        public void work() {
+            try {
+                if (!PERMITS.get(category).tryAcquire(30, TimeUnit.SECONDS)) {
+                    throw new NuxeoException("Work not released: " + getId());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            }
+        }
+    }
+
+    protected static class ErrorWork extends BlockingWork {
+
+        private static final long serialVersionUID = 1L;
+
+        protected ErrorWork(String category, String id) {
+            super(category, id);
+        }
+
+        @Override
+        public void work() {
+            throw new Error("Failure of " + getId());
+        }
+    }
+
+    protected WorkManagerImpl service;
+
+    @Before
+    public void setUp() throws Exception {
+        service = (WorkManagerImpl) Framework.getService(WorkManager.class);
+        for (String queueId : Arrays.asList(BLOCKER, LOW, HIGH, RESERVED, MIXED)) {
+            PERMITS.put(queueId, new Semaphore(0));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PERMITS.values().forEach(permits -> permits.release(1000));
+        assertTrue(service.awaitCompletion(10, TimeUnit.SECONDS));
+        restart(0);
+        PERMITS.clear();
+    }
+
+    /**
+     * Restarts the work manager with a shared pool of the given size.
+     */
+    protected void restart(int sharedThreads) throws Exception {
+        assertTrue(service.shutdown(10, TimeUnit.SECONDS));
+        if (sharedThreads > 0) {
+            Framework.getProperties().setProperty(WorkManagerImpl.SHARED_THREADS_PROPERTY,
+                    String.valueOf(sharedThreads));
+        } else {
+            Framework.getProperties().remove(WorkManagerImpl.SHARED_THREADS_PROPERTY);
+        }
+        service.init();
+        for (String queueId : service.getWorkQueueIds()) {
+            service.activateQueue(service.getWorkQueueDescriptor(queueId));
+        }
+    }
+
+    protected void waitFor(String message, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timeout waiting for: " + message);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    protected int sharedRunning(String queueId) {
+        return service.getMetrics(queueId).getSharedRunning().intValue();
+    }
+
+    protected void assertCompleted(String queueId, long completed, long sharedCompleted) {
+        WorkQueueMetrics metrics = service.getMetrics(queueId);
+        assertEquals(0, metrics.getScheduled().longValue());
+        assertEquals(0, metrics.getRunning().longValue());
+        assertEquals(completed, metrics.getCompleted().longValue());
+        assertEquals(0, metrics.getSharedRunning().longValue());
+        assertEquals(sharedCompleted, metrics.getSharedCompleted().longValue());
+    }
+
+    @Test
+    public void testWeights() throws Exception {
+        restart(4);
+        // occupy the whole pool while both queues are filled
+        for (int i = 0; i < 4; i++) {
+            service.schedule(new BlockingWork(BLOCKER, "blocker" + i));
+        }
+        waitFor("blockers running", () -> sharedRunning(BLOCKER) == 4);
+        for (int i = 0; i < 10; i++) {
+            service.schedule(new BlockingWork(LOW, "low" + i));
+            service.schedule(new BlockingWork(HIGH, "high" + i));
+        }
+        // free the shared threads one by one
+        for (int i = 1; i <= 4; i++) {
+            PERMITS.get(BLOCKER).release();
+            int expected = i;
+            waitFor(expected + " shared threads taken", () -> sharedRunning(LOW) + sharedRunning(HIGH) == expected);
+        }
+        // the queue with three times the weight gets three times the shared threads
+        assertEquals(1, sharedRunning(LOW));
+        assertEquals(3, sharedRunning(HIGH));
+
+        PERMITS.get(LOW).release(10);
+        PERMITS.get(HIGH).release(10);
+        assertTrue(service.awaitCompletion(10, TimeUnit.SECONDS));
+        assertCompleted(BLOCKER, 4, 4);
+        assertCompleted(LOW, 10, 10);
+        assertCompleted(HIGH, 10, 10);
+    }
+
+    @Test
+    public void testMinThreads() throws Exception {
+        restart(2);
+        for (int i = 0; i < 5; i++) {
+            service.schedule(new BlockingWork(BLOCKER, "blocker" + i));
+        }
+        waitFor("shared pool busy", () -> sharedRunning(BLOCKER) == 2);
+        assertEquals(3, service.getMetrics(BLOCKER).getScheduled().intValue());
+
+        // runs on the thread dedicated to its queue while the shared pool is busy
+        PERMITS.get(RESERVED).release();
+        service.schedule(new BlockingWork(RESERVED, "reserved"));
+        assertTrue(service.awaitCompletion(RESERVED, 10, TimeUnit.SECONDS));
+        assertCompleted(RESERVED, 1, 0);
+        assertEquals(2, sharedRunning(BLOCKER));
+
+        PERMITS.get(BLOCKER).release(5);
+        assertTrue(service.awaitCompletion(BLOCKER, 10, TimeUnit.SECONDS));
+        assertCompleted(BLOCKER, 5, 5);
+    }
+
+    @Test
+    public void testErrorDoesNotLoseSharedThread() throws Exception {
+        restart(1);
+        service.schedule(new ErrorWork(LOW, "error"));
+        assertTrue(service.awaitCompletion(LOW, 10, TimeUnit.SECONDS));
+        assertCompleted(LOW, 1, 1);
+
+        // the single shared thread was replaced
+        PERMITS.get(LOW).release();
+        service.schedule(new BlockingWork(LOW, "next"));
+        assertTrue(service.awaitCompletion(LOW, 10, TimeUnit.SECONDS));
+        assertCompleted(LOW, 2, 2);
+    }
+
+    @Test
+    public void testSameIdDoesNotRunTwice() throws Exception {
+        restart(2);
+        service.schedule(new BlockingWork(MIXED, "same"));
+        waitFor("first work running", () -> service.getMetrics(MIXED).getRunning().intValue() == 1);
+        // scheduled again while running: the idle shared threads see it but must not run it concurrently
+        service.schedule(new BlockingWork(MIXED, "same"));
+        Thread.sleep(2 * SharedWorkPool.BACKLOG_REFRESH_MILLIS);
+        WorkQueueMetrics metrics = service.getMetrics(MIXED);
+        assertEquals(1, metrics.getRunning().intValue());
+        assertEquals(1, metrics.getScheduled().intValue());
+
+        PERMITS.get(MIXED).release(2);
+        assertTrue(service.awaitCompletion(MIXED, 10, TimeUnit.SECONDS));
+        assertEquals(2, service.getMetrics(MIXED).getCompleted().intValue());
+    }
+
+}
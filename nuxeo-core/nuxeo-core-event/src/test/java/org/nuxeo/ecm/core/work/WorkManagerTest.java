@@ -103,6 +103,22 @@ public class WorkManagerTest {
         }
     }
 
+    protected static class PrioritizedWork extends SleepWork {
+        private static final long serialVersionUID = 1L;
+
+        protected final int priority;
+
+        public PrioritizedWork(int priority, String id) {
+            super(0, false, id);
+            this.priority = priority;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+    }
+
     protected class MetricsTracker {
         protected String queueId;
 
@@ -518,4 +534,49 @@ public class WorkManagerTest {
         assertMetrics(0, 0, 3, 0);
     }
 
+    @Test
+    @Deploy("org.nuxeo.ecm.core.event.test:test-workmanager-coalescing.xml")
+    public void testCoalescedWorksAreScheduled() throws Exception {
+        MetricsTracker tracker = new MetricsTracker();
+        SleepWork work = null;
+        for (int i = 0; i < 10; i++) {
+            work = new SleepWork(0, false, "burst");
+            service.schedule(work);
+        }
+        SleepWork other = new SleepWork(0, false, "other");
+        service.schedule(other);
+
+        // held in the coalescing window, but visible as scheduled
+        assertState(SCHEDULED, work);
+        assertState(SCHEDULED, other);
+        assertWorkIdsEquals(Arrays.asList("burst", "other"), SCHEDULED);
+        tracker.assertDiff(2, 0, 0, 0);
+
+        // doesn't wait for the end of the window
+        assertTrue(service.awaitCompletion(5, TimeUnit.SECONDS));
+        assertState(null, work);
+        assertWorkIdsEquals(Collections.emptyList(), SCHEDULED);
+        // the burst ran once
+        tracker.assertDiff(0, 0, 2, 0);
+    }
+
+    @Test
+    public void testPriorityQueue() throws Exception {
+        WorkQueueDescriptor config = new WorkQueueDescriptor();
+        config.id = "PriorityQueue";
+        config.priority = Boolean.TRUE;
+        MemoryWorkQueuing queuing = new MemoryWorkQueuing(WorkQueuing.Listener.lookupListener());
+        MemoryBlockingQueue queue = queuing.init(config);
+        queue.setActive(true);
+        queue.workSchedule(new PrioritizedWork(0, "normal1"));
+        queue.workSchedule(new PrioritizedWork(-1, "low"));
+        queue.workSchedule(new PrioritizedWork(0, "normal2"));
+        queue.workSchedule(new PrioritizedWork(10, "high"));
+        // by decreasing priority, then in scheduling order
+        for (String id : Arrays.asList("high", "normal1", "normal2", "low")) {
+            assertEquals(id, WorkHolder.getWork(queue.poll()).getId());
+        }
+        assertEquals(null, queue.poll());
+    }
+
 }
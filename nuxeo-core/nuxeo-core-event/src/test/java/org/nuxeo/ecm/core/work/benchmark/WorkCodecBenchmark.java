@@ -0,0 +1,153 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.work.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.work.BinaryWorkCodec;
+import org.nuxeo.ecm.core.work.SleepWork;
+import org.nuxeo.ecm.core.work.WorkComputation;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.lib.stream.codec.BinaryRecordCodec;
+import org.nuxeo.lib.stream.computation.Record;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the legacy encoding of a Work inside a stream Record (Java serialization of both) with the binary codecs.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.ecm.core.work.benchmark.WorkCodecBenchmark}, the {@code bytesPerRecord} secondary
+ * result gives the size of an encoded record.
+ *
+ * @since 10.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkCodecBenchmark {
+
+    @Param({ "1", "100" })
+    public int docs;
+
+    protected final BinaryWorkCodec workCodec = new BinaryWorkCodec();
+
+    protected final BinaryRecordCodec recordCodec = new BinaryRecordCodec();
+
+    protected Work work;
+
+    protected byte[] legacyData;
+
+    protected byte[] binaryData;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Size {
+
+        public long bytesPerRecord;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesPerRecord = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        SleepWork sleepWork = new SleepWork(1000, "benchmark", false, "workId");
+        List<String> docIds = new ArrayList<>(docs);
+        for (int i = 0; i < docs; i++) {
+            docIds.add("0a1b2c3d-4e5f-6a7b-8c9d-" + String.format("%012d", i));
+        }
+        sleepWork.setDocuments("default", docIds);
+        sleepWork.setOriginatingUsername("Administrator");
+        work = sleepWork;
+        legacyData = encodeLegacy();
+        binaryData = encodeBinary();
+    }
+
+    protected byte[] encodeLegacy() throws IOException {
+        Record record = Record.of(work.getId(), WorkComputation.serialize(work));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(record);
+        }
+        return bos.toByteArray();
+    }
+
+    protected byte[] encodeBinary() {
+        return recordCodec.encode(Record.of(work.getId(), workCodec.encode(work)));
+    }
+
+    @Benchmark
+    public byte[] encodeLegacy(Size size) throws IOException {
+        byte[] data = encodeLegacy();
+        size.bytesPerRecord = data.length;
+        return data;
+    }
+
+    @Benchmark
+    public byte[] encodeBinary(Size size) {
+        byte[] data = encodeBinary();
+        size.bytesPerRecord = data.length;
+        return data;
+    }
+
+    @Benchmark
+    public Work decodeLegacy() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(legacyData))) {
+            Record record = (Record) in.readObject();
+            return WorkComputation.deserialize(record.data);
+        }
+    }
+
+    @Benchmark
+    public Work decodeBinary() {
+        return workCodec.decode(recordCodec.decode(binaryData).data);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(WorkCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
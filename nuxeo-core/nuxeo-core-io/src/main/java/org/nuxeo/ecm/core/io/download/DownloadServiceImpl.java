@@ -19,6 +19,7 @@
  */
 package org.nuxeo.ecm.core.io.download;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -26,6 +27,10 @@ import java.io.Serializable;
 import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -611,6 +616,12 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
     @Override
     public void transferBlobWithByteRange(Blob blob, ByteRange byteRange, Supplier<OutputStream> outputStreamSupplier)
             throws UncheckedIOException {
+        File file = blob.getFile();
+        if (file != null) {
+            // blob backed by a file, for instance in the binary cache
+            transferFileWithByteRange(file, byteRange, outputStreamSupplier);
+            return;
+        }
         try (InputStream in = blob.getStream()) {
             @SuppressWarnings("resource")
             OutputStream out = outputStreamSupplier.get(); // not ours to close
@@ -626,6 +637,36 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
     }
 
+    /**
+     * Transfers a file using {@link FileChannel#transferTo}, which avoids copying the file content in Java buffers
+     * and doesn't need to skip the bytes before the start of the range.
+     *
+     * @since 10.1
+     */
+    protected void transferFileWithByteRange(File file, ByteRange byteRange,
+            Supplier<OutputStream> outputStreamSupplier) throws UncheckedIOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            @SuppressWarnings("resource")
+            OutputStream out = outputStreamSupplier.get(); // not ours to close
+            BufferingServletOutputStream.stopBuffering(out);
+            @SuppressWarnings("resource")
+            WritableByteChannel target = Channels.newChannel(out); // closing it would close the output stream
+            long position = byteRange == null ? 0 : byteRange.getStart();
+            long end = byteRange == null ? channel.size() : byteRange.getStart() + byteRange.getLength();
+            while (position < end) {
+                long count = channel.transferTo(position, end - position, target);
+                if (count <= 0) {
+                    // file truncated meanwhile
+                    break;
+                }
+                position += count;
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     protected String fixXPath(String xpath) {
         // Hack for Flash Url wich doesn't support ':' char
         return xpath == null ? null : xpath.replace(';', ':');
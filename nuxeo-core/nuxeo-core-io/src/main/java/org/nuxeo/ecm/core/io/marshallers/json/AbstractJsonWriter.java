@@ -79,7 +79,10 @@ public abstract class AbstractJsonWriter<EntityType> implements Writer<EntityTyp
             throws IOException {
         JsonGenerator jg = getGenerator(out, true);
         write(entity, jg);
-        jg.flush();
+        // nested marshallers share the generator of the enclosing one, which flushes it
+        if (!(out instanceof OutputStreamWithJsonWriter)) {
+            jg.flush();
+        }
     }
 
     /**
@@ -89,7 +92,8 @@ public abstract class AbstractJsonWriter<EntityType> implements Writer<EntityTyp
      * </p>
      * <p>
      * The {@link JsonGenerator}'s flushing is done by this abstract class, it's also not not necessary to flush it. Do
-     * not close the provided {@link JsonGenerator}. It may be used is another marshaller calling this one.
+     * not close the provided {@link JsonGenerator}. It may be used is another marshaller calling this one, in which
+     * case it's only flushed by the outermost marshaller.
      * </p>
      *
      * @param entity The entity to marshall as Json.
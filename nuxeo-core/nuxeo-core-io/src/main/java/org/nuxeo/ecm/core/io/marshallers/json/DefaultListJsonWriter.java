@@ -120,9 +120,16 @@ public abstract class DefaultListJsonWriter<EntityType> extends AbstractJsonWrit
         jg.writeStringField(ENTITY_FIELD_NAME, entityType);
         writePaginationInfos(list, jg);
         Writer<EntityType> documentWriter = registry.getWriter(ctx, elClazz, elGenericType, APPLICATION_JSON_TYPE);
+        OutputStreamWithJsonWriter out = new OutputStreamWithJsonWriter(jg);
+        int flushInterval = getFlushInterval();
+        int count = 0;
         jg.writeArrayFieldStart("entries");
         for (EntityType entity : list) {
-            documentWriter.write(entity, elClazz, elClazz, APPLICATION_JSON_TYPE, new OutputStreamWithJsonWriter(jg));
+            documentWriter.write(entity, elClazz, elClazz, APPLICATION_JSON_TYPE, out);
+            if (flushInterval > 0 && ++count % flushInterval == 0) {
+                // sends the entries already written instead of buffering the whole page
+                jg.flush();
+            }
         }
         jg.writeEndArray();
         extend(list, jg);
@@ -179,6 +186,17 @@ public abstract class DefaultListJsonWriter<EntityType> extends AbstractJsonWrit
         }
     }
 
+    /**
+     * Override this method to flush the {@link JsonGenerator} each time the given number of entries was written, so
+     * that large lists are streamed to the client while they are marshalled.
+     *
+     * @return The number of entries between two flushes, 0 to only flush at the end of the list.
+     * @since 10.1
+     */
+    protected int getFlushInterval() {
+        return 0;
+    }
+
     /**
      * Override this method to write additional information in the list.
      *
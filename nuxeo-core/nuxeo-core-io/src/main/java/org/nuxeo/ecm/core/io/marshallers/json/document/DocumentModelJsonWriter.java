@@ -27,8 +27,12 @@ import static org.nuxeo.ecm.core.io.registry.reflect.Priorities.REFERENCE;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 
@@ -50,6 +54,8 @@ import org.nuxeo.ecm.core.schema.utils.DateParser;
 import org.nuxeo.runtime.api.Framework;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.thoughtworks.xstream.io.json.JsonWriter;
 
 /**
@@ -128,6 +134,13 @@ public class DocumentModelJsonWriter extends ExtensibleEntityJsonWriter<Document
         return ctx.getFetched(ENTITY_TYPE).contains(name) || fetchHeavy();
     }
 
+    /**
+     * Write plans by schema name, shared by all the instances of this marshaller.
+     *
+     * @since 10.1
+     */
+    private static final Map<String, SchemaWritePlan> SCHEMA_PLANS = new ConcurrentHashMap<>();
+
     @Inject
     private SchemaManager schemaManager;
 
@@ -172,15 +185,9 @@ public class DocumentModelJsonWriter extends ExtensibleEntityJsonWriter<Document
                 jg.writeObjectFieldStart("properties");
                 if (schemas.contains(WILDCARD_VALUE)) {
                     // full document
-                    for (String schema : doc.getSchemas()) {
-                        writeSchemaProperties(jg, doc, schema);
-                    }
+                    writeSchemasProperties(jg, doc, Arrays.asList(doc.getSchemas()));
                 } else {
-                    for (String schema : schemas) {
-                        if (doc.hasSchema(schema)) {
-                            writeSchemaProperties(jg, doc, schema);
-                        }
-                    }
+                    writeSchemasProperties(jg, doc, schemas);
                 }
                 jg.writeEndObject();
             }
@@ -195,24 +202,77 @@ public class DocumentModelJsonWriter extends ExtensibleEntityJsonWriter<Document
         jg.writeEndArray();
     }
 
-    private void writeSchemaProperties(JsonGenerator jg, DocumentModel doc, String schemaName) throws IOException {
+    /**
+     * Writes the properties of the given schemas the document has. The property writer, the context and the stream
+     * wrapping the generator are shared by all the properties of the document, the field names come from the schema
+     * write plans.
+     *
+     * @since 10.1
+     */
+    protected void writeSchemasProperties(JsonGenerator jg, DocumentModel doc, Collection<String> schemaNames)
+            throws IOException {
         Writer<Property> propertyWriter = registry.getWriter(ctx, Property.class, APPLICATION_JSON_TYPE);
+        OutputStream out = new OutputStreamWithJsonWriter(jg);
         // provides the current document to the property marshaller
         try (Closeable resource = ctx.wrap().with(ENTITY_TYPE, doc).open()) {
-            Schema schema = schemaManager.getSchema(schemaName);
+            for (String schemaName : schemaNames) {
+                if (!doc.hasSchema(schemaName)) {
+                    continue;
+                }
+                SchemaWritePlan plan = getSchemaWritePlan(schemaName);
+                for (int i = 0; i < plan.xpaths.length; i++) {
+                    jg.writeFieldName(plan.names[i]);
+                    Property property = doc.getProperty(plan.xpaths[i]);
+                    propertyWriter.write(property, Property.class, Property.class, APPLICATION_JSON_TYPE, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the write plan of a schema, computing it again if the schema was redeployed.
+     */
+    protected SchemaWritePlan getSchemaWritePlan(String schemaName) {
+        Schema schema = schemaManager.getSchema(schemaName);
+        SchemaWritePlan plan = SCHEMA_PLANS.get(schemaName);
+        if (plan == null || plan.schema != schema) {
+            plan = new SchemaWritePlan(schemaName, schema);
+            SCHEMA_PLANS.put(schemaName, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * The prefixed xpaths of the fields of a schema, and their names already encoded as Json field names.
+     *
+     * @since 10.1
+     */
+    protected static class SchemaWritePlan {
+
+        protected final Schema schema;
+
+        protected final String[] xpaths;
+
+        protected final SerializableString[] names;
+
+        protected SchemaWritePlan(String schemaName, Schema schema) {
+            this.schema = schema;
             String prefix = schema.getNamespace().prefix;
             if (prefix == null || prefix.length() == 0) {
                 prefix = schemaName;
             }
             prefix = prefix + ":";
-            for (Field field : schema.getFields()) {
-                String prefixedName = prefix + field.getName().getLocalName();
-                jg.writeFieldName(prefixedName);
-                Property property = doc.getProperty(prefixedName);
-                OutputStream out = new OutputStreamWithJsonWriter(jg);
-                propertyWriter.write(property, Property.class, Property.class, APPLICATION_JSON_TYPE, out);
+            Collection<Field> fields = schema.getFields();
+            xpaths = new String[fields.size()];
+            names = new SerializableString[fields.size()];
+            int i = 0;
+            for (Field field : fields) {
+                xpaths[i] = prefix + field.getName().getLocalName();
+                names[i] = new SerializedString(xpaths[i]);
+                i++;
             }
         }
+
     }
 
 }
@@ -19,17 +19,29 @@
 
 package org.nuxeo.ecm.core.io.marshallers.json.document;
 
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
 import static org.nuxeo.ecm.automation.core.util.PaginableDocumentModelList.CODEC_PARAMETER_NAME;
+import static org.nuxeo.ecm.core.io.marshallers.json.enrichers.AbstractJsonEnricher.ENTITY_ENRICHER_NAME;
 import static org.nuxeo.ecm.core.io.registry.reflect.Instantiations.SINGLETON;
 import static org.nuxeo.ecm.core.io.registry.reflect.Priorities.REFERENCE;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.lang3.reflect.TypeUtils;
 import org.nuxeo.ecm.automation.core.util.PaginableDocumentModelList;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.io.marshallers.json.DefaultListJsonWriter;
+import org.nuxeo.ecm.core.io.marshallers.json.enrichers.AbstractJsonEnricher;
+import org.nuxeo.ecm.core.io.marshallers.json.enrichers.Enriched;
+import org.nuxeo.ecm.core.io.registry.Writer;
+import org.nuxeo.ecm.core.io.registry.context.MaxDepthReachedException;
+import org.nuxeo.ecm.core.io.registry.context.WrappedContext;
 import org.nuxeo.ecm.core.io.registry.reflect.Setup;
 
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -44,6 +56,15 @@ public class DocumentModelListJsonWriter extends DefaultListJsonWriter<DocumentM
 
     public static final String ENTITY_DOCUMENT_LIST = "documents";
 
+    /**
+     * Number of documents written between two flushes of the output.
+     *
+     * @since 10.1
+     */
+    public static final int FLUSH_INTERVAL = 50;
+
+    private static final Type ENRICHED_TYPE = TypeUtils.parameterize(Enriched.class, DocumentModel.class);
+
     public DocumentModelListJsonWriter() {
         super(ENTITY_DOCUMENT_LIST, DocumentModel.class);
     }
@@ -54,11 +75,54 @@ public class DocumentModelListJsonWriter extends DefaultListJsonWriter<DocumentM
             PaginableDocumentModelList paginable = (PaginableDocumentModelList) docs;
             String codecName = paginable.getDocumentLinkBuilder();
             try (Closeable resource = ctx.wrap().with(CODEC_PARAMETER_NAME, codecName).open()) {
-                super.write(docs, jg);
+                writeBatched(docs, jg);
             }
         } else {
+            writeBatched(docs, jg);
+        }
+    }
+
+    /**
+     * Lets the activated document enrichers resolve their data for all the documents at once, then writes the list
+     * with this data available in the context.
+     *
+     * @since 10.1
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    protected void writeBatched(List<DocumentModel> docs, JsonGenerator jg) throws IOException {
+        WrappedContext batchCtx = ctx.wrap();
+        Set<String> enrichers = ctx.getEnrichers(DocumentModelJsonWriter.ENTITY_TYPE);
+        if (!docs.isEmpty() && !enrichers.isEmpty()) {
+            try {
+                // same depth as the documents' enrichers
+                WrappedContext wrappedCtx = ctx.wrap().controlDepth();
+                for (String enricherName : enrichers) {
+                    try (Closeable resource = wrappedCtx.with(ENTITY_ENRICHER_NAME, enricherName).open()) {
+                        Collection<Writer<Enriched>> writers = registry.getAllWriters(ctx, Enriched.class,
+                                ENRICHED_TYPE, APPLICATION_JSON_TYPE);
+                        for (Writer<Enriched> writer : writers) {
+                            if (writer instanceof AbstractJsonEnricher) {
+                                AbstractJsonEnricher<DocumentModel> enricher = (AbstractJsonEnricher) writer;
+                                Map<DocumentModel, ?> data = enricher.batch(docs);
+                                if (data != null) {
+                                    batchCtx.with(enricher.getBatchParameterName(), data);
+                                }
+                            }
+                        }
+                    }
+                }
+            } catch (MaxDepthReachedException e) {
+                // the documents won't be enriched
+            }
+        }
+        try (Closeable resource = batchCtx.open()) {
             super.write(docs, jg);
         }
     }
 
+    @Override
+    protected int getFlushInterval() {
+        return FLUSH_INTERVAL;
+    }
+
 }
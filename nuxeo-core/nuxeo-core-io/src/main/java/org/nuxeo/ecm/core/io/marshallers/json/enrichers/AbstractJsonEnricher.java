@@ -21,6 +21,8 @@ package org.nuxeo.ecm.core.io.marshallers.json.enrichers;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.core.MediaType;
 
@@ -31,6 +33,10 @@ import com.fasterxml.jackson.core.JsonGenerator;
 
 /**
  * Base class to write {@link ExtensibleEntityJsonWriter}'s enricher.
+ * <p>
+ * When a list of entities is written, an enricher can resolve the data of all of them at once by overriding
+ * {@link #batch(List)}, and then get the data of the entity being written with {@link #getBatchData(Object)}.
+ * </p>
  *
  * @param <EntityType> The Java type whose the generated JSON will be enriched.
  * @since 7.2
@@ -39,6 +45,13 @@ public abstract class AbstractJsonEnricher<EntityType> extends AbstractJsonWrite
 
     public static final String ENTITY_ENRICHER_NAME = "_EntityEnricherName";
 
+    /**
+     * Prefix of the context parameter holding the data resolved by an enricher for a list of entities.
+     *
+     * @since 10.1
+     */
+    public static final String ENTITY_ENRICHER_BATCH_PREFIX = "_EntityEnricherBatch_";
+
     private final String name;
 
     public AbstractJsonEnricher(String name) {
@@ -65,4 +78,44 @@ public abstract class AbstractJsonEnricher<EntityType> extends AbstractJsonWrite
      */
     public abstract void write(JsonGenerator jg, EntityType enriched) throws IOException;
 
+    /**
+     * Resolves at once the data needed to enrich all the entities of a list, for instance with a single query. List
+     * writers call it once per page before writing the entities, the returned data is then available to
+     * {@link #write(JsonGenerator, Object)} through {@link #getBatchData(Object)}.
+     * <p>
+     * The default implementation returns null, the enricher resolves its data for each entity.
+     * </p>
+     *
+     * @param entities The entities which will be enriched.
+     * @return The non null data by entity, compared by identity. Entities without data are enriched as usual. Null if
+     *         this enricher doesn't resolve data in batch.
+     * @since 10.1
+     */
+    public Map<EntityType, ?> batch(List<EntityType> entities) throws IOException {
+        return null;
+    }
+
+    /**
+     * Gets the data resolved by {@link #batch(List)} for an entity of the list being written.
+     *
+     * @param entity The enriched entity.
+     * @return The data, or null if it wasn't resolved in batch.
+     * @since 10.1
+     */
+    protected <T> T getBatchData(EntityType entity) {
+        Map<?, ?> data = ctx.getParameter(getBatchParameterName());
+        @SuppressWarnings("unchecked")
+        T value = data == null ? null : (T) data.get(entity);
+        return value;
+    }
+
+    /**
+     * Gets the name of the context parameter holding the data resolved by this enricher in batch.
+     *
+     * @since 10.1
+     */
+    public String getBatchParameterName() {
+        return ENTITY_ENRICHER_BATCH_PREFIX + getClass().getName();
+    }
+
 }
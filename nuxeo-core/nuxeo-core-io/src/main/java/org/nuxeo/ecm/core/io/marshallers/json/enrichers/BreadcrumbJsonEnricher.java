@@ -23,13 +23,27 @@ import static org.nuxeo.ecm.core.io.registry.reflect.Instantiations.SINGLETON;
 import static org.nuxeo.ecm.core.io.registry.reflect.Priorities.REFERENCE;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
 import org.nuxeo.ecm.core.io.marshallers.json.document.DocumentModelListJsonWriter;
 import org.nuxeo.ecm.core.io.registry.context.RenderingContext.SessionWrapper;
 import org.nuxeo.ecm.core.io.registry.reflect.Setup;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 
@@ -64,19 +78,97 @@ public class BreadcrumbJsonEnricher extends AbstractJsonEnricher<DocumentModel>
 
     public static final String NAME = "breadcrumb";
 
+    /**
+     * Maximum number of documents and parents read by one query when enriching a list.
+     *
+     * @since 10.1
+     */
+    public static final int BATCH_SIZE = 100;
+
     public BreadcrumbJsonEnricher() {
         super(NAME);
     }
 
     @Override
     public void write(JsonGenerator jg, DocumentModel document) throws IOException {
-        List<DocumentModel> parentDocuments = null;
-        try (SessionWrapper wrapper = ctx.getSession(document)) {
-            parentDocuments = wrapper.getSession().getParentDocuments(document.getRef());
+        List<DocumentModel> parentDocuments = getBatchData(document);
+        if (parentDocuments == null) {
+            try (SessionWrapper wrapper = ctx.getSession(document)) {
+                parentDocuments = wrapper.getSession().getParentDocuments(document.getRef());
+            }
         }
         DocumentModelListImpl documentList = new DocumentModelListImpl(parentDocuments);
         jg.writeFieldName(NAME);
         writeEntity(documentList, jg);
     }
 
+    /**
+     * Reads the documents and all their parents with one query per {@link #BATCH_SIZE} of them, the parents of the
+     * documents of a same folder being listed once. Like {@link CoreSession#getParentDocuments}, a breadcrumb stops at
+     * the first document which can't be read; this is checked by the queries, which only return the documents the user
+     * can browse.
+     *
+     * @since 10.1
+     */
+    @Override
+    public Map<DocumentModel, ?> batch(List<DocumentModel> documents) throws IOException {
+        Map<DocumentModel, List<DocumentModel>> result = new IdentityHashMap<>();
+        Map<String, List<DocumentModel>> byRepository = new LinkedHashMap<>();
+        for (DocumentModel document : documents) {
+            DocumentRef parentRef = document.getParentRef();
+            if (document.getId() != null && parentRef != null && parentRef.type() == DocumentRef.ID) {
+                byRepository.computeIfAbsent(document.getRepositoryName(), k -> new ArrayList<>()).add(document);
+            }
+        }
+        for (Entry<String, List<DocumentModel>> entry : byRepository.entrySet()) {
+            try (SessionWrapper wrapper = ctx.getSession(entry.getValue().get(0))) {
+                CoreSession session = wrapper.getSession();
+                // ids of the ancestors of each folder, from the folder up, without the root
+                Map<String, List<String>> ancestorsByFolder = new HashMap<>();
+                Set<String> ids = new LinkedHashSet<>();
+                for (DocumentModel document : entry.getValue()) {
+                    ids.add(document.getId());
+                    ids.addAll(ancestorsByFolder.computeIfAbsent(document.getParentRef().toString(),
+                            k -> getAncestorIds(session, document.getParentRef())));
+                }
+                Map<String, DocumentModel> readable = new HashMap<>();
+                List<String> idList = new ArrayList<>(ids);
+                for (int i = 0; i < idList.size(); i += BATCH_SIZE) {
+                    String query = idList.subList(i, Math.min(i + BATCH_SIZE, idList.size()))
+                                         .stream()
+                                         .map(NXQL::escapeString)
+                                         .collect(Collectors.joining(", ",
+                                                 "SELECT * FROM Document WHERE " + NXQL.ECM_UUID + " IN (", ")"));
+                    for (DocumentModel doc : session.query(query)) {
+                        readable.put(doc.getId(), doc);
+                    }
+                }
+                for (DocumentModel document : entry.getValue()) {
+                    List<String> chain = new ArrayList<>();
+                    chain.add(document.getId());
+                    chain.addAll(ancestorsByFolder.get(document.getParentRef().toString()));
+                    List<DocumentModel> breadcrumb = new ArrayList<>();
+                    for (String id : chain) {
+                        DocumentModel doc = readable.get(id);
+                        if (doc == null) {
+                            break;
+                        }
+                        breadcrumb.add(doc);
+                    }
+                    Collections.reverse(breadcrumb);
+                    result.put(document, breadcrumb);
+                }
+            }
+        }
+        return result;
+    }
+
+    protected static List<String> getAncestorIds(CoreSession session, DocumentRef folderRef) {
+        List<DocumentRef> refs = new ArrayList<>();
+        refs.add(folderRef);
+        refs.addAll(Arrays.asList(session.getParentDocumentRefs(folderRef)));
+        // the last one is the root, which is not part of a breadcrumb
+        return refs.subList(0, refs.size() - 1).stream().map(DocumentRef::toString).collect(Collectors.toList());
+    }
+
 }
@@ -23,12 +23,23 @@ import static org.nuxeo.ecm.core.io.registry.reflect.Instantiations.SINGLETON;
 import static org.nuxeo.ecm.core.io.registry.reflect.Priorities.REFERENCE;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
 
+import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
 import org.nuxeo.ecm.core.io.marshallers.json.document.DocumentModelListJsonWriter;
 import org.nuxeo.ecm.core.io.registry.context.RenderingContext.SessionWrapper;
 import org.nuxeo.ecm.core.io.registry.reflect.Setup;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 
@@ -63,18 +74,97 @@ public class ChildrenJsonEnricher extends AbstractJsonEnricher<DocumentModel> {
 
     public static final String NAME = "children";
 
+    /**
+     * Maximum number of parents looked up by one query when enriching a list.
+     *
+     * @since 10.1
+     */
+    public static final int BATCH_SIZE = 100;
+
+    /**
+     * Maximum number of children read by one query when enriching a list, the children of the documents are otherwise
+     * fetched document by document.
+     *
+     * @since 10.1
+     */
+    public static final int BATCH_MAX_RESULTS = 1000;
+
     public ChildrenJsonEnricher() {
         super(NAME);
     }
 
     @Override
     public void write(JsonGenerator jg, DocumentModel document) throws IOException {
-        DocumentModelList children = null;
-        try (SessionWrapper wrapper = ctx.getSession(document)) {
-            children = wrapper.getSession().getChildren(document.getRef());
+        DocumentModelList children = getBatchData(document);
+        if (children == null) {
+            try (SessionWrapper wrapper = ctx.getSession(document)) {
+                children = wrapper.getSession().getChildren(document.getRef());
+            }
         }
         jg.writeFieldName(NAME);
         writeEntity(children, jg);
     }
 
+    /**
+     * Fetches the children of the documents with one query per {@link #BATCH_SIZE} documents. The query only returns
+     * the children the user can browse, which the Read permission checked by
+     * {@link CoreSession#getChildren(org.nuxeo.ecm.core.api.DocumentRef)} includes. When the documents of a query have
+     * more than {@link #BATCH_MAX_RESULTS} children, their children are fetched document by document.
+     *
+     * @since 10.1
+     */
+    @Override
+    public Map<DocumentModel, ?> batch(List<DocumentModel> documents) throws IOException {
+        Map<DocumentModel, DocumentModelList> result = new IdentityHashMap<>();
+        Map<String, List<DocumentModel>> byRepository = new LinkedHashMap<>();
+        for (DocumentModel document : documents) {
+            if (document.getId() != null) {
+                byRepository.computeIfAbsent(document.getRepositoryName(), k -> new ArrayList<>()).add(document);
+            }
+        }
+        for (Entry<String, List<DocumentModel>> entry : byRepository.entrySet()) {
+            List<DocumentModel> parents = entry.getValue();
+            try (SessionWrapper wrapper = ctx.getSession(parents.get(0))) {
+                CoreSession session = wrapper.getSession();
+                for (int i = 0; i < parents.size(); i += BATCH_SIZE) {
+                    List<DocumentModel> batch = parents.subList(i, Math.min(i + BATCH_SIZE, parents.size()));
+                    Map<String, DocumentModelList> childrenById = new HashMap<>();
+                    for (DocumentModel parent : batch) {
+                        childrenById.putIfAbsent(parent.getId(), new DocumentModelListImpl());
+                    }
+                    String ids = childrenById.keySet()
+                                             .stream()
+                                             .map(NXQL::escapeString)
+                                             .collect(Collectors.joining(", "));
+                    String query = "SELECT * FROM Document WHERE ecm:parentId IN (" + ids + ") ORDER BY ecm:pos";
+                    DocumentModelList allChildren = session.query(query, BATCH_MAX_RESULTS);
+                    if (allChildren.size() >= BATCH_MAX_RESULTS) {
+                        // large folders, don't hold the children of the whole page at once
+                        continue;
+                    }
+                    boolean resolved = true;
+                    for (DocumentModel child : allChildren) {
+                        DocumentModelList children = childrenById.get(child.getParentRef().toString());
+                        if (children == null) {
+                            // parent not referenced by id, let the children be fetched document by document
+                            resolved = false;
+                            break;
+                        }
+                        children.add(child);
+                    }
+                    if (!resolved) {
+                        continue;
+                    }
+                    for (DocumentModel parent : batch) {
+                        DocumentModelList children = childrenById.get(parent.getId());
+                        if (children != null) {
+                            result.put(parent, children);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
 }
@@ -23,9 +23,22 @@ import static org.nuxeo.ecm.core.io.registry.reflect.Instantiations.SINGLETON;
 import static org.nuxeo.ecm.core.io.registry.reflect.Priorities.REFERENCE;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.io.registry.context.RenderingContext.SessionWrapper;
 import org.nuxeo.ecm.core.io.registry.reflect.Setup;
 import org.nuxeo.ecm.core.query.sql.NXQL;
@@ -40,6 +53,24 @@ public class HasFolderishChildJsonEnricher extends AbstractJsonEnricher<Document
 
     public static final String NAME = "hasFolderishChild";
 
+    /**
+     * Maximum number of folders looked up by one query when enriching a list.
+     *
+     * @since 10.1
+     */
+    public static final int BATCH_SIZE = 100;
+
+    /**
+     * Maximum number of children read by one query when enriching a list, the folders which were not resolved are
+     * then queried one by one.
+     *
+     * @since 10.1
+     */
+    public static final int BATCH_MAX_RESULTS = 1000;
+
+    protected static final String FOLDERISH_CHILD_QUERY = "SELECT %s FROM Document WHERE ecm:mixinType = 'Folderish'"
+            + " AND ecm:mixinType != 'HiddenInNavigation' AND ecm:isTrashed = 0 AND ecm:parentId %s";
+
     public HasFolderishChildJsonEnricher() {
         super(NAME);
     }
@@ -50,14 +81,68 @@ public class HasFolderishChildJsonEnricher extends AbstractJsonEnricher<Document
             jg.writeBooleanField(NAME, false);
             return;
         }
+        Boolean hasFolderishChild = getBatchData(document);
+        if (hasFolderishChild != null) {
+            jg.writeBooleanField(NAME, hasFolderishChild.booleanValue());
+            return;
+        }
         try (SessionWrapper wrapper = ctx.getSession(document)) {
-            String fetchFolderishChildQuery = "SELECT * FROM Document WHERE ecm:mixinType = 'Folderish'"
-                    + " AND ecm:mixinType != 'HiddenInNavigation' AND ecm:isTrashed = 0"
-                    + " AND ecm:parentId = " + NXQL.escapeString(document.getId());
+            String fetchFolderishChildQuery = String.format(FOLDERISH_CHILD_QUERY, "*",
+                    "= " + NXQL.escapeString(document.getId()));
             // Limit result set to 1 as we just want to know if there's at least one Folderish child
             DocumentModelList children = wrapper.getSession().query(fetchFolderishChildQuery, 1);
             jg.writeBooleanField(NAME, !children.isEmpty());
         }
     }
 
+    /**
+     * Finds the folders having a folderish child with one query per {@link #BATCH_SIZE} folders.
+     *
+     * @since 10.1
+     */
+    @Override
+    public Map<DocumentModel, ?> batch(List<DocumentModel> documents) throws IOException {
+        Map<DocumentModel, Boolean> result = new IdentityHashMap<>();
+        Map<String, List<DocumentModel>> byRepository = new LinkedHashMap<>();
+        for (DocumentModel document : documents) {
+            if (!document.isFolder()) {
+                result.put(document, Boolean.FALSE);
+            } else if (document.getId() != null) {
+                byRepository.computeIfAbsent(document.getRepositoryName(), k -> new ArrayList<>()).add(document);
+            }
+        }
+        for (Entry<String, List<DocumentModel>> entry : byRepository.entrySet()) {
+            List<DocumentModel> folders = entry.getValue();
+            try (SessionWrapper wrapper = ctx.getSession(folders.get(0))) {
+                CoreSession session = wrapper.getSession();
+                for (int i = 0; i < folders.size(); i += BATCH_SIZE) {
+                    List<DocumentModel> batch = folders.subList(i, Math.min(i + BATCH_SIZE, folders.size()));
+                    Map<String, List<DocumentModel>> byId = new HashMap<>();
+                    for (DocumentModel folder : batch) {
+                        byId.computeIfAbsent(folder.getId(), k -> new ArrayList<>()).add(folder);
+                    }
+                    String ids = byId.keySet().stream().map(NXQL::escapeString).collect(Collectors.joining(", "));
+                    String query = String.format(FOLDERISH_CHILD_QUERY, NXQL.ECM_PARENTID, "IN (" + ids + ")");
+                    PartialList<Map<String, Serializable>> children = session.queryProjection(query,
+                            BATCH_MAX_RESULTS, 0);
+                    Set<Serializable> parentIds = new HashSet<>();
+                    for (Map<String, Serializable> child : children) {
+                        parentIds.add(child.get(NXQL.ECM_PARENTID));
+                    }
+                    // when the results were truncated, the folders without a found child are queried one by one
+                    boolean complete = children.size() < BATCH_MAX_RESULTS;
+                    for (Entry<String, List<DocumentModel>> es : byId.entrySet()) {
+                        boolean found = parentIds.contains(es.getKey());
+                        if (found || complete) {
+                            for (DocumentModel folder : es.getValue()) {
+                                result.put(folder, Boolean.valueOf(found));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
 }
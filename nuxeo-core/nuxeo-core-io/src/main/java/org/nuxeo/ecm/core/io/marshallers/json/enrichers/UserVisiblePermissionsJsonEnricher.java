@@ -23,7 +23,10 @@ import static org.nuxeo.ecm.core.io.registry.reflect.Instantiations.SINGLETON;
 import static org.nuxeo.ecm.core.io.registry.reflect.Priorities.REFERENCE;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.security.PermissionProvider;
@@ -70,8 +73,11 @@ public class UserVisiblePermissionsJsonEnricher extends AbstractJsonEnricher<Doc
 
     @Override
     public void write(JsonGenerator jg, DocumentModel document) throws IOException {
-        PermissionProvider permissionProvider = Framework.getService(PermissionProvider.class);
-        List<UserVisiblePermission> userVisiblePermissions = permissionProvider.getUserVisiblePermissionDescriptors(document.getType());
+        List<UserVisiblePermission> userVisiblePermissions = getBatchData(document);
+        if (userVisiblePermissions == null) {
+            PermissionProvider permissionProvider = Framework.getService(PermissionProvider.class);
+            userVisiblePermissions = permissionProvider.getUserVisiblePermissionDescriptors(document.getType());
+        }
 
         jg.writeArrayFieldStart(NAME);
         for (UserVisiblePermission permission : userVisiblePermissions) {
@@ -80,4 +86,21 @@ public class UserVisiblePermissionsJsonEnricher extends AbstractJsonEnricher<Doc
         jg.writeEndArray();
     }
 
+    /**
+     * Resolves the permissions once per document type.
+     *
+     * @since 10.1
+     */
+    @Override
+    public Map<DocumentModel, ?> batch(List<DocumentModel> documents) throws IOException {
+        PermissionProvider permissionProvider = Framework.getService(PermissionProvider.class);
+        Map<String, List<UserVisiblePermission>> permissionsByType = new HashMap<>();
+        Map<DocumentModel, List<UserVisiblePermission>> result = new IdentityHashMap<>();
+        for (DocumentModel document : documents) {
+            result.put(document, permissionsByType.computeIfAbsent(document.getType(),
+                    permissionProvider::getUserVisiblePermissionDescriptors));
+        }
+        return result;
+    }
+
 }
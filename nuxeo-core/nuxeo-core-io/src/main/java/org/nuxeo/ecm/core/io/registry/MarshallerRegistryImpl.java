@@ -20,9 +20,12 @@
 package org.nuxeo.ecm.core.io.registry;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -76,6 +79,14 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
      */
     private static final Map<Class<?>, MarshallerInspector> marshallersByType = new ConcurrentHashMap<Class<?>, MarshallerInspector>();
 
+    /**
+     * {@link MarshallerInspector} whose managed class and generic type are compatible with a requested type, in
+     * priority order, by candidate set. Replaced each time a marshaller is registered or deregistered.
+     *
+     * @since 10.1
+     */
+    private static volatile Map<CompatibleKey, List<MarshallerInspector>> compatibles = new ConcurrentHashMap<>();
+
     @Override
     public void activate(ComponentContext context) {
         super.activate(context);
@@ -151,6 +162,7 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
                 inspectors.add(inspector);
             }
         }
+        compatibles = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -184,6 +196,7 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
                 }
             }
         }
+        compatibles = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -268,23 +281,16 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
     @SuppressWarnings("unchecked")
     private <T> Marshaller<T> searchCandidate(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype, Set<MarshallerInspector> candidates, boolean forceInstantiation) {
-        for (MarshallerInspector inspector : candidates) {
-            // checks the managed class is compatible
-            if (inspector.getMarshalledType().isAssignableFrom(marshalledClazz)) {
-                // checks the generic type is compatible
-                if (genericType == null || marshalledClazz.equals(inspector.getGenericType())
-                        || TypeUtils.isAssignable(genericType, inspector.getGenericType())) {
-                    Marshaller<T> marshaller = null;
-                    if (forceInstantiation) {
-                        marshaller = (Marshaller<T>) inspector.getNewInstance(ctx, false);
-                    } else {
-                        marshaller = inspector.getInstance(ctx);
-                    }
-                    // checks the marshaller accepts the request
-                    if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
-                        return marshaller;
-                    }
-                }
+        for (MarshallerInspector inspector : getCompatibles(marshalledClazz, genericType, candidates)) {
+            Marshaller<T> marshaller = null;
+            if (forceInstantiation) {
+                marshaller = (Marshaller<T>) inspector.getNewInstance(ctx, false);
+            } else {
+                marshaller = inspector.getInstance(ctx);
+            }
+            // checks the marshaller accepts the request
+            if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
+                return marshaller;
             }
         }
         return null;
@@ -293,19 +299,41 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
     private <T> Map<MarshallerInspector, Marshaller<T>> searchAllCandidates(RenderingContext ctx,
             Class<T> marshalledClazz, Type genericType, MediaType mediatype, Set<MarshallerInspector> candidates) {
         Map<MarshallerInspector, Marshaller<T>> result = new HashMap<MarshallerInspector, Marshaller<T>>();
-        for (MarshallerInspector inspector : candidates) {
-            // checks the managed class is compatible
-            if (inspector.getMarshalledType().isAssignableFrom(marshalledClazz)) {
-                // checks the generic type is compatible
-                if (genericType == null || marshalledClazz.equals(inspector.getGenericType())
-                        || TypeUtils.isAssignable(genericType, inspector.getGenericType())) {
-                    // checks the marshaller accepts the request
-                    Marshaller<T> marshaller = inspector.getInstance(ctx);
-                    if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
-                        result.put(inspector, marshaller);
+        for (MarshallerInspector inspector : getCompatibles(marshalledClazz, genericType, candidates)) {
+            // checks the marshaller accepts the request
+            Marshaller<T> marshaller = inspector.getInstance(ctx);
+            if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
+                result.put(inspector, marshaller);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the candidates whose managed class and generic type are compatible with the requested ones, in priority
+     * order. The type checks don't depend on the rendering context, they are only done once per requested type: writing
+     * a list of documents with enrichers asks for the same types for every entry.
+     *
+     * @since 10.1
+     */
+    private List<MarshallerInspector> getCompatibles(Class<?> marshalledClazz, Type genericType,
+            Set<MarshallerInspector> candidates) {
+        Map<CompatibleKey, List<MarshallerInspector>> cache = compatibles;
+        CompatibleKey key = new CompatibleKey(candidates, marshalledClazz, genericType);
+        List<MarshallerInspector> result = cache.get(key);
+        if (result == null) {
+            result = new ArrayList<>();
+            for (MarshallerInspector inspector : candidates) {
+                // checks the managed class is compatible
+                if (inspector.getMarshalledType().isAssignableFrom(marshalledClazz)) {
+                    // checks the generic type is compatible
+                    if (genericType == null || marshalledClazz.equals(inspector.getGenericType())
+                            || TypeUtils.isAssignable(genericType, inspector.getGenericType())) {
+                        result.add(inspector);
                     }
                 }
             }
+            cache.put(key, result);
         }
         return result;
     }
@@ -337,6 +365,51 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
         writers.clear();
         readersByMediaType.clear();
         readers.clear();
+        compatibles = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Key of the compatible marshallers cache: the candidate set is compared by identity as it's owned by this
+     * registry.
+     *
+     * @since 10.1
+     */
+    private static final class CompatibleKey {
+
+        private final Set<MarshallerInspector> candidates;
+
+        private final Class<?> marshalledClazz;
+
+        private final Type genericType;
+
+        private final int hash;
+
+        private CompatibleKey(Set<MarshallerInspector> candidates, Class<?> marshalledClazz, Type genericType) {
+            this.candidates = candidates;
+            this.marshalledClazz = marshalledClazz;
+            this.genericType = genericType;
+            hash = 31 * (31 * System.identityHashCode(candidates) + marshalledClazz.hashCode())
+                    + Objects.hashCode(genericType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CompatibleKey)) {
+                return false;
+            }
+            CompatibleKey other = (CompatibleKey) obj;
+            return candidates == other.candidates && marshalledClazz == other.marshalledClazz
+                    && Objects.equals(genericType, other.genericType);
+        }
+
     }
 
 }
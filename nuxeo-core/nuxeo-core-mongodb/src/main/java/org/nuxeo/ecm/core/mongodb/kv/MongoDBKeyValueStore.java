@@ -285,6 +285,21 @@ public class MongoDBKeyValueStore extends AbstractKeyValueStoreProvider {
         }
     }
 
+    @Override
+    public long getTTL(String key) {
+        Document doc = coll.find(eq(ID_KEY, key)).projection(include(TTL_KEY)).first();
+        if (doc == null) {
+            return -1;
+        }
+        Date date = doc.getDate(TTL_KEY);
+        if (date == null) {
+            return 0;
+        }
+        // expired documents are only removed periodically by the TTL monitor
+        long remaining = TimeUnit.MILLISECONDS.toSeconds(date.getTime() - System.currentTimeMillis());
+        return remaining > 0 ? remaining : -1;
+    }
+
     @Override
     public boolean setTTL(String key, long ttl) {
         Bson filter = eq(ID_KEY, key);
@@ -40,6 +40,8 @@ import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.kv.AbstractKeyValueStoreProvider;
 import org.nuxeo.runtime.kv.KeyValueStoreDescriptor;
 
+import redis.clients.jedis.Pipeline;
+
 /**
  * Redis implementation of a Key/Value Store Provider.
  * <p>
@@ -125,6 +127,31 @@ public class RedisKeyValueStore extends AbstractKeyValueStoreProvider {
         });
     }
 
+    @Override
+    public void put(Map<String, byte[]> values, long ttl) {
+        if (values.isEmpty()) {
+            return;
+        }
+        RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
+        redisExecutor.execute(jedis -> {
+            // single round trip
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+                byte[] keyb = getBytes(namespace + entry.getKey());
+                byte[] value = entry.getValue();
+                if (value == null) {
+                    pipeline.del(keyb);
+                } else if (ttl == 0) {
+                    pipeline.set(keyb, value);
+                } else {
+                    pipeline.setex(keyb, (int) ttl, value);
+                }
+            }
+            pipeline.sync();
+            return null;
+        });
+    }
+
     @Override
     public byte[] get(String key) {
         RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
@@ -176,6 +203,20 @@ public class RedisKeyValueStore extends AbstractKeyValueStoreProvider {
         return redisExecutor.execute(jedis -> jedis.mget(byteKeys));
     }
 
+    @Override
+    public long getTTL(String key) {
+        RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
+        Long ttl = redisExecutor.execute(jedis -> jedis.ttl(getBytes(namespace + key)));
+        // -1 when the key has no expiration, -2 when it doesn't exist, 0 when it's about to expire
+        if (ttl == null) {
+            return -1;
+        }
+        if (ttl.longValue() == -1) {
+            return 0;
+        }
+        return ttl.longValue() > 0 ? ttl.longValue() : -1;
+    }
+
     @Override
     public boolean setTTL(String key, long ttl) {
         RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
@@ -226,6 +226,12 @@ public class DBSCachingRepository implements DBSRepository {
         invalidate(id);
     }
 
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs, Map<String, ChangeTokenUpdater> changeTokenUpdaters) {
+        repository.updateStates(diffs, changeTokenUpdaters);
+        invalidateAll(diffs.keySet());
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         repository.deleteStates(ids);
@@ -373,6 +379,11 @@ public class DBSCachingRepository implements DBSRepository {
         return repository.queryAndFetch(evaluator, orderByClause, distinctDocuments, limit, offset, countUpTo);
     }
 
+    @Override
+    public Stream<String> queryStream(DBSExpressionEvaluator evaluator, OrderByClause orderByClause, int fetchSize) {
+        return repository.queryStream(evaluator, orderByClause, fetchSize);
+    }
+
     @Override
     public LockManager getLockManager() {
         return repository.getLockManager();
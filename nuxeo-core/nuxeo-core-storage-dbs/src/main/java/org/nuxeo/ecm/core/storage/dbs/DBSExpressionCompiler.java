@@ -0,0 +1,624 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACP;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_MIXIN_TYPES;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.PROP_MAJOR_VERSION;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.PROP_MINOR_VERSION;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.query.QueryParseException;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.BooleanLiteral;
+import org.nuxeo.ecm.core.query.sql.model.DateLiteral;
+import org.nuxeo.ecm.core.query.sql.model.DoubleLiteral;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.IntegerLiteral;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.ecm.core.schema.types.ComplexType;
+import org.nuxeo.ecm.core.schema.types.Field;
+import org.nuxeo.ecm.core.schema.types.ListType;
+import org.nuxeo.ecm.core.schema.types.Schema;
+import org.nuxeo.ecm.core.schema.types.Type;
+import org.nuxeo.ecm.core.schema.types.primitives.BooleanType;
+import org.nuxeo.ecm.core.storage.ExpressionEvaluator;
+import org.nuxeo.ecm.core.storage.State;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Compiles the WHERE clause of a query into a {@link Predicate} on a {@link State}, used as a fast pre-filter before
+ * the full evaluation done by {@link DBSExpressionEvaluator}.
+ * <p>
+ * The expression is walked only once, at compilation time: operators are turned into a tree of lambdas, literals are
+ * converted, LIKE patterns are turned into compiled regexes, and references are resolved into the list of keys to
+ * traverse in the state. The compiled predicate then does no parsing, no allocation of evaluation structures and no
+ * dispatch on the operator.
+ * <p>
+ * The compiled predicate is conservative: it may return {@code true} for a state that doesn't match, but never returns
+ * {@code false} for a state that does. Simple comparisons on scalar properties, ecm:ancestorId and the boolean
+ * operators are compiled with the exact ternary semantics of {@link ExpressionEvaluator}. Anything else (wildcards,
+ * list indexes, casts, mixin types, paths, fulltext, ACLs, tags) is not compiled and is considered as always matching,
+ * which means that an OR or a NOT containing it is considered as always matching too.
+ * <p>
+ * Compiled predicates are cached by expression.
+ *
+ * @since 10.1
+ */
+public class DBSExpressionCompiler {
+
+    public static final int CACHE_SIZE = 1000;
+
+    private static final Long ZERO = Long.valueOf(0);
+
+    private static final Long ONE = Long.valueOf(1);
+
+    /** Predicate used for expressions that cannot be compiled. */
+    protected static final Predicate<State> ALWAYS = state -> true;
+
+    /**
+     * A compiled expression, evaluated with ternary logic.
+     */
+    @FunctionalInterface
+    protected interface Condition {
+        Boolean eval(State state);
+    }
+
+    protected final SchemaManager schemaManager;
+
+    protected final Cache<Expression, Predicate<State>> cache = CacheBuilder.newBuilder()
+                                                                            .maximumSize(CACHE_SIZE)
+                                                                            .build();
+
+    /**
+     * Creates a compiler. The schema manager is used to resolve schema properties, if it is {@code null} only
+     * {@code ecm:} properties are compiled.
+     */
+    public DBSExpressionCompiler(SchemaManager schemaManager) {
+        this.schemaManager = schemaManager;
+    }
+
+    /**
+     * Gets the compiled predicate for an expression, compiling it if it's not already in the cache.
+     *
+     * @param expression the expression, may be {@code null}
+     * @return the predicate
+     */
+    public Predicate<State> getPredicate(Expression expression) {
+        if (expression == null) {
+            return ALWAYS;
+        }
+        Predicate<State> predicate = cache.getIfPresent(expression);
+        if (predicate == null) {
+            // concurrent compilations of the same expression are harmless
+            predicate = compile(expression);
+            cache.put(expression, predicate);
+        }
+        return predicate;
+    }
+
+    /**
+     * Checks if a compiled predicate may reject states, i.e., if it's worth evaluating it.
+     */
+    public static boolean isFiltering(Predicate<State> predicate) {
+        return predicate != ALWAYS;
+    }
+
+    /**
+     * Compiles an expression into a predicate, without caching.
+     */
+    public Predicate<State> compile(Expression expression) {
+        Condition condition = compileCondition(expression);
+        if (condition != null) {
+            return state -> TRUE.equals(condition.eval(state));
+        }
+        if (expression instanceof MultiExpression) {
+            MultiExpression multi = (MultiExpression) expression;
+            if (multi.operator != Operator.AND) {
+                return ALWAYS;
+            }
+            List<Predicate<State>> predicates = new ArrayList<>(multi.values.size());
+            for (Operand value : multi.values) {
+                Predicate<State> predicate = compileOperand(value);
+                if (predicate != ALWAYS) {
+                    predicates.add(predicate);
+                }
+            }
+            return and(predicates);
+        }
+        Operator op = expression.operator;
+        if (op == Operator.AND) {
+            Predicate<State> left = compileOperand(expression.lvalue);
+            Predicate<State> right = compileOperand(expression.rvalue);
+            if (left == ALWAYS) {
+                return right;
+            } else if (right == ALWAYS) {
+                return left;
+            }
+            return left.and(right);
+        } else if (op == Operator.OR) {
+            Predicate<State> left = compileOperand(expression.lvalue);
+            Predicate<State> right = compileOperand(expression.rvalue);
+            if (left == ALWAYS || right == ALWAYS) {
+                return ALWAYS;
+            }
+            return left.or(right);
+        }
+        // NOT of something not exact, or not compilable
+        return ALWAYS;
+    }
+
+    protected Predicate<State> compileOperand(Operand operand) {
+        return operand instanceof Expression ? compile((Expression) operand) : ALWAYS;
+    }
+
+    protected static Predicate<State> and(List<Predicate<State>> predicates) {
+        switch (predicates.size()) {
+        case 0:
+            return ALWAYS;
+        case 1:
+            return predicates.get(0);
+        default:
+            @SuppressWarnings("unchecked")
+            Predicate<State>[] array = predicates.toArray(new Predicate[predicates.size()]);
+            return state -> {
+                for (Predicate<State> predicate : array) {
+                    if (!predicate.test(state)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+    }
+
+    /**
+     * Compiles an operand into a condition having the exact semantics of the interpreter.
+     *
+     * @return the condition, or {@code null} if the operand cannot be compiled exactly
+     */
+    protected Condition compileCondition(Operand operand) {
+        if (!(operand instanceof Expression)) {
+            return null;
+        }
+        if (operand instanceof MultiExpression) {
+            MultiExpression multi = (MultiExpression) operand;
+            if (multi.operator != Operator.AND) {
+                return null;
+            }
+            List<Condition> conditions = new ArrayList<>(multi.values.size());
+            for (Operand value : multi.values) {
+                Condition condition = compileCondition(value);
+                if (condition == null) {
+                    return null;
+                }
+                conditions.add(condition);
+            }
+            Condition[] array = conditions.toArray(new Condition[conditions.size()]);
+            return state -> {
+                Boolean res = TRUE;
+                for (Condition condition : array) {
+                    res = and(res, condition.eval(state));
+                    if (FALSE.equals(res)) {
+                        // unlike the interpreter we don't need to walk all references
+                        return FALSE;
+                    }
+                }
+                return res;
+            };
+        }
+        Expression expr = (Expression) operand;
+        Operator op = expr.operator;
+        if (op == Operator.AND || op == Operator.OR) {
+            Condition left = compileCondition(expr.lvalue);
+            Condition right = compileCondition(expr.rvalue);
+            if (left == null || right == null) {
+                return null;
+            }
+            if (op == Operator.AND) {
+                return state -> and(left.eval(state), right.eval(state));
+            } else {
+                return state -> or(left.eval(state), right.eval(state));
+            }
+        }
+        if (op == Operator.NOT) {
+            Condition condition = compileCondition(expr.lvalue);
+            return condition == null ? null : state -> not(condition.eval(state));
+        }
+        if (!(expr.lvalue instanceof Reference)) {
+            return null;
+        }
+        Reference ref = (Reference) expr.lvalue;
+        Operand rvalue = expr.rvalue;
+        if (NXQL.ECM_ANCESTORID.equals(ref.name)) {
+            return compileAncestorId(op, rvalue);
+        }
+        if (op == Operator.STARTSWITH || NXQL.ECM_PATH.equals(ref.name) || NXQL.ECM_ISTRASHED.equals(ref.name)
+                || ref.name.startsWith(NXQL.ECM_FULLTEXT)) {
+            return null;
+        }
+        Function<State, Object> value = compileReference(ref);
+        if (value == null) {
+            return null;
+        }
+        if (op == Operator.ISNULL) {
+            return state -> Boolean.valueOf(value.apply(state) == null);
+        } else if (op == Operator.ISNOTNULL) {
+            return state -> Boolean.valueOf(value.apply(state) != null);
+        }
+        if (op == Operator.IN || op == Operator.NOTIN) {
+            if (!(rvalue instanceof LiteralList)) {
+                return null;
+            }
+            List<Object> list = new ArrayList<>();
+            for (Literal literal : (LiteralList) rvalue) {
+                list.add(literalValue(literal));
+            }
+            if (op == Operator.IN) {
+                return state -> inMaybeList(value.apply(state), list);
+            } else {
+                return state -> not(inMaybeList(value.apply(state), list));
+            }
+        }
+        if (!(rvalue instanceof Literal)) {
+            return null;
+        }
+        Object right = literalValue((Literal) rvalue);
+        if (op == Operator.EQ) {
+            return state -> eqMaybeList(value.apply(state), right);
+        } else if (op == Operator.NOTEQ) {
+            return state -> not(eqMaybeList(value.apply(state), right));
+        } else if (op == Operator.LT) {
+            return state -> {
+                Integer cmp = cmp(value.apply(state), right);
+                return cmp == null ? null : cmp < 0;
+            };
+        } else if (op == Operator.GT) {
+            return state -> {
+                Integer cmp = cmp(value.apply(state), right);
+                return cmp == null ? null : cmp > 0;
+            };
+        } else if (op == Operator.LTEQ) {
+            return state -> {
+                Integer cmp = cmp(value.apply(state), right);
+                return cmp == null ? null : cmp <= 0;
+            };
+        } else if (op == Operator.GTEQ) {
+            return state -> {
+                Integer cmp = cmp(value.apply(state), right);
+                return cmp == null ? null : cmp >= 0;
+            };
+        } else if (op == Operator.LIKE || op == Operator.NOTLIKE || op == Operator.ILIKE
+                || op == Operator.NOTILIKE) {
+            if (!(right instanceof String)) {
+                return null;
+            }
+            boolean positive = op == Operator.LIKE || op == Operator.ILIKE;
+            boolean caseInsensitive = op == Operator.ILIKE || op == Operator.NOTILIKE;
+            String like = (String) right;
+            if (caseInsensitive) {
+                like = like.toLowerCase();
+            }
+            Pattern pattern = Pattern.compile(ExpressionEvaluator.likeToRegex(like));
+            return state -> likeMaybeList(value.apply(state), pattern, positive, caseInsensitive);
+        }
+        return null;
+    }
+
+    /**
+     * Compiles an ecm:ancestorId condition, see {@link ExpressionEvaluator#walkAncestorId}.
+     */
+    protected Condition compileAncestorId(Operator op, Operand rvalue) {
+        if ((op != Operator.EQ && op != Operator.NOTEQ) || !(rvalue instanceof StringLiteral)) {
+            // invalid, let the interpreter fail
+            return null;
+        }
+        String ancestorId = ((StringLiteral) rvalue).value;
+        Boolean found = op == Operator.EQ ? TRUE : FALSE;
+        Boolean notFound = op == Operator.EQ ? FALSE : TRUE;
+        return state -> {
+            Object ancestorIds = state.get(KEY_ANCESTOR_IDS);
+            if (ancestorIds instanceof Object[]) {
+                for (Object id : (Object[]) ancestorIds) {
+                    if (ancestorId.equals(id)) {
+                        return found;
+                    }
+                }
+            }
+            return notFound;
+        };
+    }
+
+    /**
+     * Compiles a reference into a function returning the value to use for evaluation, see
+     * {@link DBSExpressionEvaluator#parseReference}.
+     *
+     * @return the function, or {@code null} if the reference cannot be compiled
+     */
+    protected Function<State, Object> compileReference(Reference ref) {
+        String name = ref.name;
+        if (ref.cast != null || name.startsWith(NXQL.ECM_TAG) || name.indexOf('*') >= 0 || name.indexOf('[') >= 0) {
+            return null;
+        }
+        String[] parts = name.split("/");
+        String prop = parts[0];
+        Type type;
+        boolean isTrueOrNullBoolean;
+        if (prop.startsWith(NXQL.ECM_PREFIX)) {
+            try {
+                prop = DBSSession.convToInternal(prop);
+            } catch (QueryParseException | UnsupportedOperationException e) {
+                // let the interpreter fail
+                return null;
+            }
+            if (prop.equals(KEY_ACP) || prop.equals(KEY_MIXIN_TYPES)) {
+                return null;
+            }
+            type = DBSSession.getType(prop);
+            isTrueOrNullBoolean = true;
+        } else {
+            Field field = getField(prop);
+            if (field == null) {
+                return null;
+            }
+            type = field.getType();
+            isTrueOrNullBoolean = false;
+            prop = field.getName().getPrefixedName();
+        }
+        String[] steps = new String[parts.length];
+        steps[0] = prop;
+        if (PROP_MAJOR_VERSION.equals(prop) || PROP_MINOR_VERSION.equals(prop)) {
+            steps[0] = DBSSession.convToInternal(prop);
+        }
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i];
+            if (StringUtils.isNumeric(part) || !(type instanceof ComplexType)) {
+                return null;
+            }
+            Field field = ((ComplexType) type).getField(part);
+            if (field == null) {
+                return null;
+            }
+            type = field.getType();
+            steps[i] = part;
+        }
+        Function<State, Object> traverse = traverse(steps);
+        if (type instanceof BooleanType) {
+            // boolean evaluation is like 0 / 1
+            if (isTrueOrNullBoolean) {
+                return state -> TRUE.equals(traverse.apply(state)) ? ONE : ZERO;
+            } else {
+                return state -> {
+                    Object value = traverse.apply(state);
+                    return value == null ? null : (((Boolean) value).booleanValue() ? ONE : ZERO);
+                };
+            }
+        } else if (type instanceof ListType && ((ListType) type).isArray()) {
+            // don't use null, as list-based matches don't use ternary logic
+            return state -> {
+                Object value = traverse.apply(state);
+                return value == null ? new Object[0] : value;
+            };
+        } else if (type instanceof ListType) {
+            // list of complex properties, only usable through wildcards
+            return null;
+        } else {
+            return traverse;
+        }
+    }
+
+    protected static Function<State, Object> traverse(String[] steps) {
+        if (steps.length == 1) {
+            String key = steps[0];
+            return state -> state.get(key);
+        }
+        return state -> {
+            Object value = state;
+            for (String step : steps) {
+                if (value == null) {
+                    return null;
+                }
+                if (!(value instanceof State)) {
+                    throw new QueryParseException(
+                            "Invalid property " + step + " (no State but " + value.getClass() + ")");
+                }
+                value = ((State) value).get(step);
+            }
+            return value;
+        };
+    }
+
+    /**
+     * Resolves a schema property like {@link DBSExpressionEvaluator#parseReference}, or returns {@code null}.
+     */
+    protected Field getField(String prop) {
+        if (schemaManager == null) {
+            return null;
+        }
+        Field field = schemaManager.getField(prop);
+        if (field != null || prop.indexOf(':') > -1) {
+            return field;
+        }
+        // check without prefix
+        for (Schema schema : schemaManager.getSchemas()) {
+            if (!StringUtils.isBlank(schema.getNamespace().prefix)) {
+                continue;
+            }
+            field = schema.getField(prop);
+            if (field != null) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    protected static Object literalValue(Literal lit) {
+        if (lit instanceof BooleanLiteral) {
+            return Boolean.valueOf(((BooleanLiteral) lit).value);
+        } else if (lit instanceof DateLiteral) {
+            DateLiteral dateLiteral = (DateLiteral) lit;
+            Calendar date = dateLiteral.toCalendar();
+            if (dateLiteral.onlyDate && date != null) {
+                date.set(Calendar.HOUR_OF_DAY, 0);
+                date.set(Calendar.MINUTE, 0);
+                date.set(Calendar.SECOND, 0);
+                date.set(Calendar.MILLISECOND, 0);
+            }
+            return date;
+        } else if (lit instanceof DoubleLiteral) {
+            return Double.valueOf(((DoubleLiteral) lit).value);
+        } else if (lit instanceof IntegerLiteral) {
+            return Long.valueOf(((IntegerLiteral) lit).value);
+        } else if (lit instanceof StringLiteral) {
+            return ((StringLiteral) lit).value;
+        } else {
+            throw new QueryParseException("Unknown literal: " + lit);
+        }
+    }
+
+    // below, same ternary logic as ExpressionEvaluator
+
+    protected static Boolean not(Boolean value) {
+        return value == null ? null : !value;
+    }
+
+    protected static Boolean and(Boolean left, Boolean right) {
+        return TRUE.equals(left) ? right : left;
+    }
+
+    protected static Boolean or(Boolean left, Boolean right) {
+        return TRUE.equals(left) ? left : right;
+    }
+
+    protected static Boolean eq(Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        if (left instanceof Calendar && right instanceof Calendar) {
+            // avoid timezone issues (NXP-20260)
+            return ((Calendar) left).getTimeInMillis() == ((Calendar) right).getTimeInMillis();
+        }
+        return left.equals(right);
+    }
+
+    protected static Boolean eqMaybeList(Object left, Object right) {
+        if (left instanceof Object[]) {
+            for (Object l : ((Object[]) left)) {
+                if (TRUE.equals(eq(l, right))) {
+                    return TRUE;
+                }
+            }
+            return FALSE;
+        } else {
+            return eq(left, right);
+        }
+    }
+
+    protected static Boolean in(Object left, List<Object> right) {
+        if (left == null) {
+            return null;
+        }
+        boolean hasNull = false;
+        for (Object r : right) {
+            if (r == null) {
+                hasNull = true;
+            } else if (left.equals(r)) {
+                return TRUE;
+            }
+        }
+        return hasNull ? null : FALSE;
+    }
+
+    protected static Boolean inMaybeList(Object left, List<Object> right) {
+        if (left instanceof Object[]) {
+            for (Object l : ((Object[]) left)) {
+                if (TRUE.equals(in(l, right))) {
+                    return TRUE;
+                }
+            }
+            return FALSE;
+        } else {
+            return in(left, right);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static Integer cmp(Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        if (!(left instanceof Comparable)) {
+            throw new QueryParseException("Not a comparable: " + left);
+        }
+        return ((Comparable<Object>) left).compareTo(right);
+    }
+
+    protected static Boolean like(Object left, Pattern pattern, boolean caseInsensitive) {
+        if (left == null) {
+            return null;
+        }
+        if (!(left instanceof String)) {
+            throw new QueryParseException("Invalid LIKE lhs: " + left);
+        }
+        String value = (String) left;
+        if (caseInsensitive) {
+            value = value.toLowerCase();
+        }
+        return Boolean.valueOf(pattern.matcher(value).matches());
+    }
+
+    protected static Boolean likeMaybeList(Object left, Pattern pattern, boolean positive, boolean caseInsensitive) {
+        if (left instanceof Object[]) {
+            for (Object l : ((Object[]) left)) {
+                if (TRUE.equals(like(l, pattern, caseInsensitive))) {
+                    return Boolean.valueOf(positive);
+                }
+            }
+            return Boolean.valueOf(!positive);
+        } else {
+            Boolean like = like(left, pattern, caseInsensitive);
+            return positive ? like : not(like);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + cache.size() + " compiled)";
+    }
+
+}
@@ -36,6 +36,14 @@ public class DBSFulltextExtractorWork extends FulltextExtractorWork {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected DBSFulltextExtractorWork() {
+    }
+
     public DBSFulltextExtractorWork(String repositoryName, String docId) {
         super(repositoryName, docId, true);
     }
@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.nuxeo.runtime.pubsub.CompactIdsCodec;
 import org.nuxeo.runtime.pubsub.SerializableAccumulableInvalidations;
 
 /**
@@ -132,10 +133,17 @@ public class DBSInvalidations implements SerializableAccumulableInvalidations {
 
     private static final int ID_SEP = (byte) ',';
 
+    /** @since 10.1 */
+    private static final int COMPACT_IDS = (byte) 'C';
+
     @Override
     public void serialize(OutputStream out) throws IOException {
         if (all) {
             out.write(ALL_IDS);
+        } else if (ids != null && CompactIdsCodec.isWorthEncoding(ids)) {
+            // UUIDs and sequence ids
+            out.write(COMPACT_IDS);
+            CompactIdsCodec.writeIds(out, ids);
         } else if (ids != null) {
             for (String id : ids) {
                 out.write(ID_SEP);
@@ -153,6 +161,8 @@ public class DBSInvalidations implements SerializableAccumulableInvalidations {
         DBSInvalidations invalidations = new DBSInvalidations();
         if (first == ALL_IDS) {
             invalidations.setAll();
+        } else if (first == COMPACT_IDS) {
+            CompactIdsCodec.readIds(in, id -> invalidations.add(id.toString()));
         } else if (first != ID_SEP) {
             // invalid message
             return null;
@@ -144,6 +144,23 @@ public interface DBSRepository extends Repository, LockManager {
      */
     void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater);
 
+    /**
+     * Updates documents.
+     * <p>
+     * Implementations should send all the updates to the storage in as few round-trips as possible. The updates are
+     * not atomic as a whole: if a {@link org.nuxeo.ecm.core.api.ConcurrentUpdateException ConcurrentUpdateException}
+     * is thrown, some documents may have been updated anyway.
+     *
+     * @param diffs the diffs to apply, keyed by document id
+     * @param changeTokenUpdaters how to get and update the change tokens, keyed by document id (may be {@code null}
+     *            or lack entries for some documents)
+     * @since 10.1
+     */
+    default void updateStates(Map<String, StateDiff> diffs, Map<String, ChangeTokenUpdater> changeTokenUpdaters) {
+        diffs.forEach((id, diff) -> updateState(id, diff,
+                changeTokenUpdaters == null ? null : changeTokenUpdaters.get(id)));
+    }
+
     /**
      * Deletes a set of document.
      *
@@ -251,6 +268,18 @@ public interface DBSRepository extends Repository, LockManager {
     PartialList<Map<String, Serializable>> queryAndFetch(DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
             boolean distinctDocuments, int limit, int offset, int countUpTo);
 
+    /**
+     * Queries the repository for documents matching a NXQL query, and returns their ids as a stream backed by a
+     * database cursor.
+     *
+     * @param evaluator the map-based evaluator for the query
+     * @param orderByClause an ORDER BY clause
+     * @param fetchSize the number of documents fetched from the database at a time
+     * @return a stream of document ids, which <b>must</b> be closed when done
+     * @since 10.1
+     */
+    Stream<String> queryStream(DBSExpressionEvaluator evaluator, OrderByClause orderByClause, int fetchSize);
+
     /**
      * Gets the lock manager for this repository.
      *
@@ -22,6 +22,7 @@ import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.repository.Repository;
 import org.nuxeo.ecm.core.api.repository.RepositoryManager;
 import org.nuxeo.ecm.core.repository.RepositoryFactory;
+import org.nuxeo.ecm.core.storage.BaseDocument;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.DefaultComponent;
@@ -70,6 +71,7 @@ public class DBSRepositoryService extends DefaultComponent {
     @Override
     public void activate(ComponentContext context) {
         registry.clear();
+        BaseDocument.initLazyProperties();
     }
 
     @Override
@@ -79,6 +79,7 @@ import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -393,6 +394,51 @@ public class DBSSession implements Session {
         throw new DocumentNotFoundException(id);
     }
 
+    @Override
+    public List<Document> getDocumentsByUUID(List<String> ids, Set<String> schemas) {
+        // schemas are ignored, states are always fetched whole
+        List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        // fetches the missing states in bulk, using the cache if any
+        List<DBSDocumentState> docStates = transaction.getStatesForUpdate(uniqueIds);
+        Map<String, Document> docsById = new HashMap<>(docStates.size());
+        for (DBSDocumentState docState : docStates) {
+            Document doc;
+            try {
+                doc = getDocument(docState);
+            } catch (DocumentNotFoundException e) {
+                // unknown type in db
+                continue;
+            }
+            docsById.put(docState.getId(), doc);
+        }
+        List<Document> docs = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            docs.add(docsById.get(id));
+        }
+        return docs;
+    }
+
+    @Override
+    public List<Document> readDocumentsByUUID(List<String> ids) {
+        List<DBSDocumentState> docStates = transaction.getStatesForRead(ids);
+        Map<String, Document> docsById = new HashMap<>(docStates.size());
+        for (DBSDocumentState docState : docStates) {
+            Document doc;
+            try {
+                doc = getDocument(docState);
+            } catch (DocumentNotFoundException e) {
+                // unknown type in db
+                continue;
+            }
+            docsById.put(docState.getId(), doc);
+        }
+        List<Document> docs = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            docs.add(docsById.get(id));
+        }
+        return docs;
+    }
+
     @Override
     public Document getRootDocument() {
         return getDocument(getRootId());
@@ -1474,6 +1520,30 @@ public class DBSSession implements Session {
         }
     }
 
+    @Override
+    public Stream<String> queryStream(String query, QueryFilter queryFilter, int fetchSize) {
+        // transform the query according to the transformers defined by the
+        // security policies
+        SQLQuery sqlQuery = SQLQueryParser.parse(query);
+        for (SQLQuery.Transformer transformer : queryFilter.getQueryTransformers()) {
+            sqlQuery = transformer.transform(queryFilter.getPrincipal(), sqlQuery);
+        }
+        SelectClause selectClause = sqlQuery.select;
+        if (selectClause.isEmpty()) {
+            // turned into SELECT ecm:uuid
+            selectClause.add(new Reference(NXQL.ECM_UUID));
+        }
+        if (isOrderByPath(sqlQuery.orderBy)) {
+            // would need all the results in memory to be sorted
+            throw new QueryParseException("Cannot stream a query ordered by " + NXQL.ECM_PATH);
+        }
+        QueryOptimizer optimizer = new DBSQueryOptimizer().withFacetFilter(queryFilter.getFacetFilter());
+        sqlQuery = optimizer.optimize(sqlQuery);
+        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(this, sqlQuery, queryFilter.getPrincipals(),
+                fulltextSearchDisabled);
+        return repository.queryStream(evaluator, sqlQuery.orderBy, fetchSize);
+    }
+
     protected PartialList<Map<String, Serializable>> doQueryAndFetch(String query, String queryType,
             QueryFilter queryFilter, boolean distinctDocuments, int countUpTo, Mutable<String> idKeyHolder) {
         if ("NXTAG".equals(queryType)) {
@@ -58,12 +58,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
@@ -95,6 +97,10 @@ import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.core.work.api.WorkManager.Scheduling;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 
 /**
  * Transactional state for a session.
@@ -247,6 +253,40 @@ public class DBSTransactionState {
         return docStates;
     }
 
+    /**
+     * Returns states which won't be modified. The states read from the repository are not kept in the transient
+     * states, so that reading many documents doesn't make the transaction state grow.
+     *
+     * @since 10.1
+     */
+    public List<DBSDocumentState> getStatesForRead(List<String> ids) {
+        List<String> idsToFetch = new LinkedList<>();
+        for (String id : ids) {
+            if (!transientStates.containsKey(id)) {
+                idsToFetch.add(id);
+            }
+        }
+        Map<String, DBSDocumentState> fetched = new HashMap<>(idsToFetch.size());
+        if (!idsToFetch.isEmpty()) {
+            for (State state : repository.readStates(idsToFetch)) {
+                if (state != null) {
+                    fetched.put((String) state.get(KEY_ID), new DBSDocumentState(state));
+                }
+            }
+        }
+        List<DBSDocumentState> docStates = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            DBSDocumentState docState = transientStates.get(id);
+            if (docState == null) {
+                docState = fetched.get(id);
+            }
+            if (docState != null) {
+                docStates.add(docState);
+            }
+        }
+        return docStates;
+    }
+
     // XXX TODO for update or for read?
     public DBSDocumentState getChildState(String parentId, String name) {
         // check transient state
@@ -525,7 +565,7 @@ public class DBSTransactionState {
 
         @Override
         public Work getBatchProcessorWork(List<String> docIds) {
-            return new UpdateReadAclsWork(repositoryName, docIds, getOriginatingUsername());
+            return new UpdateReadAclsWork(repositoryName, docIds, getOriginatingUsername(), getSchedulingTime());
         }
     }
 
@@ -538,8 +578,29 @@ public class DBSTransactionState {
 
         private static final long serialVersionUID = 1L;
 
+        /** The time at which the Read ACL update was requested, to compute the lag. */
+        protected long requestTime;
+
+        /**
+         * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+         *
+         * @since 10.1
+         */
+        protected UpdateReadAclsWork() {
+        }
+
         public UpdateReadAclsWork(String repositoryName, List<String> docIds, String originatingUsername) {
             super(repositoryName, docIds, originatingUsername);
+            requestTime = getSchedulingTime();
+        }
+
+        /**
+         * @since 10.1
+         */
+        public UpdateReadAclsWork(String repositoryName, List<String> docIds, String originatingUsername,
+                long requestTime) {
+            super(repositoryName, docIds, originatingUsername);
+            this.requestTime = requestTime;
         }
 
         @Override
@@ -561,6 +622,14 @@ public class DBSTransactionState {
         public void processBatch(List<String> docIds) {
             session.updateReadACLs(docIds);
         }
+
+        @Override
+        public void work() {
+            super.work();
+            MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+            registry.timer(MetricRegistry.name("nuxeo", "repositories", repositoryName, "aclr-updates-lag"))
+                    .update(System.currentTimeMillis() - requestTime, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -568,7 +637,19 @@ public class DBSTransactionState {
      * itself (not the ancestors, needed for ACL inheritance and for which caching is useful).
      */
     public void updateReadACLs(Collection<String> docIds) {
-        docIds.forEach(id -> updateDocumentReadAclsNoCache(id));
+        // the documents of a batch usually share ancestors, compute their Read ACLs only once
+        Map<String, String[]> ancestorsReadAcls = new HashMap<>();
+        Map<String, StateDiff> diffs = new LinkedHashMap<>();
+        for (String id : docIds) {
+            StateDiff diff = getDocumentReadAclsDiffNoCache(id, ancestorsReadAcls);
+            if (diff != null) {
+                diffs.put(id, diff);
+            }
+        }
+        if (!diffs.isEmpty()) {
+            // no transient for state write, we write directly and just invalidate caches
+            repository.updateStates(diffs, null);
+        }
     }
 
     /**
@@ -586,6 +667,21 @@ public class DBSTransactionState {
      * used.
      */
     protected void updateDocumentReadAclsNoCache(String id) {
+        StateDiff diff = getDocumentReadAclsDiffNoCache(id, new HashMap<>());
+        if (diff != null) {
+            // no transient for state write, we write directly and just invalidate caches
+            repository.updateState(id, diff, null);
+        }
+    }
+
+    /**
+     * Computes the diff to apply to update the Read ACLs on a document, without polluting caches.
+     *
+     * @param ancestorsReadAcls the Read ACLs already computed for ancestors, filled as needed
+     * @return the diff, or {@code null} if there is nothing to update
+     * @since 10.1
+     */
+    protected StateDiff getDocumentReadAclsDiffNoCache(String id, Map<String, String[]> ancestorsReadAcls) {
         // no transient for state read, and we don't want to trash caches
         // fetch from repository only the properties needed for Read ACL computation and recursion
         State state = repository.readPartialState(id, READ_ACL_RECURSION_KEYS);
@@ -593,12 +689,9 @@ public class DBSTransactionState {
         oldState.put(KEY_READ_ACL, state.get(KEY_READ_ACL));
         // compute new value
         State newState = new State(1);
-        newState.put(KEY_READ_ACL, getReadACL(state));
+        newState.put(KEY_READ_ACL, getReadACL(state, ancestorsReadAcls));
         StateDiff diff = StateHelper.diff(oldState, newState);
-        if (!diff.isEmpty()) {
-            // no transient for state write, we write directly and just invalidate caches
-            repository.updateState(id, diff, null);
-        }
+        return diff.isEmpty() ? null : diff;
     }
 
     /**
@@ -606,40 +699,89 @@ public class DBSTransactionState {
      */
     protected String[] getReadACL(State state) {
         Set<String> racls = new HashSet<>();
-        LOOP: do {
+        do {
+            if (addLocalReadACL(state, racls)) {
+                break;
+            }
+            String parentId = getReadACLParentId(state);
+            state = parentId == null ? null : getStateForRead(parentId);
+        } while (state != null);
+        return toCanonicalReadACL(racls);
+    }
+
+    /**
+     * Gets the Read ACL on a document, reusing and filling a cache of the Read ACLs of its ancestors.
+     *
+     * @param ancestorsReadAcls the Read ACLs already computed, keyed by document id
+     * @since 10.1
+     */
+    protected String[] getReadACL(State state, Map<String, String[]> ancestorsReadAcls) {
+        Set<String> racls = new HashSet<>();
+        if (!addLocalReadACL(state, racls)) {
+            String parentId = getReadACLParentId(state);
+            if (parentId != null) {
+                String[] parentRacl = ancestorsReadAcls.get(parentId);
+                if (parentRacl == null) {
+                    State parentState = getStateForRead(parentId);
+                    if (parentState != null) {
+                        parentRacl = getReadACL(parentState, ancestorsReadAcls);
+                        ancestorsReadAcls.put(parentId, parentRacl);
+                    }
+                }
+                if (parentRacl != null) {
+                    Collections.addAll(racls, parentRacl);
+                }
+            }
+        }
+        return toCanonicalReadACL(racls);
+    }
+
+    /**
+     * Adds the users having browse permission from the local ACLs of a document.
+     *
+     * @return {@code true} if inheritance from the parent is blocked
+     */
+    protected boolean addLocalReadACL(State state, Set<String> racls) {
+        @SuppressWarnings("unchecked")
+        List<Serializable> aclList = (List<Serializable>) state.get(KEY_ACP);
+        if (aclList == null) {
+            return false;
+        }
+        for (Serializable aclSer : aclList) {
+            State aclMap = (State) aclSer;
             @SuppressWarnings("unchecked")
-            List<Serializable> aclList = (List<Serializable>) state.get(KEY_ACP);
-            if (aclList != null) {
-                for (Serializable aclSer : aclList) {
-                    State aclMap = (State) aclSer;
-                    @SuppressWarnings("unchecked")
-                    List<Serializable> aceList = (List<Serializable>) aclMap.get(KEY_ACL);
-                    for (Serializable aceSer : aceList) {
-                        State aceMap = (State) aceSer;
-                        String username = (String) aceMap.get(KEY_ACE_USER);
-                        String permission = (String) aceMap.get(KEY_ACE_PERMISSION);
-                        Boolean granted = (Boolean) aceMap.get(KEY_ACE_GRANT);
-                        Long status = (Long) aceMap.get(KEY_ACE_STATUS);
-                        if (TRUE.equals(granted) && browsePermissions.contains(permission)
-                                && (status == null || status == 1)) {
-                            racls.add(username);
-                        }
-                        if (FALSE.equals(granted)) {
-                            if (!EVERYONE.equals(username)) {
-                                // TODO log
-                                racls.add(UNSUPPORTED_ACL);
-                            }
-                            break LOOP;
-                        }
+            List<Serializable> aceList = (List<Serializable>) aclMap.get(KEY_ACL);
+            for (Serializable aceSer : aceList) {
+                State aceMap = (State) aceSer;
+                String username = (String) aceMap.get(KEY_ACE_USER);
+                String permission = (String) aceMap.get(KEY_ACE_PERMISSION);
+                Boolean granted = (Boolean) aceMap.get(KEY_ACE_GRANT);
+                Long status = (Long) aceMap.get(KEY_ACE_STATUS);
+                if (TRUE.equals(granted) && browsePermissions.contains(permission)
+                        && (status == null || status == 1)) {
+                    racls.add(username);
+                }
+                if (FALSE.equals(granted)) {
+                    if (!EVERYONE.equals(username)) {
+                        // TODO log
+                        racls.add(UNSUPPORTED_ACL);
                     }
+                    return true;
                 }
             }
-            // get the parent; for a version the parent is the live document
-            String parentKey = TRUE.equals(state.get(KEY_IS_VERSION)) ? KEY_VERSION_SERIES_ID : KEY_PARENT_ID;
-            String parentId = (String) state.get(parentKey);
-            state = parentId == null ? null : getStateForRead(parentId);
-        } while (state != null);
+        }
+        return false;
+    }
+
+    /**
+     * Gets the id of the document from which the Read ACL is inherited; for a version this is the live document.
+     */
+    protected String getReadACLParentId(State state) {
+        String parentKey = TRUE.equals(state.get(KEY_IS_VERSION)) ? KEY_VERSION_SERIES_ID : KEY_PARENT_ID;
+        return (String) state.get(parentKey);
+    }
 
+    protected String[] toCanonicalReadACL(Set<String> racls) {
         // sort to have canonical order
         List<String> racl = new ArrayList<>(racls);
         Collections.sort(racl);
@@ -752,6 +894,8 @@ public class DBSTransactionState {
         if (!statesToCreate.isEmpty()) {
             repository.createStates(statesToCreate);
         }
+        Map<String, StateDiff> diffs = new LinkedHashMap<>();
+        Map<String, ChangeTokenUpdater> changeTokenUpdaters = new HashMap<>();
         for (DBSDocumentState docState : transientStates.values()) {
             String id = docState.getId();
             if (transientCreated.contains(id)) {
@@ -780,10 +924,17 @@ public class DBSTransactionState {
                 } else {
                     changeTokenUpdater = null;
                 }
-                repository.updateState(id, diff, changeTokenUpdater);
+                diffs.put(id, diff);
+                if (changeTokenUpdater != null) {
+                    changeTokenUpdaters.put(id, changeTokenUpdater);
+                }
             }
             docState.setNotDirty();
         }
+        if (!diffs.isEmpty()) {
+            // flush all the updates at once
+            repository.updateStates(diffs, changeTokenUpdaters);
+        }
         transientCreated.clear();
         userChangeIds.clear();
         scheduleWork(works);
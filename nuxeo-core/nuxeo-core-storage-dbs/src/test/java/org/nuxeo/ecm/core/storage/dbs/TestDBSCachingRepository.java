@@ -34,7 +34,9 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.junit.After;
@@ -131,6 +133,28 @@ public class TestDBSCachingRepository {
         verify(subRepository, times(2)).readState(eq(id));
     }
 
+    @Test
+    public void testUpdateStates() {
+        String id1 = "ID1";
+        String id2 = "ID2";
+
+        // First add states in cache
+        repository.readStates(Arrays.asList(id1, id2));
+        repository.readStates(Arrays.asList(id1, id2));
+        verify(subRepository, times(1)).readStates(eq(Arrays.asList(id1, id2)));
+
+        // Second update these states at once
+        Map<String, StateDiff> diffs = new LinkedHashMap<>();
+        diffs.put(id1, mock(StateDiff.class));
+        diffs.put(id2, mock(StateDiff.class));
+        repository.updateStates(diffs, null);
+        verify(subRepository, times(1)).updateStates(eq(diffs), any());
+
+        // Check states are no longer in cache
+        repository.readStates(Arrays.asList(id1, id2));
+        verify(subRepository, times(2)).readStates(eq(Arrays.asList(id1, id2)));
+    }
+
     @Test
     public void testDeleteStates() {
         String id = "ID";
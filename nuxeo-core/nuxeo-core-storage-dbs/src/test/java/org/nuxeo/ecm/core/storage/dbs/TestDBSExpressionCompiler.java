@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestDBSExpressionCompiler extends NXRuntimeTestCase {
+
+    protected DBSExpressionCompiler compiler;
+
+    protected List<State> states;
+
+    private static final ArrayList<Object> list(Object... values) {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    private static final State state(Serializable... values) {
+        State state = new State();
+        for (int i = 0; i < values.length; i += 2) {
+            state.put((String) values[i], values[i + 1]);
+        }
+        return state;
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        deployBundle("org.nuxeo.ecm.core.schema");
+        deployContrib("org.nuxeo.ecm.core.storage.dbs.tests", "OSGI-INF/test-complex.xml");
+        compiler = new DBSExpressionCompiler(Framework.getService(SchemaManager.class));
+        states = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String parentId = "folder" + (i % 4);
+            states.add(state( //
+                    "ecm:id", "id" + i, //
+                    "ecm:name", i % 6 == 0 ? "Doc-" + i : "doc-" + i, //
+                    "ecm:parentId", parentId, //
+                    "ecm:ancestorIds", new Object[] { "root", parentId }, //
+                    "ecm:primaryType", i % 3 == 0 ? "Note" : "File", //
+                    "ecm:isProxy", i % 5 == 0 ? Boolean.TRUE : null, //
+                    "cmp:addresses", i % 2 == 0 ? list(state("city", "Paris", "number", Long.valueOf(i))) : null));
+        }
+    }
+
+    protected SQLQuery query(String where) {
+        return SQLQueryParser.parse("SELECT ecm:uuid FROM Document WHERE " + where);
+    }
+
+    /**
+     * Checks that the compiled predicate never rejects a state matched by the interpreter, and returns the number of
+     * states it accepted.
+     */
+    protected int checkConsistent(String where) {
+        SQLQuery query = query(where);
+        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(null, query, null, false);
+        evaluator.parse();
+        Predicate<State> predicate = compiler.compile(query.where.predicate);
+        int accepted = 0;
+        for (State state : states) {
+            boolean matches = !evaluator.matches(state).isEmpty();
+            boolean test = predicate.test(state);
+            if (matches) {
+                assertTrue(where + " on " + state, test);
+            }
+            if (test) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Checks that the compiled predicate gives exactly the same results as the interpreter.
+     */
+    protected void checkExact(String where) {
+        SQLQuery query = query(where);
+        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(null, query, null, false);
+        evaluator.parse();
+        Predicate<State> predicate = compiler.compile(query.where.predicate);
+        assertTrue(where, DBSExpressionCompiler.isFiltering(predicate));
+        for (State state : states) {
+            boolean matches = !evaluator.matches(state).isEmpty();
+            assertEquals(where + " on " + state, matches, predicate.test(state));
+        }
+    }
+
+    @Test
+    public void testExact() {
+        checkExact("ecm:primaryType = 'File'");
+        checkExact("ecm:primaryType <> 'File'");
+        checkExact("ecm:primaryType IN ('File', 'Folder')");
+        checkExact("ecm:primaryType NOT IN ('File', 'Folder')");
+        checkExact("ecm:isProxy = 0");
+        checkExact("ecm:isProxy = 1");
+        checkExact("ecm:name LIKE 'doc-1%'");
+        checkExact("ecm:name ILIKE 'doc-1%'");
+        checkExact("ecm:name NOT LIKE 'doc-_'");
+        checkExact("ecm:name > 'doc-15'");
+        checkExact("ecm:name <= 'doc-15'");
+        checkExact("ecm:ancestorId = 'folder1'");
+        checkExact("ecm:ancestorId <> 'folder1'");
+        checkExact("ecm:parentId = 'folder1' OR ecm:name = 'doc-2'");
+        checkExact("NOT (ecm:parentId = 'folder1' AND ecm:isProxy = 1)");
+        checkExact("ecm:primaryType = 'File' AND ecm:isProxy = 0 AND ecm:parentId IN ('folder1', 'folder2')");
+        checkExact("ecm:lockOwner IS NULL");
+        checkExact("ecm:lockOwner IS NOT NULL");
+    }
+
+    @Test
+    public void testNotCompiled() {
+        // wildcards are left to the interpreter
+        SQLQuery query = query("cmp:addresses/*1/city = 'Paris'");
+        Predicate<State> predicate = compiler.compile(query.where.predicate);
+        assertFalse(DBSExpressionCompiler.isFiltering(predicate));
+        assertEquals(states.size(), checkConsistent("cmp:addresses/*1/city = 'Paris'"));
+        // so is an OR or a NOT with them
+        assertEquals(states.size(), checkConsistent("cmp:addresses/*1/city = 'Paris' OR ecm:isProxy = 1"));
+        assertEquals(states.size(), checkConsistent("NOT (cmp:addresses/*1/city = 'Paris' AND ecm:isProxy = 1)"));
+    }
+
+    @Test
+    public void testPartiallyCompiled() {
+        // the AND is still filtered on the compilable part
+        int accepted = checkConsistent("cmp:addresses/*1/city = 'Paris' AND ecm:isProxy = 1");
+        assertEquals(4, accepted);
+        accepted = checkConsistent("ecm:parentId = 'folder0' AND (cmp:addresses/*1/number = 4 OR ecm:isProxy = 1)");
+        assertEquals(5, accepted);
+    }
+
+    @Test
+    public void testCache() {
+        SQLQuery query1 = query("ecm:primaryType = 'File'");
+        SQLQuery query2 = query("ecm:primaryType = 'File'");
+        assertSame(compiler.getPredicate(query1.where.predicate), compiler.getPredicate(query2.where.predicate));
+    }
+
+}
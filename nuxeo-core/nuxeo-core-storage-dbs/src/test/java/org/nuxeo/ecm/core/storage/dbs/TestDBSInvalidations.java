@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.UUID;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.junit.Test;
@@ -92,4 +93,19 @@ public class TestDBSInvalidations {
         assertEquals(new HashSet<>(Arrays.asList("foo", "bar")), invals.ids);
     }
 
+    @Test
+    public void testCompactSerialization() throws IOException {
+        String uuid = UUID.randomUUID().toString();
+        DBSInvalidations invals = new DBSInvalidations();
+        invals.addAll(Arrays.asList(uuid, "123", "124", "foo"));
+        @SuppressWarnings("resource")
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        invals.serialize(baout);
+        byte[] bytes = baout.toByteArray();
+        assertEquals('C', bytes[0]);
+        assertTrue(bytes.length < 1 + uuid.length());
+        invals = DBSInvalidations.deserialize(new ByteArrayInputStream(bytes));
+        assertEquals(new HashSet<>(Arrays.asList(uuid, "123", "124", "foo")), invals.ids);
+    }
+
 }
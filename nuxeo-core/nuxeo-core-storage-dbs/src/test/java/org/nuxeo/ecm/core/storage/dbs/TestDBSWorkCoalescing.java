@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.WorkCoalescer;
+import org.nuxeo.ecm.core.work.api.Work;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Checks that the fulltext extractions scheduled by a burst of updates of a document are coalesced.
+ *
+ * @since 10.1
+ */
+public class TestDBSWorkCoalescing {
+
+    protected static final String QUEUE = "fulltextExtractor";
+
+    protected final List<Work> enqueued = new CopyOnWriteArrayList<>();
+
+    protected final WorkCoalescer coalescer = new WorkCoalescer(Collections.singletonMap(QUEUE, Long.valueOf(60000)),
+            WorkCoalescer.DEFAULT_CAPACITY, (queueId, work) -> enqueued.add(work), new MetricRegistry());
+
+    @After
+    public void tearDown() {
+        coalescer.close();
+    }
+
+    @Test
+    public void testFulltextExtractorWork() {
+        Work first = new DBSFulltextExtractorWork("test", "doc1");
+        Work last = new DBSFulltextExtractorWork("test", "doc1");
+        // random ids, same document
+        assertNotEquals(first.getId(), last.getId());
+        assertEquals(first.getCoalescingKey(), last.getCoalescingKey());
+
+        coalescer.offer(QUEUE, first);
+        coalescer.offer(QUEUE, last);
+        coalescer.offer(QUEUE, new DBSFulltextExtractorWork("test", "doc2"));
+        coalescer.offer(QUEUE, new DBSFulltextExtractorWork("other", "doc1"));
+        assertTrue(enqueued.isEmpty());
+        assertEquals(3, coalescer.getPendingCount(QUEUE));
+        assertSame(last, coalescer.findPending(last.getId()));
+
+        coalescer.flush(QUEUE);
+        assertEquals(3, enqueued.size());
+        assertTrue(enqueued.contains(last));
+        assertFalse(enqueued.contains(first));
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.dbs.benchmark;
+
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_PROXY;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LIFECYCLE_STATE;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.dbs.DBSExpressionCompiler;
+import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
+import org.nuxeo.runtime.api.DefaultServiceProvider;
+import org.nuxeo.runtime.api.ServiceProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the evaluation of a query on a set of states by the {@link DBSExpressionEvaluator} interpreter alone, and
+ * with the {@link DBSExpressionCompiler compiled} pre-filter.
+ * <p>
+ * Only {@code ecm:} properties are used, so that no schema manager is needed.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.ecm.core.storage.dbs.benchmark.ExpressionEvaluatorBenchmark}.
+ *
+ * @since 10.1
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionEvaluatorBenchmark {
+
+    protected static final int DOCS = 1000;
+
+    @Param({ "SELECT ecm:uuid FROM Document WHERE ecm:primaryType = 'File' AND ecm:isProxy = 0",
+            "SELECT ecm:uuid FROM Document WHERE ecm:ancestorId = 'folder3' AND ecm:currentLifeCycleState <> 'deleted'"
+                    + " AND ecm:name LIKE 'doc-1%'",
+            "SELECT ecm:uuid FROM Document WHERE ecm:parentId IN ('folder1', 'folder2') OR ecm:name = 'doc-42'" })
+    public String nxql;
+
+    protected List<State> states;
+
+    protected DBSExpressionEvaluator evaluator;
+
+    protected Predicate<State> predicate;
+
+    @Setup
+    public void setup() {
+        // no runtime, the schema manager is only needed for non-ecm properties
+        DefaultServiceProvider.setProvider(new ServiceProvider() {
+            @Override
+            public <T> T getService(Class<T> serviceClass) {
+                return null;
+            }
+        });
+        states = new ArrayList<>(DOCS);
+        for (int i = 0; i < DOCS; i++) {
+            String parentId = "folder" + (i % 10);
+            State state = new State();
+            state.put(KEY_ID, "id" + i);
+            state.put(KEY_NAME, "doc-" + i);
+            state.put(KEY_PARENT_ID, parentId);
+            state.put(KEY_ANCESTOR_IDS, new Object[] { "root", parentId });
+            state.put(KEY_PRIMARY_TYPE, i % 3 == 0 ? "Note" : "File");
+            state.put(KEY_LIFECYCLE_STATE, i % 7 == 0 ? "deleted" : "project");
+            if (i % 5 == 0) {
+                state.put(KEY_IS_PROXY, Boolean.TRUE);
+            }
+            states.add(state);
+        }
+        SQLQuery query = SQLQueryParser.parse(nxql);
+        evaluator = new DBSExpressionEvaluator(null, query, null, false);
+        evaluator.parse();
+        predicate = new DBSExpressionCompiler(null).getPredicate(evaluator.getExpression());
+    }
+
+    @TearDown
+    public void tearDown() {
+        DefaultServiceProvider.setProvider(null);
+    }
+
+    @Benchmark
+    public int interpreted() {
+        int count = 0;
+        for (State state : states) {
+            if (!evaluator.matches(state).isEmpty()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int compiledThenInterpreted() {
+        int count = 0;
+        for (State state : states) {
+            if (predicate.test(state) && !evaluator.matches(state).isEmpty()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int compiled() {
+        int count = 0;
+        for (State state : states) {
+            if (predicate.test(state)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExpressionEvaluatorBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.nuxeo.ecm.core.storage.State;
+
+/**
+ * Secondary indexes of the {@link MemRepository}, from the value of a top-level key of a state to the ids of the states
+ * having this value.
+ * <p>
+ * Array values are indexed element by element. The indexes are concurrent but not transactional: a reader may see a
+ * state through an index while it's being updated, so the values of the states found must always be checked again.
+ *
+ * @since 10.1
+ */
+public class MemIndexes {
+
+    /** Key -> value -> ids. */
+    protected final Map<String, Map<Object, Set<String>>> indexes = new HashMap<>();
+
+    public MemIndexes(Collection<String> keys) {
+        for (String key : keys) {
+            indexes.put(key, new ConcurrentHashMap<>());
+        }
+    }
+
+    public boolean isIndexed(String key) {
+        return indexes.containsKey(key);
+    }
+
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(indexes.keySet());
+    }
+
+    /**
+     * Gets the ids of the states having the given value for an indexed key.
+     */
+    public Set<String> get(String key, Object value) {
+        Set<String> ids = indexes.get(key).get(value);
+        return ids == null ? Collections.emptySet() : ids;
+    }
+
+    /**
+     * Gets the values of the indexed keys of a state, to be passed later to {@link #update}.
+     */
+    public Map<String, Set<Object>> getIndexedValues(State state) {
+        Map<String, Set<Object>> values = new HashMap<>();
+        for (String key : indexes.keySet()) {
+            Set<Object> set = values(state.get(key));
+            if (!set.isEmpty()) {
+                values.put(key, set);
+            }
+        }
+        return values;
+    }
+
+    protected static Set<Object> values(Serializable value) {
+        if (value == null) {
+            return Collections.emptySet();
+        }
+        Set<Object> set = new HashSet<>();
+        if (value instanceof Object[]) {
+            for (Object v : (Object[]) value) {
+                if (v != null) {
+                    set.add(v);
+                }
+            }
+        } else if (value instanceof Collection) {
+            for (Object v : (Collection<?>) value) {
+                if (v != null) {
+                    set.add(v);
+                }
+            }
+        } else {
+            set.add(value);
+        }
+        return set;
+    }
+
+    public void add(String id, State state) {
+        update(id, Collections.emptyMap(), getIndexedValues(state));
+    }
+
+    public void remove(String id, State state) {
+        update(id, getIndexedValues(state), Collections.emptyMap());
+    }
+
+    /**
+     * Updates the indexes of a state. New values are added before old values are removed, so that a concurrent reader
+     * never misses a state whose indexed value doesn't change.
+     */
+    public void update(String id, Map<String, Set<Object>> oldValues, Map<String, Set<Object>> newValues) {
+        for (Entry<String, Set<Object>> en : newValues.entrySet()) {
+            Map<Object, Set<String>> index = indexes.get(en.getKey());
+            for (Object value : en.getValue()) {
+                // atomic with the removal of empty sets
+                index.compute(value, (k, ids) -> {
+                    if (ids == null) {
+                        ids = ConcurrentHashMap.newKeySet();
+                    }
+                    ids.add(id);
+                    return ids;
+                });
+            }
+        }
+        for (Entry<String, Set<Object>> en : oldValues.entrySet()) {
+            Map<Object, Set<String>> index = indexes.get(en.getKey());
+            Set<Object> kept = newValues.getOrDefault(en.getKey(), Collections.emptySet());
+            for (Object value : en.getValue()) {
+                if (kept.contains(value)) {
+                    continue;
+                }
+                index.computeIfPresent(value, (k, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        }
+    }
+
+    public void clear() {
+        indexes.values().forEach(Map::clear);
+    }
+
+}
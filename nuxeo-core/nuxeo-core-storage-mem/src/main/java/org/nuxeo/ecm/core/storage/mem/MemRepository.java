@@ -27,23 +27,43 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LOCK_CREATED;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LOCK_OWNER;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.resource.spi.ConnectionManager;
@@ -61,12 +81,23 @@ import org.nuxeo.ecm.core.api.model.Delta;
 import org.nuxeo.ecm.core.blob.DocumentBlobManager;
 import org.nuxeo.ecm.core.model.LockManager;
 import org.nuxeo.ecm.core.model.Repository;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
 import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.ListDiff;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.StateHelper;
 import org.nuxeo.ecm.core.storage.dbs.DBSDocument;
+import org.nuxeo.ecm.core.storage.dbs.DBSExpressionCompiler;
 import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
 import org.nuxeo.ecm.core.storage.dbs.DBSSession.OrderByComparator;
@@ -80,6 +111,13 @@ import org.nuxeo.runtime.api.Framework;
  * <p>
  * A document object is a JSON-like document stored as a Map recursively containing the data, see {@link DBSDocument}
  * for the description of the document.
+ * <p>
+ * Updates of a document are serialized through a lock stripe chosen from its id, updates of unrelated documents don't
+ * contend. Reads don't lock. {@link MemIndexes Secondary indexes} on the parent id, primary type, ancestor ids and the
+ * configured keys are used to avoid full scans for child lookups, descendants and queries having a top-level equality
+ * condition on one of them.
+ * <p>
+ * When a snapshot file is configured, the repository is restored from it on startup and saved to it on shutdown.
  *
  * @since 5.9.4
  */
@@ -89,6 +127,22 @@ public class MemRepository extends DBSRepositoryBase {
 
     protected static final String NOSCROLL_ID = "noscroll";
 
+    /** @since 10.1 */
+    protected static final int LOCK_STRIPES = 64;
+
+    /** @since 10.1 */
+    protected static final int SNAPSHOT_MAGIC = 0x4E584D53; // NXMS
+
+    /** @since 10.1 */
+    protected static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * Property to disable the compiled pre-filtering of queries.
+     *
+     * @since 10.1
+     */
+    public static final String COMPILE_QUERIES_PROP = "nuxeo.mem.query.compile";
+
     // for debug
     private final AtomicLong temporaryIdCounter = new AtomicLong(0);
 
@@ -97,8 +151,37 @@ public class MemRepository extends DBSRepositoryBase {
      */
     protected Map<String, State> states;
 
+    /**
+     * Locks serializing the updates of a document, chosen from its id.
+     *
+     * @since 10.1
+     */
+    protected final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    /** @since 10.1 */
+    protected final List<String> indexedKeys;
+
+    /** @since 10.1 */
+    protected MemIndexes indexes;
+
+    /** @since 10.1 */
+    protected final Path snapshotPath;
+
+    /** @since 10.1 */
+    protected volatile DBSExpressionCompiler compiler;
+
     public MemRepository(ConnectionManager cm, MemRepositoryDescriptor descriptor) {
         super(cm, descriptor.name, descriptor);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        indexedKeys = new ArrayList<>(Arrays.asList(KEY_PARENT_ID, KEY_PRIMARY_TYPE, KEY_ANCESTOR_IDS));
+        for (String key : descriptor.indexes) {
+            if (!indexedKeys.contains(key)) {
+                indexedKeys.add(key);
+            }
+        }
+        snapshotPath = descriptor.snapshotFile == null ? null : Paths.get(Framework.expandVars(descriptor.snapshotFile));
         initRepository();
     }
 
@@ -110,12 +193,44 @@ public class MemRepository extends DBSRepositoryBase {
     @Override
     public void shutdown() {
         super.shutdown();
+        if (snapshotPath != null) {
+            snapshot(snapshotPath);
+        }
         states = null;
+        indexes = null;
+        compiler = null;
     }
 
     protected void initRepository() {
         states = new ConcurrentHashMap<>();
-        initRoot();
+        indexes = new MemIndexes(indexedKeys);
+        if (snapshotPath != null && Files.exists(snapshotPath)) {
+            restore(snapshotPath);
+        } else {
+            initRoot();
+        }
+    }
+
+    /**
+     * Gets the lock serializing the updates of a document.
+     *
+     * @since 10.1
+     */
+    protected ReentrantLock getStripe(String id) {
+        return locks[Math.floorMod(id.hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * Gets the locks serializing the updates of several documents, in a global order to avoid deadlocks.
+     *
+     * @since 10.1
+     */
+    protected List<ReentrantLock> getStripes(Collection<String> ids) {
+        Set<Integer> stripes = new TreeSet<>();
+        for (String id : ids) {
+            stripes.add(Integer.valueOf(Math.floorMod(id.hashCode(), LOCK_STRIPES)));
+        }
+        return stripes.stream().map(i -> locks[i.intValue()]).collect(Collectors.toList());
     }
 
     @Override
@@ -171,12 +286,12 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: CREATE " + id + ": " + state);
         }
-        if (states.containsKey(id)) {
-            throw new NuxeoException("Already exists: " + id);
-        }
         state = StateHelper.deepCopy(state, true); // thread-safe
         StateHelper.resetDeltas(state);
-        states.put(id, state);
+        if (states.putIfAbsent(id, state) != null) {
+            throw new NuxeoException("Already exists: " + id);
+        }
+        indexes.add(id, state);
     }
 
     @Override
@@ -184,42 +299,139 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: UPDATE " + id + ": " + diff);
         }
+        ReentrantLock lock = getStripe(id);
+        lock.lock();
+        try {
+            // lock needed for atomic change token
+            State state = getStateForUpdate(id);
+            checkChangeToken(state, changeTokenUpdater);
+            applyUpdate(id, state, diff, changeTokenUpdater);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All the documents and their change tokens are checked before any update is done, so the updates are atomic.
+     */
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs, Map<String, ChangeTokenUpdater> changeTokenUpdaters) {
+        if (log.isTraceEnabled()) {
+            log.trace("Mem: UPDATE " + diffs);
+        }
+        List<ReentrantLock> stripes = getStripes(diffs.keySet());
+        stripes.forEach(ReentrantLock::lock);
+        try {
+            Map<String, State> toUpdate = new LinkedHashMap<>();
+            for (String id : diffs.keySet()) {
+                State state = getStateForUpdate(id);
+                checkChangeToken(state, changeTokenUpdaters == null ? null : changeTokenUpdaters.get(id));
+                toUpdate.put(id, state);
+            }
+            // locks held, no concurrent update could have changed the change tokens
+            toUpdate.forEach((id, state) -> applyUpdate(id, state, diffs.get(id),
+                    changeTokenUpdaters == null ? null : changeTokenUpdaters.get(id)));
+        } finally {
+            stripes.forEach(ReentrantLock::unlock);
+        }
+    }
+
+    protected State getStateForUpdate(String id) {
         State state = states.get(id);
         if (state == null) {
             throw new ConcurrentUpdateException("Missing: " + id);
         }
-        synchronized (state) {
-            // synchronization needed for atomic change token
-            if (changeTokenUpdater != null) {
-                for (Entry<String, Serializable> en : changeTokenUpdater.getConditions().entrySet()) {
-                    if (!Objects.equals(state.get(en.getKey()), en.getValue())) {
-                        throw new ConcurrentUpdateException((String) state.get(KEY_ID));
-                    }
-                }
-                for (Entry<String, Serializable> en : changeTokenUpdater.getUpdates().entrySet()) {
-                    applyDiff(state, en.getKey(), en.getValue());
-                }
+        return state;
+    }
+
+    protected void checkChangeToken(State state, ChangeTokenUpdater changeTokenUpdater) {
+        if (changeTokenUpdater == null) {
+            return;
+        }
+        for (Entry<String, Serializable> en : changeTokenUpdater.getConditions().entrySet()) {
+            if (!Objects.equals(state.get(en.getKey()), en.getValue())) {
+                throw new ConcurrentUpdateException((String) state.get(KEY_ID));
             }
-            applyDiff(state, diff);
         }
     }
 
+    /**
+     * Applies an update and maintains the indexes, the lock of the document must be held.
+     *
+     * @since 10.1
+     */
+    protected void applyUpdate(String id, State state, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
+        boolean indexed = diff.keySet().stream().anyMatch(indexes::isIndexed) || changeTokenUpdater != null
+                && changeTokenUpdater.getUpdates().keySet().stream().anyMatch(indexes::isIndexed);
+        if (!indexed) {
+            applyUpdate(state, diff, changeTokenUpdater);
+            return;
+        }
+        Map<String, Set<Object>> oldValues = indexes.getIndexedValues(state);
+        applyUpdate(state, diff, changeTokenUpdater);
+        indexes.update(id, oldValues, indexes.getIndexedValues(state));
+    }
+
+    protected void applyUpdate(State state, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
+        if (changeTokenUpdater != null) {
+            for (Entry<String, Serializable> en : changeTokenUpdater.getUpdates().entrySet()) {
+                applyDiff(state, en.getKey(), en.getValue());
+            }
+        }
+        applyDiff(state, diff);
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         if (log.isTraceEnabled()) {
             log.trace("Mem: REMOVE " + ids);
         }
         for (String id : ids) {
-            if (states.remove(id) == null) {
-                log.debug("Missing on remove: " + id);
+            ReentrantLock lock = getStripe(id);
+            lock.lock();
+            try {
+                State state = states.remove(id);
+                if (state == null) {
+                    log.debug("Missing on remove: " + id);
+                } else {
+                    indexes.remove(id, state);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the states having the given value for a key, through an index if possible. Callers must still check the
+     * value of the states returned.
+     *
+     * @since 10.1
+     */
+    protected Collection<State> getCandidateStates(String key, Object value) {
+        if (!indexes.isIndexed(key)) {
+            return states.values();
+        }
+        return getStates(indexes.get(key, value));
+    }
+
+    /** @since 10.1 */
+    protected Collection<State> getStates(Collection<String> ids) {
+        List<State> list = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            State state = states.get(id);
+            if (state != null) {
+                list.add(state);
             }
         }
+        return list;
     }
 
     @Override
     public State readChildState(String parentId, String name, Set<String> ignored) {
-        // TODO optimize by maintaining a parent/child index
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(KEY_PARENT_ID, parentId)) {
             if (ignored.contains(state.get(KEY_ID))) {
                 continue;
             }
@@ -245,7 +457,7 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -266,8 +478,10 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key1 + " = " + value1 + " AND " + key2 + " = " + value2);
         }
+        Collection<State> candidates = indexes.isIndexed(key1) || !indexes.isIndexed(key2)
+                ? getCandidateStates(key1, value1) : getCandidateStates(key2, value2);
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : candidates) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -293,9 +507,8 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + KEY_ANCESTOR_IDS + " = " + rootId);
         }
-        Stream<State> stream = states.values() //
-                                     .stream()
-                                     .filter(state -> hasAncestor(state, rootId));
+        Collection<State> candidates = getCandidateStates(KEY_ANCESTOR_IDS, rootId);
+        Stream<State> stream = candidates.stream().filter(state -> hasAncestor(state, rootId));
         if (limit != 0) {
             stream = stream.limit(limit);
         }
@@ -312,7 +525,7 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -338,7 +551,11 @@ public class MemRepository extends DBSRepositoryBase {
         }
         evaluator.parse();
         List<Map<String, Serializable>> projections = new ArrayList<>();
-        for (State state : states.values()) {
+        Predicate<State> filter = getQueryFilter(evaluator.getExpression());
+        for (State state : getCandidateStates(evaluator.getExpression())) {
+            if (!filter.test(state)) {
+                continue;
+            }
             List<Map<String, Serializable>> matches = evaluator.matches(state);
             if (!matches.isEmpty()) {
                 if (distinctDocuments) {
@@ -382,6 +599,13 @@ public class MemRepository extends DBSRepositoryBase {
         return new PartialList<>(projections, totalSize);
     }
 
+    @Override
+    public Stream<String> queryStream(DBSExpressionEvaluator evaluator, OrderByClause orderByClause, int fetchSize) {
+        // all the states are in memory, no need for a cursor
+        List<Map<String, Serializable>> projections = queryAndFetch(evaluator, orderByClause, true, 0, 0, 0);
+        return projections.stream().map(projection -> projection.get(ECM_UUID).toString());
+    }
+
     @Override
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
         if (log.isTraceEnabled()) {
@@ -389,7 +613,11 @@ public class MemRepository extends DBSRepositoryBase {
         }
         evaluator.parse();
         List<String> ids = new ArrayList<>();
-        for (State state : states.values()) {
+        Predicate<State> filter = getQueryFilter(evaluator.getExpression());
+        for (State state : getCandidateStates(evaluator.getExpression())) {
+            if (!filter.test(state)) {
+                continue;
+            }
             List<Map<String, Serializable>> matches = evaluator.matches(state);
             if (!matches.isEmpty()) {
                 String id = matches.get(0).get(ECM_UUID).toString();
@@ -408,6 +636,216 @@ public class MemRepository extends DBSRepositoryBase {
         throw new NuxeoException("Unknown or timed out scrollId");
     }
 
+    /**
+     * Gets a compiled predicate rejecting most of the states not matching a query expression, so that they don't have
+     * to go through the full evaluation.
+     *
+     * @since 10.1
+     */
+    protected Predicate<State> getQueryFilter(Expression expression) {
+        if (Framework.isBooleanPropertyFalse(COMPILE_QUERIES_PROP)) {
+            return state -> true;
+        }
+        DBSExpressionCompiler comp = compiler;
+        if (comp == null) {
+            compiler = comp = new DBSExpressionCompiler(Framework.getService(SchemaManager.class));
+        }
+        return comp.getPredicate(expression);
+    }
+
+    /**
+     * Gets the states that may match a query, through an index if the query has a top-level equality condition on an
+     * indexed key. The states returned must still be evaluated.
+     *
+     * @since 10.1
+     */
+    protected Collection<State> getCandidateStates(Expression expression) {
+        Set<String> ids = getIndexedIds(expression);
+        if (ids == null) {
+            return states.values();
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Mem:    using index, " + ids.size() + " candidates");
+        }
+        return getStates(ids);
+    }
+
+    /**
+     * Gets the smallest set of ids, found through an index, containing all the states matching an expression.
+     *
+     * @return the ids, or {@code null} if no index can be used
+     * @since 10.1
+     */
+    protected Set<String> getIndexedIds(Operand operand) {
+        if (operand instanceof MultiExpression) {
+            MultiExpression multi = (MultiExpression) operand;
+            if (multi.operator != Operator.AND) {
+                return null;
+            }
+            Set<String> smallest = null;
+            for (Operand value : multi.values) {
+                smallest = smallest(smallest, getIndexedIds(value));
+            }
+            return smallest;
+        }
+        if (!(operand instanceof Expression)) {
+            return null;
+        }
+        Expression expr = (Expression) operand;
+        if (expr.operator == Operator.AND) {
+            return smallest(getIndexedIds(expr.lvalue), getIndexedIds(expr.rvalue));
+        }
+        if (!(expr.lvalue instanceof Reference) || ((Reference) expr.lvalue).cast != null) {
+            return null;
+        }
+        String key = getIndexedKey(((Reference) expr.lvalue).name);
+        if (key == null) {
+            return null;
+        }
+        if (expr.operator == Operator.EQ && expr.rvalue instanceof StringLiteral) {
+            return indexes.get(key, ((StringLiteral) expr.rvalue).value);
+        }
+        if (expr.operator == Operator.IN && expr.rvalue instanceof LiteralList) {
+            Set<String> ids = new HashSet<>();
+            for (Literal literal : (LiteralList) expr.rvalue) {
+                if (!(literal instanceof StringLiteral)) {
+                    return null;
+                }
+                ids.addAll(indexes.get(key, ((StringLiteral) literal).value));
+            }
+            return ids;
+        }
+        return null;
+    }
+
+    protected static Set<String> smallest(Set<String> a, Set<String> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.size() <= b.size() ? a : b;
+    }
+
+    /**
+     * Gets the state key of an NXQL property usable through an index, or {@code null}.
+     */
+    protected String getIndexedKey(String name) {
+        String key;
+        switch (name) {
+        case NXQL.ECM_PARENTID:
+            key = KEY_PARENT_ID;
+            break;
+        case NXQL.ECM_PRIMARYTYPE:
+            key = KEY_PRIMARY_TYPE;
+            break;
+        case NXQL.ECM_ANCESTORID:
+            key = KEY_ANCESTOR_IDS;
+            break;
+        default:
+            if (name.startsWith(NXQL.ECM_PREFIX) || name.contains("/")) {
+                // other system properties have a different key, complex properties aren't indexed
+                return null;
+            }
+            key = name;
+        }
+        return indexes.isIndexed(key) ? key : null;
+    }
+
+    /**
+     * Saves all the documents to a file. Documents updated during the snapshot may be saved in any of their states.
+     *
+     * @since 10.1
+     */
+    public void snapshot(Path file) {
+        long start = System.currentTimeMillis();
+        List<byte[]> records = new ArrayList<>(states.size());
+        long size = 12; // magic, version, count
+        for (State state : states.values()) {
+            byte[] record = serialize(state);
+            records.add(record);
+            size += 4 + record.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new NuxeoException("Repository too large for a snapshot: " + repositoryName);
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+                buffer.putInt(SNAPSHOT_MAGIC);
+                buffer.putInt(SNAPSHOT_VERSION);
+                buffer.putInt(records.size());
+                for (byte[] record : records) {
+                    buffer.putInt(record.length);
+                    buffer.put(record);
+                }
+                buffer.force();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to snapshot repository: " + repositoryName + " to: " + file, e);
+        }
+        log.info(String.format("Saved repository: %s, %d documents to: %s in %dms", repositoryName, records.size(),
+                file, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Replaces all the documents with the ones saved in a file by {@link #snapshot}. Must not be called while the
+     * repository is used.
+     *
+     * @since 10.1
+     */
+    public void restore(Path file) {
+        long start = System.currentTimeMillis();
+        Map<String, State> restored = new ConcurrentHashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+                throw new NuxeoException("Not a repository snapshot: " + file);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] record = new byte[buffer.getInt()];
+                buffer.get(record);
+                State state = deserialize(record);
+                restored.put((String) state.get(KEY_ID), state);
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to restore repository: " + repositoryName + " from: " + file, e);
+        }
+        states.clear();
+        indexes.clear();
+        states.putAll(restored);
+        restored.forEach(indexes::add);
+        log.info(String.format("Restored repository: %s, %d documents from: %s in %dms", repositoryName,
+                restored.size(), file, System.currentTimeMillis() - start));
+    }
+
+    protected static byte[] serialize(State state) {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baout)) {
+            out.writeObject(state);
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to serialize: " + state.get(KEY_ID), e);
+        }
+        return baout.toByteArray();
+    }
+
+    protected static State deserialize(byte[] record) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record))) {
+            return (State) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException(e);
+        }
+    }
+
     /**
      * Applies a {@link StateDiff} in-place onto a base {@link State}.
      * <p>
@@ -509,64 +947,79 @@ public class MemRepository extends DBSRepositoryBase {
         }
     }
 
-    /* synchronized */
-    @Override
-    public synchronized Lock getLock(String id) {
-        State state = states.get(id);
-        if (state == null) {
-            // document not found
-            throw new DocumentNotFoundException(id);
-        }
-        String owner = (String) state.get(KEY_LOCK_OWNER);
-        if (owner == null) {
-            return null;
-        }
-        Calendar created = (Calendar) state.get(KEY_LOCK_CREATED);
-        return new Lock(owner, created);
-    }
-
-    /* synchronized */
     @Override
-    public synchronized Lock setLock(String id, Lock lock) {
-        State state = states.get(id);
-        if (state == null) {
-            // document not found
-            throw new DocumentNotFoundException(id);
-        }
-        String owner = (String) state.get(KEY_LOCK_OWNER);
-        if (owner != null) {
-            // return old lock
+    public Lock getLock(String id) {
+        ReentrantLock stripe = getStripe(id);
+        stripe.lock();
+        try {
+            State state = states.get(id);
+            if (state == null) {
+                // document not found
+                throw new DocumentNotFoundException(id);
+            }
+            String owner = (String) state.get(KEY_LOCK_OWNER);
+            if (owner == null) {
+                return null;
+            }
             Calendar created = (Calendar) state.get(KEY_LOCK_CREATED);
             return new Lock(owner, created);
+        } finally {
+            stripe.unlock();
         }
-        state.put(KEY_LOCK_OWNER, lock.getOwner());
-        state.put(KEY_LOCK_CREATED, lock.getCreated());
-        return null;
     }
 
-    /* synchronized */
     @Override
-    public synchronized Lock removeLock(String id, String owner) {
-        State state = states.get(id);
-        if (state == null) {
-            // document not found
-            throw new DocumentNotFoundException(id);
-        }
-        String oldOwner = (String) state.get(KEY_LOCK_OWNER);
-        if (oldOwner == null) {
-            // no previous lock
+    public Lock setLock(String id, Lock lock) {
+        ReentrantLock stripe = getStripe(id);
+        stripe.lock();
+        try {
+            State state = states.get(id);
+            if (state == null) {
+                // document not found
+                throw new DocumentNotFoundException(id);
+            }
+            String owner = (String) state.get(KEY_LOCK_OWNER);
+            if (owner != null) {
+                // return old lock
+                Calendar created = (Calendar) state.get(KEY_LOCK_CREATED);
+                return new Lock(owner, created);
+            }
+            state.put(KEY_LOCK_OWNER, lock.getOwner());
+            state.put(KEY_LOCK_CREATED, lock.getCreated());
             return null;
+        } finally {
+            stripe.unlock();
         }
-        Calendar oldCreated = (Calendar) state.get(KEY_LOCK_CREATED);
-        if (!LockManager.canLockBeRemoved(oldOwner, owner)) {
-            // existing mismatched lock, flag failure
-            return new Lock(oldOwner, oldCreated, true);
+    }
+
+    @Override
+    public Lock removeLock(String id, String owner) {
+        ReentrantLock stripe = getStripe(id);
+        stripe.lock();
+        try {
+            State state = states.get(id);
+            if (state == null) {
+                // document not found
+                throw new DocumentNotFoundException(id);
+            }
+            String oldOwner = (String) state.get(KEY_LOCK_OWNER);
+            if (oldOwner == null) {
+                // no previous lock
+                return null;
+            }
+            Calendar oldCreated = (Calendar) state.get(KEY_LOCK_CREATED);
+            if (!LockManager.canLockBeRemoved(oldOwner, owner)) {
+                // existing mismatched lock, flag failure
+                return new Lock(oldOwner, oldCreated, true);
+            }
+            // remove lock
+            state.put(KEY_LOCK_OWNER, null);
+            state.put(KEY_LOCK_CREATED, null);
+            // return old lock
+            return new Lock(oldOwner, oldCreated);
+        } finally {
+            stripe.unlock();
         }
-        // remove lock
-        state.put(KEY_LOCK_OWNER, null);
-        state.put(KEY_LOCK_CREATED, null);
-        // return old lock
-        return new Lock(oldOwner, oldCreated);
     }
 
     @Override
@@ -18,6 +18,11 @@
  */
 package org.nuxeo.ecm.core.storage.mem;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XNodeList;
 import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryDescriptor;
 
@@ -32,13 +37,49 @@ public class MemRepositoryDescriptor extends DBSRepositoryDescriptor {
     public MemRepositoryDescriptor() {
     }
 
+    /**
+     * Additional top-level keys to index, for instance {@code dc:creator}.
+     *
+     * @since 10.1
+     */
+    @XNodeList(value = "indexes/index", type = ArrayList.class, componentType = String.class)
+    public List<String> indexes = new ArrayList<>();
+
+    /**
+     * The file from which the repository is restored on startup and to which it is saved on shutdown.
+     *
+     * @since 10.1
+     */
+    @XNode("snapshot@file")
+    public String snapshotFile;
+
     @Override
     public MemRepositoryDescriptor clone() {
-        return (MemRepositoryDescriptor) super.clone();
+        MemRepositoryDescriptor clone = (MemRepositoryDescriptor) super.clone();
+        clone.indexes = new ArrayList<>(indexes);
+        return clone;
+    }
+
+    @Override
+    public void merge(DBSRepositoryDescriptor other) {
+        // the registry only knows the base class
+        if (other instanceof MemRepositoryDescriptor) {
+            merge((MemRepositoryDescriptor) other);
+        } else {
+            super.merge(other);
+        }
     }
 
     public void merge(MemRepositoryDescriptor other) {
         super.merge(other);
+        for (String index : other.indexes) {
+            if (!indexes.contains(index)) {
+                indexes.add(index);
+            }
+        }
+        if (other.snapshotFile != null) {
+            snapshotFile = other.snapshotFile;
+        }
     }
 
 }
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+
+public class TestMemIndexes {
+
+    protected static State state(String parentId, String... ancestorIds) {
+        State state = new State();
+        state.put(KEY_PARENT_ID, parentId);
+        state.put(KEY_ANCESTOR_IDS, ancestorIds);
+        return state;
+    }
+
+    @Test
+    public void testIndexes() {
+        MemIndexes indexes = new MemIndexes(Arrays.asList(KEY_PARENT_ID, KEY_ANCESTOR_IDS));
+        assertTrue(indexes.isIndexed(KEY_PARENT_ID));
+        assertFalse(indexes.isIndexed("dc:title"));
+
+        State doc1 = state("p1", "root", "p1");
+        State doc2 = state("p1", "root", "p1");
+        State doc3 = state("p2", "root", "p2");
+        indexes.add("doc1", doc1);
+        indexes.add("doc2", doc2);
+        indexes.add("doc3", doc3);
+        assertEquals(new HashSet<>(Arrays.asList("doc1", "doc2")), indexes.get(KEY_PARENT_ID, "p1"));
+        assertEquals(3, indexes.get(KEY_ANCESTOR_IDS, "root").size());
+        assertEquals(Collections.singleton("doc3"), indexes.get(KEY_ANCESTOR_IDS, "p2"));
+
+        // move doc2 under p2
+        Map<String, Set<Object>> oldValues = indexes.getIndexedValues(doc2);
+        doc2.put(KEY_PARENT_ID, "p2");
+        doc2.put(KEY_ANCESTOR_IDS, new Object[] { "root", "p2" });
+        indexes.update("doc2", oldValues, indexes.getIndexedValues(doc2));
+        assertEquals(Collections.singleton("doc1"), indexes.get(KEY_PARENT_ID, "p1"));
+        assertEquals(new HashSet<>(Arrays.asList("doc2", "doc3")), indexes.get(KEY_ANCESTOR_IDS, "p2"));
+        assertEquals(3, indexes.get(KEY_ANCESTOR_IDS, "root").size());
+
+        indexes.remove("doc1", doc1);
+        assertTrue(indexes.get(KEY_PARENT_ID, "p1").isEmpty());
+        assertEquals(2, indexes.get(KEY_ANCESTOR_IDS, "root").size());
+    }
+
+}
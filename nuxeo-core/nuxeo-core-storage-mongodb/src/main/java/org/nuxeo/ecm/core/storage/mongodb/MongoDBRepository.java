@@ -50,6 +50,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -87,11 +88,13 @@ import org.nuxeo.runtime.mongodb.MongoDBConnectionService;
 
 import com.mongodb.Block;
 import com.mongodb.QueryOperators;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
@@ -99,7 +102,9 @@ import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -362,6 +367,63 @@ public class MongoDBRepository extends DBSRepositoryBase {
         }
     }
 
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs, Map<String, ChangeTokenUpdater> changeTokenUpdaters) {
+        if (diffs.size() == 1) {
+            Map.Entry<String, StateDiff> en = diffs.entrySet().iterator().next();
+            String id = en.getKey();
+            updateState(id, en.getValue(), changeTokenUpdaters == null ? null : changeTokenUpdaters.get(id));
+            return;
+        }
+        // a diff may need several successive updates for the same document,
+        // each round holds at most one update per document so that it can be unordered
+        List<List<WriteModel<Document>>> rounds = new ArrayList<>();
+        List<List<String>> roundIds = new ArrayList<>();
+        for (Map.Entry<String, StateDiff> en : diffs.entrySet()) {
+            String id = en.getKey();
+            ChangeTokenUpdater changeTokenUpdater = changeTokenUpdaters == null ? null : changeTokenUpdaters.get(id);
+            List<Document> updates = converter.diffToBson(en.getValue());
+            for (int i = 0; i < updates.size(); i++) {
+                Document update = updates.get(i);
+                Document filter = new Document(idKey, id);
+                if (changeTokenUpdater == null) {
+                    if (log.isTraceEnabled()) {
+                        log.trace("MongoDB: BULK UPDATE " + id + ": " + update);
+                    }
+                } else {
+                    // conditions must be read before the updates change them
+                    Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
+                    Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
+                    if (update.containsKey(MONGODB_SET)) {
+                        ((Document) update.get(MONGODB_SET)).putAll(tokenUpdates);
+                    } else {
+                        Document set = new Document();
+                        set.putAll(tokenUpdates);
+                        update.put(MONGODB_SET, set);
+                    }
+                    if (log.isTraceEnabled()) {
+                        log.trace("MongoDB: BULK UPDATE " + id + ": IF " + conditions + " THEN " + update);
+                    }
+                    filter.putAll(conditions);
+                }
+                if (rounds.size() <= i) {
+                    rounds.add(new ArrayList<>());
+                    roundIds.add(new ArrayList<>());
+                }
+                rounds.get(i).add(new UpdateOneModel<>(filter, update));
+                roundIds.get(i).add(id);
+            }
+        }
+        for (int i = 0; i < rounds.size(); i++) {
+            List<WriteModel<Document>> requests = rounds.get(i);
+            BulkWriteResult w = coll.bulkWrite(requests, new BulkWriteOptions().ordered(false));
+            if (w.getModifiedCount() != requests.size()) {
+                log.trace("MongoDB:    -> CONCURRENT UPDATE: " + roundIds.get(i));
+                throw new ConcurrentUpdateException(String.join(", ", roundIds.get(i)));
+            }
+        }
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         Bson filter = Filters.in(idKey, ids);
@@ -617,6 +679,33 @@ public class MongoDBRepository extends DBSRepositoryBase {
         return new PartialList<>(projections, totalSize);
     }
 
+    @Override
+    public Stream<String> queryStream(DBSExpressionEvaluator evaluator, OrderByClause orderByClause, int fetchSize) {
+        MongoDBQueryBuilder builder = new MongoDBQueryBuilder(this, evaluator.getExpression(),
+                evaluator.getSelectClause(), orderByClause, evaluator.pathResolver, evaluator.fulltextSearchDisabled);
+        builder.walk();
+        if (builder.hasFulltext && isFulltextDisabled()) {
+            throw new QueryParseException("Fulltext search disabled by configuration");
+        }
+        Document filter = builder.getQuery();
+        addPrincipals(filter, evaluator.principals);
+        Bson orderBy = builder.getOrderBy();
+        Bson keys = builder.getProjection();
+        if (log.isTraceEnabled()) {
+            logQuery(filter, keys, orderBy, 0, 0);
+        }
+        MongoCursor<Document> cursor = coll.find(filter)
+                                           .projection(keys)
+                                           .sort(orderBy)
+                                           .batchSize(fetchSize)
+                                           .iterator();
+        // no deduplication of documents returned several times due to concurrent updates,
+        // as it would need to keep all the ids in memory
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false) //
+                            .onClose(cursor::close)
+                            .map(doc -> (String) doc.get(converter.keyToBson(KEY_ID)));
+    }
+
     @Override
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
         cursorService.checkForTimedOutScroll();
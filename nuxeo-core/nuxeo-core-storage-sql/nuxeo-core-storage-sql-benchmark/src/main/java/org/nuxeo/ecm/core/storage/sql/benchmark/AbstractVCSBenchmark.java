@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.storage.sql.CachingMapper;
+import org.nuxeo.ecm.core.storage.sql.Session;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base class for the VCS benchmarks: starts a {@link VCSBenchmarkRuntime} once per trial and opens a low-level
+ * {@link Session} on it.
+ * <p>
+ * Sessions are not thread-safe, so benchmarks extending this class must run with a single thread.
+ *
+ * @since 10.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public abstract class AbstractVCSBenchmark {
+
+    protected VCSBenchmarkRuntime runtime;
+
+    protected Session session;
+
+    /**
+     * The caching mapper to use, or {@code null} for the repository default.
+     */
+    protected Class<? extends CachingMapper> getCachingMapperClass() {
+        return null;
+    }
+
+    @Setup(Level.Trial)
+    public void setUpRuntime() throws Exception {
+        runtime = new VCSBenchmarkRuntime(getCachingMapperClass());
+        runtime.startRuntime();
+        session = runtime.getConnection();
+        populate();
+    }
+
+    /**
+     * Creates the initial content needed by the benchmark.
+     */
+    protected abstract void populate() throws Exception;
+
+    @TearDown(Level.Trial)
+    public void tearDownRuntime() throws Exception {
+        try {
+            if (session != null) {
+                session.close();
+                session = null;
+            }
+        } finally {
+            runtime.stopRuntime();
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.benchmark;
+
+import java.util.List;
+
+import org.nuxeo.ecm.core.storage.sql.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Child listing, with the session caches warm or flushed before each listing.
+ *
+ * @since 10.1
+ */
+@State(Scope.Benchmark)
+public class ChildrenBenchmark extends AbstractVCSBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int size;
+
+    protected Node folder;
+
+    @Override
+    protected void populate() {
+        runtime.populate(session, "children", size);
+        folder = session.getNodeByPath("/children", null);
+    }
+
+    @Benchmark
+    public List<Node> getChildren() {
+        return session.getChildren(folder, null, false);
+    }
+
+    @Benchmark
+    public List<Node> getChildrenColdCache() {
+        // flushes the persistence context and the caching mapper, all rows are refetched from the database
+        runtime.getRepository().clearCaches();
+        return session.getChildren(session.getNodeById(folder.getId()), null, false);
+    }
+
+}
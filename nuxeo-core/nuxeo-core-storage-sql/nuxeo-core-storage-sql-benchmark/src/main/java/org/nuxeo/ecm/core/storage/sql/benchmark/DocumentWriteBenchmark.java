@@ -0,0 +1,83 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.benchmark;
+
+import static org.nuxeo.ecm.core.storage.sql.benchmark.VCSBenchmarkRuntime.DOC_TYPE;
+import static org.nuxeo.ecm.core.storage.sql.benchmark.VCSBenchmarkRuntime.FOLDER_TYPE;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.nuxeo.ecm.core.storage.sql.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Document create / update / save through {@code SessionImpl} and {@code PersistenceContext}.
+ *
+ * @since 10.1
+ */
+@State(Scope.Benchmark)
+public class DocumentWriteBenchmark extends AbstractVCSBenchmark {
+
+    /** Number of documents created or updated before each save. */
+    @Param({ "1", "10", "100" })
+    public int batchSize;
+
+    protected Node folder;
+
+    protected List<Serializable> ids;
+
+    protected long counter;
+
+    @Override
+    protected void populate() {
+        ids = runtime.populate(session, "update", 1000);
+        folder = session.addChildNode(session.getRootNode(), "create", null, FOLDER_TYPE, false);
+        session.save();
+    }
+
+    @Benchmark
+    public Serializable createAndSave() {
+        Node node = null;
+        for (int i = 0; i < batchSize; i++) {
+            node = session.addChildNode(folder, "doc" + counter++, null, DOC_TYPE, false);
+            node.setSimpleProperty("bench:title", "created");
+            node.setCollectionProperty("bench:subjects", new String[] { "foo", "bar" });
+        }
+        session.save();
+        return node.getId();
+    }
+
+    @Benchmark
+    public Serializable updateAndSave() {
+        Node node = null;
+        for (int i = 0; i < batchSize; i++) {
+            long n = counter++;
+            node = session.getNodeById(ids.get((int) (n % ids.size())));
+            node.setSimpleProperty("bench:title", "updated " + n);
+            node.setSimpleProperty("bench:count", Long.valueOf(n));
+        }
+        session.save();
+        return node.getId();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.benchmark;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.util.Collections;
+
+import org.nuxeo.ecm.core.api.PartialList;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.storage.sql.ACLRow;
+import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.Node;
+import org.nuxeo.ecm.core.storage.sql.RepositoryImpl;
+import org.nuxeo.ecm.core.storage.sql.Session.PathResolver;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCConnection;
+import org.nuxeo.ecm.core.storage.sql.jdbc.NXQLQueryMaker;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMaker.Query;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
+import org.nuxeo.runtime.datasource.ConnectionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * NXQL to SQL generation by {@link NXQLQueryMaker} with ACL filtering, and full query execution.
+ *
+ * @since 10.1
+ */
+@State(Scope.Benchmark)
+public class QueryBenchmark extends AbstractVCSBenchmark {
+
+    @Param({ "SELECT * FROM BenchDoc WHERE bench:title = 'title 42'",
+            "SELECT * FROM BenchDoc WHERE ecm:path STARTSWITH '/query' AND bench:subjects = 'foo' ORDER BY bench:count",
+            "SELECT * FROM Document WHERE ecm:mixinType = 'Folderish' AND ecm:isVersion = 0 AND ecm:isProxy = 0" })
+    public String nxql;
+
+    protected SQLInfo sqlInfo;
+
+    protected Model model;
+
+    protected PathResolver pathResolver;
+
+    protected QueryFilter queryFilter;
+
+    @Override
+    protected void populate() throws Exception {
+        runtime.populate(session, "query", 100);
+        Node folder = session.getNodeByPath("/query", null);
+        folder.getCollectionProperty(Model.ACL_PROP).setValue(
+                new ACLRow[] { new ACLRow(0, "local", true, "Read", "members", null) });
+        session.save();
+        session.updateReadAcls();
+
+        pathResolver = path -> {
+            Node node = session.getNodeByPath(path, null);
+            return node == null ? null : node.getId();
+        };
+        RepositoryImpl repository = runtime.getRepository();
+        model = repository.getModel();
+        String dataSourceName = JDBCConnection.getDataSourceName(repository.getName());
+        try (Connection connection = ConnectionHelper.getConnection(dataSourceName)) {
+            Dialect dialect = Dialect.createDialect(connection, repository.getRepositoryDescriptor());
+            sqlInfo = new SQLInfo(model, dialect);
+        }
+        queryFilter = new QueryFilter(null, new String[] { "bob", "members", "Everyone" },
+                new String[] { "Read", "Browse", "Everything" }, null,
+                Collections.<SQLQuery.Transformer> emptyList(), 0, 0);
+    }
+
+    @Benchmark
+    public Query buildQuery() {
+        // a QueryMaker is stateful and instantiated for each query, like in JDBCMapper
+        return new NXQLQueryMaker().buildQuery(sqlInfo, model, pathResolver, nxql, queryFilter);
+    }
+
+    @Benchmark
+    public PartialList<Serializable> query() {
+        return session.query(nxql, queryFilter, false);
+    }
+
+}
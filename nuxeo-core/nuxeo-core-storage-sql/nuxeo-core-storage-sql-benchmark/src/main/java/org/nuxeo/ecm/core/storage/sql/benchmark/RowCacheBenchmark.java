@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.benchmark;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.ecm.core.storage.sql.CachingMapper;
+import org.nuxeo.ecm.core.storage.sql.Mapper;
+import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.OffHeapCachingMapper;
+import org.nuxeo.ecm.core.storage.sql.RowId;
+import org.nuxeo.ecm.core.storage.sql.SoftRefCachingMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Fragment reads through the caching mapper, when all rows are in the cache and when none are, for the default
+ * {@link SoftRefCachingMapper} and the {@link OffHeapCachingMapper}.
+ *
+ * @since 10.1
+ */
+@State(Scope.Benchmark)
+public class RowCacheBenchmark extends AbstractVCSBenchmark {
+
+    /** Number of documents read in one batch. */
+    @Param({ "1", "50" })
+    public int batchSize;
+
+    @Param({ "soft-ref", "off-heap" })
+    public String cache;
+
+    protected Mapper mapper;
+
+    protected List<List<RowId>> batches;
+
+    protected int next;
+
+    @Override
+    protected Class<? extends CachingMapper> getCachingMapperClass() {
+        return "off-heap".equals(cache) ? OffHeapCachingMapper.class : SoftRefCachingMapper.class;
+    }
+
+    @Override
+    protected void populate() {
+        List<Serializable> ids = runtime.populate(session, "cache", 1000);
+        mapper = session.getMapper();
+        batches = new ArrayList<>();
+        List<RowId> batch = new ArrayList<>(batchSize * 2);
+        for (Serializable id : ids) {
+            batch.add(new RowId(Model.HIER_TABLE_NAME, id));
+            batch.add(new RowId("benchmark", id));
+            if (batch.size() == batchSize * 2) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize * 2);
+            }
+        }
+        // fill the cache
+        batches.forEach(rowIds -> mapper.read(rowIds, false));
+    }
+
+    protected List<RowId> nextBatch() {
+        if (next == batches.size()) {
+            next = 0;
+        }
+        return batches.get(next++);
+    }
+
+    @Benchmark
+    public List<? extends RowId> readHit() {
+        return mapper.read(nextBatch(), false);
+    }
+
+    @Benchmark
+    public List<? extends RowId> readMiss() {
+        mapper.clearCache();
+        if (mapper instanceof OffHeapCachingMapper) {
+            // the off-heap store is shared by all sessions and not cleared with the session cache
+            ((OffHeapCachingMapper) mapper).getStore().clear();
+        }
+        return mapper.read(nextBatch(), false);
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the VCS benchmarks and writes the results as JSON, to be able to compare builds.
+ * <p>
+ * Arguments: an optional regexp of the benchmarks to include (default all), and an optional result file (default
+ * {@code target/jmh-result.json}).
+ *
+ * @since 10.1
+ */
+public class VCSBenchmarkRunner {
+
+    public static final String DEFAULT_INCLUDE = ".*";
+
+    public static final String DEFAULT_RESULT = "target/jmh-result.json";
+
+    private VCSBenchmarkRunner() {
+        // utility class
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : DEFAULT_INCLUDE;
+        String result = args.length > 1 ? args[1] : DEFAULT_RESULT;
+        String pattern = VCSBenchmarkRunner.class.getPackage().getName() + "\\..*" + include;
+        Options options = new OptionsBuilder().include(pattern)
+                                              .resultFormat(ResultFormatType.JSON)
+                                              .result(result)
+                                              .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.benchmark;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobManagerComponent;
+import org.nuxeo.ecm.core.blob.BlobProviderDescriptor;
+import org.nuxeo.ecm.core.blob.binary.DefaultBinaryManager;
+import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.ecm.core.storage.sql.CachingMapper;
+import org.nuxeo.ecm.core.storage.sql.DatabaseHelper;
+import org.nuxeo.ecm.core.storage.sql.Node;
+import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
+import org.nuxeo.ecm.core.storage.sql.RepositoryImpl;
+import org.nuxeo.ecm.core.storage.sql.Session;
+import org.nuxeo.ecm.core.storage.sql.coremodel.SQLRepositoryService;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+/**
+ * Standalone Nuxeo Runtime hosting a low-level VCS repository on the test database (embedded H2 by default) for the
+ * JMH benchmarks.
+ * <p>
+ * The runtime is started and stopped explicitly from the JMH {@code @Setup} and {@code @TearDown} methods.
+ *
+ * @since 10.1
+ */
+public class VCSBenchmarkRuntime extends NXRuntimeTestCase {
+
+    public static final String BUNDLE = "org.nuxeo.ecm.core.storage.sql.benchmark";
+
+    public static final String REPOSITORY_NAME = "benchmark";
+
+    public static final String FOLDER_TYPE = "BenchFolder";
+
+    public static final String DOC_TYPE = "BenchDoc";
+
+    protected final Class<? extends CachingMapper> cachingMapperClass;
+
+    protected BlobProviderDescriptor blobProviderDescriptor;
+
+    protected RepositoryImpl repository;
+
+    /**
+     * Creates a runtime using the default caching mapper.
+     */
+    public VCSBenchmarkRuntime() {
+        this(null);
+    }
+
+    /**
+     * Creates a runtime using the given caching mapper, or the default one if {@code null}.
+     */
+    public VCSBenchmarkRuntime(Class<? extends CachingMapper> cachingMapperClass) {
+        this.cachingMapperClass = cachingMapperClass;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        deployBundle("org.nuxeo.runtime.jtajca");
+        deployBundle("org.nuxeo.runtime.datasource");
+        deployBundle("org.nuxeo.ecm.core.api");
+        deployBundle("org.nuxeo.ecm.core");
+        deployBundle("org.nuxeo.ecm.core.schema");
+        deployBundle("org.nuxeo.ecm.core.event");
+        deployBundle("org.nuxeo.ecm.core.storage");
+        deployBundle("org.nuxeo.ecm.core.storage.sql");
+        deployBundle("org.nuxeo.ecm.platform.el");
+        DatabaseHelper.DATABASE.setUp();
+        deployContrib(BUNDLE, "OSGI-INF/benchmark-repo-ds.xml");
+        deployContrib(BUNDLE, "OSGI-INF/benchmark-core-types-contrib.xml");
+    }
+
+    @Override
+    protected void postSetUp() throws Exception {
+        RepositoryDescriptor descriptor = DatabaseHelper.DATABASE.getRepositoryDescriptor();
+        descriptor.name = REPOSITORY_NAME;
+        descriptor.cachingMapperClass = cachingMapperClass;
+        // no fulltext, we measure the storage and not the fulltext extraction
+        descriptor.setFulltextDisabled(true);
+        repository = new RepositoryImpl(descriptor);
+        Framework.getService(SQLRepositoryService.class).registerTestRepository(repository);
+
+        blobProviderDescriptor = new BlobProviderDescriptor();
+        blobProviderDescriptor.name = REPOSITORY_NAME;
+        blobProviderDescriptor.klass = DefaultBinaryManager.class;
+        getBlobManager().registerBlobProvider(blobProviderDescriptor);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Framework.getService(EventService.class).waitForAsyncCompletion();
+        if (blobProviderDescriptor != null) {
+            getBlobManager().unregisterBlobProvider(blobProviderDescriptor);
+            blobProviderDescriptor = null;
+        }
+        if (repository != null) {
+            repository.close();
+            repository = null;
+        }
+        super.tearDown();
+    }
+
+    protected static BlobManagerComponent getBlobManager() {
+        return (BlobManagerComponent) Framework.getService(BlobManager.class);
+    }
+
+    public RepositoryImpl getRepository() {
+        return repository;
+    }
+
+    public Session getConnection() {
+        return repository.getConnection();
+    }
+
+    /**
+     * Creates a folder under the root holding the given number of documents, and saves.
+     *
+     * @return the ids of the created documents
+     */
+    public List<Serializable> populate(Session session, String folderName, int size) {
+        Node folder = session.addChildNode(session.getRootNode(), folderName, null, FOLDER_TYPE, false);
+        List<Serializable> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Node node = session.addChildNode(folder, "doc" + i, null, DOC_TYPE, false);
+            node.setSimpleProperty("bench:title", "title " + i);
+            node.setSimpleProperty("bench:count", Long.valueOf(i));
+            node.setCollectionProperty("bench:subjects", new String[] { "foo", "bar", "subject" + (i % 10) });
+            ids.add(node.getId());
+        }
+        session.save();
+        return ids;
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.PartialList;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * Tests the asynchronous Read ACL updates done by {@link VCSUpdateReadAclsWork}.
+ *
+ * @since 10.1
+ */
+public class TestSQLBackendAsyncReadAcls extends SQLBackendTestCase {
+
+    protected static final String REGISTRY_NAME = MetricsService.class.getName();
+
+    protected final MetricRegistry registry = new MetricRegistry();
+
+    protected MetricRegistry sharedRegistry;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        deployContrib("org.nuxeo.ecm.core.storage.sql.test.tests", "OSGI-INF/test-backend-core-types-contrib.xml");
+        // record the metrics of the works in a registry of our own
+        sharedRegistry = SharedMetricRegistries.getOrCreate(REGISTRY_NAME);
+        SharedMetricRegistries.remove(REGISTRY_NAME);
+        SharedMetricRegistries.add(REGISTRY_NAME, registry);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            SharedMetricRegistries.remove(REGISTRY_NAME);
+            SharedMetricRegistries.add(REGISTRY_NAME, sharedRegistry);
+        }
+    }
+
+    @Override
+    protected RepositoryDescriptor newDescriptor(String name, long clusteringDelay) {
+        RepositoryDescriptor descriptor = super.newDescriptor(name, clusteringDelay);
+        descriptor.setAclOptimizationsEnabled(true);
+        descriptor.setAclOptimizationsAsyncUpdates(true);
+        return descriptor;
+    }
+
+    protected void begin(Session session) throws Exception {
+        TransactionHelper.startTransaction();
+        TransactionHelper.lookupTransactionManager().getTransaction().enlistResource((SessionImpl) session);
+    }
+
+    protected void commitAndWait() throws Exception {
+        TransactionHelper.commitOrRollbackTransaction();
+        assertTrue(Framework.getService(WorkManager.class).awaitCompletion(20, TimeUnit.SECONDS));
+    }
+
+    protected Timer getLag() {
+        return registry.timer(MetricRegistry.name("nuxeo", "repositories", repository.getName(), "aclr-updates-lag"));
+    }
+
+    protected int countReadable(Session session, String user) {
+        QueryFilter qf = new QueryFilter(null, new String[] { user }, new String[] { "Read" }, null,
+                Collections.<SQLQuery.Transformer> emptyList(), 0, 0);
+        PartialList<Serializable> res = session.query("SELECT * FROM TestDoc", qf, false);
+        return res.size();
+    }
+
+    protected static void setReadAcl(Node node, String... users) {
+        ACLRow[] acls = new ACLRow[users.length];
+        for (int i = 0; i < users.length; i++) {
+            acls[i] = new ACLRow(i, "test", true, "Read", users[i], null);
+        }
+        node.getCollectionProperty(Model.ACL_PROP).setValue(acls);
+    }
+
+    @Test
+    public void testAsyncReadAcls() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        // the repository initialization may have updated the Read ACLs of the root
+        assertTrue(Framework.getService(WorkManager.class).awaitCompletion(20, TimeUnit.SECONDS));
+        long initialCount = getLag().getCount();
+
+        // a folder readable by bob containing a few documents
+        begin(session);
+        Node folder = session.addChildNode(root, "folder", null, "TestDoc", false);
+        setReadAcl(folder, "bob");
+        for (int i = 0; i < 5; i++) {
+            Node parent = session.addChildNode(folder, "sub" + i, null, "TestDoc", false);
+            session.addChildNode(parent, "doc" + i, null, "TestDoc", false);
+        }
+        session.save();
+        // the Read ACLs are not updated until the transaction commits
+        assertEquals(0, countReadable(session, "bob"));
+        assertEquals(initialCount, getLag().getCount());
+        commitAndWait();
+
+        assertEquals(11, countReadable(session, "bob"));
+        assertEquals(0, countReadable(session, "steve"));
+        assertEquals(initialCount + 1, getLag().getCount());
+
+        // give the whole tree to steve instead
+        begin(session);
+        setReadAcl(folder, "steve");
+        session.save();
+        assertEquals(11, countReadable(session, "bob"));
+        assertEquals(0, countReadable(session, "steve"));
+        commitAndWait();
+
+        assertEquals(0, countReadable(session, "bob"));
+        assertEquals(11, countReadable(session, "steve"));
+        assertEquals(initialCount + 2, getLag().getCount());
+
+        // a sub-folder readable by bob too
+        begin(session);
+        Node sub = session.getChildNode(folder, "sub0", false);
+        setReadAcl(sub, "bob");
+        session.save();
+        commitAndWait();
+
+        assertEquals(2, countReadable(session, "bob"));
+        assertEquals(11, countReadable(session, "steve"));
+        assertEquals(initialCount + 3, getLag().getCount());
+
+        // removing documents leaves the other Read ACLs untouched
+        begin(session);
+        session.removeNode(sub);
+        session.save();
+        commitAndWait();
+
+        assertEquals(0, countReadable(session, "bob"));
+        assertEquals(9, countReadable(session, "steve"));
+
+        session.close();
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import javax.transaction.Transaction;
+
+import org.junit.Test;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Checks the {@link OffHeapCachingMapper} through a repository and several sessions sharing its store.
+ *
+ * @since 10.1
+ */
+public class TestSQLBackendOffHeapCache extends SQLBackendTestCase {
+
+    @Override
+    protected RepositoryDescriptor newDescriptor(String name, long clusteringDelay) {
+        RepositoryDescriptor descriptor = super.newDescriptor(name, clusteringDelay);
+        descriptor.cachingMapperClass = OffHeapCachingMapper.class;
+        descriptor.cachingMapperProperties.put(OffHeapCachingRowMapper.MAX_SIZE_PROP, "1MB");
+        return descriptor;
+    }
+
+    protected OffHeapRowStore getStore() {
+        OffHeapRowStore store = OffHeapCachingRowMapper.getSharedStore(
+                ((RepositoryImpl) repository).getInvalidationsPropagator());
+        assertNotNull(store);
+        return store;
+    }
+
+    protected String getTitle(Session session) {
+        return session.getNodeByPath("/foo", null).getSimpleProperty("tst:title").getString();
+    }
+
+    protected void setTitle(Session session, String title) {
+        session.getNodeByPath("/foo", null).setSimpleProperty("tst:title", title);
+    }
+
+    protected void createFoo(Session session) {
+        Node foo = session.addChildNode(session.getRootNode(), "foo", null, "TestDoc", false);
+        foo.setSimpleProperty("tst:title", "old");
+        session.save();
+    }
+
+    @Test
+    public void testCommittedWriteSeenByOtherSession() throws Exception {
+        Session session1 = repository.getConnection();
+        createFoo(session1);
+
+        // read in session 2, the rows are now in the shared store
+        Session session2 = repository.getConnection();
+        assertEquals("old", getTitle(session2));
+        assertTrue(getStore().getEntries() > 0);
+
+        // write in session 1
+        setTitle(session1, "new");
+        session1.save();
+
+        // session 2 sees the new value once it processes the invalidations
+        session2.save(); // process invalidations (non-transactional)
+        assertEquals("new", getTitle(session2));
+        // a new session reading from the shared store too
+        Session session3 = repository.getConnection();
+        assertEquals("new", getTitle(session3));
+
+        session1.close();
+        session2.close();
+        session3.close();
+    }
+
+    @Test
+    public void testRollbackLeavesNoStaleRow() throws Exception {
+        assumeTrue(DatabaseHelper.DATABASE.supportsXA());
+
+        Session session1 = repository.getConnection();
+        createFoo(session1);
+        Session session2 = repository.getConnection();
+        assertEquals("old", getTitle(session2));
+
+        TransactionHelper.startTransaction();
+        try {
+            Transaction tx = TransactionHelper.lookupTransactionManager().getTransaction();
+            tx.enlistResource(((SessionImpl) session1).getXAResource());
+            setTitle(session1, "new");
+            // written to the database, not committed
+            session1.save();
+            assertEquals("new", getTitle(session1));
+            TransactionHelper.setTransactionRollbackOnly();
+        } finally {
+            TransactionHelper.commitOrRollbackTransaction();
+        }
+
+        // the rolled back value is seen by no session
+        assertEquals("old", getTitle(session1));
+        session2.save(); // process invalidations (non-transactional)
+        assertEquals("old", getTitle(session2));
+        Session session3 = repository.getConnection();
+        assertEquals("old", getTitle(session3));
+
+        session1.close();
+        session2.close();
+        session3.close();
+    }
+
+    @Test
+    public void testRepositoryCacheSizeAndClear() throws Exception {
+        Session session1 = repository.getConnection();
+        createFoo(session1);
+        Session session2 = repository.getConnection();
+        assertEquals("old", getTitle(session2));
+        Session session3 = repository.getConnection();
+        assertEquals("old", getTitle(session3));
+
+        // the shared store is counted once, not once per session
+        RepositoryImpl repo = (RepositoryImpl) repository;
+        long entries = getStore().getEntries();
+        assertTrue(entries > 0);
+        assertEquals(entries, repo.getCacheMapperSize());
+
+        // clearing the repository caches clears the shared store
+        repo.clearCaches();
+        assertEquals(0, getStore().getEntries());
+        assertEquals("old", getTitle(session3));
+
+        session1.close();
+        session2.close();
+        session3.close();
+    }
+
+}
@@ -23,10 +23,17 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
+import org.nuxeo.runtime.pubsub.CompactIdsCodec;
 import org.nuxeo.runtime.pubsub.SerializableAccumulableInvalidations;
 
 /**
@@ -177,17 +184,84 @@ public class Invalidations implements SerializableAccumulableInvalidations {
         checkMaxSize();
     }
 
-    // TODO do a more fine-grained serialization than using ObjectOutputStream
+    /** Marks the compact serialization, the Java serialization starts with a different magic number. */
+    protected static final int COMPACT = (byte) 'C';
 
     @Override
     public void serialize(OutputStream out) throws IOException {
-        try (ObjectOutputStream oout = new ObjectOutputStream(out)) {
-            oout.writeObject(this);
+        if (canSerializeCompact()) {
+            out.write(COMPACT);
+            out.write(all ? 1 : 0);
+            serializeCompact(out, modified);
+            serializeCompact(out, deleted);
+        } else {
+            try (ObjectOutputStream oout = new ObjectOutputStream(out)) {
+                oout.writeObject(this);
+            }
         }
     }
 
+    protected boolean canSerializeCompact() {
+        return canSerializeCompact(modified) && canSerializeCompact(deleted);
+    }
+
+    protected static boolean canSerializeCompact(Set<RowId> rowIds) {
+        if (rowIds == null) {
+            return true;
+        }
+        for (RowId rowId : rowIds) {
+            if (!(rowId.id instanceof String) && !(rowId.id instanceof Long)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes row ids grouped by table, so that each table name is written once.
+     */
+    protected static void serializeCompact(OutputStream out, Set<RowId> rowIds) throws IOException {
+        Map<String, List<Serializable>> idsByTable = new LinkedHashMap<>();
+        if (rowIds != null) {
+            for (RowId rowId : rowIds) {
+                idsByTable.computeIfAbsent(rowId.tableName, k -> new ArrayList<>()).add(rowId.id);
+            }
+        }
+        CompactIdsCodec.writeVarLong(out, idsByTable.size());
+        for (Entry<String, List<Serializable>> en : idsByTable.entrySet()) {
+            CompactIdsCodec.writeString(out, en.getKey());
+            CompactIdsCodec.writeIds(out, en.getValue());
+        }
+    }
+
+    protected static Set<RowId> deserializeCompact(InputStream in) throws IOException {
+        long tables = CompactIdsCodec.readVarLong(in);
+        if (tables == 0) {
+            return null;
+        }
+        Set<RowId> rowIds = new HashSet<>();
+        for (long i = 0; i < tables; i++) {
+            String tableName = CompactIdsCodec.readString(in);
+            CompactIdsCodec.readIds(in, id -> rowIds.add(new RowId(tableName, id)));
+        }
+        return rowIds;
+    }
+
     public static Invalidations deserialize(InputStream in) throws IOException {
-        try (ObjectInputStream oin = new ObjectInputStream(in)) {
+        PushbackInputStream pin = new PushbackInputStream(in);
+        int first = pin.read();
+        if (first == -1) {
+            // empty message
+            return null;
+        }
+        if (first == COMPACT) {
+            Invalidations invalidations = new Invalidations(pin.read() == 1);
+            invalidations.modified = deserializeCompact(pin);
+            invalidations.deleted = deserializeCompact(pin);
+            return invalidations;
+        }
+        pin.unread(first);
+        try (ObjectInputStream oin = new ObjectInputStream(pin)) {
             return (Invalidations) oin.readObject();
         } catch (ClassNotFoundException | ClassCastException e) {
             throw new IOException(e);
@@ -23,6 +23,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.transaction.xa.XAResource;
 
@@ -172,6 +173,18 @@ public interface Mapper extends RowMapper, XAResource {
     IterableQueryResult queryAndFetch(String query, String queryType, QueryFilter queryFilter,
             boolean distinctDocuments, Object... params);
 
+    /**
+     * Makes a document query to the database and returns the ids as a stream backed by a database cursor.
+     *
+     * @param query the query
+     * @param queryType the query type
+     * @param queryFilter the query filter
+     * @param fetchSize the number of rows fetched from the database at a time
+     * @return a stream of ids, which <b>must</b> be closed when done
+     * @since 10.1
+     */
+    Stream<Serializable> queryStream(String query, String queryType, QueryFilter queryFilter, int fetchSize);
+
     /**
      * Makes a query to the database.
      *
@@ -1022,6 +1022,15 @@ public class Model {
         return docTypePrefetchedFragments.get(typeName);
     }
 
+    /**
+     * Gets the simple and collection fragments for a schema.
+     *
+     * @since 10.1
+     */
+    public Set<String> getSchemaFragments(String schemaName) {
+        return schemaFragments.get(schemaName);
+    }
+
     /**
      * Checks if we have a type (doctype or complex type).
      */
@@ -0,0 +1,573 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.utils.SizeUtils;
+import org.nuxeo.ecm.core.storage.sql.ACLRow.ACLRowPositionComparator;
+import org.nuxeo.ecm.core.storage.sql.OffHeapRowStore.EvictionPolicy;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * A {@link RowMapper} that uses a size-bounded {@link OffHeapRowStore} shared by all the sessions of a repository.
+ * <p>
+ * The cache only holds {@link Row}s that are known to be identical to what's in the underlying {@link RowMapper}: rows
+ * written by a session are removed from the shared store and are not cached again by this session until its
+ * transaction is finished; at commit time they are removed again, to drop any older value that another session may
+ * have read from the database in the meantime.
+ * <p>
+ * Configuration is done through the caching mapper properties:
+ * <ul>
+ * <li>{@code maxSize}: the off-heap size, for instance {@code 2GB} (default {@value #DEFAULT_MAX_SIZE}),</li>
+ * <li>{@code concurrency}: the number of segments (default {@value #DEFAULT_CONCURRENCY}),</li>
+ * <li>{@code eviction}: {@code lru} or {@code lfu} (default {@code lru}).</li>
+ * </ul>
+ * The JVM {@code -XX:MaxDirectMemorySize} must be large enough for the configured size.
+ *
+ * @since 10.1
+ */
+public class OffHeapCachingRowMapper implements RowMapper {
+
+    private static final Log log = LogFactory.getLog(OffHeapCachingRowMapper.class);
+
+    public static final String MAX_SIZE_PROP = "maxSize";
+
+    public static final String CONCURRENCY_PROP = "concurrency";
+
+    public static final String EVICTION_PROP = "eviction";
+
+    public static final String DEFAULT_MAX_SIZE = "256MB";
+
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    /**
+     * The stores, one per repository. The repository instance is represented by its {@link InvalidationsPropagator}
+     * so that a store lives as long as its repository.
+     */
+    protected static final Map<InvalidationsPropagator, OffHeapRowStore> STORES = new WeakHashMap<>();
+
+    protected OffHeapRowStore store;
+
+    private Model model;
+
+    /**
+     * The {@link RowMapper} to which operations that cannot be processed from the cache are delegated.
+     */
+    private RowMapper rowMapper;
+
+    /**
+     * The local invalidations due to writes through this mapper that should be propagated to other sessions at
+     * post-commit time.
+     */
+    private final Invalidations localInvalidations;
+
+    /**
+     * The rows written by this mapper in the current transaction, which must not be put in the shared store until
+     * they're committed.
+     */
+    private final Set<RowId> written;
+
+    /**
+     * The queue of invalidations received from other session, to process at pre-transaction time.
+     */
+    // public for unit tests
+    public final InvalidationsQueue cacheQueue;
+
+    /**
+     * The propagator of invalidations to other mappers.
+     */
+    private InvalidationsPropagator cachePropagator;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected Counter cacheHitCount;
+
+    protected Timer cacheGetTimer;
+
+    // sor means system of record (database access)
+    protected Counter sorRows;
+
+    protected Timer sorGetTimer;
+
+    public OffHeapCachingRowMapper() {
+        localInvalidations = new Invalidations();
+        written = new HashSet<>();
+        cacheQueue = new InvalidationsQueue("mapper-" + this);
+    }
+
+    public void initialize(String repositoryName, Model model, RowMapper rowMapper,
+            InvalidationsPropagator cachePropagator, Map<String, String> properties) {
+        this.model = model;
+        this.rowMapper = rowMapper;
+        this.cachePropagator = cachePropagator;
+        cachePropagator.addQueue(cacheQueue);
+        synchronized (STORES) {
+            store = STORES.get(cachePropagator);
+            if (store == null) {
+                store = newStore(repositoryName, properties);
+                STORES.put(cachePropagator, store);
+                setStoreMetrics(repositoryName);
+            }
+        }
+        setMetrics(repositoryName);
+    }
+
+    protected OffHeapRowStore newStore(String repositoryName, Map<String, String> properties) {
+        String maxSizeStr = properties.getOrDefault(MAX_SIZE_PROP, DEFAULT_MAX_SIZE);
+        long maxSize = SizeUtils.parseSizeInBytes(maxSizeStr);
+        String concurrencyStr = properties.get(CONCURRENCY_PROP);
+        int concurrency = concurrencyStr == null ? DEFAULT_CONCURRENCY : Integer.parseInt(concurrencyStr.trim());
+        String evictionStr = properties.get(EVICTION_PROP);
+        EvictionPolicy policy = evictionStr == null ? EvictionPolicy.LRU
+                : EvictionPolicy.valueOf(evictionStr.trim().toUpperCase());
+        log.info(String.format("Repository %s: off-heap row cache of %s (concurrency %d, eviction %s)",
+                repositoryName, maxSizeStr, concurrency, policy));
+        return new OffHeapRowStore(maxSize, concurrency, policy);
+    }
+
+    protected String metricName(String repositoryName, String... names) {
+        return MetricRegistry.name(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap"),
+                names);
+    }
+
+    protected void setMetrics(String repositoryName) {
+        cacheHitCount = registry.counter(metricName(repositoryName, "hits"));
+        cacheGetTimer = registry.timer(metricName(repositoryName, "get"));
+        sorRows = registry.counter(metricName(repositoryName, "sor", "rows"));
+        sorGetTimer = registry.timer(metricName(repositoryName, "sor", "get"));
+    }
+
+    protected void setStoreMetrics(String repositoryName) {
+        // a new repository with the same name replaces the gauges of the previous one
+        OffHeapRowStore store = this.store;
+        registerGauge(metricName(repositoryName, "hit-ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                long hits = store.getHits();
+                return Ratio.of(hits, hits + store.getMisses());
+            }
+        });
+        registerGauge(metricName(repositoryName, "cache-size"), (Gauge<Long>) store::getEntries);
+        registerGauge(metricName(repositoryName, "used-bytes"), (Gauge<Long>) store::getUsedSize);
+        registerGauge(metricName(repositoryName, "evictions"), (Gauge<Long>) store::getEvictions);
+        registerGauge(metricName(repositoryName, "rejections"), (Gauge<Long>) store::getRejections);
+    }
+
+    protected void registerGauge(String name, Gauge<?> gauge) {
+        registry.remove(name);
+        registry.register(name, gauge);
+    }
+
+    /**
+     * Gets the store shared by all the sessions of the repository.
+     */
+    public OffHeapRowStore getStore() {
+        return store;
+    }
+
+    /**
+     * Gets the store shared by all the sessions of a repository, or {@code null} if the repository doesn't use it.
+     *
+     * @param cachePropagator the invalidations propagator of the repository
+     */
+    public static OffHeapRowStore getSharedStore(InvalidationsPropagator cachePropagator) {
+        synchronized (STORES) {
+            return STORES.get(cachePropagator);
+        }
+    }
+
+    public void close() {
+        clearCache();
+        cachePropagator.removeQueue(cacheQueue);
+    }
+
+    @Override
+    public Serializable generateNewId() {
+        return rowMapper.generateNewId();
+    }
+
+    /*
+     * ----- Cache -----
+     */
+
+    protected void cachePut(Row row, long[] generations) {
+        if (written.contains(row)) {
+            return;
+        }
+        // for ACL collections, make sure the order is correct
+        // (without the cache, the query to get a list of collection does an
+        // ORDER BY pos, so users of the cache must get the same behavior)
+        if (row.isCollection() && row.values.length > 0 && row.values[0] instanceof ACLRow) {
+            row = row.clone();
+            row.values = sortACLRows((ACLRow[]) row.values);
+        }
+        store.put(new RowId(row), OffHeapRowCodec.encode(row), generations);
+    }
+
+    protected ACLRow[] sortACLRows(ACLRow[] acls) {
+        ACLRow[] res = acls.clone();
+        Arrays.sort(res, ACLRowPositionComparator.INSTANCE);
+        return res;
+    }
+
+    protected void cachePutAbsent(RowId rowId, long[] generations) {
+        if (written.contains(rowId)) {
+            return;
+        }
+        store.put(new RowId(rowId), OffHeapRowCodec.encodeAbsent(), generations);
+    }
+
+    protected void cachePutAbsentIfNull(RowId rowId, Row row, long[] generations) {
+        if (row != null) {
+            cachePut(row, generations);
+        } else {
+            cachePutAbsent(rowId, generations);
+        }
+    }
+
+    protected void cachePutAbsentIfRowId(RowId rowId, long[] generations) {
+        if (rowId instanceof Row) {
+            cachePut((Row) rowId, generations);
+        } else {
+            cachePutAbsent(rowId, generations);
+        }
+    }
+
+    /**
+     * Gets the encoded row from the cache, or {@code null} if not cached.
+     */
+    protected byte[] cacheGet(RowId rowId) {
+        if (written.contains(rowId)) {
+            return null;
+        }
+        final Timer.Context context = cacheGetTimer.time();
+        try {
+            byte[] bytes = store.get(rowId);
+            if (bytes != null) {
+                cacheHitCount.inc();
+            }
+            return bytes;
+        } finally {
+            context.stop();
+        }
+    }
+
+    /**
+     * Removes a row written by this mapper from the cache.
+     */
+    protected void cacheRemoveWritten(RowId rowId) {
+        RowId key = new RowId(rowId);
+        store.remove(key);
+        written.add(key);
+    }
+
+    /*
+     * ----- Invalidations / Cache Management -----
+     */
+
+    @Override
+    public Invalidations receiveInvalidations() {
+        // invalidations from the underlying mapper (cluster)
+        // also propagated to our invalidations queue
+        Invalidations remoteInvalidations = rowMapper.receiveInvalidations();
+        if (remoteInvalidations != null) {
+            // the store is shared, only remote invalidations have to be applied
+            // local ones are applied by the sender at commit time
+            invalidateStore(remoteInvalidations);
+        }
+
+        Invalidations invalidations = cacheQueue.getInvalidations();
+        return invalidations.isEmpty() ? null : invalidations;
+    }
+
+    protected void invalidateStore(Invalidations invalidations) {
+        if (invalidations.all) {
+            store.clear();
+        }
+        if (invalidations.modified != null) {
+            for (RowId rowId : invalidations.modified) {
+                store.remove(rowId);
+            }
+        }
+        if (invalidations.deleted != null) {
+            for (RowId rowId : invalidations.deleted) {
+                store.remove(rowId);
+            }
+        }
+    }
+
+    // propagate invalidations
+    @Override
+    public void sendInvalidations(Invalidations invalidations) {
+        // add local invalidations
+        if (!localInvalidations.isEmpty()) {
+            if (invalidations == null) {
+                invalidations = new Invalidations();
+            }
+            invalidations.add(localInvalidations);
+            localInvalidations.clear();
+        }
+        // our writes are now committed
+        written.clear();
+
+        if (invalidations != null && !invalidations.isEmpty()) {
+            // remove values read by other sessions before our commit
+            invalidateStore(invalidations);
+
+            // send to underlying mapper
+            rowMapper.sendInvalidations(invalidations);
+
+            // queue to other local mappers
+            cachePropagator.propagateInvalidations(invalidations, cacheQueue);
+        }
+    }
+
+    /**
+     * Clears the state of this mapper. The store, shared with the other sessions, is cleared by the repository.
+     *
+     * @see RepositoryImpl#clearCaches
+     */
+    @Override
+    public void clearCache() {
+        written.clear();
+        localInvalidations.clear();
+        rowMapper.clearCache();
+    }
+
+    /**
+     * This mapper has no cache of its own, the size of the shared store is reported once by the repository.
+     *
+     * @see RepositoryImpl#getCacheSize
+     */
+    @Override
+    public long getCacheSize() {
+        return 0;
+    }
+
+    @Override
+    public void rollback(Xid xid) throws XAException {
+        try {
+            rowMapper.rollback(xid);
+        } finally {
+            // written rows were removed from the store, the committed values can be cached again
+            clearCache();
+        }
+    }
+
+    /*
+     * ----- Batch -----
+     */
+
+    /*
+     * Use those from the cache if available, read from the mapper for the rest.
+     */
+    @Override
+    public List<? extends RowId> read(Collection<RowId> rowIds, boolean cacheOnly) {
+        long[] generations = store.getGenerations();
+        List<RowId> res = new ArrayList<RowId>(rowIds.size());
+        // find which are in cache, and which not
+        List<RowId> todo = new LinkedList<RowId>();
+        for (RowId rowId : rowIds) {
+            byte[] bytes = cacheGet(rowId);
+            if (bytes == null) {
+                if (cacheOnly) {
+                    res.add(new RowId(rowId));
+                } else {
+                    todo.add(rowId);
+                }
+            } else if (OffHeapRowCodec.isAbsent(bytes)) {
+                res.add(new RowId(rowId));
+            } else {
+                res.add(OffHeapRowCodec.decode(rowId, bytes));
+            }
+        }
+        if (!todo.isEmpty()) {
+            final Timer.Context context = sorGetTimer.time();
+            try {
+                // ask missing ones to underlying row mapper
+                List<? extends RowId> fetched = rowMapper.read(todo, cacheOnly);
+                // add them to the cache
+                for (RowId rowId : fetched) {
+                    cachePutAbsentIfRowId(rowId, generations);
+                }
+                // merge results
+                res.addAll(fetched);
+                sorRows.inc(fetched.size());
+            } finally {
+                context.stop();
+            }
+        }
+        return res;
+    }
+
+    /*
+     * Remove from the cache then pass all the writes to the mapper.
+     */
+    @Override
+    public void write(RowBatch batch) {
+        for (Row row : batch.creates) {
+            cacheRemoveWritten(row);
+            // we need to send modified invalidations for created
+            // fragments because other session's ABSENT fragments have
+            // to be invalidated
+            localInvalidations.addModified(new RowId(row));
+        }
+        for (RowUpdate rowu : batch.updates) {
+            cacheRemoveWritten(rowu.row);
+            localInvalidations.addModified(new RowId(rowu.row));
+        }
+        for (RowId rowId : batch.deletes) {
+            if (rowId instanceof Row) {
+                throw new AssertionError();
+            }
+            cacheRemoveWritten(rowId);
+            localInvalidations.addDeleted(rowId);
+        }
+        for (RowId rowId : batch.deletesDependent) {
+            if (rowId instanceof Row) {
+                throw new AssertionError();
+            }
+            cacheRemoveWritten(rowId);
+            localInvalidations.addDeleted(rowId);
+        }
+
+        // propagate to underlying mapper
+        rowMapper.write(batch);
+    }
+
+    /*
+     * ----- Read -----
+     */
+
+    @Override
+    public Row readSimpleRow(RowId rowId) {
+        long[] generations = store.getGenerations();
+        byte[] bytes = cacheGet(rowId);
+        if (bytes == null) {
+            Row row = rowMapper.readSimpleRow(rowId);
+            cachePutAbsentIfNull(rowId, row, generations);
+            return row;
+        } else if (OffHeapRowCodec.isAbsent(bytes)) {
+            return null;
+        } else {
+            return OffHeapRowCodec.decode(rowId, bytes);
+        }
+    }
+
+    @Override
+    public Map<String, String> getBinaryFulltext(RowId rowId) {
+        return rowMapper.getBinaryFulltext(rowId);
+    }
+
+    @Override
+    public Serializable[] readCollectionRowArray(RowId rowId) {
+        long[] generations = store.getGenerations();
+        byte[] bytes = cacheGet(rowId);
+        if (bytes == null) {
+            Serializable[] array = rowMapper.readCollectionRowArray(rowId);
+            assert array != null;
+            Row row = new Row(rowId.tableName, rowId.id, array);
+            cachePut(row, generations);
+            return row.values;
+        } else if (OffHeapRowCodec.isAbsent(bytes)) {
+            return null;
+        } else {
+            return OffHeapRowCodec.decode(rowId, bytes).values;
+        }
+    }
+
+    @Override
+    public List<Row> readSelectionRows(SelectionType selType, Serializable selId, Serializable filter,
+            Serializable criterion, boolean limitToOne) {
+        long[] generations = store.getGenerations();
+        List<Row> rows = rowMapper.readSelectionRows(selType, selId, filter, criterion, limitToOne);
+        for (Row row : rows) {
+            cachePut(row, generations);
+        }
+        return rows;
+    }
+
+    @Override
+    public Set<Serializable> readSelectionsIds(SelectionType selType, List<Serializable> values) {
+        return rowMapper.readSelectionsIds(selType, values);
+    }
+
+    /*
+     * ----- Copy -----
+     */
+
+    @Override
+    public CopyResult copy(IdWithTypes source, Serializable destParentId, String destName, Row overwriteRow) {
+        CopyResult result = rowMapper.copy(source, destParentId, destName, overwriteRow);
+        Invalidations invalidations = result.invalidations;
+        if (invalidations.modified != null) {
+            for (RowId rowId : invalidations.modified) {
+                cacheRemoveWritten(rowId);
+                localInvalidations.addModified(new RowId(rowId));
+            }
+        }
+        if (invalidations.deleted != null) {
+            for (RowId rowId : invalidations.deleted) {
+                cacheRemoveWritten(rowId);
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<NodeInfo> getDescendantsInfo(Serializable rootId) {
+        return rowMapper.getDescendantsInfo(rootId);
+    }
+
+    @Override
+    public void remove(Serializable rootId, List<NodeInfo> nodeInfos) {
+        rowMapper.remove(rootId, nodeInfos);
+        for (NodeInfo info : nodeInfos) {
+            for (String fragmentName : model.getTypeFragments(new IdWithTypes(info.id, info.primaryType, null))) {
+                RowId rowId = new RowId(fragmentName, info.id);
+                cacheRemoveWritten(rowId);
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+    }
+
+}
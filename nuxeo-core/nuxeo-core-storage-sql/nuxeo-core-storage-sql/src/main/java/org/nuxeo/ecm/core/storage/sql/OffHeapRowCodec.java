@@ -0,0 +1,358 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Compact binary encoding of the {@link Row}s held by the {@link OffHeapRowStore}.
+ * <p>
+ * The table name and id are not encoded, they are provided by the {@link RowId} used as key. The types produced by
+ * the JDBC layer ({@link PropertyType}) have a dedicated encoding, other values fall back to Java serialization.
+ *
+ * @since 10.1
+ */
+public class OffHeapRowCodec {
+
+    protected static final byte KIND_ABSENT = 0;
+
+    protected static final byte KIND_SIMPLE = 1;
+
+    protected static final byte KIND_COLLECTION = 2;
+
+    protected static final byte T_NULL = 0;
+
+    protected static final byte T_STRING = 1;
+
+    protected static final byte T_LONG = 2;
+
+    protected static final byte T_INTEGER = 3;
+
+    protected static final byte T_TRUE = 4;
+
+    protected static final byte T_FALSE = 5;
+
+    protected static final byte T_DOUBLE = 6;
+
+    protected static final byte T_CALENDAR = 7;
+
+    protected static final byte T_ACL = 8;
+
+    protected static final byte T_ARRAY = 9;
+
+    protected static final byte T_OPAQUE = 10;
+
+    protected static final byte T_SERIALIZED = 11;
+
+    // array component types
+
+    protected static final byte C_SERIALIZABLE = 0;
+
+    protected static final byte C_STRING = 1;
+
+    protected static final byte C_LONG = 2;
+
+    protected static final byte C_BOOLEAN = 3;
+
+    protected static final byte C_DOUBLE = 4;
+
+    protected static final byte C_CALENDAR = 5;
+
+    protected static final byte C_ACL = 6;
+
+    protected static final byte[] ABSENT = new byte[] { KIND_ABSENT };
+
+    private OffHeapRowCodec() {
+        // utility class
+    }
+
+    /**
+     * Checks if the encoded value denotes a row known to be absent from the database.
+     */
+    public static boolean isAbsent(byte[] bytes) {
+        return bytes[0] == KIND_ABSENT;
+    }
+
+    /**
+     * Encodes a marker for a row known to be absent from the database.
+     */
+    public static byte[] encodeAbsent() {
+        return ABSENT;
+    }
+
+    public static byte[] encode(Row row) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            if (row.isCollection()) {
+                out.writeByte(KIND_COLLECTION);
+                writeArray(out, row.values);
+            } else {
+                out.writeByte(KIND_SIMPLE);
+                out.writeInt(row.size);
+                for (int i = 0; i < row.size; i++) {
+                    writeString(out, row.keys[i]);
+                    writeValue(out, row.values[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot encode: " + row, e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decodes a non-absent row.
+     *
+     * @see #isAbsent
+     */
+    public static Row decode(RowId rowId, byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte kind = in.readByte();
+            switch (kind) {
+            case KIND_COLLECTION:
+                return new Row(rowId.tableName, rowId.id, readArray(in));
+            case KIND_SIMPLE:
+                Row row = new Row(rowId.tableName, rowId.id);
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    String key = readString(in);
+                    row.putNew(key, readValue(in));
+                }
+                return row;
+            default:
+                throw new NuxeoException("Cannot decode row kind: " + kind + " for: " + rowId);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new NuxeoException("Cannot decode: " + rowId, e);
+        }
+    }
+
+    protected static void writeString(DataOutputStream out, String string) throws IOException {
+        // not writeUTF, which is limited to 64k
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    protected static void writeCalendar(DataOutputStream out, Calendar cal) throws IOException {
+        out.writeLong(cal.getTimeInMillis());
+        writeString(out, cal.getTimeZone().getID());
+    }
+
+    protected static Calendar readCalendar(DataInputStream in) throws IOException {
+        long millis = in.readLong();
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone(readString(in)));
+        cal.setTimeInMillis(millis);
+        return cal;
+    }
+
+    protected static void writeValue(DataOutputStream out, Serializable value) throws IOException {
+        if (value == null) {
+            out.writeByte(T_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(T_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(T_LONG);
+            out.writeLong(((Long) value).longValue());
+        } else if (value instanceof Integer) {
+            out.writeByte(T_INTEGER);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(((Boolean) value).booleanValue() ? T_TRUE : T_FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(T_DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value.getClass() == GregorianCalendar.class) {
+            out.writeByte(T_CALENDAR);
+            writeCalendar(out, (Calendar) value);
+        } else if (value instanceof ACLRow) {
+            out.writeByte(T_ACL);
+            writeACLRow(out, (ACLRow) value);
+        } else if (value == Row.OPAQUE) {
+            out.writeByte(T_OPAQUE);
+        } else if (value instanceof Serializable[] && getComponentType((Serializable[]) value) >= 0) {
+            out.writeByte(T_ARRAY);
+            writeArray(out, (Serializable[]) value);
+        } else {
+            out.writeByte(T_SERIALIZED);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(value);
+            }
+            byte[] bytes = baos.toByteArray();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    protected static Serializable readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte type = in.readByte();
+        switch (type) {
+        case T_NULL:
+            return null;
+        case T_STRING:
+            return readString(in);
+        case T_LONG:
+            return Long.valueOf(in.readLong());
+        case T_INTEGER:
+            return Integer.valueOf(in.readInt());
+        case T_TRUE:
+            return Boolean.TRUE;
+        case T_FALSE:
+            return Boolean.FALSE;
+        case T_DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case T_CALENDAR:
+            return readCalendar(in);
+        case T_ACL:
+            return readACLRow(in);
+        case T_OPAQUE:
+            return Row.OPAQUE;
+        case T_ARRAY:
+            return readArray(in);
+        case T_SERIALIZED:
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (Serializable) ois.readObject();
+            }
+        default:
+            throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    /**
+     * Gets the code of the array component type, or -1 if the array cannot use the compact encoding.
+     */
+    protected static byte getComponentType(Serializable[] array) {
+        Class<?> klass = array.getClass().getComponentType();
+        if (klass == String.class) {
+            return C_STRING;
+        } else if (klass == Long.class) {
+            return C_LONG;
+        } else if (klass == Boolean.class) {
+            return C_BOOLEAN;
+        } else if (klass == Double.class) {
+            return C_DOUBLE;
+        } else if (klass == Calendar.class) {
+            return C_CALENDAR;
+        } else if (klass == ACLRow.class) {
+            return C_ACL;
+        } else if (klass == Serializable.class) {
+            return C_SERIALIZABLE;
+        }
+        return -1;
+    }
+
+    protected static void writeArray(DataOutputStream out, Serializable[] array) throws IOException {
+        byte componentType = getComponentType(array);
+        if (componentType < 0) {
+            throw new IOException("Unsupported array type: " + array.getClass().getName());
+        }
+        out.writeByte(componentType);
+        out.writeInt(array.length);
+        for (Serializable value : array) {
+            // element types are always known, except for Serializable arrays
+            writeValue(out, value);
+        }
+    }
+
+    protected static Serializable[] readArray(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte componentType = in.readByte();
+        int length = in.readInt();
+        Serializable[] array;
+        switch (componentType) {
+        case C_STRING:
+            array = new String[length];
+            break;
+        case C_LONG:
+            array = new Long[length];
+            break;
+        case C_BOOLEAN:
+            array = new Boolean[length];
+            break;
+        case C_DOUBLE:
+            array = new Double[length];
+            break;
+        case C_CALENDAR:
+            array = new Calendar[length];
+            break;
+        case C_ACL:
+            array = new ACLRow[length];
+            break;
+        case C_SERIALIZABLE:
+            array = new Serializable[length];
+            break;
+        default:
+            throw new IOException("Unknown array component type: " + componentType);
+        }
+        for (int i = 0; i < length; i++) {
+            array[i] = readValue(in);
+        }
+        return array;
+    }
+
+    protected static void writeACLRow(DataOutputStream out, ACLRow acl) throws IOException {
+        out.writeInt(acl.pos);
+        writeValue(out, acl.name);
+        out.writeBoolean(acl.grant);
+        writeValue(out, acl.permission);
+        writeValue(out, acl.user);
+        writeValue(out, acl.group);
+        writeValue(out, acl.creator);
+        writeValue(out, acl.begin);
+        writeValue(out, acl.end);
+        writeValue(out, acl.status);
+    }
+
+    protected static ACLRow readACLRow(DataInputStream in) throws IOException, ClassNotFoundException {
+        int pos = in.readInt();
+        String name = (String) readValue(in);
+        boolean grant = in.readBoolean();
+        String permission = (String) readValue(in);
+        String user = (String) readValue(in);
+        String group = (String) readValue(in);
+        String creator = (String) readValue(in);
+        Calendar begin = (Calendar) readValue(in);
+        Calendar end = (Calendar) readValue(in);
+        Long status = (Long) readValue(in);
+        return new ACLRow(pos, name, grant, permission, user, group, creator, begin, end, status);
+    }
+
+}
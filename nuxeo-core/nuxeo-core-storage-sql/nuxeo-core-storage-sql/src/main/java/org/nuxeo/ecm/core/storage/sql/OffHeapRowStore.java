@@ -0,0 +1,395 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded store of encoded rows kept outside of the Java heap.
+ * <p>
+ * The store is split into segments, each one owning a direct {@link ByteBuffer} used as a ring: new entries are
+ * appended at the head, and space is reclaimed from the tail. When a live entry reaches the tail it is either evicted,
+ * or given a second chance and re-appended at the head if it was used since its last pass, according to the
+ * {@link EvictionPolicy}. Only the index (keys and slot coordinates) stays on the heap.
+ * <p>
+ * To avoid caching values read from the database concurrently with an invalidation, each segment has a generation
+ * incremented on every removal; writers snapshot the generations with {@link #getGenerations} before reading the
+ * database, and {@link #put} ignores values whose segment was invalidated since the snapshot.
+ *
+ * @since 10.1
+ */
+public class OffHeapRowStore {
+
+    /**
+     * How live entries reaching the tail of a segment are selected for eviction.
+     */
+    public enum EvictionPolicy {
+        /** Approximated LRU (CLOCK): an entry used since its last pass is kept. */
+        LRU,
+        /** Approximated LFU: entries have a use counter, halved at each pass, and are kept while it's not zero. */
+        LFU
+    }
+
+    /** Maximum number of entries re-appended while looking for space for a new entry. */
+    protected static final int MAX_SECOND_CHANCES = 16;
+
+    protected static final int MAX_FREQUENCY = 255;
+
+    /** Minimum size of a segment. */
+    protected static final int MIN_SEGMENT_SIZE = 4 * 1024;
+
+    protected final EvictionPolicy policy;
+
+    protected final Segment[] segments;
+
+    protected final long capacity;
+
+    protected final LongAdder hits = new LongAdder();
+
+    protected final LongAdder misses = new LongAdder();
+
+    protected final LongAdder evictions = new LongAdder();
+
+    protected final LongAdder rejections = new LongAdder();
+
+    /**
+     * Creates a store.
+     *
+     * @param maxSize the total off-heap size, in bytes
+     * @param concurrency the number of independently locked segments
+     * @param policy the eviction policy
+     */
+    public OffHeapRowStore(long maxSize, int concurrency, EvictionPolicy policy) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Invalid concurrency: " + concurrency);
+        }
+        long segmentSize = maxSize / concurrency;
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Size too small: " + maxSize + " for concurrency: " + concurrency);
+        }
+        if (segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Size too big: " + maxSize + " for concurrency: " + concurrency + ", increase the concurrency");
+        }
+        this.policy = policy;
+        segments = new Segment[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            segments[i] = new Segment((int) segmentSize);
+        }
+        capacity = segmentSize * concurrency;
+    }
+
+    protected int segmentIndex(RowId rowId) {
+        int h = rowId.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % segments.length;
+    }
+
+    /**
+     * Gets a snapshot of the segment generations, to pass to a later {@link #put}.
+     */
+    public long[] getGenerations() {
+        long[] generations = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            generations[i] = segments[i].getGeneration();
+        }
+        return generations;
+    }
+
+    /**
+     * Gets the encoded value for a row, or {@code null} if not in the store.
+     */
+    public byte[] get(RowId rowId) {
+        byte[] bytes = segments[segmentIndex(rowId)].get(rowId);
+        if (bytes == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return bytes;
+    }
+
+    /**
+     * Puts the encoded value for a row, unless the row may have been invalidated since the generations snapshot.
+     *
+     * @param generations the snapshot from {@link #getGenerations} taken before the value was read
+     * @return {@code true} if the value was stored
+     */
+    public boolean put(RowId rowId, byte[] bytes, long[] generations) {
+        int index = segmentIndex(rowId);
+        return segments[index].put(rowId, bytes, generations[index]);
+    }
+
+    /**
+     * Removes a row from the store.
+     */
+    public void remove(RowId rowId) {
+        segments[segmentIndex(rowId)].remove(rowId);
+    }
+
+    /**
+     * Removes all rows from the store.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /** The number of rows in the store. */
+    public long getEntries() {
+        long entries = 0;
+        for (Segment segment : segments) {
+            entries += segment.getEntries();
+        }
+        return entries;
+    }
+
+    /** The number of bytes used by live rows. */
+    public long getUsedSize() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.getUsed();
+        }
+        return used;
+    }
+
+    /** The total off-heap size. */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** The number of live rows evicted to make room for new ones. */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** The number of rows not stored because they were too big. */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * An entry of a segment.
+     */
+    protected static final class Slot {
+
+        protected final RowId rowId;
+
+        protected final int offset;
+
+        protected final int length;
+
+        protected int frequency;
+
+        protected boolean live = true;
+
+        protected Slot(RowId rowId, int offset, int length, int frequency) {
+            this.rowId = rowId;
+            this.offset = offset;
+            this.length = length;
+            this.frequency = frequency;
+        }
+    }
+
+    /**
+     * A part of the store with its own lock, index and off-heap ring buffer.
+     */
+    protected final class Segment {
+
+        protected final ByteBuffer buffer;
+
+        protected final int size;
+
+        protected final int maxEntrySize;
+
+        protected final Map<RowId, Slot> index = new HashMap<>();
+
+        /** All slots, live or not, in buffer order from tail to head. */
+        protected final ArrayDeque<Slot> ring = new ArrayDeque<>();
+
+        /** Where the next entry will be written if there's room. */
+        protected int head;
+
+        protected long used;
+
+        protected long generation;
+
+        protected Segment(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+            this.size = size;
+            maxEntrySize = size / 4;
+        }
+
+        protected synchronized long getGeneration() {
+            return generation;
+        }
+
+        protected synchronized int getEntries() {
+            return index.size();
+        }
+
+        protected synchronized long getUsed() {
+            return used;
+        }
+
+        protected synchronized byte[] get(RowId rowId) {
+            Slot slot = index.get(rowId);
+            if (slot == null) {
+                return null;
+            }
+            if (policy == EvictionPolicy.LRU) {
+                slot.frequency = 1;
+            } else if (slot.frequency < MAX_FREQUENCY) {
+                slot.frequency++;
+            }
+            return read(slot);
+        }
+
+        protected synchronized boolean put(RowId rowId, byte[] bytes, long expectedGeneration) {
+            if (generation != expectedGeneration) {
+                // invalidated since the value was read
+                return false;
+            }
+            if (bytes.length > maxEntrySize) {
+                rejections.increment();
+                return false;
+            }
+            removeSlot(rowId);
+            int offset = allocate(bytes.length);
+            write(offset, bytes);
+            Slot slot = new Slot(rowId, offset, bytes.length, 0);
+            index.put(rowId, slot);
+            ring.addLast(slot);
+            used += bytes.length;
+            return true;
+        }
+
+        protected synchronized void remove(RowId rowId) {
+            removeSlot(rowId);
+            generation++;
+        }
+
+        protected synchronized void clear() {
+            index.clear();
+            ring.clear();
+            head = 0;
+            used = 0;
+            generation++;
+        }
+
+        protected void removeSlot(RowId rowId) {
+            Slot slot = index.remove(rowId);
+            if (slot != null) {
+                // space is reclaimed when the slot reaches the tail
+                slot.live = false;
+                used -= slot.length;
+            }
+        }
+
+        protected byte[] read(Slot slot) {
+            byte[] bytes = new byte[slot.length];
+            buffer.position(slot.offset);
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        protected void write(int offset, byte[] bytes) {
+            buffer.position(offset);
+            buffer.put(bytes);
+        }
+
+        /**
+         * Finds room for an entry without evicting anything.
+         *
+         * @return the offset, or -1 if there's no room
+         */
+        protected int tryAllocate(int length) {
+            if (ring.isEmpty()) {
+                head = length;
+                return 0;
+            }
+            int tail = ring.peekFirst().offset;
+            int offset = -1;
+            if (head > tail) {
+                // free space is [head, size) and [0, tail)
+                if (length <= size - head) {
+                    offset = head;
+                } else if (length <= tail) {
+                    offset = 0;
+                }
+            } else if (head < tail) {
+                // free space is [head, tail)
+                if (length <= tail - head) {
+                    offset = head;
+                }
+            } // else head == tail and ring not empty: full
+            if (offset >= 0) {
+                head = offset + length;
+            }
+            return offset;
+        }
+
+        /**
+         * Finds room for an entry, reclaiming space from the tail as needed.
+         */
+        protected int allocate(int length) {
+            int secondChances = 0;
+            for (;;) {
+                int offset = tryAllocate(length);
+                if (offset >= 0) {
+                    return offset;
+                }
+                Slot slot = ring.pollFirst();
+                if (!slot.live) {
+                    continue;
+                }
+                if (slot.frequency > 0 && secondChances < MAX_SECOND_CHANCES) {
+                    secondChances++;
+                    byte[] bytes = read(slot);
+                    int newOffset = tryAllocate(slot.length);
+                    if (newOffset >= 0) {
+                        write(newOffset, bytes);
+                        int frequency = policy == EvictionPolicy.LRU ? 0 : slot.frequency / 2;
+                        Slot moved = new Slot(slot.rowId, newOffset, slot.length, frequency);
+                        index.put(slot.rowId, moved);
+                        ring.addLast(moved);
+                        continue;
+                    }
+                }
+                index.remove(slot.rowId);
+                used -= slot.length;
+                evictions.increment();
+            }
+        }
+    }
+
+}
@@ -393,6 +393,24 @@ public class RepositoryDescriptor {
         aclOptimizationsEnabled = Boolean.valueOf(enabled);
     }
 
+    /** @since 10.1 */
+    @XNode("aclOptimizations@asyncUpdates")
+    private Boolean aclOptimizationsAsyncUpdates;
+
+    /**
+     * Whether the Read ACLs are updated asynchronously after the transaction commit, instead of at save time.
+     *
+     * @since 10.1
+     */
+    public boolean getAclOptimizationsAsyncUpdates() {
+        return defaultFalse(aclOptimizationsAsyncUpdates);
+    }
+
+    /** @since 10.1 */
+    protected void setAclOptimizationsAsyncUpdates(boolean asyncUpdates) {
+        aclOptimizationsAsyncUpdates = Boolean.valueOf(asyncUpdates);
+    }
+
     /* @since 5.4.2 */
     @XNode("aclOptimizations@readAclMaxSize")
     private Integer readAclMaxSize;
@@ -452,6 +470,7 @@ public class RepositoryDescriptor {
         pathOptimizationsEnabled = other.pathOptimizationsEnabled;
         pathOptimizationsVersion = other.pathOptimizationsVersion;
         aclOptimizationsEnabled = other.aclOptimizationsEnabled;
+        aclOptimizationsAsyncUpdates = other.aclOptimizationsAsyncUpdates;
         readAclMaxSize = other.readAclMaxSize;
         usersSeparatorKey = other.usersSeparatorKey;
         changeTokenEnabled = other.changeTokenEnabled;
@@ -551,6 +570,9 @@ public class RepositoryDescriptor {
         if (other.aclOptimizationsEnabled != null) {
             aclOptimizationsEnabled = other.aclOptimizationsEnabled;
         }
+        if (other.aclOptimizationsAsyncUpdates != null) {
+            aclOptimizationsAsyncUpdates = other.aclOptimizationsAsyncUpdates;
+        }
         if (other.readAclMaxSize != null) {
             readAclMaxSize = other.readAclMaxSize;
         }
@@ -455,6 +455,11 @@ public class RepositoryImpl implements Repository {
         for (SessionImpl session : sessions) {
             n += session.clearCaches();
         }
+        OffHeapRowStore store = OffHeapCachingRowMapper.getSharedStore(invalidationsPropagator);
+        if (store != null) {
+            n += (int) store.getEntries();
+            store.clear();
+        }
         if (lockManager != null) {
             lockManager.clearLockManagerCaches();
         }
@@ -463,7 +468,7 @@ public class RepositoryImpl implements Repository {
 
     @Override
     public long getCacheSize() {
-        long size = 0;
+        long size = getSharedCacheSize();
         for (SessionImpl session : sessions) {
             size += session.getCacheSize();
         }
@@ -471,13 +476,23 @@ public class RepositoryImpl implements Repository {
     }
 
     public long getCacheMapperSize() {
-        long size = 0;
+        long size = getSharedCacheSize();
         for (SessionImpl session : sessions) {
             size += session.getCacheMapperSize();
         }
         return size;
     }
 
+    /**
+     * Gets the number of rows in the cache shared by all the sessions, counted once and not per session.
+     *
+     * @since 10.1
+     */
+    protected long getSharedCacheSize() {
+        OffHeapRowStore store = OffHeapCachingRowMapper.getSharedStore(invalidationsPropagator);
+        return store == null ? 0 : store.getEntries();
+    }
+
     @Override
     public long getCachePristineSize() {
         long size = 0;
@@ -532,6 +547,20 @@ public class RepositoryImpl implements Repository {
         }
     }
 
+    @Override
+    public void updateReadAcls() {
+        try {
+            SessionImpl conn = getConnection();
+            try {
+                conn.updateReadAcls();
+            } finally {
+                conn.close();
+            }
+        } catch (ResourceException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /*
      * ----- -----
      */
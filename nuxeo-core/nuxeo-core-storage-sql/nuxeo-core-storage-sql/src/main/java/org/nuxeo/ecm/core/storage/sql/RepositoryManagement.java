@@ -83,4 +83,12 @@ public interface RepositoryManagement {
      */
     int cleanupDeletedDocuments(int max, Calendar beforeTime);
 
+    /**
+     * Updates the Read ACLs of the documents that have been created, moved or had their ACLs changed since the last
+     * update.
+     *
+     * @since 10.1
+     */
+    void updateReadAcls();
+
 }
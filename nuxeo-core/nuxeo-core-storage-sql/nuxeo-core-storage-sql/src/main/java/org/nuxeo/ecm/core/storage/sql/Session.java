@@ -21,6 +21,8 @@ package org.nuxeo.ecm.core.storage.sql;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.resource.cci.Connection;
 
@@ -95,6 +97,17 @@ public interface Session extends Connection {
      */
     List<Node> getNodesByIds(List<Serializable> ids);
 
+    /**
+     * Gets several nodes given their ids, fetching in bulk the fragments of the given schemas in addition to the
+     * prefetched ones.
+     *
+     * @param ids the ids
+     * @param schemas the schemas whose fragments should be fetched, or {@code null}
+     * @return the nodes, in the same order as the ids, with elements being {@code null} if not found
+     * @since 10.1
+     */
+    List<Node> getNodesByIds(List<Serializable> ids, Set<String> schemas);
+
     /**
      * Gets a node given its absolute path, or given an existing node and a relative path.
      *
@@ -442,6 +455,18 @@ public interface Session extends Connection {
     IterableQueryResult queryAndFetch(String query, String queryType, QueryFilter queryFilter,
             boolean distinctDocuments, Object... params);
 
+    /**
+     * Makes a document query to the database and returns the ids as a stream backed by a database cursor.
+     *
+     * @param query the query
+     * @param queryType the query type
+     * @param queryFilter the query filter
+     * @param fetchSize the number of rows fetched from the database at a time
+     * @return a stream of ids, which <b>must</b> be closed when done
+     * @since 10.1
+     */
+    Stream<Serializable> queryStream(String query, String queryType, QueryFilter queryFilter, int fetchSize);
+
     /**
      * Makes a query to the database.
      *
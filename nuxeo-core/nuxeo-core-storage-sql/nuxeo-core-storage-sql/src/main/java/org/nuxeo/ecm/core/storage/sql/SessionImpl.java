@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.resource.ResourceException;
 import javax.resource.cci.ConnectionMetaData;
@@ -65,6 +66,7 @@ import org.nuxeo.ecm.core.storage.FulltextParser;
 import org.nuxeo.ecm.core.storage.FulltextUpdaterWork;
 import org.nuxeo.ecm.core.storage.FulltextUpdaterWork.IndexAndText;
 import org.nuxeo.ecm.core.storage.sql.PersistenceContext.PathAndId;
+import org.nuxeo.ecm.core.storage.sql.RowMapper.IdWithTypes;
 import org.nuxeo.ecm.core.storage.sql.RowMapper.NodeInfo;
 import org.nuxeo.ecm.core.storage.sql.RowMapper.RowBatch;
 import org.nuxeo.ecm.core.storage.sql.coremodel.SQLFulltextExtractorWork;
@@ -340,7 +342,11 @@ public class SessionImpl implements Session, XAResource {
         }
         doFlush();
         if (readAclsChanged) {
-            updateReadAcls();
+            if (repository.getRepositoryDescriptor().getAclOptimizationsAsyncUpdates()) {
+                scheduleReadAclsUpdate();
+            } else {
+                updateReadAcls();
+            }
         }
         scheduleWork(works);
         checkInvalidationsConflict();
@@ -620,6 +626,10 @@ public class SessionImpl implements Session, XAResource {
     }
 
     public List<Node> getNodesByIds(List<Serializable> ids, boolean prefetch) {
+        return getNodesByIds(ids, prefetch, null);
+    }
+
+    protected List<Node> getNodesByIds(List<Serializable> ids, boolean prefetch, Set<String> schemas) {
         // get hier fragments
         List<RowId> hierRowIds = new ArrayList<>(ids.size());
         for (Serializable id : ids) {
@@ -669,7 +679,7 @@ public class SessionImpl implements Session, XAResource {
 
             // get rows to prefetch for hier fragments
             for (Fragment fragment : hierFragments) {
-                findPrefetchedFragments((SimpleFragment) fragment, bulkRowIds, proxyIds);
+                findPrefetchedFragments((SimpleFragment) fragment, schemas, bulkRowIds, proxyIds);
             }
 
             // proxies
@@ -694,7 +704,7 @@ public class SessionImpl implements Session, XAResource {
             }
             hierFragments = context.getMulti(hierRowIds, true);
             for (Fragment fragment : hierFragments) {
-                findPrefetchedFragments((SimpleFragment) fragment, bulkRowIds, null);
+                findPrefetchedFragments((SimpleFragment) fragment, schemas, bulkRowIds, null);
             }
 
             // we have everything to be prefetched
@@ -724,9 +734,10 @@ public class SessionImpl implements Session, XAResource {
     }
 
     /**
-     * Finds prefetched fragments for a hierarchy fragment, takes note of the ones that are proxies.
+     * Finds prefetched fragments for a hierarchy fragment, and the fragments of the given schemas that exist for its
+     * type. Takes note of the ones that are proxies.
      */
-    protected void findPrefetchedFragments(SimpleFragment hierFragment, List<RowId> bulkRowIds,
+    protected void findPrefetchedFragments(SimpleFragment hierFragment, Set<String> schemas, List<RowId> bulkRowIds,
             Set<Serializable> proxyIds) {
         Serializable id = hierFragment.row.id;
 
@@ -744,6 +755,10 @@ public class SessionImpl implements Session, XAResource {
         if (tableNames == null) {
             return; // unknown (obsolete) type
         }
+        if (schemas != null && !schemas.isEmpty()) {
+            tableNames = new HashSet<>(tableNames);
+            tableNames.addAll(getSchemasFragments(hierFragment, schemas));
+        }
 
         // add row id for each table name
         Serializable parentId = hierFragment.get(Model.HIER_PARENT_KEY);
@@ -765,6 +780,32 @@ public class SessionImpl implements Session, XAResource {
         return getNodesByIds(ids, true);
     }
 
+    @Override
+    public List<Node> getNodesByIds(List<Serializable> ids, Set<String> schemas) {
+        checkLive();
+        return getNodesByIds(ids, true, schemas);
+    }
+
+    /**
+     * Gets the fragments of the given schemas that exist for the type and mixins of a hierarchy fragment.
+     */
+    protected Set<String> getSchemasFragments(SimpleFragment hierFragment, Set<String> schemas) {
+        Set<String> typeFragments = model.getTypeFragments(new IdWithTypes(hierFragment));
+        Set<String> fragments = new HashSet<>();
+        for (String schema : schemas) {
+            Set<String> schemaFragments = model.getSchemaFragments(schema);
+            if (schemaFragments == null) {
+                continue; // unknown schema
+            }
+            for (String fragment : schemaFragments) {
+                if (typeFragments.contains(fragment)) {
+                    fragments.add(fragment);
+                }
+            }
+        }
+        return fragments;
+    }
+
     @Override
     public Node getParentNode(Node node) {
         checkLive();
@@ -1295,6 +1336,25 @@ public class SessionImpl implements Session, XAResource {
         }
     }
 
+    @Override
+    public Stream<Serializable> queryStream(String query, String queryType, QueryFilter queryFilter, int fetchSize) {
+        final Timer.Context timerContext = queryTimer.time();
+        try {
+            return mapper.queryStream(query, queryType, queryFilter, fetchSize);
+        } finally {
+            long duration = timerContext.stop();
+            if ((LOG_MIN_DURATION_NS >= 0) && (duration > LOG_MIN_DURATION_NS)) {
+                String msg = String.format("duration_ms:\t%.2f\t%s\tqueryStream\t%s", duration / 1000000.0,
+                        queryFilter, query);
+                if (log.isTraceEnabled()) {
+                    log.info(msg, new Throwable("Slow query stack trace"));
+                } else {
+                    log.info(msg);
+                }
+            }
+        }
+    }
+
     private String countUpToAsString(long countUpTo) {
         if (countUpTo > 0) {
             return String.format("count total results up to %d", countUpTo);
@@ -1369,6 +1429,18 @@ public class SessionImpl implements Session, XAResource {
         }
     }
 
+    /**
+     * Schedules an asynchronous update of the Read ACLs after commit. A single update is pending at a time for a
+     * repository, as each update processes all the documents that need it.
+     *
+     * @since 10.1
+     */
+    protected void scheduleReadAclsUpdate() {
+        WorkManager workManager = Framework.getService(WorkManager.class);
+        workManager.schedule(new VCSUpdateReadAclsWork(repository.getName()), Scheduling.IF_NOT_SCHEDULED, true);
+        readAclsChanged = false;
+    }
+
     @Override
     public void rebuildReadAcls() {
         mapper.rebuildReadAcls();
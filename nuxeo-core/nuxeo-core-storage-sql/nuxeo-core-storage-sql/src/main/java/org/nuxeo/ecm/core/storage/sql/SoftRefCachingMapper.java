@@ -23,6 +23,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -110,6 +111,12 @@ public class SoftRefCachingMapper extends SoftRefCachingRowMapper implements Cac
         return mapper.queryAndFetch(query, queryType, queryFilter, distinctDocuments, params);
     }
 
+    @Override
+    public Stream<Serializable> queryStream(String query, String queryType, QueryFilter queryFilter,
+            int fetchSize) {
+        return mapper.queryStream(query, queryType, queryFilter, fetchSize);
+    }
+
     @Override
     public PartialList<Map<String, Serializable>> queryProjection(String query, String queryType,
             QueryFilter queryFilter, boolean distinctDocuments, long countUpTo, Object... params) {
@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.storage.sql.coremodel.SQLRepositoryService;
+import org.nuxeo.ecm.core.work.AbstractWork;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * Work updating the Read ACLs of a repository, used when the repository is configured to update them asynchronously.
+ * <p>
+ * The update processes all the documents for which a Read ACL update has been required, so the work has a fixed id
+ * per repository and a new one is not scheduled if one is already waiting. The delay between the scheduling and the
+ * end of the update is reported in the {@code nuxeo.repositories.<repository>.aclr-updates-lag} metric.
+ *
+ * @since 10.1
+ */
+public class VCSUpdateReadAclsWork extends AbstractWork {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final String CATEGORY = "security";
+
+    protected static final String TITLE = "Update Read ACLs";
+
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected VCSUpdateReadAclsWork() {
+    }
+
+    public VCSUpdateReadAclsWork(String repositoryName) {
+        super("updateReadAcls:" + repositoryName);
+        this.repositoryName = repositoryName;
+    }
+
+    @Override
+    public String getCategory() {
+        return CATEGORY;
+    }
+
+    @Override
+    public String getTitle() {
+        return TITLE;
+    }
+
+    @Override
+    public int getRetryCount() {
+        return 1;
+    }
+
+    @Override
+    public void work() {
+        setStatus("Updating");
+        SQLRepositoryService sqlRepositoryService = Framework.getService(SQLRepositoryService.class);
+        sqlRepositoryService.getRepository(repositoryName).updateReadAcls();
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        registry.timer(MetricRegistry.name("nuxeo", "repositories", repositoryName, "aclr-updates-lag"))
+                .update(System.currentTimeMillis() - getSchedulingTime(), TimeUnit.MILLISECONDS);
+        setStatus("Done");
+    }
+
+}
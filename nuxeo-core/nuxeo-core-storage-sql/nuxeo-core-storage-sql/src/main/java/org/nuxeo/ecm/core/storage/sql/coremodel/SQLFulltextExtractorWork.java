@@ -38,6 +38,14 @@ public class SQLFulltextExtractorWork extends FulltextExtractorWork {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected SQLFulltextExtractorWork() {
+    }
+
     public SQLFulltextExtractorWork(String repositoryName, String docId) {
         super(repositoryName, docId, true);
     }
@@ -28,6 +28,7 @@ import org.nuxeo.ecm.core.api.repository.Repository;
 import org.nuxeo.ecm.core.api.repository.RepositoryManager;
 import org.nuxeo.ecm.core.repository.RepositoryFactory;
 import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.ecm.core.storage.BaseDocument;
 import org.nuxeo.ecm.core.storage.FulltextConfiguration;
 import org.nuxeo.ecm.core.storage.FulltextParser;
 import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
@@ -91,6 +92,7 @@ public class SQLRepositoryService extends DefaultComponent {
     @Override
     public void activate(ComponentContext context) {
         registry.clear();
+        BaseDocument.initLazyProperties();
     }
 
     @Override
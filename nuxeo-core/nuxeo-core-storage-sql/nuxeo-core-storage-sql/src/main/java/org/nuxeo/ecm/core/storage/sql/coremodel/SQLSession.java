@@ -34,6 +34,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import javax.resource.ResourceException;
 
@@ -184,6 +185,33 @@ public class SQLSession implements Session {
         return doc;
     }
 
+    @Override
+    public List<Document> getDocumentsByUUID(List<String> uuids, Set<String> schemas) {
+        List<Serializable> ids = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            ids.add(idFromString(uuid));
+        }
+        List<Node> nodes = session.getNodesByIds(ids, schemas);
+        List<Document> docs = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            Document doc;
+            try {
+                doc = newDocument(node);
+            } catch (DocumentNotFoundException e) {
+                // unknown type in db
+                doc = null;
+            }
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    @Override
+    public List<Document> readDocumentsByUUID(List<String> uuids) {
+        // the persistence context only keeps weak references to the unmodified fragments
+        return getDocumentsByUUID(uuids, null);
+    }
+
     @Override
     public Document resolvePath(String path) throws DocumentNotFoundException {
         if (path.endsWith("/") && path.length() > 1) {
@@ -429,6 +457,12 @@ public class SQLSession implements Session {
         return session.queryAndFetch(query, queryType, queryFilter, distinctDocuments, params);
     }
 
+    @Override
+    public Stream<String> queryStream(String query, QueryFilter queryFilter, int fetchSize) {
+        Model model = session.getModel();
+        return session.queryStream(query, NXQL.NXQL, queryFilter, fetchSize).map(model::idToString);
+    }
+
     @Override
     public PartialList<Map<String, Serializable>> queryProjection(String query, String queryType,
             QueryFilter queryFilter, boolean distinctDocuments, long countUpTo, Object[] params) {
@@ -44,13 +44,19 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -741,6 +747,119 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         }
     }
 
+    @Override
+    public Stream<Serializable> queryStream(String query, String queryType, QueryFilter queryFilter, int fetchSize) {
+        if (dialect.needsPrepareUserReadAcls()) {
+            prepareUserReadAcls(queryFilter);
+        }
+        QueryMaker queryMaker = findQueryMaker(queryType);
+        if (queryMaker == null) {
+            throw new NuxeoException("No QueryMaker accepts query: " + queryType + ": " + query);
+        }
+        QueryMaker.Query q = queryMaker.buildQuery(sqlInfo, model, pathResolver, query, queryFilter);
+        if (q == null) {
+            logger.log("Query cannot return anything due to conflicting clauses");
+            return Stream.empty();
+        }
+        if (logger.isLogEnabled()) {
+            logger.logSQL(q.selectInfo.sql + " -- FETCH SIZE " + fetchSize, q.selectParams);
+        }
+        PreparedStatement ps = null;
+        try {
+            // forward-only so that drivers can use a server-side cursor instead of reading all rows
+            // ps MUST NOT be auto-closed because it's referenced by the stream
+            ps = connection.prepareStatement(q.selectInfo.sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            int i = 1;
+            for (Serializable object : q.selectParams) {
+                setToPreparedStatement(ps, i++, object);
+            }
+            ResultSet rs = ps.executeQuery();
+            countExecute();
+            CursorIterator cursor = new CursorIterator(ps, rs, q.selectInfo.whatColumns.get(0));
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                                .onClose(cursor::close);
+        } catch (SQLException e) {
+            if (ps != null) {
+                try {
+                    ps.close();
+                } catch (SQLException ee) {
+                    e.addSuppressed(ee);
+                }
+            }
+            throw new NuxeoException("Invalid query: " + queryType + ": " + query, e);
+        }
+    }
+
+    /**
+     * Iterator on the first column of a result set, which owns its statement.
+     *
+     * @since 10.1
+     */
+    protected class CursorIterator implements Iterator<Serializable> {
+
+        protected PreparedStatement ps;
+
+        protected ResultSet rs;
+
+        protected final Column column;
+
+        protected Serializable next;
+
+        protected CursorIterator(PreparedStatement ps, ResultSet rs, Column column) {
+            this.ps = ps;
+            this.rs = rs;
+            this.column = column;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (rs == null) {
+                return false;
+            }
+            try {
+                if (rs.next()) {
+                    next = column.getFromResultSet(rs, 1);
+                } else {
+                    close();
+                }
+            } catch (SQLException e) {
+                close();
+                throw new NuxeoException("Error reading query results", e);
+            }
+            return next != null;
+        }
+
+        @Override
+        public Serializable next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Serializable value = next;
+            next = null;
+            return value;
+        }
+
+        protected void close() {
+            if (rs == null) {
+                return;
+            }
+            try {
+                rs.close();
+                ps.close();
+            } catch (SQLException e) {
+                log.error("Error closing statement: " + e.getMessage(), e);
+            } finally {
+                rs = null;
+                ps = null;
+            }
+        }
+    }
+
     @Override
     public PartialList<Map<String, Serializable>> queryProjection(String query, String queryType,
             QueryFilter queryFilter, boolean distinctDocuments, long countUpTo, Object... params) {
@@ -0,0 +1,448 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.ecm.core.api.impl.FacetFilter;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.Function;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+import org.nuxeo.ecm.core.storage.sql.ColumnType.WrappedId;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMaker.Query;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * LRU cache of the SQL generated by the {@link NXQLQueryMaker}, keyed by the shape of the NXQL query.
+ * <p>
+ * The shape of a query is its text where the string literals compared to regular properties are replaced by
+ * placeholders, so that queries differing only by these values (page providers, children listings) share the same
+ * generated SQL. Literals of special properties whose value changes the generated SQL (ecm:primaryType,
+ * ecm:mixinType, ecm:fulltext, ecm:path...) stay in the shape.
+ * <p>
+ * A cache entry holds the generated SQL and a template of its parameters. When the entry is created, each parameter
+ * is matched by identity with the placeholder values and the principals and permissions of the query, so that it can
+ * be rebound to the values of a later query having the same shape. Values that were not found verbatim in the
+ * parameters are recorded, and the entry is only used for queries having the same values for them.
+ *
+ * @since 10.1
+ */
+public class NXQLQueryCache {
+
+    /** Maximum number of cached query shapes per repository, {@code 0} to disable the cache. */
+    public static final String SIZE_PROP = "nuxeo.vcs.query.cache.size";
+
+    public static final int DEFAULT_SIZE = 1000;
+
+    /** Special properties whose literal value doesn't change the generated SQL. */
+    protected static final Set<String> NORMALIZED_ECM_PROPERTIES = new TreeSet<>(Arrays.asList( //
+            NXQL.ECM_UUID, //
+            NXQL.ECM_PARENTID, //
+            NXQL.ECM_NAME, //
+            NXQL.ECM_LIFECYCLESTATE, //
+            NXQL.ECM_LOCK_OWNER, //
+            NXQL.ECM_VERSIONLABEL, //
+            NXQL.ECM_VERSION_VERSIONABLEID, //
+            NXQL.ECM_PROXY_TARGETID, //
+            NXQL.ECM_PROXY_VERSIONABLEID));
+
+    protected static final List<Operator> NORMALIZED_OPERATORS = Arrays.asList(Operator.EQ, Operator.NOTEQ,
+            Operator.LT, Operator.GT, Operator.LTEQ, Operator.GTEQ, Operator.IN, Operator.NOTIN, Operator.LIKE,
+            Operator.NOTLIKE, Operator.ILIKE, Operator.NOTILIKE);
+
+    protected static final String PLACEHOLDER = "?";
+
+    /**
+     * The shape of a query, and the values to bind in it.
+     */
+    public static class Shape {
+
+        public final String key;
+
+        /** Placeholder values, followed by the principals and the permissions. */
+        public final List<Serializable> values;
+
+        public Shape(String key, List<Serializable> values) {
+            this.key = key;
+            this.values = values;
+        }
+
+        @Override
+        public String toString() {
+            return key;
+        }
+    }
+
+    /**
+     * A parameter of a cached query, bound to one of the values of the shape.
+     */
+    protected static class Slot implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final int index;
+
+        protected final boolean wrappedId;
+
+        protected Slot(int index, boolean wrappedId) {
+            this.index = index;
+            this.wrappedId = wrappedId;
+        }
+    }
+
+    /**
+     * A cached query.
+     */
+    protected static class Entry {
+
+        protected final Query query;
+
+        /** Either constant parameters or {@link Slot}s. */
+        protected final Serializable[] params;
+
+        /** The values that must be identical for the entry to be used, {@code null} for bound ones. */
+        protected final Object[] fixedValues;
+
+        protected final boolean[] fixed;
+
+        protected Entry(Query query, Serializable[] params, Object[] fixedValues, boolean[] fixed) {
+            this.query = query;
+            this.params = params;
+            this.fixedValues = fixedValues;
+            this.fixed = fixed;
+        }
+
+        protected Query bind(List<Serializable> values) {
+            for (int i = 0; i < fixed.length; i++) {
+                if (fixed[i] && !Objects.deepEquals(fixedValues[i], values.get(i))) {
+                    return null;
+                }
+            }
+            Query q = new Query();
+            q.selectInfo = query.selectInfo;
+            q.selectParams = new LinkedList<>();
+            for (Serializable param : params) {
+                if (param instanceof Slot) {
+                    Slot slot = (Slot) param;
+                    Serializable value = values.get(slot.index);
+                    param = slot.wrappedId ? new WrappedId((String) value) : value;
+                }
+                q.selectParams.add(param);
+            }
+            return q;
+        }
+    }
+
+    protected final int maxSize;
+
+    protected final Map<String, Entry> entries;
+
+    protected final AtomicLong hits = new AtomicLong();
+
+    protected final AtomicLong misses = new AtomicLong();
+
+    public NXQLQueryCache(String repositoryName, int maxSize) {
+        this.maxSize = maxSize;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > NXQLQueryCache.this.maxSize;
+            }
+        };
+        if (maxSize > 0 && repositoryName != null) {
+            registerMetrics(repositoryName);
+        }
+    }
+
+    /**
+     * Gets the configured cache size, or the default size if the runtime is not available.
+     */
+    public static int getConfiguredSize() {
+        if (Framework.getRuntime() == null) {
+            return DEFAULT_SIZE;
+        }
+        return Integer.parseInt(Framework.getProperty(SIZE_PROP, String.valueOf(DEFAULT_SIZE)));
+    }
+
+    protected void registerMetrics(String repositoryName) {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        // a new repository with the same name replaces the gauges of the previous one
+        registerGauge(registry, metricName(repositoryName, "hit-ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                long h = hits.get();
+                return Ratio.of(h, h + misses.get());
+            }
+        });
+        registerGauge(registry, metricName(repositoryName, "hits"), (Gauge<Long>) hits::get);
+        registerGauge(registry, metricName(repositoryName, "misses"), (Gauge<Long>) misses::get);
+        registerGauge(registry, metricName(repositoryName, "size"), (Gauge<Integer>) this::size);
+    }
+
+    protected static String metricName(String repositoryName, String name) {
+        return MetricRegistry.name("nuxeo", "repositories", repositoryName, "query-cache", name);
+    }
+
+    protected static void registerGauge(MetricRegistry registry, String name, Gauge<?> gauge) {
+        registry.remove(name);
+        registry.register(name, gauge);
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Computes the shape of a query, after transformation by the query filter's transformers.
+     */
+    public Shape getShape(Class<? extends QueryMaker> queryMakerClass, SQLQuery sqlQuery, QueryFilter queryFilter) {
+        List<Serializable> values = new ArrayList<>();
+        StringBuilder buf = new StringBuilder();
+        buf.append(queryMakerClass.getName());
+        buf.append('|');
+        buf.append(sqlQuery.select.isDistinct() ? "DISTINCT " : "");
+        buf.append(sqlQuery.select.getSelectList());
+        buf.append('|');
+        buf.append(sqlQuery.from);
+        buf.append('|');
+        if (sqlQuery.where != null) {
+            appendOperand(buf, sqlQuery.where.predicate, false, values);
+        }
+        buf.append('|');
+        if (sqlQuery.groupBy != null) {
+            buf.append(Arrays.toString(sqlQuery.groupBy.elements));
+        }
+        buf.append('|');
+        if (sqlQuery.having != null && sqlQuery.having.predicate != null) {
+            appendOperand(buf, sqlQuery.having.predicate, false, values);
+        }
+        buf.append('|');
+        buf.append(sqlQuery.orderBy);
+        buf.append('|');
+        buf.append(sqlQuery.limit).append(',').append(sqlQuery.offset);
+        buf.append('|');
+        FacetFilter facetFilter = queryFilter.getFacetFilter();
+        if (facetFilter != null) {
+            buf.append(new TreeSet<>(facetFilter.required));
+            buf.append(new TreeSet<>(facetFilter.excluded));
+        }
+        buf.append('|');
+        buf.append(queryFilter.getPrincipals() == null ? "" : "P");
+        buf.append(queryFilter.getPermissions() == null ? "" : "P");
+        values.add(queryFilter.getPrincipals());
+        values.add(queryFilter.getPermissions());
+        return new Shape(buf.toString(), values);
+    }
+
+    protected void appendOperand(StringBuilder buf, Operand operand, boolean normalize, List<Serializable> values) {
+        if (operand instanceof MultiExpression) {
+            MultiExpression multi = (MultiExpression) operand;
+            buf.append(multi.operator).append('(');
+            for (Iterator<Operand> it = multi.values.iterator(); it.hasNext();) {
+                appendOperand(buf, it.next(), false, values);
+                if (it.hasNext()) {
+                    buf.append(", ");
+                }
+            }
+            buf.append(')');
+        } else if (operand instanceof Expression) {
+            Expression expr = (Expression) operand;
+            boolean normalizeRight = isNormalized(expr);
+            buf.append('(');
+            if (expr.rvalue == null) {
+                buf.append(expr.operator).append(' ');
+                appendOperand(buf, expr.lvalue, false, values);
+            } else {
+                appendOperand(buf, expr.lvalue, false, values);
+                buf.append(' ').append(expr.operator).append(' ');
+                appendOperand(buf, expr.rvalue, normalizeRight, values);
+            }
+            buf.append(')');
+        } else if (operand instanceof LiteralList) {
+            buf.append('(');
+            for (Iterator<Literal> it = ((LiteralList) operand).iterator(); it.hasNext();) {
+                appendOperand(buf, it.next(), normalize, values);
+                if (it.hasNext()) {
+                    buf.append(", ");
+                }
+            }
+            buf.append(')');
+        } else if (operand instanceof StringLiteral) {
+            String value = ((StringLiteral) operand).value;
+            if (normalize) {
+                buf.append(PLACEHOLDER);
+                values.add(value);
+            } else {
+                // escaped, so that a value cannot be mistaken for the rest of the query
+                buf.append('\'').append(value.replace("\\", "\\\\").replace("'", "\\'")).append('\'');
+            }
+        } else if (operand instanceof Reference) {
+            Reference ref = (Reference) operand;
+            if (ref.cast != null) {
+                buf.append(ref.cast).append('(').append(ref.name).append(')');
+            } else {
+                buf.append(ref.name);
+            }
+        } else if (operand instanceof Function) {
+            Function func = (Function) operand;
+            buf.append(func.name).append('(');
+            for (Iterator<Operand> it = func.args.iterator(); it.hasNext();) {
+                appendOperand(buf, it.next(), false, values);
+                if (it.hasNext()) {
+                    buf.append(", ");
+                }
+            }
+            buf.append(')');
+        } else {
+            // other literals
+            buf.append(operand.getClass().getSimpleName()).append(':').append(operand);
+        }
+    }
+
+    /**
+     * Checks if the string literals on the right side of an expression can be replaced by placeholders.
+     */
+    protected boolean isNormalized(Expression expr) {
+        if (!(expr.lvalue instanceof Reference) || !NORMALIZED_OPERATORS.contains(expr.operator)) {
+            return false;
+        }
+        Reference ref = (Reference) expr.lvalue;
+        if (ref.cast != null) {
+            return false;
+        }
+        String name = ref.name;
+        return !name.startsWith(NXQL.ECM_PREFIX) || NORMALIZED_ECM_PROPERTIES.contains(name);
+    }
+
+    /**
+     * Gets the cached query for a shape, bound to its values.
+     *
+     * @return the query, or {@code null} if not in the cache
+     */
+    public Query get(Shape shape) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(shape.key);
+        }
+        Query q = entry == null ? null : entry.bind(shape.values);
+        if (q == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return q;
+    }
+
+    /**
+     * Caches the query generated for a shape.
+     */
+    public void put(Shape shape, Query query) {
+        List<Serializable> values = shape.values;
+        int size = values.size();
+        // values are matched by identity, ambiguous ones are not bound
+        Map<Object, Integer> indexes = new IdentityHashMap<>();
+        Set<Object> ambiguous = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < size; i++) {
+            Serializable value = values.get(i);
+            if (value != null && indexes.put(value, Integer.valueOf(i)) != null) {
+                ambiguous.add(value);
+            }
+        }
+        boolean[] bound = new boolean[size];
+        Serializable[] params = new Serializable[query.selectParams.size()];
+        int p = 0;
+        for (Serializable param : query.selectParams) {
+            boolean wrappedId = param instanceof WrappedId;
+            Object value = wrappedId ? ((WrappedId) param).string : param;
+            Integer index = value == null || ambiguous.contains(value) ? null : indexes.get(value);
+            if (index == null) {
+                params[p++] = param;
+            } else {
+                int i = index.intValue();
+                params[p++] = new Slot(i, wrappedId);
+                bound[i] = true;
+            }
+        }
+        Object[] fixedValues = new Object[size];
+        boolean[] fixed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            if (!bound[i]) {
+                fixed[i] = true;
+                fixedValues[i] = values.get(i);
+            }
+        }
+        Query cached = new Query();
+        cached.selectInfo = query.selectInfo;
+        Entry entry = new Entry(cached, params, fixedValues, fixed);
+        synchronized (entries) {
+            entries.put(shape.key, entry);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+}
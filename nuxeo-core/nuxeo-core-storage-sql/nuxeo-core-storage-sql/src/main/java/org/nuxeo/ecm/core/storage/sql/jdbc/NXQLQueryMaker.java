@@ -237,6 +237,13 @@ public class NXQLQueryMaker implements QueryMaker {
 
     protected PathResolver pathResolver;
 
+    /**
+     * Whether the generated query only depends on the query shape, and can be put in the {@link NXQLQueryCache}.
+     *
+     * @since 10.1
+     */
+    protected boolean cacheable = true;
+
     protected final Map<String, String> aliasesByName = new HashMap<>();
 
     protected final List<String> aliases = new LinkedList<>();
@@ -314,6 +321,17 @@ public class NXQLQueryMaker implements QueryMaker {
             // turned into SELECT ecm:uuid
             selectClause.add(new Reference(NXQL.ECM_UUID));
         }
+
+        // reuse the SQL generated for a query of the same shape
+        NXQLQueryCache queryCache = sqlInfo.getQueryCache();
+        NXQLQueryCache.Shape shape = null;
+        if (queryCache.isEnabled() && params.length == 0) {
+            shape = queryCache.getShape(getClass(), sqlQuery, queryFilter);
+            Query q = queryCache.get(shape);
+            if (q != null) {
+                return q;
+            }
+        }
         boolean selectStar = selectClause.getSelectList().size() == 1
                 && (selectClause.get(0).equals(new Reference(NXQL.ECM_UUID)));
 
@@ -753,6 +771,9 @@ public class NXQLQueryMaker implements QueryMaker {
         ColumnMapMaker mapMaker = new ColumnMapMaker(whatColumns, whatKeys);
         q.selectInfo = new SQLInfoSelect(select.getStatement(), whatColumns, mapMaker, null, null);
         q.selectParams = selectParams;
+        if (shape != null && cacheable) {
+            queryCache.put(shape, q);
+        }
         return q;
     }
 
@@ -1624,6 +1645,8 @@ public class NXQLQueryMaker implements QueryMaker {
             } else if (NXQL.ECM_TAG.equals(name) || name.startsWith(ECM_TAG_STAR)) {
                 // checking the migration service is a hack but we can't really do better here without refactoring
                 MigrationStatus status = Framework.getService(MigrationService.class).getStatus("tag-storage");
+                // the generated SQL depends on the migration state
+                cacheable = false;
                 boolean facetedTag = "facets".equals(status.getState());
                 if (facetedTag) {
                     String newName = FACETED_TAG + "/*";
@@ -2006,6 +2029,8 @@ public class NXQLQueryMaker implements QueryMaker {
         }
 
         protected void visitExpressionStartsWithPath(String path) {
+            // the generated SQL depends on the path resolution
+            cacheable = false;
             // find the id from the path
             Serializable id = pathResolver.getIdForPath(path);
             if (id == null) {
@@ -2049,6 +2074,7 @@ public class NXQLQueryMaker implements QueryMaker {
             if (path.length() > 1 && path.endsWith(PATH_SEP)) {
                 path = path.substring(0, path.length() - PATH_SEP.length());
             }
+            cacheable = false;
             Serializable id = pathResolver.getIdForPath(path);
             if (id == null) {
                 // no such path, always return a false
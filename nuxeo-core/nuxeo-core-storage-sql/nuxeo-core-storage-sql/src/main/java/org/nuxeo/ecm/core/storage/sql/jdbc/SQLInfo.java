@@ -133,6 +133,8 @@ public class SQLInfo {
 
     protected List<Column> getBinariesColumns;
 
+    protected final NXQLQueryCache queryCache;
+
     /**
      * Generates and holds the needed SQL statements given a {@link Model} and a {@link Dialect}.
      *
@@ -170,6 +172,8 @@ public class SQLInfo {
         getBinariesSql = new ArrayList<>(1);
         getBinariesColumns = new ArrayList<>(1);
 
+        queryCache = new NXQLQueryCache(repositoryDescriptor.name, NXQLQueryCache.getConfiguredSize());
+
         initSQL();
         initSelections();
 
@@ -180,6 +184,15 @@ public class SQLInfo {
         }
     }
 
+    /**
+     * Gets the cache of the SQL generated for NXQL queries.
+     *
+     * @since 10.1
+     */
+    public NXQLQueryCache getQueryCache() {
+        return queryCache;
+    }
+
     public Database getDatabase() {
         return database;
     }
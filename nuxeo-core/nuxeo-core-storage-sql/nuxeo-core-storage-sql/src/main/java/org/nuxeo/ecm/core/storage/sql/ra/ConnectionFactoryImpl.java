@@ -219,4 +219,9 @@ public class ConnectionFactoryImpl implements Repository, org.nuxeo.ecm.core.mod
         return managedConnectionFactory.cleanupDeletedDocuments(max, beforeTime);
     }
 
+    @Override
+    public void updateReadAcls() {
+        managedConnectionFactory.updateReadAcls();
+    }
+
 }
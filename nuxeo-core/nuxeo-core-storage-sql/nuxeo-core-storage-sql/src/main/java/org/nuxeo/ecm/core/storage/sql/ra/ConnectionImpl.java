@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.resource.ResourceException;
 import javax.resource.cci.ConnectionFactory;
@@ -188,6 +189,11 @@ public class ConnectionImpl implements Session {
         return getSession().getNodesByIds(ids);
     }
 
+    @Override
+    public List<Node> getNodesByIds(List<Serializable> ids, Set<String> schemas) {
+        return getSession().getNodesByIds(ids, schemas);
+    }
+
     @Override
     public Node getNodeByPath(String path, Node node) {
         return getSession().getNodeByPath(path, node);
@@ -351,6 +357,11 @@ public class ConnectionImpl implements Session {
         return result;
     }
 
+    @Override
+    public Stream<Serializable> queryStream(String query, String queryType, QueryFilter queryFilter, int fetchSize) {
+        return getSession().queryStream(query, queryType, queryFilter, fetchSize);
+    }
+
     @Override
     public PartialList<Map<String,Serializable>> queryProjection(String query, String queryType, QueryFilter queryFilter,
             boolean distinctDocuments, long countUpTo, Object... params) {
@@ -224,6 +224,14 @@ public class ManagedConnectionFactoryImpl implements ManagedConnectionFactory, R
         return repository.cleanupDeletedDocuments(max, beforeTime);
     }
 
+    @Override
+    public void updateReadAcls() {
+        if (repository == null) {
+            return;
+        }
+        repository.updateReadAcls();
+    }
+
     /*
      * ----- -----
      */
@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.storage.sql.ColumnType.WrappedId;
+import org.nuxeo.ecm.core.storage.sql.jdbc.NXQLQueryCache;
+import org.nuxeo.ecm.core.storage.sql.jdbc.NXQLQueryCache.Shape;
+import org.nuxeo.ecm.core.storage.sql.jdbc.NXQLQueryMaker;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMaker.Query;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo.SQLInfoSelect;
+
+public class TestNXQLQueryCache {
+
+    protected static final String[] PERMISSIONS = { "Browse", "Read" };
+
+    protected NXQLQueryCache cache = new NXQLQueryCache(null, 10);
+
+    protected Shape shape(String where, String... principals) {
+        SQLQuery sqlQuery = SQLQueryParser.parse("SELECT * FROM Document WHERE " + where);
+        QueryFilter queryFilter = new QueryFilter(null, principals, PERMISSIONS, null,
+                Collections.<SQLQuery.Transformer> emptyList(), 0, 0);
+        return cache.getShape(NXQLQueryMaker.class, sqlQuery, queryFilter);
+    }
+
+    /**
+     * Builds a query like the query maker would, taking the parameters from the shape values.
+     */
+    protected Query query(Serializable... params) {
+        Query q = new Query();
+        q.selectInfo = new SQLInfoSelect("SELECT ...", null, null, null, null);
+        q.selectParams = new LinkedList<>(Arrays.asList(params));
+        return q;
+    }
+
+    @Test
+    public void testShape() {
+        String[] principals = { "bob", "members" };
+        assertEquals(shape("dc:title = 'foo'", principals).key, shape("dc:title = 'bar'", principals).key);
+        assertEquals(shape("ecm:parentId = 'a' AND dc:subjects IN ('x', 'y')", principals).key,
+                shape("ecm:parentId = 'b' AND dc:subjects IN ('z', 't')", principals).key);
+        // list sizes are part of the shape
+        assertNotEquals(shape("dc:subjects IN ('x', 'y')", principals).key,
+                shape("dc:subjects IN ('x')", principals).key);
+        // so are values changing the generated SQL
+        assertNotEquals(shape("ecm:primaryType = 'File'", principals).key,
+                shape("ecm:primaryType = 'Note'", principals).key);
+        assertNotEquals(shape("ecm:path STARTSWITH '/a'", principals).key,
+                shape("ecm:path STARTSWITH '/b'", principals).key);
+        assertNotEquals(shape("ecm:fulltext = 'foo'", principals).key, shape("ecm:fulltext = 'bar'", principals).key);
+        assertNotEquals(shape("dc:title = 'foo'", principals).key, shape("dc:title = 'foo'").key);
+        List<Serializable> values = shape("dc:title = 'foo' AND dc:subjects IN ('x', 'y')", principals).values;
+        assertEquals(Arrays.asList("foo", "x", "y", principals, PERMISSIONS), values);
+    }
+
+    @Test
+    public void testBind() {
+        Shape shape1 = shape("ecm:uuid = 'id1' AND dc:title = 'foo'", "bob", "members");
+        List<Serializable> values = shape1.values;
+        assertNull(cache.get(shape1));
+        cache.put(shape1, query(new WrappedId((String) values.get(0)), values.get(1), values.get(2), "constant"));
+        assertEquals(1, cache.size());
+
+        String[] principals2 = { "alice", "members" };
+        Shape shape2 = shape("ecm:uuid = 'id2' AND dc:title = 'bar'", principals2);
+        Query q = cache.get(shape2);
+        assertNotNull(q);
+        assertEquals(1, cache.getHits());
+        List<Serializable> params = q.selectParams;
+        assertEquals(4, params.size());
+        assertEquals("id2", ((WrappedId) params.get(0)).string);
+        assertEquals("bar", params.get(1));
+        assertSame(principals2, params.get(2));
+        assertEquals("constant", params.get(3));
+    }
+
+    @Test
+    public void testFixedValues() {
+        Shape shape1 = shape("dc:title = 'foo'", "bob");
+        // the maker transformed the value and the permissions are not passed, they must match
+        cache.put(shape1, query("FOO", String.join("|", (String[]) shape1.values.get(1))));
+        assertNotNull(cache.get(shape("dc:title = 'foo'", "bob")));
+        assertNull(cache.get(shape("dc:title = 'bar'", "bob")));
+        assertNull(cache.get(shape("dc:title = 'foo'", "alice")));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * (C) Copyright 2018 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.OffHeapRowStore.EvictionPolicy;
+
+public class TestOffHeapRowStore {
+
+    protected static RowId rowId(int i) {
+        return new RowId("hierarchy", "id" + i);
+    }
+
+    protected static byte[] bytes(int size, int value) {
+        byte[] bytes = new byte[size];
+        bytes[0] = (byte) value;
+        return bytes;
+    }
+
+    @Test
+    public void testCodecSimpleRow() {
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("Europe/Paris"));
+        cal.setTimeInMillis(1234567890123L);
+        Row row = new Row("hierarchy", "id1");
+        row.putNew("name", "foo");
+        row.putNew("pos", Long.valueOf(3));
+        row.putNew("isproperty", Boolean.FALSE);
+        row.putNew("rate", Double.valueOf(1.5));
+        row.putNew("created", cal);
+        row.putNew("subjects", new String[] { "a", "b" });
+        row.putNew("nothing", null);
+
+        Row decoded = OffHeapRowCodec.decode(new RowId(row), OffHeapRowCodec.encode(row));
+        assertEquals("hierarchy", decoded.tableName);
+        assertEquals("id1", decoded.id);
+        assertEquals(row.getKeys(), decoded.getKeys());
+        assertEquals("foo", decoded.get("name"));
+        assertEquals(Long.valueOf(3), decoded.get("pos"));
+        assertEquals(Boolean.FALSE, decoded.get("isproperty"));
+        assertEquals(Double.valueOf(1.5), decoded.get("rate"));
+        assertEquals(cal, decoded.get("created"));
+        assertArrayEquals(new String[] { "a", "b" }, (String[]) decoded.get("subjects"));
+        assertNull(decoded.get("nothing"));
+    }
+
+    @Test
+    public void testCodecCollectionRow() {
+        ACLRow[] acls = new ACLRow[] { new ACLRow(0, "local", true, "Read", "bob", null),
+                new ACLRow(1, "local", false, "Write", null, "members") };
+        Row row = new Row("acls", "id1", acls);
+        Row decoded = OffHeapRowCodec.decode(new RowId(row), OffHeapRowCodec.encode(row));
+        assertTrue(decoded.isCollection());
+        assertEquals(ACLRow[].class, decoded.values.getClass());
+        assertEquals(2, decoded.values.length);
+        ACLRow acl = (ACLRow) decoded.values[1];
+        assertEquals(1, acl.pos);
+        assertFalse(acl.grant);
+        assertEquals("Write", acl.permission);
+        assertEquals("members", acl.group);
+
+        row = new Row("dc:subjects", "id1", new String[] { "foo", "bar" });
+        decoded = OffHeapRowCodec.decode(new RowId(row), OffHeapRowCodec.encode(row));
+        assertArrayEquals(new Serializable[] { "foo", "bar" }, decoded.values);
+        assertEquals(String[].class, decoded.values.getClass());
+    }
+
+    @Test
+    public void testCodecAbsent() {
+        assertTrue(OffHeapRowCodec.isAbsent(OffHeapRowCodec.encodeAbsent()));
+        assertFalse(OffHeapRowCodec.isAbsent(OffHeapRowCodec.encode(new Row("hierarchy", "id1"))));
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        OffHeapRowStore store = new OffHeapRowStore(64 * 1024, 4, EvictionPolicy.LRU);
+        assertNull(store.get(rowId(1)));
+        assertTrue(store.put(rowId(1), bytes(10, 1), store.getGenerations()));
+        byte[] bytes = store.get(rowId(1));
+        assertNotNull(bytes);
+        assertEquals(10, bytes.length);
+        assertEquals(1, bytes[0]);
+        assertEquals(1, store.getEntries());
+        assertEquals(10, store.getUsedSize());
+        assertEquals(1, store.getHits());
+        assertEquals(1, store.getMisses());
+
+        // replace
+        assertTrue(store.put(rowId(1), bytes(20, 2), store.getGenerations()));
+        assertEquals(2, store.get(rowId(1))[0]);
+        assertEquals(1, store.getEntries());
+        assertEquals(20, store.getUsedSize());
+
+        store.remove(rowId(1));
+        assertNull(store.get(rowId(1)));
+        assertEquals(0, store.getEntries());
+        assertEquals(0, store.getUsedSize());
+    }
+
+    @Test
+    public void testStalePutIgnored() {
+        OffHeapRowStore store = new OffHeapRowStore(64 * 1024, 1, EvictionPolicy.LRU);
+        long[] generations = store.getGenerations();
+        // concurrent invalidation between the database read and the put
+        store.remove(rowId(1));
+        assertFalse(store.put(rowId(1), bytes(10, 1), generations));
+        assertNull(store.get(rowId(1)));
+    }
+
+    @Test
+    public void testTooBigRejected() {
+        OffHeapRowStore store = new OffHeapRowStore(16 * 1024, 1, EvictionPolicy.LRU);
+        assertFalse(store.put(rowId(1), bytes(8 * 1024, 1), store.getGenerations()));
+        assertEquals(1, store.getRejections());
+    }
+
+    @Test
+    public void testEvictionBounded() {
+        OffHeapRowStore store = new OffHeapRowStore(16 * 1024, 1, EvictionPolicy.LRU);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(store.put(rowId(i), bytes(100 + i % 50, i), store.getGenerations()));
+            assertTrue(store.getUsedSize() <= store.getCapacity());
+        }
+        assertTrue(store.getEvictions() > 0);
+        // the most recent entries are present, the oldest ones are gone
+        assertNotNull(store.get(rowId(999)));
+        assertNull(store.get(rowId(0)));
+    }
+
+    @Test
+    public void testLRUKeepsUsedEntries() {
+        checkKeepsUsedEntries(EvictionPolicy.LRU);
+    }
+
+    @Test
+    public void testLFUKeepsUsedEntries() {
+        checkKeepsUsedEntries(EvictionPolicy.LFU);
+    }
+
+    protected void checkKeepsUsedEntries(EvictionPolicy policy) {
+        OffHeapRowStore store = new OffHeapRowStore(16 * 1024, 1, policy);
+        store.put(rowId(0), bytes(100, 0), store.getGenerations());
+        for (int i = 1; i < 1000; i++) {
+            // entry 0 is hot
+            assertNotNull(store.get(rowId(0)));
+            store.put(rowId(i), bytes(100, i), store.getGenerations());
+        }
+        assertNotNull(store.get(rowId(0)));
+    }
+
+    @Test
+    public void testClear() {
+        OffHeapRowStore store = new OffHeapRowStore(16 * 1024, 2, EvictionPolicy.LRU);
+        for (int i = 0; i < 10; i++) {
+            store.put(rowId(i), bytes(100, i), store.getGenerations());
+        }
+        assertEquals(10, store.getEntries());
+        store.clear();
+        assertEquals(0, store.getEntries());
+        assertNull(store.get(rowId(5)));
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.coremodel.SQLFulltextExtractorWork;
+import org.nuxeo.ecm.core.work.BinaryWorkCodec;
+import org.nuxeo.ecm.core.work.WorkComputation;
+import org.nuxeo.ecm.core.work.api.Work;
+
+/**
+ * Checks that the VCS works are encoded field by field by the {@link BinaryWorkCodec}.
+ *
+ * @since 10.1
+ */
+public class TestSQLWorkCodec {
+
+    protected final BinaryWorkCodec codec = new BinaryWorkCodec();
+
+    protected Work roundTrip(Work work) {
+        byte[] data = codec.encode(work);
+        // encoded field by field, not as a Java serialized fallback
+        assertTrue(data.length < WorkComputation.serialize(work).length);
+        Work decoded = codec.decode(data);
+        assertEquals(work.getClass(), decoded.getClass());
+        assertEquals(work.getId(), decoded.getId());
+        assertEquals(getDocuments(work), getDocuments(decoded));
+        return decoded;
+    }
+
+    protected static List<String> getDocuments(Work work) {
+        return work.getDocuments()
+                   .stream()
+                   .map(loc -> loc.getServerName() + ':' + loc.getIdRef().value)
+                   .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testFulltextExtractorWork() {
+        Work work = roundTrip(new SQLFulltextExtractorWork("test", "doc1"));
+        assertEquals(Arrays.asList("test:doc1"), getDocuments(work));
+    }
+
+    @Test
+    public void testUpdateReadAclsWork() {
+        Work work = roundTrip(new VCSUpdateReadAclsWork("test"));
+        assertEquals("updateReadAcls:test", work.getId());
+        assertEquals(Collections.emptyList(), getDocuments(work));
+    }
+
+}
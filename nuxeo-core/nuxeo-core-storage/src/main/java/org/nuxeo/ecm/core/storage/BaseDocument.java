@@ -47,6 +47,7 @@ import org.nuxeo.ecm.core.api.model.DocumentPart;
 import org.nuxeo.ecm.core.api.model.Property;
 import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
 import org.nuxeo.ecm.core.api.model.impl.ComplexProperty;
+import org.nuxeo.ecm.core.api.model.impl.DocumentPartImpl;
 import org.nuxeo.ecm.core.api.model.impl.primitives.BlobProperty;
 import org.nuxeo.ecm.core.blob.BlobInfo;
 import org.nuxeo.ecm.core.blob.DocumentBlobManager;
@@ -137,6 +138,30 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
     protected static final Runnable NO_DIRTY = () -> {
     };
 
+    /**
+     * Property to disable the lazy creation of the scalar properties of the document parts read from storage.
+     *
+     * @since 10.1
+     */
+    public static final String LAZY_PROPERTIES_PROP = "org.nuxeo.core.properties.lazy";
+
+    /**
+     * Whether the scalar properties of the document parts are created lazily, read once from
+     * {@link #LAZY_PROPERTIES_PROP} by {@link #initLazyProperties}.
+     *
+     * @since 10.1
+     */
+    protected static volatile boolean lazyProperties = true;
+
+    /**
+     * Reads the {@link #LAZY_PROPERTIES_PROP} configuration. Called by the repository services at activation.
+     *
+     * @since 10.1
+     */
+    public static void initLazyProperties() {
+        lazyProperties = !Framework.isBooleanPropertyFalse(LAZY_PROPERTIES_PROP);
+    }
+
     /**
      * Gets the list of proxy schemas, if this is a proxy.
      *
@@ -667,40 +692,76 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
             complexProperty.init((Serializable) blob);
             return;
         }
+        if (lazyProperties && complexProperty instanceof DocumentPartImpl) {
+            readDocumentPartLazily(state, (DocumentPartImpl) complexProperty);
+            return;
+        }
         for (Property property : complexProperty) {
-            String name = property.getField().getName().getPrefixedName();
-            name = internalName(name);
-            Type type = property.getType();
+            readProperty(state, complexProperty, property);
+        }
+    }
+
+    /**
+     * Reads state into a document part, deferring the creation of the scalar and array properties until they are
+     * accessed.
+     *
+     * @since 10.1
+     */
+    protected void readDocumentPartLazily(T state, DocumentPartImpl documentPart) throws PropertyException {
+        for (Field field : documentPart.getType().getFields()) {
+            Type type = field.getType();
             if (type.isSimpleType()) {
-                // simple property
-                Object value = state.getSingle(name);
-                property.init((Serializable) value);
-            } else if (type.isComplexType()) {
-                // complex property
-                T childState = getChild(state, name, type);
-                readComplexProperty(childState, (ComplexProperty) property);
-                ((ComplexProperty) property).removePhantomFlag();
+                String name = internalName(field.getName().getPrefixedName());
+                documentPart.initLazy(field, (Serializable) state.getSingle(name));
+            } else if (type.isListType() && ((ListType) type).getFieldType().isSimpleType()) {
+                String name = internalName(field.getName().getPrefixedName());
+                Object[] array = state.getArray(name);
+                documentPart.initLazy(field, typedArray(((ListType) type).getFieldType(), array));
             } else {
-                ListType listType = (ListType) type;
-                if (listType.getFieldType().isSimpleType()) {
-                    // array
-                    Object[] array = state.getArray(name);
-                    array = typedArray(listType.getFieldType(), array);
-                    property.init(array);
-                } else {
-                    // complex list
-                    Field listField = listType.getField();
-                    List<T> childStates = getChildAsList(state, name);
-                    // TODO property.init(null) if null children in DBS
-                    List<Object> list = new ArrayList<>(childStates.size());
-                    for (T childState : childStates) {
-                        ComplexProperty p = (ComplexProperty) complexProperty.getRoot().createProperty(property,
-                                listField, 0);
-                        readComplexProperty(childState, p);
-                        list.add(p.getValue());
-                    }
-                    property.init((Serializable) list);
+                // complex properties are read into their property tree
+                readProperty(state, documentPart, documentPart.getChild(field));
+            }
+        }
+    }
+
+    /**
+     * Reads state into a child property of a complex property.
+     *
+     * @since 10.1
+     */
+    protected void readProperty(T state, ComplexProperty complexProperty, Property property) throws PropertyException {
+        String name = property.getField().getName().getPrefixedName();
+        name = internalName(name);
+        Type type = property.getType();
+        if (type.isSimpleType()) {
+            // simple property
+            Object value = state.getSingle(name);
+            property.init((Serializable) value);
+        } else if (type.isComplexType()) {
+            // complex property
+            T childState = getChild(state, name, type);
+            readComplexProperty(childState, (ComplexProperty) property);
+            ((ComplexProperty) property).removePhantomFlag();
+        } else {
+            ListType listType = (ListType) type;
+            if (listType.getFieldType().isSimpleType()) {
+                // array
+                Object[] array = state.getArray(name);
+                array = typedArray(listType.getFieldType(), array);
+                property.init(array);
+            } else {
+                // complex list
+                Field listField = listType.getField();
+                List<T> childStates = getChildAsList(state, name);
+                // TODO property.init(null) if null children in DBS
+                List<Object> list = new ArrayList<>(childStates.size());
+                for (T childState : childStates) {
+                    ComplexProperty p = (ComplexProperty) complexProperty.getRoot().createProperty(property,
+                            listField, 0);
+                    readComplexProperty(childState, p);
+                    list.add(p.getValue());
                 }
+                property.init((Serializable) list);
             }
         }
     }
@@ -71,6 +71,15 @@ public abstract class FulltextExtractorWork extends AbstractWork {
 
     protected transient FulltextParser fulltextParser;
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected FulltextExtractorWork() {
+        excludeProxies = false;
+    }
+
     public FulltextExtractorWork(String repositoryName, String docId, boolean excludeProxies) {
         setDocument(repositoryName, docId);
         this.excludeProxies = excludeProxies;
@@ -86,6 +95,16 @@ public abstract class FulltextExtractorWork extends AbstractWork {
         return TITLE;
     }
 
+    /**
+     * The extraction reads the current state of the document, a single one is needed for a burst of updates.
+     *
+     * @since 10.1
+     */
+    @Override
+    public String getCoalescingKey() {
+        return CATEGORY + ':' + repositoryName + ':' + docId + ':' + excludeProxies;
+    }
+
     @Override
     public int getRetryCount() {
         // even read-only threads may encounter concurrent update exceptions
@@ -931,6 +931,54 @@ public class TestSQLRepositoryAPI {
         assertEquals("Folder", doc.getType());
     }
 
+    @Test
+    public void testGetDocumentsBulk() {
+        DocumentModel folder = session.createDocumentModel("/", "folder", "Folder");
+        folder = session.createDocument(folder);
+        List<DocumentRef> refs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            DocumentModel doc = session.createDocumentModel("/folder", "doc" + i, "File");
+            doc.setPropertyValue("dc:title", "title" + i);
+            doc.setPropertyValue("dc:subjects", new String[] { "subject" + i });
+            doc = session.createDocument(doc);
+            refs.add(doc.getRef());
+        }
+        DocumentModel proxy = session.publishDocument(session.getDocument(refs.get(0)), folder);
+        session.save();
+        nextTransaction();
+        reopenSession();
+
+        // shuffled order, mixed reference types, proxy
+        List<DocumentRef> docRefs = Arrays.asList(refs.get(3), new PathRef("/folder/doc1"), proxy.getRef(),
+                refs.get(0), folder.getRef(), refs.get(4));
+        DocumentModelList docs = session.getDocuments(docRefs, new HashSet<>(Arrays.asList("dublincore")));
+        assertEquals(6, docs.size());
+        assertEquals("doc3", docs.get(0).getName());
+        assertEquals("doc1", docs.get(1).getName());
+        assertTrue(docs.get(2).isProxy());
+        assertEquals("doc0", docs.get(3).getName());
+        assertEquals("folder", docs.get(4).getName());
+        assertEquals("doc4", docs.get(5).getName());
+        assertEquals("title3", docs.get(0).getPropertyValue("dc:title"));
+        assertEquals("title0", docs.get(2).getPropertyValue("dc:title"));
+        assertEquals(Arrays.asList("subject4"),
+                Arrays.asList((String[]) docs.get(5).getPropertyValue("dc:subjects")));
+
+        // default schemas
+        docs = session.getDocuments(Arrays.asList(refs.get(2), refs.get(1)), null);
+        assertEquals(2, docs.size());
+        assertEquals("title2", docs.get(0).getTitle());
+        assertEquals("title1", docs.get(1).getTitle());
+
+        // missing document
+        try {
+            session.getDocuments(Arrays.asList(refs.get(2), new IdRef("nosuchid")), null);
+            fail("should throw DocumentNotFoundException");
+        } catch (DocumentNotFoundException e) {
+            // ok
+        }
+    }
+
     @Test
     public void testGetChildrenIteratorRestrictedAccess() {
         DocumentModel doc1 = session.createDocumentModel("/", "doc1", "File");
@@ -54,6 +54,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 
@@ -3519,6 +3520,54 @@ public class TestSQLRepositoryQuery {
         assertFalse(ret.hasResults());
     }
 
+    @Test
+    public void testQueryStream() throws Exception {
+        final int nbDocs = 127;
+        final int fetchSize = 13;
+        for (int i = 0; i < nbDocs; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            doc.setPropertyValue("dc:title", String.format("title%03d", i));
+            session.createDocument(doc);
+        }
+        session.save();
+
+        try (Stream<DocumentModel> docs = session.queryStream("SELECT * FROM File ORDER BY dc:title", fetchSize)) {
+            List<String> titles = docs.map(DocumentModel::getTitle).collect(Collectors.toList());
+            assertEquals(nbDocs, titles.size());
+            for (int i = 0; i < nbDocs; i++) {
+                assertEquals(String.format("title%03d", i), titles.get(i));
+            }
+        }
+
+        // partial consumption
+        try (Stream<DocumentModel> docs = session.queryStream("SELECT * FROM File", fetchSize)) {
+            assertEquals(5, docs.limit(5).count());
+        }
+
+        // no match
+        try (Stream<DocumentModel> docs = session.queryStream("SELECT * FROM Note", fetchSize)) {
+            assertEquals(0, docs.count());
+        }
+
+        // security is applied
+        ACP acp = new ACPImpl();
+        ACL acl = new ACLImpl();
+        acl.add(new ACE("bob", "Browse", true));
+        acp.addACL(acl);
+        session.setACP(new PathRef("/doc3"), acp, true);
+        session.save();
+        try (CloseableCoreSession bobSession = CoreInstance.openCoreSession(session.getRepositoryName(), "bob")) {
+            try (Stream<DocumentModel> docs = bobSession.queryStream("SELECT * FROM File", fetchSize)) {
+                List<String> names = docs.map(DocumentModel::getName).collect(Collectors.toList());
+                assertEquals(Collections.singletonList("doc3"), names);
+            }
+        }
+
+        // projections cannot be streamed
+        exception.expect(QueryParseException.class);
+        session.queryStream("SELECT dc:title FROM File", fetchSize);
+    }
+
     @Test
     @LogCaptureFeature.FilterOn(logLevel = "WARN")
     public void testScrollApiEmtpy() throws Exception {
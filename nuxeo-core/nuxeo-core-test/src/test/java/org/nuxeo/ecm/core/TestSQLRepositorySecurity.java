@@ -82,6 +82,7 @@ import org.nuxeo.ecm.core.test.CoreFeature;
 import org.nuxeo.ecm.core.test.annotations.Granularity;
 import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
 import org.nuxeo.runtime.test.runner.LocalDeploy;
@@ -89,6 +90,10 @@ import org.nuxeo.runtime.test.runner.LogCaptureFeature;
 import org.nuxeo.runtime.test.runner.LogFeature;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
 @RunWith(FeaturesRunner.class)
 @Features({ CoreFeature.class, LogFeature.class, LogCaptureFeature.class })
 @RepositoryConfig(cleanup = Granularity.METHOD)
@@ -108,6 +113,8 @@ public class TestSQLRepositorySecurity {
     @Inject
     protected EventService eventService;
 
+    protected final MetricRegistry registry = new MetricRegistry();
+
     @Before
     public void setUp() {
         if (allowNegativeAcl()) {
@@ -862,9 +869,16 @@ public class TestSQLRepositorySecurity {
         String thresholdProp = "nuxeo.core.readacl.async.threshold";
         Framework.getProperties().put(enabledProp, "true");
         Framework.getProperties().put(thresholdProp, "10");
+        // record the metrics of the asynchronous updates in a registry of our own
+        String registryName = MetricsService.class.getName();
+        MetricRegistry sharedRegistry = SharedMetricRegistries.getOrCreate(registryName);
+        SharedMetricRegistries.remove(registryName);
+        SharedMetricRegistries.add(registryName, registry);
         try {
             doTestReadAclOnLargeTree();
         } finally {
+            SharedMetricRegistries.remove(registryName);
+            SharedMetricRegistries.add(registryName, sharedRegistry);
             Framework.getProperties().remove(enabledProp);
             Framework.getProperties().remove(thresholdProp);
         }
@@ -914,6 +928,12 @@ public class TestSQLRepositorySecurity {
         // check that both users now have access to everything
         assertEquals(nbDocs, numberOfReadableDocuments(firstUser));
         assertEquals(nbDocs, numberOfReadableDocuments(secondUser));
+
+        // on DBS the subtree was updated by a single asynchronous work, which reported its lag
+        // on VCS the Read ACLs were updated synchronously, as asynchronous updates are not enabled
+        Timer lag = registry.timer(
+                MetricRegistry.name("nuxeo", "repositories", session.getRepositoryName(), "aclr-updates-lag"));
+        assertEquals(coreFeature.getStorageConfiguration().isDBS() ? 1 : 0, lag.getCount());
     }
 
     protected int numberOfReadableDocuments(String username) {
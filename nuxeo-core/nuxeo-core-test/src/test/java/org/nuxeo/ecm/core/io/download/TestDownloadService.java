@@ -113,6 +113,39 @@ public class TestDownloadService {
         assertEquals(blobValue, out.toString(encoding));
     }
 
+    @Test
+    public void testFileBlobByteRangeDownload() throws Exception {
+        // blob backed by a file, transferred from its file channel
+        Path path = Files.createTempFile("nxdownload", ".txt");
+        try {
+            Files.write(path, "Hello World".getBytes("UTF-8"));
+            Blob blob = new FileBlob(path.toFile());
+            blob.setFilename("myFile.txt");
+            blob.setDigest("12345");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            when(request.getMethod()).thenReturn("GET");
+            when(request.getHeader("Range")).thenReturn("bytes=6-9");
+
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            ServletOutputStream sos = new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                }
+            };
+            when(response.getOutputStream()).thenReturn(sos);
+
+            downloadService.downloadBlob(request, response, null, null, blob, null, null);
+
+            verify(response).setHeader("Content-Range", "bytes 6-9/11");
+            assertEquals("Worl", out.toString("UTF-8"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
     @Test
     public void testETagHeaderNone() throws Exception {
         doTestETagHeader(null);
@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.io.marshallers.json.document;
+
+import static org.nuxeo.ecm.core.io.registry.reflect.Instantiations.SINGLETON;
+import static org.nuxeo.ecm.core.io.registry.reflect.Priorities.REFERENCE;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.io.marshallers.json.enrichers.AbstractJsonEnricher;
+import org.nuxeo.ecm.core.io.registry.reflect.Setup;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Counts the batch lookups and the single document lookups done to enrich documents. Writes the position of the
+ * document in its batch, or -1 if it was looked up alone.
+ *
+ * @since 10.1
+ */
+@Setup(mode = SINGLETON, priority = REFERENCE)
+public class BatchCountingJsonEnricher extends AbstractJsonEnricher<DocumentModel> {
+
+    public static final String NAME = "batchCounting";
+
+    public static final AtomicInteger batchLookups = new AtomicInteger();
+
+    public static final AtomicInteger batchedDocuments = new AtomicInteger();
+
+    public static final AtomicInteger singleLookups = new AtomicInteger();
+
+    public BatchCountingJsonEnricher() {
+        super(NAME);
+    }
+
+    public static void reset() {
+        batchLookups.set(0);
+        batchedDocuments.set(0);
+        singleLookups.set(0);
+    }
+
+    @Override
+    public void write(JsonGenerator jg, DocumentModel document) throws IOException {
+        Integer position = getBatchData(document);
+        if (position == null) {
+            singleLookups.incrementAndGet();
+            position = -1;
+        }
+        jg.writeNumberField(NAME, position);
+    }
+
+    @Override
+    public Map<DocumentModel, ?> batch(List<DocumentModel> documents) throws IOException {
+        batchLookups.incrementAndGet();
+        batchedDocuments.addAndGet(documents.size());
+        Map<DocumentModel, Integer> result = new IdentityHashMap<>();
+        for (int i = 0; i < documents.size(); i++) {
+            result.put(documents.get(i), i);
+        }
+        return result;
+    }
+
+}
@@ -19,6 +19,9 @@
 
 package org.nuxeo.ecm.core.io.marshallers.json.document;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
 import java.util.Date;
 
 import javax.inject.Inject;
@@ -337,4 +340,21 @@ public class DocumentModelJsonWriterTest extends AbstractJsonWriterTest.Local<Do
         jsonMax.hasNot("contextParameters");
     }
 
+    @Test
+    public void testSchemaWritePlan() throws Exception {
+        DocumentModelJsonWriter writer = registry.getInstance(CtxBuilder.get(), DocumentModelJsonWriter.class);
+        DocumentModelJsonWriter.SchemaWritePlan plan = writer.getSchemaWritePlan("dublincore");
+        // the plan is computed once per schema
+        assertSame(plan, writer.getSchemaWritePlan("dublincore"));
+        Schema schema = schemaManager.getSchema("dublincore");
+        assertSame(schema, plan.schema);
+        assertEquals(schema.getFields().size(), plan.xpaths.length);
+        int i = 0;
+        for (Field field : schema.getFields()) {
+            assertEquals("dc:" + field.getName().getLocalName(), plan.xpaths[i]);
+            assertEquals(plan.xpaths[i], plan.names[i].getValue());
+            i++;
+        }
+    }
+
 }
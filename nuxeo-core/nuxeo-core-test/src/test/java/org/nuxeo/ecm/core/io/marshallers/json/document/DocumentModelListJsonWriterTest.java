@@ -19,18 +19,45 @@
 
 package org.nuxeo.ecm.core.io.marshallers.json.document;
 
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static org.junit.Assert.assertEquals;
+import static org.nuxeo.ecm.core.api.security.SecurityConstants.ADMINISTRATOR;
+import static org.nuxeo.ecm.core.api.security.SecurityConstants.EVERYTHING;
+import static org.nuxeo.ecm.core.api.security.SecurityConstants.READ;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import javax.inject.Inject;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.TypeUtils;
 import org.junit.Test;
+import org.nuxeo.ecm.core.api.CloseableCoreSession;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
 import org.nuxeo.ecm.core.io.marshallers.json.AbstractJsonWriterTest;
 import org.nuxeo.ecm.core.io.marshallers.json.JsonAssert;
+import org.nuxeo.ecm.core.io.marshallers.json.enrichers.BreadcrumbJsonEnricher;
+import org.nuxeo.ecm.core.io.marshallers.json.enrichers.ChildrenJsonEnricher;
+import org.nuxeo.ecm.core.io.marshallers.json.enrichers.HasFolderishChildJsonEnricher;
+import org.nuxeo.ecm.core.io.registry.context.RenderingContext;
+import org.nuxeo.ecm.core.io.registry.context.RenderingContext.CtxBuilder;
+import org.nuxeo.ecm.core.test.CoreFeature;
 import org.nuxeo.runtime.test.runner.LocalDeploy;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 
 @LocalDeploy("org.nuxeo.ecm.core.io:OSGI-INF/doc-type-contrib.xml")
 public class DocumentModelListJsonWriterTest extends
@@ -43,6 +70,9 @@ public class DocumentModelListJsonWriterTest extends
     @Inject
     private CoreSession session;
 
+    @Inject
+    private CoreFeature coreFeature;
+
     public List<DocumentModel> getElements() {
         DocumentModel document1 = session.createDocumentModel("/", "myDoc1", "RefDoc");
         document1 = session.createDocument(document1);
@@ -65,4 +95,179 @@ public class DocumentModelListJsonWriterTest extends
         json.childrenContains("title", "myDoc1", "myDoc2", "myDoc3");
     }
 
+    @Test
+    public void testOneBatchLookupPerList() throws Exception {
+        registry.register(BatchCountingJsonEnricher.class);
+        try {
+            checkOneBatchLookupPerList();
+        } finally {
+            registry.deregister(BatchCountingJsonEnricher.class);
+        }
+    }
+
+    protected void checkOneBatchLookupPerList() throws Exception {
+        BatchCountingJsonEnricher.reset();
+        List<DocumentModel> elements = getElements();
+        RenderingContext ctx = CtxBuilder.enrichDoc(BatchCountingJsonEnricher.NAME).get();
+
+        // the whole list is resolved at once, no document is looked up alone
+        JsonAssert json = jsonAssert(elements, ctx);
+        json = json.has("entries").length(3);
+        json.has("[0].contextParameters.batchCounting").isEquals(0);
+        json.has("[1].contextParameters.batchCounting").isEquals(1);
+        json.has("[2].contextParameters.batchCounting").isEquals(2);
+        assertEquals(1, BatchCountingJsonEnricher.batchLookups.get());
+        assertEquals(3, BatchCountingJsonEnricher.batchedDocuments.get());
+        assertEquals(0, BatchCountingJsonEnricher.singleLookups.get());
+
+        // one lookup per page
+        jsonAssert(elements.subList(0, 2), ctx).has("entries").length(2);
+        jsonAssert(elements.subList(2, 3), ctx).has("entries").length(1);
+        assertEquals(3, BatchCountingJsonEnricher.batchLookups.get());
+        assertEquals(6, BatchCountingJsonEnricher.batchedDocuments.get());
+        assertEquals(0, BatchCountingJsonEnricher.singleLookups.get());
+
+        // nothing to resolve for an empty list
+        jsonAssert(Collections.emptyList(), ctx).has("entries").length(0);
+        assertEquals(3, BatchCountingJsonEnricher.batchLookups.get());
+
+        // a single document is still looked up alone
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        registry.getInstance(ctx, DocumentModelJsonWriter.class).write(elements.get(0), DocumentModel.class,
+                DocumentModel.class, APPLICATION_JSON_TYPE, baos);
+        JsonAssert.on(baos.toString()).has("contextParameters.batchCounting").isEquals(-1);
+        assertEquals(3, BatchCountingJsonEnricher.batchLookups.get());
+        assertEquals(1, BatchCountingJsonEnricher.singleLookups.get());
+    }
+
+    @Test
+    public void testBatchedEnrichers() throws Exception {
+        DocumentModel folder1 = session.createDocument(session.createDocumentModel("/", "folder1", "MyFolder"));
+        DocumentModel folder2 = session.createDocument(session.createDocumentModel("/", "folder2", "MyFolder"));
+        DocumentModel subfolder = session.createDocument(
+                session.createDocumentModel("/folder1", "subfolder", "MyFolder"));
+        session.createDocument(session.createDocumentModel("/folder1", "doc1", "RefDoc"));
+        session.createDocument(session.createDocumentModel("/folder2", "doc2", "RefDoc"));
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        RenderingContext ctx = CtxBuilder.enrichDoc(HasFolderishChildJsonEnricher.NAME, ChildrenJsonEnricher.NAME,
+                BreadcrumbJsonEnricher.NAME).get();
+        JsonAssert json = jsonAssert(Arrays.asList(folder1, folder2, subfolder), ctx);
+        json = json.has("entries").length(3);
+        json.has("[0].contextParameters.hasFolderishChild").isEquals(true);
+        json.has("[1].contextParameters.hasFolderishChild").isEquals(false);
+        json.has("[2].contextParameters.hasFolderishChild").isEquals(false);
+        json.has("[0].contextParameters.children.entries").length(2);
+        json.has("[0].contextParameters.children.entries").childrenContains("title", "subfolder", "doc1");
+        json.has("[1].contextParameters.children.entries").length(1);
+        json.has("[2].contextParameters.children.entries").length(0);
+        json.has("[0].contextParameters.breadcrumb.entries").length(1);
+        json.has("[2].contextParameters.breadcrumb.entries").length(2);
+        json.has("[2].contextParameters.breadcrumb.entries").childrenContains("title", "folder1", "subfolder");
+    }
+
+    @Test
+    public void testBatchedEnrichersWriteLikeSingleDocuments() throws Exception {
+        ACP acp = new ACPImpl();
+        acp.addACE(ACL.LOCAL_ACL, new ACE("bob", READ, true));
+        session.setACP(session.getRootDocument().getRef(), acp, false);
+        DocumentModel folder1 = session.createDocument(session.createDocumentModel("/", "folder1", "MyFolder"));
+        DocumentModel folder2 = session.createDocument(session.createDocumentModel("/", "folder2", "MyFolder"));
+        DocumentModel subfolder = session.createDocument(
+                session.createDocumentModel("/folder1", "subfolder", "MyFolder"));
+        session.createDocument(session.createDocumentModel("/folder1", "doc1", "RefDoc"));
+        session.createDocument(session.createDocumentModel("/folder2", "doc2", "RefDoc"));
+        // bob can read a document in a folder he can't read
+        DocumentModel hidden = session.createDocument(session.createDocumentModel("/folder1", "hidden", "MyFolder"));
+        acp = new ACPImpl();
+        acp.addACE(ACL.LOCAL_ACL, new ACE(ADMINISTRATOR, EVERYTHING, true));
+        acp.addACE(ACL.LOCAL_ACL, ACE.BLOCK);
+        session.setACP(hidden.getRef(), acp, true);
+        DocumentModel inner = session.createDocument(session.createDocumentModel("/folder1/hidden", "inner", "RefDoc"));
+        acp = new ACPImpl();
+        acp.addACE(ACL.LOCAL_ACL, new ACE("bob", READ, true));
+        session.setACP(inner.getRef(), acp, true);
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        RenderingContext ctx = CtxBuilder.enrichDoc(HasFolderishChildJsonEnricher.NAME, ChildrenJsonEnricher.NAME,
+                BreadcrumbJsonEnricher.NAME).get();
+        List<DocumentRef> refs = Arrays.asList(folder1.getRef(), folder2.getRef(), subfolder.getRef(),
+                hidden.getRef(), inner.getRef());
+        checkBatchedLikeSingle(session, refs, ctx);
+        try (CloseableCoreSession bobSession = coreFeature.openCoreSession("bob")) {
+            refs = Arrays.asList(folder1.getRef(), folder2.getRef(), subfolder.getRef(), inner.getRef());
+            JsonNode entries = checkBatchedLikeSingle(bobSession, refs, ctx);
+            // the hidden folder is neither a child nor an ancestor for bob
+            JsonAssert json = JsonAssert.on(entries.toString());
+            json.has("[0].contextParameters.children.entries").length(2);
+            json.has("[3].contextParameters.breadcrumb.entries").length(1);
+        }
+    }
+
+    /**
+     * Checks that the documents of a list are enriched like when they're written alone.
+     */
+    protected JsonNode checkBatchedLikeSingle(CoreSession session, List<DocumentRef> refs, RenderingContext ctx)
+            throws Exception {
+        List<DocumentModel> docs = new ArrayList<>();
+        for (DocumentRef ref : refs) {
+            docs.add(session.getDocument(ref));
+        }
+        JsonNode entries = JsonAssert.on(asJson(docs, ctx)).has("entries").length(docs.size()).getNode();
+        for (int i = 0; i < docs.size(); i++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            registry.getInstance(ctx, DocumentModelJsonWriter.class).write(docs.get(i), DocumentModel.class,
+                    DocumentModel.class, APPLICATION_JSON_TYPE, baos);
+            JsonNode single = JsonAssert.on(baos.toString()).getNode();
+            assertEquals(normalize(single), normalize(entries.get(i)));
+        }
+        return entries;
+    }
+
+    /**
+     * Sorts the children by id, their order is unspecified in a folder which is not ordered.
+     */
+    protected static JsonNode normalize(JsonNode document) {
+        JsonNode normalized = document.deepCopy();
+        JsonNode children = normalized.path("contextParameters").path("children").path("entries");
+        if (children.isArray()) {
+            List<JsonNode> sorted = new ArrayList<>();
+            children.forEach(sorted::add);
+            sorted.sort(Comparator.comparing(child -> child.path("uid").asText()));
+            ((ArrayNode) children).removeAll().addAll(sorted);
+        }
+        return normalized;
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception {
+        int count = 2 * DocumentModelListJsonWriter.FLUSH_INTERVAL + 1;
+        List<DocumentModel> docs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            docs.add(session.createDocument(session.createDocumentModel("/", "doc" + i, "RefDoc")));
+        }
+        FlushRecordingOutputStream out = new FlushRecordingOutputStream();
+        registry.getInstance(CtxBuilder.get(), DocumentModelListJsonWriter.class).write(docs, List.class,
+                TypeUtils.parameterize(List.class, DocumentModel.class), APPLICATION_JSON_TYPE, out);
+        // the entries are only flushed once the interval elapsed, and at the end of the list
+        assertEquals(Arrays.asList(DocumentModelListJsonWriter.FLUSH_INTERVAL,
+                2 * DocumentModelListJsonWriter.FLUSH_INTERVAL, count), out.entriesAtFlush);
+        JsonAssert.on(out.toString()).has("entries").length(count);
+    }
+
+    /**
+     * Records the number of documents written at each flush.
+     */
+    protected static class FlushRecordingOutputStream extends ByteArrayOutputStream {
+
+        protected final List<Integer> entriesAtFlush = new ArrayList<>();
+
+        @Override
+        public void flush() {
+            entriesAtFlush.add(StringUtils.countMatches(toString(), "\"entity-type\":\"document\""));
+        }
+    }
+
 }
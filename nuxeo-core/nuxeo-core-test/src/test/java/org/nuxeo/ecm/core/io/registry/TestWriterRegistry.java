@@ -106,6 +106,19 @@ public class TestWriterRegistry {
         assertEquals(HigherPriorityWriter.class, writer.getClass());
     }
 
+    @Test
+    public void deregistering() throws Exception {
+        registry.register(DefaultNumberWriter.class);
+        registry.register(HigherPriorityWriter.class);
+        Writer<?> writer = registry.getWriter(ctx, Integer.class, null, APPLICATION_JSON_TYPE);
+        assertEquals(HigherPriorityWriter.class, writer.getClass());
+        registry.deregister(HigherPriorityWriter.class);
+        writer = registry.getWriter(ctx, Integer.class, null, APPLICATION_JSON_TYPE);
+        assertEquals(DefaultNumberWriter.class, writer.getClass());
+        registry.deregister(DefaultNumberWriter.class);
+        assertNull(registry.getWriter(ctx, Integer.class, null, APPLICATION_JSON_TYPE));
+    }
+
     @Test
     public void prioriseSingletonToPerThreadToEachTime() throws Exception {
         registry.register(EachTimeWriter.class);
@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.AbstractSession;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Tests that streaming query results doesn't keep the documents in the DBS transaction state.
+ *
+ * @since 10.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+@RepositoryConfig(cleanup = Granularity.METHOD)
+public class TestDBSQueryStream {
+
+    protected static final int NB_DOCS = 250;
+
+    protected static final int FETCH_SIZE = 20;
+
+    @Inject
+    protected CoreFeature coreFeature;
+
+    @Inject
+    protected CoreSession session;
+
+    @Before
+    public void setUp() {
+        assumeTrue(coreFeature.getStorageConfiguration().isDBS());
+    }
+
+    protected DBSTransactionState getTransactionState() {
+        return ((DBSSession) ((AbstractSession) session).getSession()).transaction;
+    }
+
+    @Test
+    public void testStreamDoesNotRetainStates() {
+        session.createDocument(session.createDocumentModel("/", "folder", "Folder"));
+        for (int i = 0; i < NB_DOCS; i++) {
+            DocumentModel doc = session.createDocumentModel("/folder", "doc" + i, "File");
+            doc.setPropertyValue("dc:title", String.format("title%03d", i));
+            session.createDocument(doc);
+        }
+        session.save();
+        // start with an empty transaction state
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+        int initialSize = getTransactionState().transientStates.size();
+
+        int[] maxSize = { 0 };
+        try (Stream<DocumentModel> docs = session.queryStream("SELECT * FROM File ORDER BY dc:title", FETCH_SIZE)) {
+            List<String> titles = docs.peek(doc -> maxSize[0] = Math.max(maxSize[0],
+                    getTransactionState().transientStates.size())).map(DocumentModel::getTitle).collect(
+                            Collectors.toList());
+            assertEquals(NB_DOCS, titles.size());
+            assertEquals("title000", titles.get(0));
+            assertEquals("title249", titles.get(NB_DOCS - 1));
+        }
+        // only the ancestors read to compute the paths may be kept, not the streamed documents
+        int size = getTransactionState().transientStates.size();
+        assertTrue("transient states: " + size, size <= initialSize + 2);
+        assertTrue("max transient states: " + maxSize[0], maxSize[0] <= initialSize + 2);
+        assertTrue(maxSize[0] < FETCH_SIZE);
+    }
+
+    @Test
+    public void testStreamSeesTransientChanges() {
+        DocumentModel doc = session.createDocumentModel("/", "doc", "File");
+        doc.setPropertyValue("dc:title", "before");
+        doc = session.createDocument(doc);
+        session.save();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        // a document modified in the transaction is streamed with its modifications, and they're still saved
+        doc = session.getDocument(doc.getRef());
+        doc.setPropertyValue("dc:title", "after");
+        session.saveDocument(doc);
+        try (Stream<DocumentModel> docs = session.queryStream("SELECT * FROM File", FETCH_SIZE)) {
+            assertEquals("after", docs.findFirst().get().getTitle());
+        }
+        session.save();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+        assertEquals("after", session.getDocument(doc.getRef()).getTitle());
+    }
+
+}
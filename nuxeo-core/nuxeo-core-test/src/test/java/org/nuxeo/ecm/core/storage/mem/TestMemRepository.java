@@ -0,0 +1,352 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_CHANGE_TOKEN;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.PathRef;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.StateHelper;
+import org.nuxeo.ecm.core.storage.dbs.DBSDocumentState;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.HotDeployer;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Tests the snapshots, the index-driven queries and the updates of the {@link MemRepository}.
+ *
+ * @since 10.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+@RepositoryConfig(cleanup = Granularity.METHOD)
+public class TestMemRepository {
+
+    @Inject
+    protected CoreFeature coreFeature;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected HotDeployer deployer;
+
+    protected MemRepository repository;
+
+    protected DocumentModel folder1;
+
+    protected DocumentModel folder2;
+
+    protected DocumentModel sub;
+
+    protected DocumentModel[] files = new DocumentModel[5];
+
+    protected DocumentModel note1;
+
+    protected DocumentModel note2;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(coreFeature.getStorageConfiguration().isDBSMem());
+        // cannot be done through @LocalDeploy, because the repository must be restarted with the new configuration
+        deployer.deploy("org.nuxeo.ecm.core.test.tests:OSGI-INF/test-repo-mem-indexes-contrib.xml");
+        RepositoryService repositoryService = Framework.getService(RepositoryService.class);
+        repository = (MemRepository) repositoryService.getRepository(session.getRepositoryName());
+        assertTrue(repository.indexes.isIndexed("dc:title"));
+    }
+
+    protected void nextTransaction() {
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+    }
+
+    /**
+     * Creates the following structure of documents:
+     *
+     * <pre>
+     *  root
+     *  |- folder1
+     *  |  |- file0 (same, foo)
+     *  |  |- file1 (other, foo)
+     *  |  |- file2 (same, foo)
+     *  |  |- file3 (other, foo)
+     *  |  \- note1 (same)
+     *  \- folder2
+     *     \- sub
+     *        |- file4 (same, foo)
+     *        \- note2 (other)
+     * </pre>
+     */
+    protected void createDocs() {
+        folder1 = createDocument("/", "folder1", "Folder", "folder1");
+        folder2 = createDocument("/", "folder2", "Folder", "folder2");
+        sub = createDocument("/folder2", "sub", "Folder", "sub");
+        for (int i = 0; i < 4; i++) {
+            files[i] = createDocument("/folder1", "file" + i, "File", i % 2 == 0 ? "same" : "other", "foo", "s" + i);
+        }
+        files[4] = createDocument("/folder2/sub", "file4", "File", "same", "foo");
+        note1 = createDocument("/folder1", "note1", "Note", "same");
+        note2 = createDocument("/folder2/sub", "note2", "Note", "other");
+        session.save();
+        nextTransaction();
+    }
+
+    protected DocumentModel createDocument(String parentPath, String name, String type, String title,
+            String... subjects) {
+        DocumentModel doc = session.createDocumentModel(parentPath, name, type);
+        doc.setPropertyValue("dc:title", title);
+        if (subjects.length > 0) {
+            doc.setPropertyValue("dc:subjects", subjects);
+        }
+        return session.createDocument(doc);
+    }
+
+    protected Set<String> queryIds(String nxql) {
+        return session.query(nxql).stream().map(DocumentModel::getId).collect(Collectors.toSet());
+    }
+
+    /**
+     * Checks that a query evaluated through an index returns the same documents as the same query evaluated with a
+     * full scan. Duplicating the condition in an OR prevents the use of the indexes.
+     */
+    protected void assertSamePlans(int expected, String where) {
+        String indexed = "SELECT * FROM Document WHERE " + where;
+        String unindexed = "SELECT * FROM Document WHERE (" + where + ") OR (" + where + ")";
+        assertNotNull(indexed, repository.getIndexedIds(SQLQueryParser.parse(indexed).where.predicate));
+        assertNull(unindexed, repository.getIndexedIds(SQLQueryParser.parse(unindexed).where.predicate));
+        Set<String> ids = queryIds(unindexed);
+        assertEquals(where, expected, ids.size());
+        assertEquals(where, ids, queryIds(indexed));
+    }
+
+    protected void assertSamePlans(int parentCount, int ancestorCount, int noteCount, int fileOrNoteCount,
+            int titleCount, int subjectCount, int parentAndTitleCount) {
+        assertSamePlans(parentCount, "ecm:parentId = '" + folder1.getId() + "'");
+        assertSamePlans(ancestorCount, "ecm:ancestorId = '" + folder2.getId() + "'");
+        assertSamePlans(noteCount, "ecm:primaryType = 'Note'");
+        assertSamePlans(fileOrNoteCount, "ecm:primaryType IN ('File', 'Note')");
+        assertSamePlans(titleCount, "dc:title = 'same'");
+        assertSamePlans(subjectCount, "dc:subjects = 'foo'");
+        assertSamePlans(parentAndTitleCount, "ecm:parentId = '" + folder1.getId() + "' AND dc:title = 'same'");
+        // a non-indexed condition still restricts the candidates found through an index
+        assertSamePlans(0, "ecm:primaryType = 'Note' AND dc:subjects = 'foo'");
+    }
+
+    @Test
+    public void testIndexedQueries() {
+        createDocs();
+        assertSamePlans(5, 3, 2, 7, 4, 5, 3);
+
+        // move, update and delete documents
+        session.move(files[0].getRef(), sub.getRef(), null);
+        files[1].setPropertyValue("dc:title", "same");
+        files[1].setPropertyValue("dc:subjects", new String[] { "bar" });
+        session.saveDocument(files[1]);
+        session.removeDocument(note1.getRef());
+        session.save();
+        nextTransaction();
+
+        assertSamePlans(3, 4, 1, 6, 4, 4, 2);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        createDocs();
+        String id0 = files[0].getId();
+        State state0 = StateHelper.deepCopy(repository.readState(id0));
+        int count = queryIds("SELECT * FROM Document").size();
+        File file = Framework.createTempFile("mem-repository", ".snapshot");
+        Framework.trackFile(file, file);
+        repository.snapshot(file.toPath());
+
+        // change the repository after the snapshot
+        files[0].setPropertyValue("dc:title", "changed");
+        files[0].setPropertyValue("dc:subjects", new String[] { "bar" });
+        session.saveDocument(files[0]);
+        session.removeDocument(files[1].getRef());
+        createDocument("/folder1", "extra", "File", "same", "foo");
+        session.save();
+        TransactionHelper.commitOrRollbackTransaction();
+
+        repository.restore(file.toPath());
+        TransactionHelper.startTransaction();
+
+        // the documents are back as they were
+        assertEquals(state0, repository.readState(id0));
+        assertEquals("same", session.getDocument(new IdRef(id0)).getPropertyValue("dc:title"));
+        assertTrue(session.exists(files[1].getRef()));
+        assertFalse(session.exists(new PathRef("/folder1/extra")));
+        assertEquals(count, queryIds("SELECT * FROM Document").size());
+
+        // and so are the indexes
+        assertSamePlans(5, 3, 2, 7, 4, 5, 3);
+
+        // the restored repository can be updated
+        session.move(files[0].getRef(), sub.getRef(), null);
+        session.save();
+        nextTransaction();
+        assertSamePlans(4, 4, 2, 7, 4, 5, 2);
+    }
+
+    @Test
+    public void testRestoreInvalidSnapshot() throws Exception {
+        File file = Framework.createTempFile("mem-repository", ".snapshot");
+        Framework.trackFile(file, file);
+        Files.write(file.toPath(), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        try {
+            repository.restore(file.toPath());
+            fail("should not restore from an invalid snapshot");
+        } catch (NuxeoException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Not a repository snapshot"));
+        }
+        // the repository is unchanged
+        assertTrue(session.exists(new PathRef("/")));
+    }
+
+    protected static StateDiff titleDiff(String title) {
+        StateDiff diff = new StateDiff();
+        diff.put("dc:title", title);
+        return diff;
+    }
+
+    protected ChangeTokenUpdater changeTokenUpdater(String id, Long changeToken) {
+        State base = repository.readState(id);
+        base.put(KEY_CHANGE_TOKEN, changeToken);
+        DBSDocumentState docState = new DBSDocumentState(base);
+        docState.markDirty();
+        return new ChangeTokenUpdater(docState);
+    }
+
+    @Test
+    public void testUpdateStatesIsAtomic() {
+        createDocs();
+        String id0 = files[0].getId();
+        String id1 = files[1].getId();
+        Map<String, StateDiff> diffs = new LinkedHashMap<>();
+        diffs.put(id0, titleDiff("changed"));
+        diffs.put(id1, titleDiff("changed"));
+        Long token0 = (Long) repository.readState(id0).get(KEY_CHANGE_TOKEN);
+        Long token1 = (Long) repository.readState(id1).get(KEY_CHANGE_TOKEN);
+        assertNotNull(token0);
+        assertNotNull(token1);
+
+        // a stale change token on the last document prevents all the updates
+        Map<String, ChangeTokenUpdater> updaters = new LinkedHashMap<>();
+        updaters.put(id0, changeTokenUpdater(id0, token0));
+        updaters.put(id1, changeTokenUpdater(id1, Long.valueOf(token1.longValue() - 1)));
+        try {
+            repository.updateStates(diffs, updaters);
+            fail("should not update a document with a stale change token");
+        } catch (ConcurrentUpdateException e) {
+            assertEquals(id1, e.getMessage());
+        }
+        assertEquals("same", repository.readState(id0).get("dc:title"));
+        assertEquals("other", repository.readState(id1).get("dc:title"));
+        assertEquals(token0, repository.readState(id0).get(KEY_CHANGE_TOKEN));
+        assertSamePlans(0, "dc:title = 'changed'");
+
+        updaters.put(id1, changeTokenUpdater(id1, token1));
+        repository.updateStates(diffs, updaters);
+        assertEquals("changed", repository.readState(id0).get("dc:title"));
+        assertEquals("changed", repository.readState(id1).get("dc:title"));
+        assertFalse(token0.equals(repository.readState(id0).get(KEY_CHANGE_TOKEN)));
+        assertSamePlans(2, "dc:title = 'changed'");
+    }
+
+    @Test
+    public void testUpdatesOnlyLockTheirDocuments() throws Exception {
+        createDocs();
+        String id0 = files[0].getId();
+        ReentrantLock lock = repository.getStripe(id0);
+        // a document whose updates don't share the lock of the first one
+        String id = null;
+        for (DocumentModel doc : new DocumentModel[] { files[1], files[2], files[3], files[4], note1, note2 }) {
+            if (repository.getStripe(doc.getId()) != lock) {
+                id = doc.getId();
+                break;
+            }
+        }
+        assertNotNull(id);
+        String otherId = id;
+
+        CompletableFuture<Void> blocked;
+        lock.lock();
+        try {
+            // the other document can be updated, alone or in bulk, while the first one is locked
+            CompletableFuture.runAsync(() -> repository.updateState(otherId, titleDiff("single"), null))
+                             .get(20, TimeUnit.SECONDS);
+            CompletableFuture.runAsync(
+                    () -> repository.updateStates(Collections.singletonMap(otherId, titleDiff("bulk")), null))
+                             .get(20, TimeUnit.SECONDS);
+            // but the update of the first document waits for its lock
+            blocked = CompletableFuture.runAsync(() -> repository.updateState(id0, titleDiff("changed"), null));
+            try {
+                blocked.get(500, TimeUnit.MILLISECONDS);
+                fail("should wait for the lock of the document");
+            } catch (TimeoutException e) {
+                // expected
+            }
+            assertEquals("same", repository.readState(id0).get("dc:title"));
+        } finally {
+            lock.unlock();
+        }
+        blocked.get(20, TimeUnit.SECONDS);
+        assertEquals("changed", repository.readState(id0).get("dc:title"));
+        assertEquals("bulk", repository.readState(otherId).get("dc:title"));
+    }
+
+}
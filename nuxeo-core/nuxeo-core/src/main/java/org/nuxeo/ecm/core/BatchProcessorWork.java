@@ -36,6 +36,14 @@ public abstract class BatchProcessorWork extends AbstractWork {
 
     private static final Log log = LogFactory.getLog(BatchProcessorWork.class);
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected BatchProcessorWork() {
+    }
+
     public BatchProcessorWork(String repositoryName, List<String> docIds, String originatingUsername) {
         setDocuments(repositoryName, docIds);
         setOriginatingUsername(originatingUsername);
@@ -50,11 +50,18 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -90,7 +97,10 @@ import org.nuxeo.ecm.core.model.Session;
 import org.nuxeo.ecm.core.query.QueryFilter;
 import org.nuxeo.ecm.core.query.QueryParseException;
 import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
 import org.nuxeo.ecm.core.query.sql.model.SQLQuery.Transformer;
+import org.nuxeo.ecm.core.query.sql.model.SelectClause;
 import org.nuxeo.ecm.core.schema.DocumentType;
 import org.nuxeo.ecm.core.schema.FacetNames;
 import org.nuxeo.ecm.core.schema.SchemaManager;
@@ -949,19 +959,48 @@ public abstract class AbstractSession implements CoreSession, Serializable {
 
     @Override
     public DocumentModelList getDocuments(DocumentRef[] docRefs) {
-        List<DocumentModel> docs = new ArrayList<>(docRefs.length);
+        return getDocuments(Arrays.asList(docRefs), null);
+    }
+
+    @Override
+    public DocumentModelList getDocuments(Collection<DocumentRef> docRefs, Set<String> schemas) {
+        // fetch documents referenced by id in bulk
+        List<String> ids = new ArrayList<>(docRefs.size());
+        for (DocumentRef docRef : docRefs) {
+            if (docRef.type() == DocumentRef.ID) {
+                ids.add((String) docRef.reference());
+            }
+        }
+        Map<String, Document> docsById = new HashMap<>();
+        if (!ids.isEmpty()) {
+            List<Document> docs = getSession().getDocumentsByUUID(ids, schemas);
+            for (int i = 0; i < ids.size(); i++) {
+                Document doc = docs.get(i);
+                if (doc != null) {
+                    docsById.put(ids.get(i), doc);
+                }
+            }
+        }
+        String[] schemaNames = schemas == null ? null : schemas.toArray(new String[schemas.size()]);
+        boolean administrator = isAdministrator();
+        List<DocumentModel> docModels = new ArrayList<>(docRefs.size());
         for (DocumentRef docRef : docRefs) {
             Document doc;
-            try {
+            if (docRef.type() == DocumentRef.ID) {
+                doc = docsById.get(docRef.reference());
+                if (doc == null) {
+                    throw new DocumentNotFoundException((String) docRef.reference());
+                }
+            } else {
                 doc = resolveReference(docRef);
-                checkPermission(doc, READ);
-            } catch (DocumentSecurityException e) {
+            }
+            if (!administrator && !hasPermission(doc, READ)) {
                 // no permission
                 continue;
             }
-            docs.add(readModel(doc));
+            docModels.add(DocumentModelFactory.createDocumentModel(doc, getSessionId(), schemaNames));
         }
-        return new DocumentModelListImpl(docs);
+        return new DocumentModelListImpl(docModels);
     }
 
     @Override
@@ -1233,6 +1272,86 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         }
     }
 
+    @Override
+    public Stream<DocumentModel> queryStream(String query, int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("Invalid fetch size: " + fetchSize);
+        }
+        try {
+            SelectClause selectClause = SQLQueryParser.parse(query).select;
+            if (!selectClause.isEmpty()
+                    && !(selectClause.count() == 1 && selectClause.containsOperand(new Reference(NXQL.ECM_UUID)))) {
+                throw new QueryParseException("Only document queries can be streamed");
+            }
+            SecurityService securityService = getSecurityService();
+            boolean postFilterPolicies = !securityService.arePoliciesExpressibleInQuery(getRepositoryName());
+            Principal principal = getPrincipal();
+            String[] principals = getPrincipalsToCheck();
+            String[] permissions = securityService.getPermissionsToCheck(BROWSE);
+            Collection<Transformer> transformers = getPoliciesQueryTransformers(NXQL.NXQL);
+            QueryFilter queryFilter = new QueryFilter(principal, principals, permissions, null, transformers, 0, 0);
+
+            Stream<String> ids = getSession().queryStream(query, queryFilter, fetchSize);
+            Iterator<List<DocumentModel>> batches = new DocumentModelBatchIterator(ids.iterator(), fetchSize,
+                    postFilterPolicies);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED), false)
+                                .onClose(ids::close)
+                                .flatMap(List::stream);
+        } catch (QueryParseException e) {
+            e.addInfo("Failed to execute query: " + query);
+            throw e;
+        }
+    }
+
+    /**
+     * Iterator loading in bulk the documents for batches of ids. The documents are read without being kept by the
+     * repository session, so that the memory used doesn't grow with the number of results.
+     *
+     * @since 10.1
+     */
+    protected class DocumentModelBatchIterator implements Iterator<List<DocumentModel>> {
+
+        protected final Iterator<String> ids;
+
+        protected final int batchSize;
+
+        protected final boolean postFilterPolicies;
+
+        protected DocumentModelBatchIterator(Iterator<String> ids, int batchSize, boolean postFilterPolicies) {
+            this.ids = ids;
+            this.batchSize = batchSize;
+            this.postFilterPolicies = postFilterPolicies;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return ids.hasNext();
+        }
+
+        @Override
+        public List<DocumentModel> next() {
+            if (!ids.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<String> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && ids.hasNext()) {
+                batch.add(ids.next());
+            }
+            List<DocumentModel> docModels = new ArrayList<>(batch.size());
+            for (Document doc : getSession().readDocumentsByUUID(batch)) {
+                if (doc == null) {
+                    // deleted since the query
+                    continue;
+                }
+                if (postFilterPolicies && !hasPermission(doc, BROWSE)) {
+                    continue;
+                }
+                docModels.add(readModel(doc));
+            }
+            return docModels;
+        }
+    }
+
     @Override
     public IterableQueryResult queryAndFetch(String query, String queryType, Object... params) {
         return queryAndFetch(query, queryType, false, params);
@@ -103,6 +103,16 @@ public interface DocumentBlobManager {
      */
     boolean isBinariesGarbageCollectionInProgress();
 
+    /**
+     * Gets the status of the current garbage collection of the binaries, or of the last one if none is in progress.
+     * <p>
+     * While a garbage collection is in progress, the status reflects its current phase and progress.
+     *
+     * @return the status, or {@code null} if no garbage collection has been started
+     * @since 10.1
+     */
+    BinaryManagerStatus getBinariesGarbageCollectionStatus();
+
     /**
      * INTERNAL. Marks a binary as referenced during garbage collection. Called back by repository implementations
      * during {@link #garbageCollectBinaries}.
@@ -20,10 +20,16 @@ package org.nuxeo.ecm.core.blob;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,6 +40,7 @@ import org.nuxeo.ecm.core.blob.BlobDispatcher.BlobDispatch;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
 import org.nuxeo.ecm.core.blob.binary.BinaryManager;
 import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus.Phase;
 import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.ecm.core.model.Document.BlobAccessor;
 import org.nuxeo.ecm.core.model.Repository;
@@ -243,11 +250,7 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
         }
         // in all repositories, mark referenced binaries
         // the marking itself will call back into the appropriate gc's mark method
-        RepositoryService repositoryService = Framework.getService(RepositoryService.class);
-        for (String repositoryName : repositoryService.getRepositoryNames()) {
-            Repository repository = repositoryService.getRepository(repositoryName);
-            repository.markReferencedBinaries();
-        }
+        markReferencedBinaries(gcs);
         // stop gc
         BinaryManagerStatus globalStatus = new BinaryManagerStatus();
         for (BinaryGarbageCollector gc : gcs) {
@@ -262,6 +265,53 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
         return globalStatus;
     }
 
+    /**
+     * Marks the binaries referenced by the repositories, in parallel. A repository already marked by all the GCs, before
+     * they were interrupted and resumed, is skipped.
+     */
+    protected void markReferencedBinaries(List<BinaryGarbageCollector> gcs) {
+        RepositoryService repositoryService = Framework.getService(RepositoryService.class);
+        List<String> repositoryNames = new ArrayList<>();
+        for (String repositoryName : repositoryService.getRepositoryNames()) {
+            if (!gcs.isEmpty() && gcs.stream().allMatch(gc -> gc.isRepositoryMarked(repositoryName))) {
+                log.info("Binaries of repository: " + repositoryName + " already marked, skipping it");
+                continue;
+            }
+            repositoryNames.add(repositoryName);
+        }
+        if (repositoryNames.isEmpty()) {
+            return;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(repositoryNames.size(), r -> {
+            Thread thread = new Thread(r, "Nuxeo-BinaryGC-Mark-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(repositoryNames.size());
+            for (String repositoryName : repositoryNames) {
+                futures.add(executor.submit(() -> {
+                    Repository repository = repositoryService.getRepository(repositoryName);
+                    repository.markReferencedBinaries();
+                    for (BinaryGarbageCollector gc : gcs) {
+                        gc.setRepositoryMarked(repositoryName);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        } catch (ExecutionException e) {
+            throw new NuxeoException("Error while marking referenced binaries", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Override
     public void markReferencedBinary(String key, String repositoryName) {
         BlobProvider blobProvider = getBlobProvider(key, repositoryName);
@@ -288,4 +338,33 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
         return false;
     }
 
+    @Override
+    public BinaryManagerStatus getBinariesGarbageCollectionStatus() {
+        BinaryManagerStatus globalStatus = null;
+        for (BinaryGarbageCollector gc : getGarbageCollectors()) {
+            BinaryManagerStatus status = gc.getStatus();
+            if (status == null) {
+                continue;
+            }
+            if (globalStatus == null) {
+                globalStatus = new BinaryManagerStatus();
+            }
+            globalStatus.numBinaries += status.numBinaries;
+            globalStatus.sizeBinaries += status.sizeBinaries;
+            globalStatus.numBinariesGC += status.numBinariesGC;
+            globalStatus.sizeBinariesGC += status.sizeBinariesGC;
+            globalStatus.numBinariesMarked += status.numBinariesMarked;
+            globalStatus.sweepUnitsDone += status.sweepUnitsDone;
+            globalStatus.sweepUnitsTotal += status.sweepUnitsTotal;
+            globalStatus.gcDuration = Math.max(globalStatus.gcDuration, status.gcDuration);
+            globalStatus.resumed |= status.resumed;
+            // the global GC is in the earliest phase of its GCs
+            Phase phase = status.phase;
+            if (phase.ordinal() < globalStatus.phase.ordinal()) {
+                globalStatus.phase = phase;
+            }
+        }
+        return globalStatus;
+    }
+
 }
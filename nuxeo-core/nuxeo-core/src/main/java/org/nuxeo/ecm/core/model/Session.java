@@ -23,6 +23,8 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentNotFoundException;
@@ -55,6 +57,16 @@ public interface Session {
      */
     PartialList<Document> query(String query, String queryType, QueryFilter queryFilter, long countUpTo);
 
+    /**
+     * Does an NXQL document query, returning the ids of the matching documents as a stream backed by a database
+     * cursor reading {@code fetchSize} results at a time.
+     * <p>
+     * The returned stream <b>must</b> be closed.
+     *
+     * @since 10.1
+     */
+    Stream<String> queryStream(String query, QueryFilter queryFilter, int fetchSize);
+
     /**
      * Does a query and fetch the individual results as maps.
      */
@@ -125,6 +137,28 @@ public interface Session {
      */
     Document getDocumentByUUID(String uuid) throws DocumentNotFoundException;
 
+    /**
+     * Gets several documents given their IDs, fetching their data in bulk.
+     *
+     * @param uuids the document ids
+     * @param schemas the schemas whose data should be fetched in addition to the prefetched ones, or {@code null}
+     * @return the documents, in the same order as the ids, with elements being {@code null} if not found
+     * @since 10.1
+     */
+    List<Document> getDocumentsByUUID(List<String> uuids, Set<String> schemas);
+
+    /**
+     * Gets several documents given their IDs for a one-shot read, fetching their data in bulk.
+     * <p>
+     * Unlike {@link #getDocumentsByUUID}, the session doesn't keep the data of the documents it didn't already hold,
+     * so that reading many documents doesn't make it grow. The returned documents must not be modified.
+     *
+     * @param uuids the document ids
+     * @return the documents, in the same order as the ids, with elements being {@code null} if not found
+     * @since 10.1
+     */
+    List<Document> readDocumentsByUUID(List<String> uuids);
+
     /**
      * Gets the root document in this repository.
      *
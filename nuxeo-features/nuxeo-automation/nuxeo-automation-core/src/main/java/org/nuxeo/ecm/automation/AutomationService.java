@@ -20,6 +20,7 @@ package org.nuxeo.ecm.automation;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.nuxeo.ecm.automation.core.annotations.Operation;
 import org.nuxeo.ecm.platform.forms.layout.api.WidgetDefinition;
@@ -273,4 +274,28 @@ public interface AutomationService {
      */
     Object runInNewTx(OperationContext ctx, String chainId, Map<String,?> chainParameters, Integer timeout,
             boolean rollbackGlobalOnError) throws OperationException;
+
+    /**
+     * Runs a chain over the elements of an iterable input, split into batches processed in parallel. Each batch is run
+     * by the chain with the sub-list of its elements as input, in its own transaction and session.
+     * <p>
+     * The results are given to the consumer in the calling thread as batches complete. No new batch is scheduled while
+     * {@link BatchedRunOptions#getMaxPendingBatches()} batches are waiting for the consumer, which lets a slow consumer
+     * throttle the execution.
+     * <p>
+     * The current transaction, if any, is committed before the batches start so that they see its changes, and a new
+     * one is started when they are done. A batch that fails or is interrupted is rolled back.
+     * <p>
+     * The batches get the context variables of {@code ctx}. The variable values are not copied, so a mutable value is
+     * used concurrently by the batches, and must be thread-safe or left unmodified.
+     *
+     * @param ctx the operation context, its input must be an {@link Iterable}
+     * @param chainId the operation or chain id
+     * @param chainParameters the chain parameters
+     * @param options the batching options
+     * @param consumer the consumer of the batch results
+     * @since 10.1
+     */
+    void runInBatches(OperationContext ctx, String chainId, Map<String, ?> chainParameters, BatchedRunOptions options,
+            Consumer<BatchedRunResult> consumer) throws OperationException;
 }
@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation;
+
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.services.config.ConfigurationService;
+
+/**
+ * Options of {@link AutomationService#runInBatches}.
+ *
+ * @since 10.1
+ */
+public class BatchedRunOptions {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * The configuration property holding the maximum parallelism, also the number of threads shared by all the
+     * batched runs.
+     */
+    public static final String MAX_PARALLELISM_PROPERTY = "nuxeo.automation.batch.maxParallelism";
+
+    public static final int DEFAULT_MAX_PARALLELISM = 8;
+
+    protected int batchSize = DEFAULT_BATCH_SIZE;
+
+    protected int parallelism = DEFAULT_PARALLELISM;
+
+    protected int maxPendingBatches;
+
+    protected int transactionTimeout;
+
+    protected boolean stopOnError;
+
+    /**
+     * The number of input elements processed by each chain run, in its own transaction.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public BatchedRunOptions setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * The number of batches processed concurrently, cannot exceed {@link #getMaxParallelism()}.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public BatchedRunOptions setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * The maximum number of batches scheduled or done but not yet consumed. New batches are not scheduled until the
+     * consumer catches up, defaults to twice the parallelism.
+     */
+    public int getMaxPendingBatches() {
+        return maxPendingBatches > 0 ? maxPendingBatches : 2 * parallelism;
+    }
+
+    public BatchedRunOptions setMaxPendingBatches(int maxPendingBatches) {
+        this.maxPendingBatches = maxPendingBatches;
+        return this;
+    }
+
+    /**
+     * The timeout in seconds of the batch transactions, 0 for the default timeout.
+     */
+    public int getTransactionTimeout() {
+        return transactionTimeout;
+    }
+
+    public BatchedRunOptions setTransactionTimeout(int transactionTimeout) {
+        this.transactionTimeout = transactionTimeout;
+        return this;
+    }
+
+    /**
+     * Whether the remaining batches are skipped once a batch failed. Batches already committed are not rolled back.
+     */
+    public boolean isStopOnError() {
+        return stopOnError;
+    }
+
+    public BatchedRunOptions setStopOnError(boolean stopOnError) {
+        this.stopOnError = stopOnError;
+        return this;
+    }
+
+    /**
+     * Returns the maximum parallelism allowed by the server configuration.
+     */
+    public static int getMaxParallelism() {
+        ConfigurationService configurationService = Framework.getService(ConfigurationService.class);
+        String value = configurationService == null ? null
+                : configurationService.getProperty(MAX_PARALLELISM_PROPERTY);
+        if (value == null) {
+            return DEFAULT_MAX_PARALLELISM;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid " + MAX_PARALLELISM_PROPERTY + ": " + value, e);
+        }
+    }
+
+}
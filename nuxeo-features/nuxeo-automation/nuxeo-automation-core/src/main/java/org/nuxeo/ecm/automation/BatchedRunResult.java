@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation;
+
+/**
+ * The outcome of one batch of {@link AutomationService#runInBatches}, with the overall progress when it was delivered.
+ * <p>
+ * The output is the one of the chain run on the batch elements. The session used by the batch is closed once it is
+ * done, so documents in the output only hold the data loaded by the chain.
+ *
+ * @since 10.1
+ */
+public class BatchedRunResult {
+
+    protected final int batch;
+
+    protected final int offset;
+
+    protected final int size;
+
+    protected final Object output;
+
+    protected final Throwable error;
+
+    protected final int processed;
+
+    protected final int total;
+
+    public BatchedRunResult(int batch, int offset, int size, Object output, Throwable error, int processed,
+            int total) {
+        this.batch = batch;
+        this.offset = offset;
+        this.size = size;
+        this.output = output;
+        this.error = error;
+        this.processed = processed;
+        this.total = total;
+    }
+
+    /**
+     * The batch index, batches are delivered in completion order.
+     */
+    public int getBatch() {
+        return batch;
+    }
+
+    /**
+     * The index in the input of the first element of the batch.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Object getOutput() {
+        return output;
+    }
+
+    /**
+     * The failure of the batch, in which case its transaction was rolled back.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * The number of input elements processed so far, including this batch.
+     */
+    public int getProcessed() {
+        return processed;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + batch + ", " + offset + "+" + size + ", " + processed + "/" + total
+                + (error == null ? "" : ", " + error) + ")";
+    }
+
+}
@@ -120,6 +120,7 @@ public class AutomationComponent extends DefaultComponent {
 
     @Override
     public void deactivate(ComponentContext context) {
+        service.shutdown();
         service = null;
         handlers = null;
         tracerFactory = null;
@@ -0,0 +1,259 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation.core.impl;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.BatchedRunOptions;
+import org.nuxeo.ecm.automation.BatchedRunResult;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.OperationException;
+import org.nuxeo.ecm.automation.core.util.BlobList;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CloseableCoreSession;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.DocumentRefList;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
+import org.nuxeo.ecm.core.api.impl.DocumentRefListImpl;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Runs a chain over an iterable input split into batches, each batch being run in parallel in its own transaction.
+ * <p>
+ * The calling thread schedules the batches on a shared executor and hands their results to the consumer, scheduling a
+ * new batch only when fewer than the configured parallelism are running and the number of pending ones is below the
+ * configured maximum.
+ *
+ * @since 10.1
+ */
+public class BatchedChainRunner {
+
+    private static final Log log = LogFactory.getLog(BatchedChainRunner.class);
+
+    protected final AutomationService service;
+
+    protected final String chainId;
+
+    protected final Map<String, ?> chainParameters;
+
+    protected final BatchedRunOptions options;
+
+    public BatchedChainRunner(AutomationService service, String chainId, Map<String, ?> chainParameters,
+            BatchedRunOptions options) {
+        this.service = service;
+        this.chainId = chainId;
+        this.chainParameters = chainParameters;
+        this.options = options;
+    }
+
+    public void run(OperationContext ctx, ExecutorService executor, Consumer<BatchedRunResult> consumer)
+            throws OperationException {
+        Object input = ctx.getInput();
+        if (!(input instanceof Iterable)) {
+            throw new OperationException("Cannot run " + chainId + " in batches, input is not iterable: "
+                    + (input == null ? null : input.getClass().getName()));
+        }
+        CoreSession session = ctx.getCoreSession();
+        if (session == null) {
+            throw new OperationException("Cannot run " + chainId + " in batches without a session");
+        }
+        List<?> elements = toList((Iterable<?>) input);
+        int total = elements.size();
+        int batchSize = options.getBatchSize();
+        int batches = (total + batchSize - 1) / batchSize;
+        if (batches == 0) {
+            return;
+        }
+        BatchContext batchContext = new BatchContext(session.getRepositoryName(), session.getPrincipal(),
+                ctx.getVars());
+
+        if (TransactionHelper.isTransactionMarkedRollback()) {
+            throw new OperationException("Cannot run " + chainId + " in batches, transaction marked for rollback");
+        }
+        // batches run in other threads, make them see the current changes
+        boolean tx = TransactionHelper.isTransactionActive();
+        if (tx) {
+            TransactionHelper.commitOrRollbackTransaction();
+        }
+        List<Future<BatchedRunResult>> futures = new ArrayList<>();
+        try {
+            CompletionService<BatchedRunResult> completion = new ExecutorCompletionService<>(executor);
+            AtomicInteger running = new AtomicInteger();
+            int parallelism = options.getParallelism();
+            int maxPending = options.getMaxPendingBatches();
+            int scheduled = 0;
+            int pending = 0;
+            int processed = 0;
+            boolean stopped = false;
+            while (pending > 0 || (!stopped && scheduled < batches)) {
+                while (!stopped && scheduled < batches && pending < maxPending && running.get() < parallelism) {
+                    int offset = scheduled * batchSize;
+                    List<?> batch = elements.subList(offset, Math.min(offset + batchSize, total));
+                    int index = scheduled;
+                    running.incrementAndGet();
+                    futures.add(completion.submit(() -> {
+                        try {
+                            return runBatch(batchContext, index, offset, batch, input);
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    }));
+                    scheduled++;
+                    pending++;
+                }
+                Future<BatchedRunResult> future = completion.take();
+                futures.remove(future);
+                BatchedRunResult result = future.get();
+                pending--;
+                processed += result.getSize();
+                consumer.accept(new BatchedRunResult(result.getBatch(), result.getOffset(), result.getSize(),
+                        result.getOutput(), result.getError(), processed, total));
+                if (!result.isSuccess() && options.isStopOnError()) {
+                    stopped = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationException("Interrupted while running " + chainId + " in batches", e);
+        } catch (ExecutionException e) {
+            // runBatch reports the chain failures in its result
+            throw new OperationException("Failed to run " + chainId + " in batches", e.getCause());
+        } finally {
+            // on failure, don't leave batches of this run in the shared executor
+            futures.forEach(future -> future.cancel(true));
+            if (tx) {
+                // caller expects a transaction to be started
+                TransactionHelper.startTransaction();
+            }
+        }
+    }
+
+    protected BatchedRunResult runBatch(BatchContext batchContext, int index, int offset, List<?> batch,
+            Object input) {
+        Object output = null;
+        Throwable error = null;
+        boolean completed = false;
+        TransactionHelper.startTransaction(options.getTransactionTimeout());
+        try {
+            try (CloseableCoreSession session = CoreInstance.openCoreSession(batchContext.repositoryName,
+                    batchContext.principal); OperationContext ctx = new OperationContext(session)) {
+                ctx.putAll(batchContext.vars);
+                ctx.setInput(newInput(session, input, batch));
+                output = service.run(ctx, chainId, chainParameters);
+            }
+            completed = true;
+            if (Thread.currentThread().isInterrupted()) {
+                // cancelled while running, the chain may have stopped halfway without failing
+                error = new OperationException("Batch " + index + " of " + chainId + " was interrupted");
+            }
+        } catch (OperationException | RuntimeException e) {
+            log.debug("Batch " + index + " of " + chainId + " failed", e);
+            error = e;
+        } finally {
+            try {
+                if (!completed || error != null) {
+                    // failed, including with an Error rethrown to the caller, or interrupted: commit nothing
+                    TransactionHelper.setTransactionRollbackOnly();
+                }
+                TransactionHelper.commitOrRollbackTransaction();
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        return new BatchedRunResult(index, offset, batch.size(), error == null ? output : null, error, 0, 0);
+    }
+
+    /**
+     * Returns the input of a batch, of the same kind as the whole input. Documents are fetched again from the batch
+     * session.
+     */
+    @SuppressWarnings("unchecked")
+    protected Object newInput(CoreSession session, Object input, List<?> batch) {
+        if (input instanceof DocumentModelList) {
+            DocumentRef[] refs = new DocumentRef[batch.size()];
+            for (int i = 0; i < refs.length; i++) {
+                refs[i] = ((DocumentModel) batch.get(i)).getRef();
+            }
+            return new DocumentModelListImpl(session.getDocuments(refs));
+        } else if (input instanceof DocumentRefList) {
+            return new DocumentRefListImpl((List<DocumentRef>) batch);
+        } else if (input instanceof BlobList) {
+            return new BlobList((List<Blob>) batch);
+        }
+        return new ArrayList<>(batch);
+    }
+
+    protected static List<?> toList(Iterable<?> iterable) {
+        if (iterable instanceof List) {
+            return (List<?>) iterable;
+        }
+        List<Object> list = iterable instanceof Collection ? new ArrayList<>(((Collection<?>) iterable).size())
+                : new ArrayList<>();
+        for (Object element : iterable) {
+            list.add(element);
+        }
+        return list;
+    }
+
+    /**
+     * What the batches need from the calling context.
+     * <p>
+     * Each batch gets its own copy of the context variables map, but the values themselves are shared: a mutable value
+     * is used by several batches at once, from different threads, and must be thread-safe or left unmodified.
+     */
+    protected static class BatchContext {
+
+        protected final String repositoryName;
+
+        protected final Principal principal;
+
+        protected final Map<String, Object> vars;
+
+        protected BatchContext(String repositoryName, Principal principal, Map<String, Object> vars) {
+            this.repositoryName = repositoryName;
+            this.principal = principal;
+            // snapshot, the calling context is not used concurrently
+            this.vars = new HashMap<>(vars);
+        }
+    }
+
+}
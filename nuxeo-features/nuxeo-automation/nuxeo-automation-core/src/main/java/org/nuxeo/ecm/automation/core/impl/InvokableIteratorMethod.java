@@ -93,8 +93,8 @@ public class InvokableIteratorMethod extends InvokableMethod {
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
     @Override
-    protected Object doInvoke(OperationContext ctx, Map<String, Object> args) throws OperationException,
-            ReflectiveOperationException {
+    protected Object doInvoke(OperationContext ctx, Map<String, Object> args, TypeAdapterCache adapter)
+            throws OperationException, ReflectiveOperationException {
         Object input = ctx.getInput();
         if (!(input instanceof Iterable)) {
             throw new IllegalStateException("An iterable method was called in a non iterable context");
@@ -106,7 +106,7 @@ public class InvokableIteratorMethod extends InvokableMethod {
             Object in = it.next();
             // update context to use as input the current entry
             ctx.setInput(in);
-            list.collect(ctx, super.doInvoke(ctx, args));
+            list.collect(ctx, super.doInvoke(ctx, args, adapter));
         }
         return list.getOutput();
     }
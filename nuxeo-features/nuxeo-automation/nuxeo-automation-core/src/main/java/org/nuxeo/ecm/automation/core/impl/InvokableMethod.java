@@ -18,6 +18,9 @@
  */
 package org.nuxeo.ecm.automation.core.impl;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
@@ -63,6 +66,13 @@ public class InvokableMethod implements Comparable<InvokableMethod> {
 
     protected int priority;
 
+    /**
+     * The operation method as a handle typed {@code (Object)Object} or {@code (Object,Object)Object}.
+     *
+     * @since 10.1
+     */
+    protected MethodHandle handle;
+
     public InvokableMethod(OperationType op, Method method, OperationMethod anno) {
         produce = method.getReturnType();
         Class<?>[] p = method.getParameterTypes();
@@ -76,6 +86,7 @@ public class InvokableMethod implements Comparable<InvokableMethod> {
         // }
         this.op = op;
         this.method = method;
+        handle = unreflect(method);
         priority = anno.priority();
         if (priority > 0) {
             priority += USER_PRIORITY;
@@ -91,6 +102,7 @@ public class InvokableMethod implements Comparable<InvokableMethod> {
         }
         this.op = op;
         this.method = method;
+        handle = unreflect(method);
         String inputType = this.op.getInputType();
         if (inputType != null) {
             switch (inputType) {
@@ -154,25 +166,106 @@ public class InvokableMethod implements Comparable<InvokableMethod> {
         return 0;
     }
 
+    /**
+     * Returns a handle on the given method, with the target and the argument (if any) typed as Object so that it can be
+     * called without reflection nor boxing of the arguments into an array.
+     *
+     * @since 10.1
+     */
+    protected static MethodHandle unreflect(Method method) {
+        method.setAccessible(true);
+        try {
+            MethodHandle mh = MethodHandles.lookup().unreflect(method);
+            return mh.asType(MethodType.genericMethodType(method.getParameterCount() + 1));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access operation method: " + method, e);
+        }
+    }
+
+    /**
+     * Returns a new cache for the adaptation of the inputs of this method, to be held by a compiled chain step.
+     *
+     * @since 10.1
+     */
+    public TypeAdapterCache newInputAdapter() {
+        return new TypeAdapterCache(op.getService(), consume);
+    }
+
     protected Object doInvoke(OperationContext ctx, Map<String, Object> args)
             throws OperationException, ReflectiveOperationException {
+        return doInvoke(ctx, args, null);
+    }
+
+    /**
+     * Invokes the method, adapting the input through the given cache if not null.
+     *
+     * @since 10.1
+     */
+    protected Object doInvoke(OperationContext ctx, Map<String, Object> args, TypeAdapterCache adapter)
+            throws OperationException, ReflectiveOperationException {
         Object target = op.newInstance(ctx, args);
         Object input = ctx.getInput();
         if (consume == Void.TYPE) {
             // preserve last output for void methods
-            Object out = method.invoke(target);
+            Object out = call(target);
             return produce == Void.TYPE ? input : out;
         }
         if (input == null || !consume.isAssignableFrom(input.getClass())) {
             // try to adapt
-            input = op.getService().getAdaptedValue(ctx, input, consume);
+            input = adapter == null ? op.getService().getAdaptedValue(ctx, input, consume)
+                    : adapter.getAdaptedValue(ctx, input);
+        }
+        return call(target, input);
+    }
+
+    /**
+     * Calls the method through its handle, wrapping its failures like {@link Method#invoke} does. Errors are
+     * rethrown unchanged.
+     *
+     * @since 10.1
+     */
+    protected Object call(Object target) throws InvocationTargetException {
+        try {
+            return (Object) handle.invokeExact(target);
+        } catch (Throwable t) { // NOSONAR
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Calls the method through its handle, wrapping its failures like {@link Method#invoke} does. Errors are
+     * rethrown unchanged.
+     *
+     * @since 10.1
+     */
+    protected Object call(Object target, Object input) throws InvocationTargetException {
+        try {
+            return (Object) handle.invokeExact(target, input);
+        } catch (Throwable t) { // NOSONAR
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new InvocationTargetException(t);
         }
-        return method.invoke(target, input);
     }
 
     public Object invoke(OperationContext ctx, Map<String, Object> args) throws OperationException {
+        return invoke(ctx, args, null);
+    }
+
+    /**
+     * Invokes the method, adapting the input through the given cache if not null.
+     *
+     * @see #newInputAdapter()
+     * @since 10.1
+     */
+    public Object invoke(OperationContext ctx, Map<String, Object> args, TypeAdapterCache adapter)
+            throws OperationException {
         try {
-            return doInvoke(ctx, args);
+            return adapter == null ? doInvoke(ctx, args) : doInvoke(ctx, args, adapter);
         } catch (InvocationTargetException e) {
             Throwable t = e.getTargetException();
             if (t instanceof OperationException) {
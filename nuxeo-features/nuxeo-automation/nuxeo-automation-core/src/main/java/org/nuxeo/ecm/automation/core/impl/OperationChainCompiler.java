@@ -41,10 +41,12 @@ public class OperationChainCompiler {
 
     public CompiledChain compile(ChainTypeImpl typeof, Class<?> typein) throws OperationException {
         Connector connector = new Connector(typeof, typein);
-        if (!cache.containsKey(connector)) {
-            cache.put(connector, connector.connect());
+        OperationMethod head = cache.get(connector);
+        if (head == null) {
+            head = connector.connect();
+            cache.put(connector, head);
         }
-        return new CompiledChainImpl(typeof, typein, cache.get(connector));
+        return new CompiledChainImpl(typeof, typein, head);
     }
 
     protected class Connector {
@@ -113,6 +115,13 @@ public class OperationChainCompiler {
 
         protected InvokableMethod method;
 
+        /**
+         * The input adaptation of this step, bound to the solved method.
+         *
+         * @since 10.1
+         */
+        protected TypeAdapterCache inputAdapter;
+
         protected OperationMethod prev;
 
         protected OperationMethod next;
@@ -124,8 +133,9 @@ public class OperationChainCompiler {
         }
 
         protected Object invoke(OperationContext context) throws OperationException {
-            context.getCallback().onOperationEnter(context, typeof, method, params.map());
-            Object output = method.invoke(context, params.map());
+            Map<String, Object> args = params.map();
+            context.getCallback().onOperationEnter(context, typeof, method, args);
+            Object output = method.invoke(context, args, inputAdapter);
             if (output instanceof Expression) {
                 output = ((Expression) output).eval(context);
             }
@@ -151,7 +161,7 @@ public class OperationChainCompiler {
                                 + typeof.getId() + "' and for first input type '" + in.getName() + "'");
             }
             if (next == null) {
-                method = methods[0];
+                bind(methods[0]);
                 return;
             }
             for (InvokableMethod m : methods) {
@@ -161,7 +171,7 @@ public class OperationChainCompiler {
                 }
                 try {
                     next.solve(nextIn);
-                    method = m;
+                    bind(m);
                     return;
                 } catch (InvalidChainException cause) {
                     ;
@@ -171,6 +181,18 @@ public class OperationChainCompiler {
                     "Cannot find any valid path in operation chain - no method found for operation '" + typeof.getId()
                             + "' and for first input type '" + in.getName() + "'");
         }
+
+        /**
+         * Specializes this step for the given method: the operation instantiation and injection are done through the
+         * handles of its type, the method through its own handle, and the input adapter is looked up once for the
+         * input class flowing through the step.
+         *
+         * @since 10.1
+         */
+        protected void bind(InvokableMethod m) {
+            method = m;
+            inputAdapter = m.newInputAdapter();
+        }
     }
 
     protected class CompiledChainImpl implements CompiledChain {
@@ -28,12 +28,20 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.automation.AutomationAdmin;
 import org.nuxeo.ecm.automation.AutomationFilter;
 import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.BatchedRunOptions;
+import org.nuxeo.ecm.automation.BatchedRunResult;
 import org.nuxeo.ecm.automation.ChainException;
 import org.nuxeo.ecm.automation.CompiledChain;
 import org.nuxeo.ecm.automation.OperationChain;
@@ -74,6 +82,13 @@ public class OperationServiceImpl implements AutomationService, AutomationAdmin
 
     protected final OperationChainCompiler compiler = new OperationChainCompiler(this);
 
+    /**
+     * Threads shared by all the batched runs, created on first use.
+     *
+     * @since 10.1
+     */
+    protected ExecutorService batchExecutor;
+
     /**
      * Adapter registry.
      */
@@ -173,6 +188,51 @@ public class OperationServiceImpl implements AutomationService, AutomationAdmin
         return result;
     }
 
+    @Override
+    public void runInBatches(OperationContext ctx, String chainId, Map<String, ?> chainParameters,
+            BatchedRunOptions options, Consumer<BatchedRunResult> consumer) throws OperationException {
+        if (chainParameters == null) {
+            chainParameters = Collections.emptyMap();
+        }
+        int maxParallelism = BatchedRunOptions.getMaxParallelism();
+        if (options.getParallelism() > maxParallelism) {
+            throw new OperationException("Cannot run " + chainId + " in batches, parallelism "
+                    + options.getParallelism() + " exceeds the maximum of " + maxParallelism);
+        }
+        new BatchedChainRunner(this, chainId, chainParameters, options).run(ctx, getBatchExecutor(maxParallelism),
+                consumer);
+    }
+
+    /**
+     * Returns the executor running the batches, bounded by the maximum parallelism. Each batched run limits itself to
+     * its own parallelism, the queue only holds the batches of concurrent runs waiting for a thread.
+     *
+     * @since 10.1
+     */
+    protected synchronized ExecutorService getBatchExecutor(int maxParallelism) {
+        if (batchExecutor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(maxParallelism, maxParallelism, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r -> new Thread(r, "Nuxeo-Automation-Batch-" + threadNumber.incrementAndGet()));
+            executor.allowCoreThreadTimeOut(true);
+            batchExecutor = executor;
+        }
+        return batchExecutor;
+    }
+
+    /**
+     * Stops the threads running the batches.
+     *
+     * @since 10.1
+     */
+    public synchronized void shutdown() {
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+            batchExecutor = null;
+        }
+    }
+
     /**
      * @since 5.7.3 Fetch the right chain id to run when catching exception for given chain failure.
      */
@@ -375,11 +435,14 @@ public class OperationServiceImpl implements AutomationService, AutomationAdmin
     @Override
     public void putTypeAdapter(Class<?> accept, Class<?> produce, TypeAdapter adapter) {
         adapters.put(new TypeAdapterKey(accept, produce), adapter);
+        // compiled chains cache the adapters of their inputs
+        flushCompiledChains();
     }
 
     @Override
     public void removeTypeAdapter(Class<?> accept, Class<?> produce) {
         adapters.remove(new TypeAdapterKey(accept, produce));
+        flushCompiledChains();
     }
 
     @Override
@@ -18,6 +18,10 @@
  */
 package org.nuxeo.ecm.automation.core.impl;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.URL;
@@ -93,6 +97,25 @@ public class OperationTypeImpl implements OperationType {
      */
     protected List<Field> injectableFields;
 
+    /**
+     * The no-arg constructor of the operation, typed {@code ()Object}.
+     *
+     * @since 10.1
+     */
+    protected MethodHandle constructor;
+
+    /**
+     * The parameters injection, computed from {@link #params} and {@link #injectableFields}.
+     *
+     * @since 10.1
+     */
+    protected ParamInjector[] paramInjectors;
+
+    /**
+     * @since 10.1
+     */
+    protected ContextInjector[] contextInjectors;
+
     /**
      * The input type of a chain/operation. If set, the following input types {"document", "documents", "blob", "blobs"}
      * for all 'run method(s)' will handled. Other values will be adapted as java.lang.Object. If not set, Automation
@@ -135,6 +158,7 @@ public class OperationTypeImpl implements OperationType {
         injectableFields = new ArrayList<Field>();
         initMethods();
         initFields();
+        initInjectors();
     }
 
     static class Match implements Comparable<Match> {
@@ -216,13 +240,59 @@ public class OperationTypeImpl implements OperationType {
         }
     }
 
+    /**
+     * Resolves once the handles used to create and inject the operation instances.
+     *
+     * @since 10.1
+     */
+    protected void initInjectors() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<?> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            constructor = lookup.unreflectConstructor(ctor).asType(MethodType.genericMethodType(0));
+        } catch (ReflectiveOperationException e) {
+            // reported at instantiation time like before
+            constructor = null;
+        }
+        try {
+            List<ParamInjector> injectors = new ArrayList<>(params.size());
+            for (Map.Entry<String, Field> entry : params.entrySet()) {
+                injectors.add(new ParamInjector(entry.getKey(), entry.getValue(), setter(lookup, entry.getValue())));
+            }
+            paramInjectors = injectors.toArray(new ParamInjector[injectors.size()]);
+            contextInjectors = new ContextInjector[injectableFields.size()];
+            for (int i = 0; i < contextInjectors.length; i++) {
+                Field field = injectableFields.get(i);
+                contextInjectors[i] = new ContextInjector(field.getType(), setter(lookup, field));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access fields of operation: " + type, e);
+        }
+    }
+
+    protected static MethodHandle setter(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        return lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+    }
+
     @Override
     public Object newInstance(OperationContext ctx, Map<String, Object> args) throws OperationException {
         Object obj;
-        try {
-            obj = type.newInstance();
-        } catch (ReflectiveOperationException e) {
-            throw new OperationException(e);
+        if (constructor == null) {
+            try {
+                obj = type.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new OperationException(e);
+            }
+        } else {
+            try {
+                obj = (Object) constructor.invokeExact();
+            } catch (Throwable t) { // NOSONAR
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                throw new OperationException(t);
+            }
         }
         inject(ctx, args, obj);
         return obj;
@@ -240,47 +310,88 @@ public class OperationTypeImpl implements OperationType {
     }
 
     public void inject(OperationContext ctx, Map<String, ?> args, Object target) throws OperationException {
-        for (Map.Entry<String, Field> entry : params.entrySet()) {
-            Object obj = resolveObject(ctx, entry.getKey(), args);
+        for (ParamInjector injector : paramInjectors) {
+            Object obj = resolveObject(ctx, injector.name, args);
             if (obj == null) {
                 // We did not resolve object according to its param name, let's
                 // check with potential alias
-                String[] aliases = entry.getValue().getAnnotation(Param.class).alias();
-                if (aliases != null) {
-                    for (String alias : entry.getValue().getAnnotation(Param.class).alias()) {
-                        obj = resolveObject(ctx, alias, args);
-                        if (obj != null) {
-                            break;
-                        }
+                for (String alias : injector.aliases) {
+                    obj = resolveObject(ctx, alias, args);
+                    if (obj != null) {
+                        break;
                     }
                 }
             }
             if (obj == null) {
-                if (entry.getValue().getAnnotation(Param.class).required()) {
-                    throw new OperationException("Failed to inject parameter '" + entry.getKey()
+                if (injector.required) {
+                    throw new OperationException("Failed to inject parameter '" + injector.name
                             + "'. Seems it is missing from the context. Operation: " + getId());
                 } // else do nothing
             } else {
-                Field field = entry.getValue();
-                Class<?> cl = obj.getClass();
-                if (!field.getType().isAssignableFrom(cl)) {
+                if (!injector.type.isAssignableFrom(obj.getClass())) {
                     // try to adapt
-                    obj = service.getAdaptedValue(ctx, obj, field.getType());
-                }
-                try {
-                    field.set(target, obj);
-                } catch (ReflectiveOperationException e) {
-                    throw new OperationException(e);
+                    obj = service.getAdaptedValue(ctx, obj, injector.type);
                 }
+                set(injector.setter, target, obj);
             }
         }
-        for (Field field : injectableFields) {
-            Object obj = ctx.getAdapter(field.getType());
-            try {
-                field.set(target, obj);
-            } catch (ReflectiveOperationException e) {
-                throw new OperationException(e);
+        for (ContextInjector injector : contextInjectors) {
+            set(injector.setter, target, ctx.getAdapter(injector.type));
+        }
+    }
+
+    protected static void set(MethodHandle setter, Object target, Object value) throws OperationException {
+        try {
+            setter.invokeExact(target, value);
+        } catch (Throwable t) { // NOSONAR
+            if (t instanceof Error) {
+                throw (Error) t;
             }
+            throw new OperationException(t);
+        }
+    }
+
+    /**
+     * The injection of a {@link Param} field, with the annotation attributes read once.
+     *
+     * @since 10.1
+     */
+    protected static class ParamInjector {
+
+        protected final String name;
+
+        protected final String[] aliases;
+
+        protected final boolean required;
+
+        protected final Class<?> type;
+
+        protected final MethodHandle setter;
+
+        protected ParamInjector(String name, Field field, MethodHandle setter) {
+            Param param = field.getAnnotation(Param.class);
+            this.name = name;
+            aliases = param.alias() == null ? new String[0] : param.alias();
+            required = param.required();
+            type = field.getType();
+            this.setter = setter;
+        }
+    }
+
+    /**
+     * The injection of a {@link Context} field.
+     *
+     * @since 10.1
+     */
+    protected static class ContextInjector {
+
+        protected final Class<?> type;
+
+        protected final MethodHandle setter;
+
+        protected ContextInjector(Class<?> type, MethodHandle setter) {
+            this.type = type;
+            this.setter = setter;
         }
     }
 
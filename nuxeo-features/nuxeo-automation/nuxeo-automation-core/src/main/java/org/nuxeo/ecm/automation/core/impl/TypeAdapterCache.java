@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation.core.impl;
+
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.OperationException;
+import org.nuxeo.ecm.automation.TypeAdapter;
+
+/**
+ * Adapts values to a fixed target type, remembering the {@link TypeAdapter} used for the last adapted class.
+ * <p>
+ * A chain step almost always receives the same input class, so the adapter lookup is done once instead of on every
+ * invocation. Values the registered adapters cannot handle (null values, primitive and array targets, JSON nodes...)
+ * are delegated to {@link AutomationService#getAdaptedValue}.
+ * <p>
+ * Instances are held by the compiled chains and are dropped with them when the type adapters change.
+ *
+ * @since 10.1
+ */
+public class TypeAdapterCache {
+
+    protected final AutomationService service;
+
+    protected final Class<?> targetType;
+
+    protected final boolean cacheable;
+
+    protected volatile Entry last;
+
+    public TypeAdapterCache(AutomationService service, Class<?> targetType) {
+        this.service = service;
+        this.targetType = targetType;
+        cacheable = !targetType.isPrimitive() && !targetType.isArray()
+                && !OperationContext.class.isAssignableFrom(targetType) && !targetType.isAssignableFrom(Void.class);
+    }
+
+    public Class<?> getTargetType() {
+        return targetType;
+    }
+
+    public Object getAdaptedValue(OperationContext ctx, Object value) throws OperationException {
+        if (value == null || !cacheable) {
+            return service.getAdaptedValue(ctx, value, targetType);
+        }
+        Class<?> type = value.getClass();
+        Entry entry = last;
+        if (entry == null || entry.type != type) {
+            TypeAdapter adapter = service.getTypeAdapter(type, targetType);
+            if (adapter == null) {
+                return service.getAdaptedValue(ctx, value, targetType);
+            }
+            entry = new Entry(type, adapter);
+            last = entry;
+        }
+        return entry.adapter.getAdaptedValue(ctx, value);
+    }
+
+    protected static final class Entry {
+
+        protected final Class<?> type;
+
+        protected final TypeAdapter adapter;
+
+        protected Entry(Class<?> type, TypeAdapter adapter) {
+            this.type = type;
+            this.adapter = adapter;
+        }
+    }
+
+}
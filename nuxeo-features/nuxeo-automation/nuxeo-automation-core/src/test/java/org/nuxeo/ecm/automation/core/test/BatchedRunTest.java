@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation.core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.BatchedRunOptions;
+import org.nuxeo.ecm.automation.BatchedRunResult;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.OperationException;
+import org.nuxeo.ecm.automation.core.operations.document.SetDocumentProperty;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+/**
+ * @since 10.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+@Deploy("org.nuxeo.ecm.automation.core")
+public class BatchedRunTest {
+
+    protected static final int COUNT = 25;
+
+    @Inject
+    AutomationService service;
+
+    @Inject
+    CoreSession session;
+
+    protected DocumentModelList docs;
+
+    @Before
+    public void initRepo() {
+        docs = new DocumentModelListImpl();
+        for (int i = 0; i < COUNT; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            docs.add(session.createDocument(doc));
+        }
+        session.save();
+    }
+
+    protected List<BatchedRunResult> run(String xpath, BatchedRunOptions options) throws OperationException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("xpath", xpath);
+        params.put("value", "batched");
+        List<BatchedRunResult> results = new ArrayList<>();
+        try (OperationContext ctx = new OperationContext(session)) {
+            ctx.setInput(docs);
+            service.runInBatches(ctx, SetDocumentProperty.ID, params, options, results::add);
+        }
+        return results;
+    }
+
+    @Test
+    public void testRunInBatches() throws Exception {
+        List<BatchedRunResult> results = run("dc:title", new BatchedRunOptions().setBatchSize(10).setParallelism(2));
+        assertEquals(3, results.size());
+        Set<Integer> batches = new HashSet<>();
+        int processed = 0;
+        for (BatchedRunResult result : results) {
+            assertTrue(result.toString(), result.isSuccess());
+            assertEquals(COUNT, result.getTotal());
+            assertTrue(result.getProcessed() > processed);
+            processed = result.getProcessed();
+            batches.add(Integer.valueOf(result.getBatch()));
+            assertEquals(result.getSize(), ((DocumentModelList) result.getOutput()).size());
+        }
+        assertEquals(COUNT, processed);
+        assertEquals(3, batches.size());
+        // the batches are committed
+        for (DocumentModel doc : docs) {
+            assertEquals("batched", session.getDocument(doc.getRef()).getPropertyValue("dc:title"));
+        }
+    }
+
+    @Test
+    public void testStopOnError() throws Exception {
+        List<BatchedRunResult> results = run("dc:nosuchproperty",
+                new BatchedRunOptions().setBatchSize(10).setParallelism(1).setMaxPendingBatches(1).setStopOnError(
+                        true));
+        assertEquals(1, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(10, results.get(0).getProcessed());
+
+        results = run("dc:nosuchproperty", new BatchedRunOptions().setBatchSize(10));
+        assertEquals(3, results.size());
+        for (BatchedRunResult result : results) {
+            assertFalse(result.isSuccess());
+        }
+    }
+
+    @Test(expected = OperationException.class)
+    public void testNotIterable() throws Exception {
+        try (OperationContext ctx = new OperationContext(session)) {
+            ctx.setInput(docs.get(0));
+            service.runInBatches(ctx, SetDocumentProperty.ID, Collections.singletonMap("xpath", "dc:title"),
+                    new BatchedRunOptions(), results -> {
+                    });
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        int parallelism = 2;
+        int maxPending = 3;
+        TrackBatchOperation.reset();
+        service.putOperation(TrackBatchOperation.class);
+        try (OperationContext ctx = new OperationContext(session)) {
+            ctx.setInput(docs);
+            AtomicInteger consumed = new AtomicInteger();
+            BatchedRunOptions options = new BatchedRunOptions().setBatchSize(1)
+                                                               .setParallelism(parallelism)
+                                                               .setMaxPendingBatches(maxPending);
+            service.runInBatches(ctx, TrackBatchOperation.ID, Collections.emptyMap(), options, result -> {
+                assertTrue(result.toString(), result.isSuccess());
+                // batches done but not consumed yet count as pending, the slow consumer holds the next ones back
+                int started = TrackBatchOperation.started.get();
+                assertTrue("started: " + started + ", consumed: " + consumed.get(),
+                        started <= consumed.get() + maxPending);
+                consumed.incrementAndGet();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AssertionError(e);
+                }
+            });
+            assertEquals(COUNT, consumed.get());
+        } finally {
+            service.removeOperation(TrackBatchOperation.class);
+        }
+        assertEquals(COUNT, TrackBatchOperation.started.get());
+        assertTrue(TrackBatchOperation.maxRunning.get() <= parallelism);
+    }
+
+    @Test
+    public void testErrorRollsBackBatch() throws Exception {
+        service.putOperation(FailingBatchOperation.class);
+        try (OperationContext ctx = new OperationContext(session)) {
+            ctx.setInput(docs);
+            service.runInBatches(ctx, FailingBatchOperation.ID, Collections.emptyMap(),
+                    new BatchedRunOptions().setBatchSize(10).setParallelism(1), result -> {
+                    });
+            fail("an error in a batch should fail the run");
+        } catch (OperationException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof Error);
+        } finally {
+            service.removeOperation(FailingBatchOperation.class);
+        }
+        // the change saved before the error is not committed
+        for (DocumentModel doc : docs) {
+            Object title = session.getDocument(doc.getRef()).getPropertyValue("dc:title");
+            assertNotEquals(FailingBatchOperation.TITLE, title);
+        }
+    }
+
+    @Test
+    public void testMaxParallelism() throws Exception {
+        try {
+            run("dc:title", new BatchedRunOptions().setParallelism(BatchedRunOptions.DEFAULT_MAX_PARALLELISM + 1));
+            fail("parallelism above the maximum should be rejected");
+        } catch (OperationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceeds the maximum"));
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation.core.test;
+
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+
+/**
+ * Operation throwing an {@link Error}, from its method or from its constructor.
+ *
+ * @since 10.1
+ */
+@Operation(id = ErrorOperation.ID)
+public class ErrorOperation {
+
+    public static final String ID = "error";
+
+    public static volatile boolean failOnCreate;
+
+    public static class TestError extends Error {
+
+        private static final long serialVersionUID = 1L;
+
+        public TestError(String message) {
+            super(message);
+        }
+    }
+
+    public ErrorOperation() {
+        if (failOnCreate) {
+            throw new TestError("create");
+        }
+    }
+
+    @OperationMethod
+    public void run() {
+        throw new TestError("run");
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation.core.test;
+
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+
+/**
+ * Operation saving a change to the first document of its batch, then failing with an {@link Error}.
+ *
+ * @since 10.1
+ */
+@Operation(id = FailingBatchOperation.ID)
+public class FailingBatchOperation {
+
+    public static final String ID = "failingBatch";
+
+    public static final String TITLE = "partial";
+
+    @Context
+    protected CoreSession session;
+
+    @OperationMethod
+    public DocumentModelList run(DocumentModelList docs) {
+        DocumentModel doc = docs.get(0);
+        doc.setPropertyValue("dc:title", TITLE);
+        session.saveDocument(doc);
+        session.save();
+        throw new Error("failing batch");
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation.core.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+
+/**
+ * Operation recording how many batches were started and how many ran concurrently.
+ *
+ * @since 10.1
+ */
+@Operation(id = TrackBatchOperation.ID)
+public class TrackBatchOperation {
+
+    public static final String ID = "trackBatch";
+
+    public static final AtomicInteger started = new AtomicInteger();
+
+    public static final AtomicInteger running = new AtomicInteger();
+
+    public static final AtomicInteger maxRunning = new AtomicInteger();
+
+    public static void reset() {
+        started.set(0);
+        running.set(0);
+        maxRunning.set(0);
+    }
+
+    @OperationMethod
+    public DocumentModelList run(DocumentModelList docs) throws InterruptedException {
+        started.incrementAndGet();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(10);
+        } finally {
+            running.decrementAndGet();
+        }
+        return docs;
+    }
+
+}
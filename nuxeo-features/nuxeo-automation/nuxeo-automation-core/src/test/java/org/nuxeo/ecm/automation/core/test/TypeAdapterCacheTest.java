@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation.core.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.CompiledChain;
+import org.nuxeo.ecm.automation.OperationChain;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.OperationException;
+import org.nuxeo.ecm.automation.core.impl.TypeAdapterCache;
+import org.nuxeo.ecm.automation.core.test.ErrorOperation.TestError;
+import org.nuxeo.ecm.automation.core.test.UnwrapOperation.Wrapper;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+/**
+ * Tests the input adaptation of compiled chains through their {@link TypeAdapterCache}.
+ *
+ * @since 10.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+@Deploy("org.nuxeo.ecm.automation.core")
+public class TypeAdapterCacheTest {
+
+    @Inject
+    AutomationService service;
+
+    @Inject
+    CoreSession session;
+
+    protected OperationContext ctx;
+
+    protected OperationChain chain;
+
+    @Before
+    public void setUp() throws Exception {
+        service.putOperation(ProduceValueOperation.class);
+        service.putOperation(UnwrapOperation.class);
+        service.putOperation(ErrorOperation.class);
+        // lets the unwrap step follow an operation returning Object
+        service.putTypeAdapter(Object.class, Wrapper.class, (c, o) -> new Wrapper("object:" + o));
+        ctx = new OperationContext(session);
+        chain = new OperationChain("testAdapters");
+        chain.add(ProduceValueOperation.ID);
+        chain.add(UnwrapOperation.ID);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ctx.close();
+        ErrorOperation.failOnCreate = false;
+        service.removeTypeAdapter(Object.class, Wrapper.class);
+        service.removeTypeAdapter(String.class, Wrapper.class);
+        service.removeTypeAdapter(Long.class, Wrapper.class);
+        service.removeOperation(ErrorOperation.class);
+        service.removeOperation(UnwrapOperation.class);
+        service.removeOperation(ProduceValueOperation.class);
+    }
+
+    protected Object run(Object value) throws OperationException {
+        ctx.put("value", value);
+        return service.run(ctx, chain);
+    }
+
+    protected static void assertNoAdapter(CompiledChain compiled, OperationContext ctx) {
+        try {
+            compiled.invoke(ctx);
+            fail("should not find an adapter");
+        } catch (OperationException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("No type adapter found"));
+        }
+    }
+
+    @Test
+    public void testCompiledChainsSeeAdapterChanges() throws Exception {
+        service.putTypeAdapter(String.class, Wrapper.class, (c, o) -> new Wrapper("a:" + o));
+        assertEquals("a:x", run("x"));
+        assertEquals("a:y", run("y"));
+
+        // the chain is already compiled, but a new adapter replacing the cached one is used
+        service.putTypeAdapter(String.class, Wrapper.class, (c, o) -> new Wrapper("b:" + o));
+        assertEquals("b:x", run("x"));
+
+        // and a removed adapter is not used anymore
+        service.removeTypeAdapter(String.class, Wrapper.class);
+        ctx.put("value", "x");
+        assertNoAdapter(service.compileChain(Void.TYPE, chain), ctx);
+
+        service.putTypeAdapter(String.class, Wrapper.class, (c, o) -> new Wrapper("c:" + o));
+        assertEquals("c:x", run("x"));
+    }
+
+    @Test
+    public void testStepFedDifferentInputClasses() throws Exception {
+        service.putTypeAdapter(String.class, Wrapper.class, (c, o) -> new Wrapper("string:" + o));
+        service.putTypeAdapter(Long.class, Wrapper.class, (c, o) -> new Wrapper("long:" + o));
+        // the same compiled step receives inputs of different classes
+        CompiledChain compiled = service.compileChain(Void.TYPE, chain);
+        ctx.put("value", "a");
+        assertEquals("string:a", compiled.invoke(ctx));
+        ctx.put("value", Long.valueOf(1));
+        assertEquals("long:1", compiled.invoke(ctx));
+        ctx.put("value", "b");
+        assertEquals("string:b", compiled.invoke(ctx));
+        // no adaptation needed
+        ctx.put("value", new Wrapper("w"));
+        assertEquals("w", compiled.invoke(ctx));
+        ctx.put("value", Long.valueOf(2));
+        assertEquals("long:2", compiled.invoke(ctx));
+        // no adapter for this class
+        ctx.put("value", Integer.valueOf(3));
+        assertNoAdapter(compiled, ctx);
+        ctx.put("value", "c");
+        assertEquals("string:c", compiled.invoke(ctx));
+    }
+
+    @Test
+    public void testValuesNotAdaptedThroughTheCache() throws Exception {
+        // null values
+        assertNull(new TypeAdapterCache(service, Wrapper.class).getAdaptedValue(ctx, null));
+        // primitive targets
+        TypeAdapterCache intCache = new TypeAdapterCache(service, int.class);
+        assertEquals(Integer.valueOf(3), intCache.getAdaptedValue(ctx, Integer.valueOf(3)));
+        assertEquals(Integer.valueOf(4), intCache.getAdaptedValue(ctx, Integer.valueOf(4)));
+        // array targets
+        TypeAdapterCache arrayCache = new TypeAdapterCache(service, String[].class);
+        assertArrayEquals(new String[] { "a", "b" },
+                (String[]) arrayCache.getAdaptedValue(ctx, Arrays.asList("a", "b")));
+        assertArrayEquals(new String[] { "c" }, (String[]) arrayCache.getAdaptedValue(ctx, Arrays.asList("c")));
+        // context targets
+        assertSame(ctx, new TypeAdapterCache(service, OperationContext.class).getAdaptedValue(ctx, "x"));
+    }
+
+    @Test
+    public void testErrorsAreNotWrapped() throws Exception {
+        OperationChain errorChain = new OperationChain("testError");
+        errorChain.add(ErrorOperation.ID);
+        try {
+            service.run(ctx, errorChain);
+            fail("should fail");
+        } catch (TestError e) {
+            assertEquals("run", e.getMessage());
+        }
+        ErrorOperation.failOnCreate = true;
+        try {
+            service.run(ctx, errorChain);
+            fail("should fail");
+        } catch (TestError e) {
+            assertEquals("create", e.getMessage());
+        }
+    }
+
+}
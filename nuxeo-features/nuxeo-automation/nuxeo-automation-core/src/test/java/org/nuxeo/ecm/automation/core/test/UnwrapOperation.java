@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation.core.test;
+
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+
+/**
+ * Operation taking as input a type that only test adapters can produce.
+ *
+ * @since 10.1
+ */
+@Operation(id = UnwrapOperation.ID)
+public class UnwrapOperation {
+
+    public static final String ID = "unwrap";
+
+    public static class Wrapper {
+
+        public final String value;
+
+        public Wrapper(String value) {
+            this.value = value;
+        }
+    }
+
+    @OperationMethod
+    public String run(Wrapper wrapper) {
+        return wrapper.value;
+    }
+
+}
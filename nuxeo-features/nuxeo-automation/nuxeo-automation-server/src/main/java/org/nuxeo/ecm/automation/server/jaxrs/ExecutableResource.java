@@ -19,17 +19,23 @@
 package org.nuxeo.ecm.automation.server.jaxrs;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import javax.mail.MessagingException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.POST;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.BatchedRunOptions;
+import org.nuxeo.ecm.automation.BatchedRunResult;
 import org.nuxeo.ecm.automation.OperationContext;
 import org.nuxeo.ecm.automation.OperationException;
 import org.nuxeo.ecm.automation.OperationNotFoundException;
+import org.nuxeo.ecm.automation.jaxrs.io.JsonHelper;
 import org.nuxeo.ecm.automation.jaxrs.io.operations.ExecutionRequest;
 import org.nuxeo.ecm.automation.server.AutomationServer;
 import org.nuxeo.ecm.core.api.CoreSession;
@@ -39,11 +45,36 @@ import org.nuxeo.ecm.webengine.model.exceptions.WebResourceNotFoundException;
 import org.nuxeo.ecm.webengine.model.impl.DefaultObject;
 import org.nuxeo.runtime.api.Framework;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 /**
  * @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
  */
 public abstract class ExecutableResource extends DefaultObject {
 
+    /**
+     * Header requesting the execution over the iterable input in batches of the given size, each in its own
+     * transaction. The response is a stream of JSON lines, one per batch.
+     *
+     * @since 10.1
+     */
+    public static final String BATCH_SIZE_HEADER = "X-NXBatchSize";
+
+    /**
+     * @since 10.1
+     */
+    public static final String BATCH_PARALLELISM_HEADER = "X-NXBatchParallelism";
+
+    /**
+     * @since 10.1
+     */
+    public static final String BATCH_STOP_ON_ERROR_HEADER = "X-NXBatchStopOnError";
+
+    /**
+     * @since 10.1
+     */
+    public static final String BATCH_RESULTS_MEDIA_TYPE = "application/x-ndjson";
+
     @Context
     protected AutomationService service;
 
@@ -67,6 +98,9 @@ public abstract class ExecutableResource extends DefaultObject {
             if (!srv.accept(getId(), isChain(), request)) {
                 return ResponseHelper.notFound();
             }
+            if (request.getHeader(BATCH_SIZE_HEADER) != null) {
+                return executeInBatches(xreq, getBatchedRunOptions());
+            }
             Object result = execute(xreq);
             int customHttpStatus = xreq.getRestOperationContext().getHttpStatus();
             return ResponseHelper.getResponse(result, request, customHttpStatus);
@@ -89,6 +123,79 @@ public abstract class ExecutableResource extends DefaultObject {
         }
     }
 
+    /**
+     * @since 10.1
+     */
+    protected BatchedRunOptions getBatchedRunOptions() {
+        BatchedRunOptions options = new BatchedRunOptions();
+        int maxParallelism = BatchedRunOptions.getMaxParallelism();
+        try {
+            options.setBatchSize(Integer.parseInt(request.getHeader(BATCH_SIZE_HEADER)));
+            String parallelism = request.getHeader(BATCH_PARALLELISM_HEADER);
+            if (parallelism != null) {
+                options.setParallelism(Integer.parseInt(parallelism));
+            } else {
+                options.setParallelism(Math.min(BatchedRunOptions.DEFAULT_PARALLELISM, maxParallelism));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new NuxeoException(e.getMessage(), HttpServletResponse.SC_BAD_REQUEST);
+        }
+        if (options.getParallelism() > maxParallelism) {
+            throw new NuxeoException("Invalid parallelism: " + options.getParallelism() + ", maximum is "
+                    + maxParallelism, HttpServletResponse.SC_BAD_REQUEST);
+        }
+        options.setStopOnError(Boolean.parseBoolean(request.getHeader(BATCH_STOP_ON_ERROR_HEADER)));
+        return options;
+    }
+
+    /**
+     * Runs the operation over the iterable input in batches, streaming the result of each batch as a JSON line.
+     * <p>
+     * Each line is flushed as the batch completes: a client reading slowly delays the scheduling of the next batches
+     * instead of letting their results pile up.
+     *
+     * @since 10.1
+     */
+    protected Object executeInBatches(ExecutionRequest xreq, BatchedRunOptions options) {
+        OperationContext ctx = createContext(xreq);
+        StreamingOutput stream = out -> {
+            try (JsonGenerator jg = JsonHelper.createJsonGenerator(out)) {
+                service.runInBatches(ctx, getId(), xreq.getParams(), options, result -> {
+                    try {
+                        writeBatchedRunResult(jg, result);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (OperationException e) {
+                throw new NuxeoException("Failed to invoke operation: " + getId(), e);
+            }
+        };
+        return Response.ok(stream, BATCH_RESULTS_MEDIA_TYPE).build();
+    }
+
+    /**
+     * @since 10.1
+     */
+    protected void writeBatchedRunResult(JsonGenerator jg, BatchedRunResult result) throws IOException {
+        jg.writeStartObject();
+        jg.writeStringField("entity-type", "batchedRunResult");
+        jg.writeNumberField("batch", result.getBatch());
+        jg.writeNumberField("offset", result.getOffset());
+        jg.writeNumberField("size", result.getSize());
+        jg.writeNumberField("processed", result.getProcessed());
+        jg.writeNumberField("total", result.getTotal());
+        jg.writeBooleanField("success", result.isSuccess());
+        if (!result.isSuccess()) {
+            jg.writeStringField("error", String.valueOf(result.getError().getMessage()));
+        }
+        jg.writeEndObject();
+        jg.writeRaw('\n');
+        jg.flush();
+    }
+
     public abstract String getId();
 
     public abstract Object execute(ExecutionRequest req) throws OperationException;
@@ -0,0 +1,210 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.automation.server.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.core.operations.document.SetDocumentProperty;
+import org.nuxeo.ecm.automation.server.jaxrs.ExecutableResource;
+import org.nuxeo.ecm.automation.test.EmbeddedAutomationServerFeature;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.test.TransactionalFeature;
+import org.nuxeo.jaxrs.test.CloseableClientResponse;
+import org.nuxeo.jaxrs.test.JerseyClientHelper;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.Jetty;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource.Builder;
+
+/**
+ * Tests the batched run of an operation through the {@code X-NXBatchSize} header.
+ *
+ * @since 10.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(EmbeddedAutomationServerFeature.class)
+@LocalDeploy("org.nuxeo.ecm.automation.test:test-batch-max-parallelism.xml")
+@Jetty(port = 18080)
+public class BatchedRunRestTest {
+
+    protected static final String OPERATION_URL = "http://localhost:18080/automation/" + SetDocumentProperty.ID;
+
+    protected static final int DOC_COUNT = 10;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    protected final ObjectMapper mapper = new ObjectMapper();
+
+    protected Client client;
+
+    protected List<DocumentModel> docs;
+
+    @Before
+    public void setUp() {
+        client = JerseyClientHelper.clientBuilder().setCredentials("Administrator", "Administrator").build();
+        docs = new ArrayList<>();
+        for (int i = 0; i < DOC_COUNT; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "file" + i, "File");
+            docs.add(session.createDocument(doc));
+        }
+        txFeature.nextTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        client.destroy();
+    }
+
+    @Test
+    public void testBatchedRunStreamsResults() throws IOException {
+        List<JsonNode> results;
+        try (CloseableClientResponse response = post(getInput(docs),
+                Collections.singletonMap(ExecutableResource.BATCH_SIZE_HEADER, "3"))) {
+            assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+            assertTrue(response.getType().toString().startsWith(ExecutableResource.BATCH_RESULTS_MEDIA_TYPE));
+            results = readLines(response);
+        }
+        // one line per batch, the last one holding the remainder
+        assertEquals(4, results.size());
+        int size = 0;
+        for (int i = 0; i < results.size(); i++) {
+            JsonNode result = results.get(i);
+            assertEquals("batchedRunResult", result.get("entity-type").asText());
+            assertTrue(result.get("success").asBoolean());
+            assertEquals(DOC_COUNT, result.get("total").asInt());
+            size += result.get("size").asInt();
+            assertEquals(size, result.get("processed").asInt());
+        }
+        assertEquals(DOC_COUNT, size);
+
+        txFeature.nextTransaction();
+        for (DocumentModel doc : docs) {
+            assertEquals("batched", session.getDocument(doc.getRef()).getPropertyValue("dc:description"));
+        }
+    }
+
+    @Test
+    public void testBatchedRunStopOnError() throws IOException {
+        List<String> ids = new ArrayList<>();
+        ids.add(docs.get(0).getId());
+        ids.add("no-such-document");
+        docs.subList(1, DOC_COUNT).forEach(doc -> ids.add(doc.getId()));
+        Map<String, String> headers = new HashMap<>();
+        headers.put(ExecutableResource.BATCH_SIZE_HEADER, "1");
+        headers.put(ExecutableResource.BATCH_PARALLELISM_HEADER, "1");
+        headers.put(ExecutableResource.BATCH_STOP_ON_ERROR_HEADER, "true");
+        List<JsonNode> results;
+        try (CloseableClientResponse response = post("docs:" + String.join(",", ids), headers)) {
+            assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+            results = readLines(response);
+        }
+        // a single batch runs at a time, nothing is scheduled after the failed one
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).get("success").asBoolean());
+        assertFalse(results.get(1).get("success").asBoolean());
+        assertTrue(results.get(1).has("error"));
+        assertEquals(DOC_COUNT + 1, results.get(1).get("total").asInt());
+
+        txFeature.nextTransaction();
+        assertEquals("batched", session.getDocument(docs.get(0).getRef()).getPropertyValue("dc:description"));
+        assertNull(session.getDocument(docs.get(1).getRef()).getPropertyValue("dc:description"));
+    }
+
+    @Test
+    public void testBatchedRunBadHeaders() throws IOException {
+        assertBadRequest(Collections.singletonMap(ExecutableResource.BATCH_SIZE_HEADER, "0"));
+        assertBadRequest(Collections.singletonMap(ExecutableResource.BATCH_SIZE_HEADER, "many"));
+        Map<String, String> headers = new HashMap<>();
+        headers.put(ExecutableResource.BATCH_SIZE_HEADER, "2");
+        headers.put(ExecutableResource.BATCH_PARALLELISM_HEADER, "0");
+        assertBadRequest(headers);
+        // above the configured maximum of 2
+        headers.put(ExecutableResource.BATCH_PARALLELISM_HEADER, "3");
+        assertBadRequest(headers);
+
+        txFeature.nextTransaction();
+        for (DocumentModel doc : docs) {
+            assertNull(session.getDocument(doc.getRef()).getPropertyValue("dc:description"));
+        }
+    }
+
+    protected void assertBadRequest(Map<String, String> headers) {
+        try (CloseableClientResponse response = post(getInput(docs), headers)) {
+            assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.getStatus());
+        }
+    }
+
+    protected CloseableClientResponse post(String input, Map<String, String> headers) {
+        String data = "{\"input\":\"" + input
+                + "\",\"params\":{\"xpath\":\"dc:description\",\"value\":\"batched\"},\"context\":{}}";
+        Builder builder = client.resource(OPERATION_URL).type("application/json+nxrequest");
+        headers.forEach(builder::header);
+        return CloseableClientResponse.of(builder.post(ClientResponse.class, data));
+    }
+
+    protected List<JsonNode> readLines(ClientResponse response) throws IOException {
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : response.getEntity(String.class).split("\n")) {
+            if (!line.isEmpty()) {
+                results.add(mapper.readTree(line));
+            }
+        }
+        return results;
+    }
+
+    protected static String getInput(List<DocumentModel> docs) {
+        StringBuilder input = new StringBuilder("docs:");
+        for (DocumentModel doc : docs) {
+            if (input.length() > 5) {
+                input.append(',');
+            }
+            input.append(doc.getId());
+        }
+        return input.toString();
+    }
+
+}
@@ -19,9 +19,13 @@
  */
 package org.nuxeo.elasticsearch;
 
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.DEFAULT_STREAM_LOG_CONFIG;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.ES_ENABLED_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_QUEUE_ID;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_ON_STARTUP_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.STREAM_ENABLED_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.STREAM_LOG_CONFIG_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.STREAM_NAME;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -64,14 +68,23 @@ import org.nuxeo.elasticsearch.core.ElasticSearchAdminImpl;
 import org.nuxeo.elasticsearch.core.ElasticSearchIndexingImpl;
 import org.nuxeo.elasticsearch.core.ElasticSearchServiceImpl;
 import org.nuxeo.elasticsearch.query.NxQueryBuilder;
+import org.nuxeo.elasticsearch.stream.StreamElasticSearchIndexer;
 import org.nuxeo.elasticsearch.work.IndexingWorker;
 import org.nuxeo.elasticsearch.work.ScrollingIndexingWorker;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.log.LogAppender;
+import org.nuxeo.lib.stream.log.LogManager;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
+import org.nuxeo.runtime.stream.StreamService;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -94,6 +107,15 @@ public class ElasticSearchComponent extends DefaultComponent
 
     protected static final long REINDEX_TIMEOUT = 20;
 
+    /**
+     * The maximum time to wait for the stream indexer to consume its stream, in seconds.
+     *
+     * @since 10.1
+     */
+    protected static final long STREAM_WAIT_TIMEOUT = 300;
+
+    protected static final String STREAM_LAG_METRIC = MetricRegistry.name("nuxeo", "elasticsearch", "stream", "lag");
+
     // Indexing commands that where received before the index initialization
     protected final List<IndexingCommand> stackedCommands = Collections.synchronizedList(new ArrayList<>());
 
@@ -169,6 +191,7 @@ public class ElasticSearchComponent extends DefaultComponent
         esi = new ElasticSearchIndexingImpl(esa, jsonESDocumentWriter);
         ess = new ElasticSearchServiceImpl(esa);
         initListenerThreadPool();
+        registerStreamLagMetric();
         processStackedCommands();
         reindexOnStartup();
     }
@@ -181,8 +204,10 @@ public class ElasticSearchComponent extends DefaultComponent
         }
         try {
             shutdownListenerThreadPool();
+            SharedMetricRegistries.getOrCreate(MetricsService.class.getName()).remove(STREAM_LAG_METRIC);
         } finally {
             try {
+                esi.close();
                 esa.disconnect();
             } finally {
                 esa = null;
@@ -217,6 +242,39 @@ public class ElasticSearchComponent extends DefaultComponent
         return Boolean.parseBoolean(Framework.getProperty(ES_ENABLED_PROPERTY, "true"));
     }
 
+    /**
+     * @since 10.1
+     */
+    protected boolean isStreamEnabled() {
+        return Framework.isBooleanPropertyTrue(STREAM_ENABLED_PROPERTY);
+    }
+
+    /**
+     * @since 10.1
+     */
+    protected LogManager getStreamLogManager() {
+        StreamService service = Framework.getService(StreamService.class);
+        return service.getLogManager(Framework.getProperty(STREAM_LOG_CONFIG_PROPERTY, DEFAULT_STREAM_LOG_CONFIG));
+    }
+
+    /**
+     * Returns the number of indexing commands appended to the stream and not yet indexed.
+     *
+     * @since 10.1
+     */
+    protected long getStreamLag() {
+        if (!isStreamEnabled()) {
+            return 0;
+        }
+        return getStreamLogManager().getLag(STREAM_NAME, StreamElasticSearchIndexer.COMPUTATION_NAME).lag();
+    }
+
+    protected void registerStreamLagMetric() {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        registry.remove(STREAM_LAG_METRIC);
+        registry.register(STREAM_LAG_METRIC, (Gauge<Long>) this::getStreamLag);
+    }
+
     @Override
     public int getApplicationStartedOrder() {
         RepositoryService component = (RepositoryService) Framework.getRuntime().getComponent(
@@ -323,12 +381,22 @@ public class ElasticSearchComponent extends DefaultComponent
 
     @Override
     public boolean isIndexingInProgress() {
-        return (runIndexingWorkerCount.get() > 0) || (getPendingWorkerCount() > 0) || (getRunningWorkerCount() > 0);
+        return (runIndexingWorkerCount.get() > 0) || (getPendingWorkerCount() > 0) || (getRunningWorkerCount() > 0)
+                || (getStreamLag() > 0);
     }
 
     @Override
     public ListenableFuture<Boolean> prepareWaitForIndexing() {
         return waiterExecutorService.submit(() -> {
+            // the stream indexer may schedule recursive indexing works, wait for it first
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(STREAM_WAIT_TIMEOUT);
+            while (getStreamLag() > 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new TimeoutException(String.format("Stream: %s not consumed after %d s", STREAM_NAME,
+                            STREAM_WAIT_TIMEOUT));
+                }
+                Thread.sleep(50);
+            }
             WorkManager wm = Framework.getService(WorkManager.class);
             boolean completed;
             do {
@@ -458,6 +526,10 @@ public class ElasticSearchComponent extends DefaultComponent
         if (asyncCommands.isEmpty()) {
             return;
         }
+        if (isStreamEnabled()) {
+            appendIndexingCommands(asyncCommands);
+            return;
+        }
         WorkManager wm = Framework.getService(WorkManager.class);
         for (String repositoryName : asyncCommands.keySet()) {
             IndexingWorker idxWork = new IndexingWorker(repositoryName, asyncCommands.get(repositoryName));
@@ -466,6 +538,24 @@ public class ElasticSearchComponent extends DefaultComponent
         }
     }
 
+    /**
+     * Appends the commands to the stream consumed by the {@link StreamElasticSearchIndexer}, with one batch append per
+     * partition.
+     *
+     * @since 10.1
+     */
+    protected void appendIndexingCommands(Map<String, List<IndexingCommand>> asyncCommands) {
+        LogAppender<Record> appender = getStreamLogManager().getAppender(STREAM_NAME);
+        Map<Integer, List<Record>> partitions = new HashMap<>();
+        for (List<IndexingCommand> cmds : asyncCommands.values()) {
+            for (IndexingCommand cmd : cmds) {
+                Record record = StreamElasticSearchIndexer.toRecord(cmd);
+                partitions.computeIfAbsent(appender.partition(record.key), k -> new ArrayList<>()).add(record);
+            }
+        }
+        partitions.forEach(appender::appendAll);
+    }
+
     protected void runIndexingSyncWorker(Map<String, List<IndexingCommand>> syncCommands) {
         if (syncCommands.isEmpty()) {
             return;
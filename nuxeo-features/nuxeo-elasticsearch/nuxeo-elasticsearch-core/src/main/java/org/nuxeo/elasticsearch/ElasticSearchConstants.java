@@ -107,6 +107,28 @@ public final class ElasticSearchConstants {
 
     public static final String INDEX_BULK_MAX_SIZE_PROPERTY = "elasticsearch.index.bulkMaxSize";
 
+    /**
+     * Number of threads fetching and serializing documents in parallel for bulk indexing, {@code 0} to do it in the
+     * indexing thread.
+     *
+     * @since 10.1
+     */
+    public static final String INDEX_FETCH_THREADS_PROPERTY = "elasticsearch.index.fetchThreads";
+
+    /**
+     * Maximum number of bulk indexing requests sent at the same time.
+     *
+     * @since 10.1
+     */
+    public static final String INDEX_BULK_CONCURRENCY_PROPERTY = "elasticsearch.index.bulkConcurrency";
+
+    /**
+     * Target latency of a bulk indexing request in milliseconds, the bulk size is reduced when it is exceeded.
+     *
+     * @since 10.1
+     */
+    public static final String INDEX_BULK_TARGET_LATENCY_PROPERTY = "elasticsearch.index.bulkTargetLatencyMs";
+
     public static final String DISABLE_AUTO_INDEXING = "disableAutoIndexing";
 
     public static final String ES_SYNC_INDEXING_FLAG = "ESSyncIndexing";
@@ -116,6 +138,22 @@ public final class ElasticSearchConstants {
     /** @since 7.4 */
     public static final String INDEXING_QUEUE_ID = "elasticSearchIndexing";
 
+    /**
+     * When true the asynchronous indexing commands are appended to a stream instead of being run by indexing works.
+     *
+     * @since 10.1
+     */
+    public static final String STREAM_ENABLED_PROPERTY = "nuxeo.stream.elasticsearch.enabled";
+
+    /** @since 10.1 */
+    public static final String STREAM_LOG_CONFIG_PROPERTY = "nuxeo.stream.elasticsearch.log.config";
+
+    /** @since 10.1 */
+    public static final String DEFAULT_STREAM_LOG_CONFIG = "elasticsearch";
+
+    /** @since 10.1 */
+    public static final String STREAM_NAME = "elasticsearch";
+
     public static final String EPOCH_MILLIS_FORMAT = "epoch_millis";
 
     private ElasticSearchConstants() {
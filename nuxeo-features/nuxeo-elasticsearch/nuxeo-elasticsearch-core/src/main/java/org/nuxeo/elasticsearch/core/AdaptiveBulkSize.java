@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.elasticsearch.core;
+
+/**
+ * The size in bytes of the bulk requests, adapted to the observed Elasticsearch latency and rejections.
+ * <p>
+ * The size grows by a tenth of the maximum after each bulk request faster than the target latency, shrinks by a
+ * quarter after a slower one, and is halved when Elasticsearch rejects requests because it is overloaded.
+ *
+ * @since 10.1
+ */
+public class AdaptiveBulkSize {
+
+    protected final int min;
+
+    protected final int max;
+
+    protected final long targetLatencyMs;
+
+    protected volatile int size;
+
+    /**
+     * @param min the minimum size in bytes
+     * @param max the maximum size in bytes, also the initial size
+     * @param targetLatencyMs the target latency of a bulk request, in milliseconds
+     */
+    public AdaptiveBulkSize(int min, int max, long targetLatencyMs) {
+        if (min <= 0 || min > max) {
+            throw new IllegalArgumentException("Invalid bulk size bounds: " + min + ", " + max);
+        }
+        this.min = min;
+        this.max = max;
+        this.targetLatencyMs = targetLatencyMs;
+        size = max;
+    }
+
+    /**
+     * Gets the current size in bytes.
+     */
+    public int get() {
+        return size;
+    }
+
+    /**
+     * Adapts the size after a successful bulk request.
+     */
+    public synchronized void onSuccess(long latencyMs) {
+        if (latencyMs > targetLatencyMs) {
+            size = Math.max(min, size - size / 4);
+        } else {
+            size = Math.min(max, size + Math.max(1, max / 10));
+        }
+    }
+
+    /**
+     * Adapts the size after a bulk request rejected, totally or in part, because Elasticsearch is overloaded.
+     */
+    public synchronized void onRejected() {
+        size = Math.max(min, size / 2);
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.elasticsearch.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+import org.nuxeo.ecm.core.api.DocumentNotFoundException;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.elasticsearch.commands.IndexingCommand;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Indexes documents with a pipeline: the documents are fetched and serialized in parallel on a bounded pool of
+ * threads, while several bulk requests are sent to Elasticsearch at the same time.
+ * <p>
+ * The size of the bulk requests is adapted to the observed Elasticsearch latency and rejections, and the requests
+ * rejected because Elasticsearch is overloaded are retried a few times.
+ * <p>
+ * Each document is fetched and serialized in a transaction of its own, through the session the command is attached
+ * to, so the commands must target committed documents.
+ *
+ * @since 10.1
+ */
+public class BulkIndexingPipeline {
+
+    private static final Log log = LogFactory.getLog(BulkIndexingPipeline.class);
+
+    protected static final int MAX_RETRIES = 3;
+
+    protected static final long RETRY_BACKOFF_MS = 200;
+
+    protected static final String INDEXED_DOCS = MetricRegistry.name("nuxeo", "elasticsearch", "service",
+            "indexedDocs");
+
+    protected static final String FETCH_QUEUE_DEPTH = MetricRegistry.name("nuxeo", "elasticsearch", "service",
+            "fetchQueueDepth");
+
+    protected static final String BULK_IN_FLIGHT = MetricRegistry.name("nuxeo", "elasticsearch", "service",
+            "bulkInFlight");
+
+    protected static final String BULK_SIZE = MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkSize");
+
+    protected final ElasticSearchIndexingImpl indexing;
+
+    protected final ElasticSearchAdminImpl esa;
+
+    protected final AdaptiveBulkSize bulkSize;
+
+    protected final ThreadPoolExecutor fetchExecutor;
+
+    protected final ThreadPoolExecutor bulkExecutor;
+
+    protected final MetricRegistry registry;
+
+    protected final Meter indexedDocs;
+
+    public BulkIndexingPipeline(ElasticSearchIndexingImpl indexing, ElasticSearchAdminImpl esa, int fetchThreads,
+            int bulkConcurrency, AdaptiveBulkSize bulkSize, MetricRegistry registry) {
+        this.indexing = indexing;
+        this.esa = esa;
+        this.bulkSize = bulkSize;
+        this.registry = registry;
+        fetchExecutor = new ThreadPoolExecutor(fetchThreads, fetchThreads, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), newThreadFactory("Nuxeo-ES-Fetch-"));
+        // when all the senders are busy and a request is already waiting, the indexing thread sends the next one
+        // itself, which slows down the fetching (also after close, so that no request is left unsent)
+        bulkExecutor = new ThreadPoolExecutor(bulkConcurrency, bulkConcurrency, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(bulkConcurrency), newThreadFactory("Nuxeo-ES-Bulk-"),
+                (r, executor) -> r.run());
+        indexedDocs = registry.meter(INDEXED_DOCS);
+        registry.remove(FETCH_QUEUE_DEPTH);
+        registry.register(FETCH_QUEUE_DEPTH, (Gauge<Integer>) () -> fetchExecutor.getQueue().size());
+        registry.remove(BULK_IN_FLIGHT);
+        registry.register(BULK_IN_FLIGHT,
+                (Gauge<Integer>) () -> bulkExecutor.getActiveCount() + bulkExecutor.getQueue().size());
+        registry.remove(BULK_SIZE);
+        registry.register(BULK_SIZE, (Gauge<Integer>) bulkSize::get);
+    }
+
+    protected static ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Indexes the documents targeted by the given commands, returns when they are all indexed.
+     *
+     * @param cmds the index commands, with distinct target documents
+     */
+    public void index(List<IndexingCommand> cmds) {
+        List<Future<IndexRequest>> fetches = new ArrayList<>(cmds.size());
+        List<Future<?>> bulks = new ArrayList<>();
+        try {
+            for (IndexingCommand cmd : cmds) {
+                fetches.add(fetchExecutor.submit(() -> fetch(cmd)));
+            }
+            BulkRequest bulkRequest = new BulkRequest();
+            int bytes = 0;
+            for (Future<IndexRequest> fetch : fetches) {
+                IndexRequest request = getResult(fetch);
+                if (request == null) {
+                    continue;
+                }
+                bulkRequest.add(request);
+                bytes += request.source().length();
+                if (bytes >= bulkSize.get()) {
+                    bulks.add(submitBulk(bulkRequest));
+                    bulkRequest = new BulkRequest();
+                    bytes = 0;
+                }
+            }
+            if (bulkRequest.numberOfActions() > 0) {
+                bulks.add(submitBulk(bulkRequest));
+            }
+            for (Future<?> bulk : bulks) {
+                getResult(bulk);
+            }
+        } finally {
+            // in case of error, don't fetch documents for nothing
+            fetches.forEach(future -> future.cancel(false));
+        }
+    }
+
+    protected IndexRequest fetch(IndexingCommand cmd) {
+        try {
+            return TransactionHelper.runInTransaction(() -> indexing.buildEsIndexingRequest(cmd));
+        } catch (DocumentNotFoundException e) {
+            log.info("Ignore indexing command in bulk, doc does not exists anymore: " + cmd);
+            return null;
+        } catch (IllegalArgumentException e) {
+            log.error("Ignore indexing command in bulk, fail to create request: " + cmd, e);
+            return null;
+        }
+    }
+
+    protected Future<?> submitBulk(BulkRequest bulkRequest) {
+        return bulkExecutor.submit(() -> sendBulk(bulkRequest));
+    }
+
+    protected void sendBulk(BulkRequest bulkRequest) {
+        for (int attempt = 0;; attempt++) {
+            boolean lastAttempt = attempt == MAX_RETRIES;
+            long start = System.currentTimeMillis();
+            BulkResponse response;
+            try {
+                response = esa.getClient().bulk(bulkRequest);
+            } catch (RuntimeException e) {
+                if (lastAttempt || !isRejection(e)) {
+                    throw e;
+                }
+                bulkSize.onRejected();
+                log.debug("Bulk request rejected, retrying: " + e.getMessage());
+                backoff(attempt);
+                continue;
+            }
+            BulkRequest rejected = new BulkRequest();
+            if (response.hasFailures() && !lastAttempt) {
+                List<DocWriteRequest> requests = bulkRequest.requests();
+                for (BulkItemResponse item : response.getItems()) {
+                    if (item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                        rejected.add(requests.get(item.getItemId()));
+                    }
+                }
+            }
+            int count = bulkRequest.numberOfActions() - rejected.numberOfActions();
+            indexedDocs.mark(count);
+            if (rejected.numberOfActions() == 0) {
+                bulkSize.onSuccess(System.currentTimeMillis() - start);
+                if (response.hasFailures()) {
+                    indexing.logBulkFailure(response);
+                }
+                return;
+            }
+            bulkSize.onRejected();
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("%d requests rejected in bulk, retrying", rejected.numberOfActions()));
+            }
+            bulkRequest = rejected;
+            backoff(attempt);
+        }
+    }
+
+    protected boolean isRejection(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof EsRejectedExecutionException) {
+                return true;
+            }
+            if (t instanceof ElasticsearchException
+                    && ((ElasticsearchException) t).status() == RestStatus.TOO_MANY_REQUESTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void backoff(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MS * (attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Interrupted while retrying a bulk request", e);
+        }
+    }
+
+    protected <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Interrupted while indexing", e);
+        } catch (CancellationException e) {
+            throw new NuxeoException("Indexing canceled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                // ConcurrentUpdateException bubbles up, usually until AbstractWork catches it and maybe retries
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new NuxeoException(cause);
+        }
+    }
+
+    /**
+     * Stops the threads of the pipeline and unregisters its metrics.
+     */
+    public void close() {
+        fetchExecutor.shutdownNow();
+        bulkExecutor.shutdownNow();
+        try {
+            bulkExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        registry.remove(FETCH_QUEUE_DEPTH);
+        registry.remove(BULK_IN_FLIGHT);
+        registry.remove(BULK_SIZE);
+    }
+
+}
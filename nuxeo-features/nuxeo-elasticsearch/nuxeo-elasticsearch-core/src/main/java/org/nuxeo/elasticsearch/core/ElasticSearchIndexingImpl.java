@@ -23,11 +23,15 @@ package org.nuxeo.elasticsearch.core;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.CHILDREN_FIELD;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.DOC_TYPE;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_BULK_CONCURRENCY_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_BULK_MAX_SIZE_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_BULK_TARGET_LATENCY_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_FETCH_THREADS_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.PATH_FIELD;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -85,6 +89,17 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
     // send the bulk indexing command when this size is reached, optimal is 5-10m
     private static final int DEFAULT_MAX_BULK_SIZE = 5 * 1024 * 1024;
 
+    private static final int MIN_BULK_SIZE = 256 * 1024;
+
+    private static final String DEFAULT_FETCH_THREADS = "4";
+
+    private static final String DEFAULT_BULK_CONCURRENCY = "2";
+
+    private static final String DEFAULT_BULK_TARGET_LATENCY_MS = "1000";
+
+    // below this number of documents, the bulk indexing doesn't use the pipeline
+    private static final int PIPELINE_MIN_DOCS = 10;
+
     private final ElasticSearchAdminImpl esa;
 
     private final Timer deleteTimer;
@@ -97,6 +112,8 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
 
     private JsonESDocumentWriter jsonESDocumentWriter;
 
+    private final BulkIndexingPipeline pipeline;
+
     public ElasticSearchIndexingImpl(ElasticSearchAdminImpl esa) {
         this.esa = esa;
         MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
@@ -105,6 +122,7 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         bulkIndexTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkIndex"));
         this.jsonESDocumentWriter = new JsonESDocumentWriter();// default writer
         this.useExternalVersion = esa.useExternalVersion();
+        pipeline = newPipeline(registry);
     }
 
     /**
@@ -115,6 +133,37 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         this.jsonESDocumentWriter = jsonESDocumentWriter;
     }
 
+    /**
+     * Creates the bulk indexing pipeline, or returns {@code null} if the documents are fetched by the indexing thread.
+     *
+     * @since 10.1
+     */
+    protected BulkIndexingPipeline newPipeline(MetricRegistry registry) {
+        int fetchThreads = Integer.parseInt(Framework.getProperty(INDEX_FETCH_THREADS_PROPERTY, DEFAULT_FETCH_THREADS));
+        if (fetchThreads <= 0) {
+            return null;
+        }
+        int bulkConcurrency = Integer.parseInt(
+                Framework.getProperty(INDEX_BULK_CONCURRENCY_PROPERTY, DEFAULT_BULK_CONCURRENCY));
+        long targetLatency = Long.parseLong(
+                Framework.getProperty(INDEX_BULK_TARGET_LATENCY_PROPERTY, DEFAULT_BULK_TARGET_LATENCY_MS));
+        int maxBulkSize = getMaxBulkSize();
+        AdaptiveBulkSize bulkSize = new AdaptiveBulkSize(Math.min(MIN_BULK_SIZE, maxBulkSize), maxBulkSize,
+                targetLatency);
+        return new BulkIndexingPipeline(this, esa, fetchThreads, Math.max(1, bulkConcurrency), bulkSize, registry);
+    }
+
+    /**
+     * Releases the resources of the bulk indexing pipeline.
+     *
+     * @since 10.1
+     */
+    public void close() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
     @Override
     public void runIndexingWorker(List<IndexingCommand> cmds) {
         throw new UnsupportedOperationException("Not implemented");
@@ -160,10 +209,8 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
     }
 
     void processBulkIndexCommands(List<IndexingCommand> cmds) {
-        BulkRequest bulkRequest = new BulkRequest();
+        List<IndexingCommand> indexCmds = new ArrayList<>(cmds.size());
         Set<String> docIds = new HashSet<>(cmds.size());
-        int bulkSize = 0;
-        final int maxBulkSize = getMaxBulkSize();
         for (IndexingCommand cmd : cmds) {
             if (cmd.getType() == Type.DELETE || cmd.getType() == Type.UPDATE_DIRECT_CHILDREN) {
                 continue;
@@ -172,6 +219,16 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
                 // do not submit the same doc 2 times
                 continue;
             }
+            indexCmds.add(cmd);
+        }
+        if (pipeline != null && indexCmds.size() >= PIPELINE_MIN_DOCS) {
+            pipeline.index(indexCmds);
+            return;
+        }
+        BulkRequest bulkRequest = new BulkRequest();
+        int bulkSize = 0;
+        final int maxBulkSize = getMaxBulkSize();
+        for (IndexingCommand cmd : indexCmds) {
             try {
                 IndexRequest idxRequest = buildEsIndexingRequest(cmd);
                 if (idxRequest != null) {
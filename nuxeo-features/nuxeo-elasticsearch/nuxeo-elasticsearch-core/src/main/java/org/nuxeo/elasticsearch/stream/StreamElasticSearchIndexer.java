@@ -0,0 +1,265 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.elasticsearch.stream;
+
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.STREAM_NAME;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.elasticsearch.commands.IndexingCommand;
+import org.nuxeo.elasticsearch.commands.IndexingCommands;
+import org.nuxeo.elasticsearch.work.IndexingWorker;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.lib.stream.computation.Watermark;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * Computation that consumes a stream of indexing commands and indexes the documents into Elasticsearch.
+ * <p>
+ * The commands received during a batch window are deduplicated per document, as done for the commands of a
+ * transaction, then the batch is indexed in bulk. The consumer position is checkpointed only once the batch is indexed:
+ * when Elasticsearch is not available the batch is retried with a backoff, and if the last attempt fails the
+ * computation fails and the commands received after the last checkpoint are replayed on restart. Indexing a document
+ * always writes its current state, so a replayed command has no other effect than reindexing the same document.
+ *
+ * @since 10.1
+ */
+public class StreamElasticSearchIndexer implements StreamProcessorTopology {
+
+    private static final Log log = LogFactory.getLog(StreamElasticSearchIndexer.class);
+
+    public static final String COMPUTATION_NAME = "ElasticSearchIndexer";
+
+    public static final String BATCH_SIZE_OPT = "batchSize";
+
+    public static final String BATCH_THRESHOLD_MS_OPT = "batchThresholdMs";
+
+    public static final String RETRY_MAX_DELAY_MS_OPT = "retryMaxDelayMs";
+
+    public static final String RETRY_MAX_ATTEMPTS_OPT = "retryMaxAttempts";
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final int DEFAULT_BATCH_THRESHOLD_MS = 500;
+
+    public static final int DEFAULT_RETRY_MAX_DELAY_MS = 60000;
+
+    public static final int DEFAULT_RETRY_MAX_ATTEMPTS = 10;
+
+    protected static final long RETRY_DELAY_MS = 500;
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        int batchSize = getOptionAsInteger(options, BATCH_SIZE_OPT, DEFAULT_BATCH_SIZE);
+        int batchThresholdMs = getOptionAsInteger(options, BATCH_THRESHOLD_MS_OPT, DEFAULT_BATCH_THRESHOLD_MS);
+        int retryMaxDelayMs = getOptionAsInteger(options, RETRY_MAX_DELAY_MS_OPT, DEFAULT_RETRY_MAX_DELAY_MS);
+        int retryMaxAttempts = getOptionAsInteger(options, RETRY_MAX_ATTEMPTS_OPT, DEFAULT_RETRY_MAX_ATTEMPTS);
+        return Topology.builder()
+                       .addComputation(() -> new IndexerComputation(COMPUTATION_NAME, batchSize, batchThresholdMs,
+                               retryMaxDelayMs, retryMaxAttempts), Collections.singletonList("i1:" + STREAM_NAME))
+                       .build();
+    }
+
+    /**
+     * Builds the record of an indexing command, keyed by document so that the commands of a document are consumed in
+     * order.
+     */
+    public static Record toRecord(IndexingCommand cmd) {
+        String json;
+        try {
+            json = cmd.toJSON();
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot serialize indexing command: " + cmd.getId(), e);
+        }
+        long watermark = Watermark.ofTimestamp(System.currentTimeMillis()).getValue();
+        return new Record(cmd.getTargetDocumentId(), json.getBytes(StandardCharsets.UTF_8), watermark,
+                EnumSet.of(Record.Flag.DEFAULT));
+    }
+
+    /**
+     * The commands of a document, merged following the rules of a transaction.
+     */
+    protected static class DocumentCommands extends IndexingCommands {
+
+        @Override
+        protected void add(IndexingCommand command) {
+            super.add(command);
+        }
+    }
+
+    /**
+     * An indexing worker whose retries are handled by the computation: a failed attempt doesn't fire the work failure
+     * event, it is fired only when the last attempt fails.
+     */
+    protected static class StreamIndexingWorker extends IndexingWorker {
+
+        private static final long serialVersionUID = 1L;
+
+        public StreamIndexingWorker(String repositoryName, List<IndexingCommand> cmds) {
+            super(repositoryName, cmds);
+        }
+
+        protected void runOnce() {
+            runWorkWithTransaction();
+        }
+    }
+
+    public static class IndexerComputation extends AbstractComputation {
+
+        protected final int batchSize;
+
+        protected final int batchThresholdMs;
+
+        protected final int retryMaxDelayMs;
+
+        protected final int retryMaxAttempts;
+
+        // commands per repository and document
+        protected final Map<String, DocumentCommands> pending = new LinkedHashMap<>();
+
+        protected final Timer latency;
+
+        protected long lowestTimestamp;
+
+        public IndexerComputation(String name, int batchSize, int batchThresholdMs, int retryMaxDelayMs,
+                int retryMaxAttempts) {
+            super(name, 1, 0);
+            this.batchSize = batchSize;
+            this.batchThresholdMs = batchThresholdMs;
+            this.retryMaxDelayMs = retryMaxDelayMs;
+            this.retryMaxAttempts = Math.max(1, retryMaxAttempts);
+            MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+            latency = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "stream", "latency"));
+        }
+
+        @Override
+        public void init(ComputationContext context) {
+            log.debug(String.format("Starting computation: %s reading on: %s, batch size: %d, threshold: %dms",
+                    COMPUTATION_NAME, STREAM_NAME, batchSize, batchThresholdMs));
+            context.setTimer("batch", System.currentTimeMillis() + batchThresholdMs);
+        }
+
+        @Override
+        public void processTimer(ComputationContext context, String key, long timestamp) {
+            index(context);
+            context.setTimer("batch", System.currentTimeMillis() + batchThresholdMs);
+        }
+
+        @Override
+        public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+            IndexingCommand cmd;
+            try {
+                cmd = IndexingCommand.fromJSON(new String(record.data, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                log.error("Discard invalid record: " + record, e);
+                return;
+            }
+            long timestamp = Watermark.ofValue(record.watermark).getTimestamp();
+            if (lowestTimestamp == 0 || (timestamp > 0 && timestamp < lowestTimestamp)) {
+                lowestTimestamp = timestamp;
+            }
+            pending.computeIfAbsent(cmd.getRepositoryName() + ':' + cmd.getTargetDocumentId(),
+                    k -> new DocumentCommands()).add(cmd);
+            if (pending.size() >= batchSize) {
+                index(context);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            log.debug(String.format("Destroy computation: %s, pending documents: %d", COMPUTATION_NAME,
+                    pending.size()));
+        }
+
+        protected void index(ComputationContext context) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<String, List<IndexingCommand>> cmdsPerRepository = new LinkedHashMap<>();
+            for (DocumentCommands docCmds : pending.values()) {
+                for (IndexingCommand cmd : docCmds.getCommands()) {
+                    cmdsPerRepository.computeIfAbsent(cmd.getRepositoryName(), k -> new ArrayList<>()).add(cmd);
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Indexing %d documents", pending.size()));
+            }
+            cmdsPerRepository.forEach(this::indexWithRetry);
+            if (lowestTimestamp > 0) {
+                latency.update(System.currentTimeMillis() - lowestTimestamp, TimeUnit.MILLISECONDS);
+            }
+            pending.clear();
+            lowestTimestamp = 0;
+            context.askForCheckpoint();
+        }
+
+        protected void indexWithRetry(String repositoryName, List<IndexingCommand> cmds) {
+            // the worker indexes in bulk and schedules the recursive indexing
+            StreamIndexingWorker worker = new StreamIndexingWorker(repositoryName, cmds);
+            long delay = RETRY_DELAY_MS;
+            for (int attempt = 1;; attempt++) {
+                try {
+                    worker.runOnce();
+                    return;
+                } catch (RuntimeException e) {
+                    if (attempt >= retryMaxAttempts) {
+                        // fires the failure event and throws, the batch is not checkpointed
+                        worker.workFailed(e);
+                        throw e;
+                    }
+                    log.warn(String.format(
+                            "Fail to index %d commands on repository: %s, attempt %d/%d, retrying in %dms",
+                            cmds.size(), repositoryName, attempt, retryMaxAttempts, delay), e);
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new NuxeoException("Interrupted while retrying indexing", e);
+                }
+                delay = Math.min(delay * 2, retryMaxDelayMs);
+            }
+        }
+    }
+
+    protected int getOptionAsInteger(Map<String, String> options, String option, int defaultValue) {
+        String value = options.get(option);
+        return value == null ? defaultValue : Integer.valueOf(value);
+    }
+
+}
@@ -37,6 +37,15 @@ public abstract class AbstractIndexingWorker extends BaseIndexingWorker {
 
     protected final List<IndexingCommand> cmds;
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected AbstractIndexingWorker() {
+        cmds = null;
+    }
+
     public AbstractIndexingWorker(IndexingCommand cmd) {
         this.cmds = Collections.singletonList(cmd);
         this.repositoryName = cmd.getRepositoryName();
@@ -55,6 +55,16 @@ public class BucketIndexingWorker extends BaseIndexingWorker implements Work {
 
     private final int documentCount;
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected BucketIndexingWorker() {
+        syncAlias = false;
+        documentCount = 0;
+    }
+
     public BucketIndexingWorker(String repositoryName, List<String> docIds, boolean syncAlias) {
         setDocuments(repositoryName, docIds);
         documentCount = docIds.size();
@@ -38,6 +38,14 @@ public class ChildrenIndexingWorker extends AbstractIndexingWorker implements Wo
 
     private static final long serialVersionUID = 724369727479693496L;
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected ChildrenIndexingWorker() {
+    }
+
     public ChildrenIndexingWorker(IndexingCommand cmd) {
         super(cmd);
     }
@@ -39,6 +39,14 @@ public class IndexingWorker extends AbstractIndexingWorker implements Work {
 
     private static final long serialVersionUID = -5141471452954319812L;
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected IndexingWorker() {
+    }
+
     public IndexingWorker(String repositoryName, List<IndexingCommand> cmds) {
         super(repositoryName, cmds);
     }
@@ -48,6 +56,22 @@ public class IndexingWorker extends AbstractIndexingWorker implements Work {
         return " ElasticSearch indexing for docs: " + getCmdsDigest();
     }
 
+    /**
+     * The indexing reads the current state of the document, a single one is needed for a burst of commands of the same
+     * kind on a document. The works holding several commands are not coalesced.
+     *
+     * @since 10.1
+     */
+    @Override
+    public String getCoalescingKey() {
+        if (cmds.size() != 1) {
+            return super.getCoalescingKey();
+        }
+        IndexingCommand cmd = cmds.get(0);
+        return getCategory() + ':' + cmd.getRepositoryName() + ':' + cmd.getTargetDocumentId() + ':' + cmd.getType()
+                + ':' + cmd.isSync() + ':' + cmd.isRecurse();
+    }
+
     protected boolean needRecurse(IndexingCommand cmd) {
         if (cmd.isRecurse()) {
             switch (cmd.getType()) {
@@ -54,6 +54,16 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
 
     protected long documentCount;
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected ScrollingIndexingWorker() {
+        nxql = null;
+        syncAlias = false;
+    }
+
     public ScrollingIndexingWorker(String repositoryName, String nxql) {
         this(repositoryName, nxql, false);
     }
@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.elasticsearch.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.nuxeo.elasticsearch.core.AdaptiveBulkSize;
+
+public class TestAdaptiveBulkSize {
+
+    @Test
+    public void testAdaptToLatency() {
+        AdaptiveBulkSize size = new AdaptiveBulkSize(100, 1000, 50);
+        assertEquals(1000, size.get());
+        // fast requests keep the maximum size
+        size.onSuccess(10);
+        assertEquals(1000, size.get());
+        // slow requests shrink it down to the minimum
+        size.onSuccess(100);
+        assertEquals(750, size.get());
+        for (int i = 0; i < 20; i++) {
+            size.onSuccess(100);
+        }
+        assertEquals(100, size.get());
+        // and it grows back
+        size.onSuccess(10);
+        assertEquals(200, size.get());
+    }
+
+    @Test
+    public void testAdaptToRejection() {
+        AdaptiveBulkSize size = new AdaptiveBulkSize(100, 1000, 50);
+        size.onRejected();
+        assertEquals(500, size.get());
+        size.onRejected();
+        size.onRejected();
+        size.onRejected();
+        assertEquals(100, size.get());
+        size.onSuccess(10);
+        assertTrue(size.get() > 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBounds() {
+        new AdaptiveBulkSize(1000, 100, 50);
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.elasticsearch.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.STREAM_ENABLED_PROPERTY;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
+import org.nuxeo.elasticsearch.api.ElasticSearchService;
+import org.nuxeo.elasticsearch.query.NxQueryBuilder;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Test the indexing through the stream indexer.
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ RepositoryElasticSearchFeature.class })
+@Deploy("org.nuxeo.runtime.stream")
+@LocalDeploy({ "org.nuxeo.elasticsearch.core.test:elasticsearch-test-contrib.xml",
+        "org.nuxeo.elasticsearch.core.test:elasticsearch-test-stream-contrib.xml" })
+public class TestStreamIndexing {
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected ElasticSearchService ess;
+
+    @Inject
+    protected ElasticSearchAdmin esa;
+
+    @Inject
+    protected WorkManager workManager;
+
+    @Before
+    public void setUp() throws Exception {
+        Framework.getProperties().setProperty(STREAM_ENABLED_PROPERTY, "true");
+        esa.initIndexes(true);
+    }
+
+    @After
+    public void tearDown() {
+        Framework.getProperties().setProperty(STREAM_ENABLED_PROPERTY, "false");
+    }
+
+    protected void waitForCompletion() throws Exception {
+        workManager.awaitCompletion(20, TimeUnit.SECONDS);
+        esa.prepareWaitForIndexing().get(20, TimeUnit.SECONDS);
+        esa.refresh();
+    }
+
+    protected DocumentModelList search(String nxql) {
+        return ess.query(new NxQueryBuilder(session).nxql(nxql).limit(100));
+    }
+
+    @Test
+    public void testIndexThroughStream() throws Exception {
+        DocumentModel folder = session.createDocumentModel("/", "folder", "Folder");
+        folder = session.createDocument(folder);
+        for (int i = 0; i < 50; i++) {
+            DocumentModel doc = session.createDocumentModel("/folder", "file" + i, "File");
+            doc.setPropertyValue("dc:title", "file" + i);
+            doc = session.createDocument(doc);
+            // several commands for the same document are indexed once
+            doc.setPropertyValue("dc:description", "updated");
+            session.saveDocument(doc);
+        }
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForCompletion();
+
+        TransactionHelper.startTransaction();
+        assertEquals(50, search("SELECT * FROM File WHERE dc:description = 'updated'").totalSize());
+
+        // the deletion of a document goes through the stream as well
+        session.removeDocument(folder.getRef());
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForCompletion();
+
+        TransactionHelper.startTransaction();
+        assertEquals(0, search("SELECT * FROM Document WHERE ecm:primaryType IN ('File', 'Folder')").totalSize());
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.elasticsearch.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.BinaryWorkCodec;
+import org.nuxeo.ecm.core.work.WorkComputation;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.elasticsearch.commands.IndexingCommand;
+
+/**
+ * Checks that the indexing works are encoded field by field by the {@link BinaryWorkCodec}.
+ *
+ * @since 10.1
+ */
+public class TestIndexingWorkCodec {
+
+    protected final BinaryWorkCodec codec = new BinaryWorkCodec();
+
+    @SuppressWarnings("unchecked")
+    protected <T extends Work> T roundTrip(T work) {
+        byte[] data = codec.encode(work);
+        // encoded field by field, not as a Java serialized fallback
+        assertTrue(data.length < WorkComputation.serialize(work).length);
+        Work decoded = codec.decode(data);
+        assertEquals(work.getClass(), decoded.getClass());
+        assertEquals(work.getId(), decoded.getId());
+        assertEquals(getDocuments(work), getDocuments(decoded));
+        return (T) decoded;
+    }
+
+    protected static List<String> getDocuments(Work work) {
+        return work.getDocuments()
+                   .stream()
+                   .map(loc -> loc.getServerName() + ':' + loc.getIdRef().value)
+                   .collect(Collectors.toList());
+    }
+
+    protected static IndexingCommand newCommand(String docId, String type) {
+        return IndexingCommand.fromJSON(String.format(
+                "{\"id\":\"cmd-%s\",\"type\":\"%s\",\"docId\":\"%s\",\"path\":\"/%s\",\"repo\":\"test\",\"recurse\":false,\"sync\":true}",
+                docId, type, docId, docId));
+    }
+
+    protected static void assertSameCommands(List<IndexingCommand> expected, List<IndexingCommand> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getType(), actual.get(i).getType());
+            assertEquals(expected.get(i).getTargetDocumentId(), actual.get(i).getTargetDocumentId());
+            assertEquals(expected.get(i).getRepositoryName(), actual.get(i).getRepositoryName());
+            assertEquals(expected.get(i).isSync(), actual.get(i).isSync());
+        }
+    }
+
+    @Test
+    public void testIndexingWorker() {
+        List<IndexingCommand> cmds = Arrays.asList(newCommand("doc1", "INSERT"), newCommand("doc2", "UPDATE"));
+        IndexingWorker work = roundTrip(new IndexingWorker("test", cmds));
+        assertSameCommands(cmds, work.cmds);
+    }
+
+    @Test
+    public void testChildrenIndexingWorker() {
+        IndexingCommand cmd = newCommand("doc1", "UPDATE_SECURITY");
+        ChildrenIndexingWorker work = roundTrip(new ChildrenIndexingWorker(cmd));
+        assertSameCommands(Arrays.asList(cmd), work.cmds);
+    }
+
+    @Test
+    public void testBucketIndexingWorker() {
+        roundTrip(new BucketIndexingWorker("test", Arrays.asList("doc1", "doc2", "doc3"), true));
+    }
+
+    @Test
+    public void testScrollingIndexingWorker() {
+        ScrollingIndexingWorker work = roundTrip(new ScrollingIndexingWorker("test", "SELECT * FROM Document", true));
+        assertEquals("SELECT * FROM Document", work.nxql);
+        assertTrue(work.syncAlias);
+    }
+
+}
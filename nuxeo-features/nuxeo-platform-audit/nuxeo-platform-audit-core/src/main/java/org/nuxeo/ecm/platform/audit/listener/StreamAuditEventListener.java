@@ -117,16 +117,29 @@ public class StreamAuditEventListener implements EventListener, Synchronization
         if (entries.get().isEmpty()) {
             return;
         }
+        List<Record> records = new ArrayList<>(entries.get().size());
+        for (LogEntry entry : entries.get()) {
+            Record record = asRecord(entry);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        if (records.isEmpty()) {
+            return;
+        }
         LogAppender<Record> appender = getLogManager().getAppender(STREAM_NAME);
-        entries.get().forEach(entry -> writeEntry(appender, entry));
+        appender.appendAll(0, records);
     }
 
-    protected void writeEntry(LogAppender<Record> appender, LogEntry entry) {
+    /**
+     * @since 10.1
+     */
+    protected Record asRecord(LogEntry entry) {
         String json = asJson(entry);
         if (json == null) {
-            return;
+            return null;
         }
-        appender.append(0, Record.of(String.valueOf(entry.getId()), json.getBytes(StandardCharsets.UTF_8)));
+        return Record.of(String.valueOf(entry.getId()), json.getBytes(StandardCharsets.UTF_8));
     }
 
     protected String asJson(LogEntry entry) {
@@ -0,0 +1,583 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.platform.audit.service;
+
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_DATE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_ID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_ID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_LOG_DATE;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.CursorService;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.ScrollResult;
+import org.nuxeo.ecm.core.query.sql.model.OrderByExpr;
+import org.nuxeo.ecm.core.query.sql.model.OrderByList;
+import org.nuxeo.ecm.core.uidgen.UIDGeneratorService;
+import org.nuxeo.ecm.core.uidgen.UIDSequencer;
+import org.nuxeo.ecm.platform.audit.api.AuditQueryBuilder;
+import org.nuxeo.ecm.platform.audit.api.ExtendedInfo;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.api.Predicates;
+import org.nuxeo.ecm.platform.audit.impl.ExtendedInfoImpl;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+import org.nuxeo.ecm.platform.audit.service.extension.AuditBackendDescriptor;
+import org.nuxeo.ecm.platform.audit.service.partition.AuditPartition;
+import org.nuxeo.ecm.platform.audit.service.partition.EntryFilter;
+import org.nuxeo.ecm.platform.audit.service.partition.PartitionStats;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.model.ComponentStartOrders;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Audit backend storing the log entries on the file system, in time partitions of one day.
+ * <p>
+ * The entries are appended in batches to the row log of the partition of their log date, using a compact binary
+ * encoding, instead of being inserted one by one. The partitions older than {@link #COMPACT_AFTER_DAYS_PROPERTY} days
+ * are compacted in the background into columnar segments. The queries skip the partitions whose id and date ranges,
+ * event ids or document ids summaries cannot match their predicates. The matching entries are streamed into the
+ * requested page, and the queries sorted on the id or on a date stop reading partitions once they cannot improve it.
+ * <p>
+ * The ids are allocated from the {@link #SEQ_NAME} sequence of the default {@link UIDSequencer}, shared by the nodes of
+ * a cluster. The nodes of a cluster share the directory: each one writes and compacts its own files, identified by
+ * {@link #NODE_ID_PROPERTY}, and reads those of all the nodes, see {@link AuditPartition}.
+ * <p>
+ * Native queries are not supported, the existing entries of another backend are migrated with
+ * {@link #restore(org.nuxeo.ecm.platform.audit.api.AuditStorage, int, int)}.
+ *
+ * @since 10.1
+ */
+public class PartitionedAuditBackend extends AbstractAuditBackend implements AuditBackend {
+
+    private static final Log log = LogFactory.getLog(PartitionedAuditBackend.class);
+
+    public static final String DIRECTORY_PROPERTY = "nuxeo.audit.partitioned.dir";
+
+    public static final String COMPACT_AFTER_DAYS_PROPERTY = "nuxeo.audit.partitioned.compactAfterDays";
+
+    public static final String COMPACT_INTERVAL_MINUTES_PROPERTY = "nuxeo.audit.partitioned.compactIntervalMinutes";
+
+    /** The id of this node among those sharing the directory, defaults to the cluster node id. */
+    public static final String NODE_ID_PROPERTY = "nuxeo.audit.partitioned.nodeId";
+
+    public static final String CLUSTER_NODE_ID_PROPERTY = "repository.clustering.id";
+
+    /** The number of entries of a row log, and of a segment compacted from it. */
+    public static final String MAX_ROWS_PROPERTY = "nuxeo.audit.partitioned.maxRowsPerSegment";
+
+    public static final String DEFAULT_DIRECTORY = "audit";
+
+    public static final String SEQ_NAME = "audit";
+
+    public static final int DEFAULT_COMPACT_AFTER_DAYS = 1;
+
+    public static final int DEFAULT_COMPACT_INTERVAL_MINUTES = 60;
+
+    protected static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    protected final Map<LocalDate, AuditPartition> partitions = new ConcurrentSkipListMap<>();
+
+    protected Path directory;
+
+    protected String nodeId;
+
+    protected int maxRows;
+
+    protected int compactAfterDays;
+
+    protected ScheduledExecutorService compactor;
+
+    protected CursorService<Iterator<LogEntry>, LogEntry, String> cursorService;
+
+    protected PartitionedLogEntryProvider provider = new PartitionedLogEntryProvider();
+
+    public PartitionedAuditBackend(NXAuditEventsService component, AuditBackendDescriptor config) {
+        super(component, config);
+    }
+
+    public PartitionedAuditBackend() {
+        super();
+    }
+
+    @Override
+    public int getApplicationStartedOrder() {
+        int uidgenOrder = ((DefaultComponent) Framework.getRuntime().getComponent(
+                "org.nuxeo.ecm.core.uidgen.UIDGeneratorService")).getApplicationStartedOrder();
+        return Integer.max(ComponentStartOrders.DEFAULT, uidgenOrder + 1);
+    }
+
+    @Override
+    public void onApplicationStarted() {
+        String dir = Framework.getProperty(DIRECTORY_PROPERTY);
+        directory = dir == null ? new File(Environment.getDefault().getData(), DEFAULT_DIRECTORY).toPath()
+                : new File(dir).toPath();
+        nodeId = Framework.getProperty(NODE_ID_PROPERTY, Framework.getProperty(CLUSTER_NODE_ID_PROPERTY));
+        if (nodeId == null || nodeId.trim().isEmpty()) {
+            nodeId = AuditPartition.DEFAULT_NODE_ID;
+        }
+        nodeId = nodeId.trim();
+        maxRows = Integer.parseInt(
+                Framework.getProperty(MAX_ROWS_PROPERTY, String.valueOf(AuditPartition.DEFAULT_MAX_ROWS)));
+        compactAfterDays = Integer.parseInt(
+                Framework.getProperty(COMPACT_AFTER_DAYS_PROPERTY, String.valueOf(DEFAULT_COMPACT_AFTER_DAYS)));
+        int compactInterval = Integer.parseInt(Framework.getProperty(COMPACT_INTERVAL_MINUTES_PROPERTY,
+                String.valueOf(DEFAULT_COMPACT_INTERVAL_MINUTES)));
+        log.info("Activate partitioned backend for Audit in: " + directory + ", node id: " + nodeId);
+        openPartitions();
+        cursorService = new CursorService<>(entry -> {
+            try {
+                return OBJECT_MAPPER.writeValueAsString(entry);
+            } catch (IOException e) {
+                throw new NuxeoException("Unable to serialize entry", e);
+            }
+        });
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Nuxeo-Audit-Compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactSafely, compactInterval, compactInterval, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void onApplicationStopped() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            compactor = null;
+        }
+        partitions.values().forEach(AuditPartition::close);
+        partitions.clear();
+        if (cursorService != null) {
+            cursorService.clear();
+            cursorService = null;
+        }
+    }
+
+    protected void openPartitions() {
+        long maxId = 0;
+        for (AuditPartition partition : getPartitions()) {
+            maxId = Math.max(maxId, partition.getStats().getMaxId());
+        }
+        if (maxId > 0) {
+            // entries written before the ids came from the shared sequence
+            getSequencer().initSequence(SEQ_NAME, maxId);
+        }
+    }
+
+    /**
+     * Gets the partitions, opening those created since the last call, possibly by other nodes sharing the directory.
+     */
+    protected Collection<AuditPartition> getPartitions() {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+                for (Path path : stream) {
+                    LocalDate day;
+                    try {
+                        day = LocalDate.parse(path.getFileName().toString());
+                    } catch (DateTimeParseException e) {
+                        log.warn("Ignore unknown directory in audit storage: " + path);
+                        continue;
+                    }
+                    getOrCreatePartition(day);
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to open audit storage: " + directory, e);
+        }
+        return partitions.values();
+    }
+
+    protected UIDSequencer getSequencer() {
+        return Framework.getService(UIDGeneratorService.class).getSequencer();
+    }
+
+    protected AuditPartition getOrCreatePartition(LocalDate day) {
+        return partitions.computeIfAbsent(day,
+                d -> new AuditPartition(directory.resolve(d.toString()), d, nodeId, maxRows, this::newExtendedInfo));
+    }
+
+    /**
+     * Compacts the partitions older than the given day that still have a row log written by this node.
+     */
+    public void compact(LocalDate before) {
+        for (AuditPartition partition : getPartitions()) {
+            if (partition.getDay().isBefore(before) && partition.hasRows()) {
+                partition.compact();
+            }
+        }
+    }
+
+    protected void compactSafely() {
+        try {
+            compact(LocalDate.now(ZoneOffset.UTC).minusDays(compactAfterDays - 1L));
+        } catch (NuxeoException e) {
+            log.error("Unable to compact audit partitions", e);
+        }
+    }
+
+    @Override
+    public void addLogEntries(List<LogEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        UIDSequencer sequencer = getSequencer();
+        Date logDate = new Date();
+        for (LogEntry entry : entries) {
+            entry.setId(sequencer.getNextLong(SEQ_NAME));
+            entry.setLogDate(logDate);
+        }
+        appendToPartitions(entries);
+    }
+
+    @Override
+    public void append(List<String> jsonEntries) {
+        List<LogEntry> entries = new ArrayList<>(jsonEntries.size());
+        long maxId = 0;
+        for (String json : jsonEntries) {
+            LogEntryImpl entry;
+            try {
+                entry = OBJECT_MAPPER.readValue(json, LogEntryImpl.class);
+            } catch (IOException e) {
+                throw new NuxeoException("Unable to deserialize json entry=" + json, e);
+            }
+            if (entry.getId() == 0) {
+                throw new NuxeoException("A json entry has an empty id. entry=" + json);
+            }
+            if (entry.getLogDate() == null) {
+                entry.setLogDate(entry.getEventDate() == null ? new Date() : entry.getEventDate());
+            }
+            entries.add(entry);
+            maxId = Math.max(maxId, entry.getId());
+        }
+        appendToPartitions(entries);
+        if (maxId > 0) {
+            // the next allocated ids must not collide with the restored ones
+            getSequencer().initSequence(SEQ_NAME, maxId);
+        }
+    }
+
+    protected void appendToPartitions(List<LogEntry> entries) {
+        Map<LocalDate, List<LogEntry>> entriesPerDay = new LinkedHashMap<>();
+        for (LogEntry entry : entries) {
+            entriesPerDay.computeIfAbsent(AuditPartition.dayOf(entry.getLogDate()), k -> new ArrayList<>()).add(entry);
+        }
+        entriesPerDay.forEach((day, dayEntries) -> getOrCreatePartition(day).append(dayEntries));
+    }
+
+    @Override
+    public List<LogEntry> queryLogs(AuditQueryBuilder builder) {
+        EntryFilter filter = EntryFilter.of(builder.predicate());
+        OrderByList orders = builder.orders();
+        long offset = builder.offset();
+        long limit = builder.limit();
+        Comparator<LogEntry> comparator = getComparator(orders);
+        String rangeField = getRangeField(orders);
+        boolean descending = rangeField != null && orders != null && !orders.isEmpty() && orders.get(0).isDescending;
+        PageCollector page = new PageCollector(comparator, limit > 0 ? offset + limit : 0);
+
+        List<AuditPartition> candidates = new ArrayList<>();
+        Map<AuditPartition, PartitionStats> stats = new LinkedHashMap<>();
+        for (AuditPartition partition : getPartitions()) {
+            if (partition.mayMatch(filter)) {
+                candidates.add(partition);
+                stats.put(partition, partition.getStats());
+            }
+        }
+        if (rangeField != null) {
+            // read first the partitions holding the best values
+            Comparator<AuditPartition> byBound = Comparator.comparingLong(
+                    p -> bound(stats.get(p), rangeField, descending));
+            candidates.sort(descending ? byBound.reversed() : byBound);
+        }
+        for (AuditPartition partition : candidates) {
+            if (rangeField != null && page.isFull()) {
+                // stop when the partition cannot hold a better value than the last one of the requested page
+                Long last = getLong(page.last(), rangeField);
+                long best = bound(stats.get(partition), rangeField, descending);
+                if (last != null && (descending ? best < last.longValue() : best > last.longValue())) {
+                    break;
+                }
+            }
+            partition.scan(filter, page);
+        }
+        List<LogEntry> entries = page.getEntries();
+        if (offset >= entries.size()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(entries.subList((int) offset, entries.size()));
+    }
+
+    /**
+     * Keeps the best entries for a page in a bounded heap, or all the entries when the page is unbounded.
+     */
+    protected static class PageCollector implements Consumer<LogEntry> {
+
+        protected final Comparator<LogEntry> comparator;
+
+        protected final long size;
+
+        protected final PriorityQueue<LogEntry> heap;
+
+        protected final List<LogEntry> all;
+
+        protected PageCollector(Comparator<LogEntry> comparator, long size) {
+            this.comparator = comparator;
+            this.size = size;
+            if (size > 0) {
+                // the worst kept entry is at the head
+                heap = new PriorityQueue<>(11, comparator.reversed());
+                all = null;
+            } else {
+                heap = null;
+                all = new ArrayList<>();
+            }
+        }
+
+        @Override
+        public void accept(LogEntry entry) {
+            if (heap == null) {
+                all.add(entry);
+            } else if (heap.size() < size) {
+                heap.add(entry);
+            } else if (comparator.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        protected boolean isFull() {
+            return heap != null && heap.size() >= size;
+        }
+
+        /**
+         * Gets the worst entry of a full page.
+         */
+        protected LogEntry last() {
+            return heap.peek();
+        }
+
+        protected List<LogEntry> getEntries() {
+            List<LogEntry> entries = heap == null ? all : new ArrayList<>(heap);
+            entries.sort(comparator);
+            return entries;
+        }
+    }
+
+    /**
+     * Gets the field of the single order of a query if partitions can be pruned on it.
+     */
+    protected String getRangeField(OrderByList orders) {
+        if (orders == null || orders.isEmpty()) {
+            // sorted on the id
+            return LOG_ID;
+        } else if (orders.size() != 1) {
+            return null;
+        }
+        String name = orders.get(0).reference.name;
+        return LOG_ID.equals(name) || LOG_EVENT_DATE.equals(name) || LOG_LOG_DATE.equals(name) ? name : null;
+    }
+
+    protected long bound(PartitionStats stats, String field, boolean max) {
+        switch (field) {
+        case LOG_ID:
+            return max ? stats.getMaxId() : stats.getMinId();
+        case LOG_EVENT_DATE:
+            return max ? stats.getMaxEventDate() : stats.getMinEventDate();
+        default:
+            return max ? stats.getMaxLogDate() : stats.getMinLogDate();
+        }
+    }
+
+    protected Long getLong(LogEntry entry, String field) {
+        Object value = EntryFilter.getValue(entry, field);
+        if (value instanceof Date) {
+            return Long.valueOf(((Date) value).getTime());
+        }
+        return (Long) value;
+    }
+
+    protected Comparator<LogEntry> getComparator(OrderByList orders) {
+        Comparator<LogEntry> comparator = null;
+        if (orders != null) {
+            for (OrderByExpr order : orders) {
+                String field = order.reference.name;
+                Comparator<LogEntry> fieldComparator = (e1, e2) -> compareValues(EntryFilter.getValue(e1, field),
+                        EntryFilter.getValue(e2, field));
+                if (order.isDescending) {
+                    fieldComparator = fieldComparator.reversed();
+                }
+                comparator = comparator == null ? fieldComparator : comparator.thenComparing(fieldComparator);
+            }
+        }
+        // deterministic order across pages
+        Comparator<LogEntry> byId = Comparator.comparingLong(LogEntry::getId);
+        return comparator == null ? byId : comparator.thenComparing(byId);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected static int compareValues(Object v1, Object v2) {
+        if (v1 == null) {
+            return v2 == null ? 0 : -1;
+        } else if (v2 == null) {
+            return 1;
+        } else if (v1 instanceof Comparable && v1.getClass() == v2.getClass()) {
+            return ((Comparable) v1).compareTo(v2);
+        }
+        return v1.toString().compareTo(v2.toString());
+    }
+
+    @Override
+    public LogEntry getLogEntryByID(long id) {
+        List<LogEntry> entries = queryLogs(
+                new AuditQueryBuilder().predicates(Predicates.eq(LOG_ID, Long.valueOf(id))).limit(1));
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    @Override
+    public List<?> nativeQuery(String query, Map<String, Object> params, int pageNb, int pageSize) {
+        throw new UnsupportedOperationException("Native queries are not supported by the partitioned audit backend");
+    }
+
+    @Override
+    public Long getEventsCount(String eventId) {
+        EntryFilter filter = EntryFilter.of(Predicates.eq(LOG_EVENT_ID, eventId));
+        long count = 0;
+        for (AuditPartition partition : getPartitions()) {
+            if (partition.mayMatch(filter)) {
+                count += partition.count(filter);
+            }
+        }
+        return Long.valueOf(count);
+    }
+
+    @Override
+    public long syncLogCreationEntries(String repoId, String path, Boolean recurs) {
+        return syncLogCreationEntries(provider, repoId, path, recurs);
+    }
+
+    @Override
+    public ExtendedInfo newExtendedInfo(Serializable value) {
+        return ExtendedInfoImpl.createExtendedInfo(value);
+    }
+
+    @Override
+    public ScrollResult<String> scroll(AuditQueryBuilder builder, int batchSize, int keepAliveSeconds) {
+        EntryFilter filter = EntryFilter.of(builder.predicate());
+        List<AuditPartition> candidates = new ArrayList<>();
+        for (AuditPartition partition : getPartitions()) {
+            if (partition.mayMatch(filter)) {
+                candidates.add(partition);
+            }
+        }
+        String scrollId = cursorService.registerCursor(new PartitionIterator(candidates, filter), batchSize,
+                keepAliveSeconds);
+        return scroll(scrollId);
+    }
+
+    @Override
+    public ScrollResult<String> scroll(String scrollId) {
+        return cursorService.scroll(scrollId);
+    }
+
+    /**
+     * Iterates over the entries matching a filter, one partition after the other, in order of day then id.
+     */
+    protected static class PartitionIterator implements Iterator<LogEntry> {
+
+        protected final Iterator<AuditPartition> partitions;
+
+        protected final EntryFilter filter;
+
+        protected Iterator<LogEntry> current = Collections.emptyIterator();
+
+        protected PartitionIterator(Collection<AuditPartition> partitions, EntryFilter filter) {
+            this.partitions = partitions.iterator();
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && partitions.hasNext()) {
+                List<LogEntry> entries = partitions.next().scan(filter);
+                entries.sort(Comparator.comparingLong(LogEntry::getId));
+                current = entries.iterator();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public LogEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+
+    public class PartitionedLogEntryProvider implements BaseLogEntryProvider {
+
+        @Override
+        public int removeEntries(String eventId, String pathPattern) {
+            throw new UnsupportedOperationException("Not implemented yet!");
+        }
+
+        @Override
+        public void addLogEntry(LogEntry logEntry) {
+            addLogEntries(Collections.singletonList(logEntry));
+        }
+
+    }
+
+}
@@ -0,0 +1,647 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.platform.audit.service.partition;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.platform.audit.api.ExtendedInfo;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+
+/**
+ * The log entries of one day, based on their log date in UTC.
+ * <p>
+ * A partition is a directory named after its day, which may be shared by the nodes of a cluster. Each file in it has a
+ * single writer:
+ * <ul>
+ * <li>a node appends its entries to its own row log, {@code rows-<node>-<generation>.log}, in the compact encoding of
+ * {@link LogEntryCodec}. A new generation is started once a row log holds {@code maxRows} entries;</li>
+ * <li>a node compacts its own sealed row logs, one generation at a time, into immutable {@link ColumnarSegment}s,
+ * {@code segment-<node>-<generation>.col}. The segment is moved in place atomically before its row log is removed.</li>
+ * </ul>
+ * While writing, a node holds an exclusive {@link FileLock} on {@code <node>.lock}, so that two processes configured
+ * with the same node id fail instead of corrupting a row log. Readers take no lock: for each generation they read the
+ * segment if it exists, otherwise the complete records of the row log, and fall back to the segment if the row log was
+ * removed in the meantime, so an entry is never lost nor read twice. The readers therefore never block the appends,
+ * and a compaction never holds more than one generation of one node in memory.
+ * <p>
+ * The row logs of a node that leaves the cluster stay readable, they are compacted once a node with the same id writes
+ * to the partition again.
+ *
+ * @since 10.1
+ */
+public class AuditPartition implements Closeable {
+
+    private static final Log log = LogFactory.getLog(AuditPartition.class);
+
+    public static final String DEFAULT_NODE_ID = "local";
+
+    public static final int DEFAULT_MAX_ROWS = 100_000;
+
+    protected static final String ROWS = "rows";
+
+    protected static final String SEGMENT = "segment";
+
+    protected static final Pattern FILE_PATTERN = Pattern.compile("(rows|segment)-(\\w+)-(\\d+)\\.(?:log|col)");
+
+    protected final LocalDate day;
+
+    protected final Path directory;
+
+    protected final String nodeId;
+
+    protected final int maxRows;
+
+    protected final Function<Serializable, ExtendedInfo> factory;
+
+    /** The generations of all the nodes seen in the directory, by node and number, guarded by itself. */
+    protected final Map<String, Generation> generations = new TreeMap<>();
+
+    /** Guards the writer state of this node. */
+    protected final Lock appendLock = new ReentrantLock();
+
+    /** Serializes the compactions of this node. */
+    protected final Lock compactLock = new ReentrantLock();
+
+    protected FileChannel lockChannel;
+
+    protected FileLock writerLock;
+
+    protected long generation;
+
+    protected long generationRows;
+
+    protected FileOutputStream rowsStream;
+
+    protected DataOutputStream rowsOut;
+
+    /**
+     * The files of one generation of a node: its row log, then the segment it is compacted into.
+     */
+    protected static class Generation {
+
+        protected final String nodeId;
+
+        protected final long number;
+
+        protected ColumnarSegment segment;
+
+        /** The length of the complete records of the row log read so far. */
+        protected long rowsLength;
+
+        protected PartitionStats rowStats = new PartitionStats();
+
+        protected Generation(String nodeId, long number) {
+            this.nodeId = nodeId;
+            this.number = number;
+        }
+
+        protected PartitionStats getStats() {
+            return segment == null ? rowStats : segment.getStats();
+        }
+    }
+
+    /**
+     * A generation as seen by a reader.
+     */
+    protected class Source {
+
+        protected final Generation generation;
+
+        protected final ColumnarSegment segment;
+
+        protected final long count;
+
+        protected Source(Generation generation) {
+            this.generation = generation;
+            segment = generation.segment;
+            count = generation.getStats().getCount();
+        }
+
+        protected void scan(EntryFilter filter, Consumer<LogEntry> consumer) throws IOException {
+            if (segment != null) {
+                segment.scan(filter, factory, consumer);
+                return;
+            }
+            try {
+                readRows(getRowsFile(generation.nodeId, generation.number), 0, entry -> {
+                    if (filter.matches(entry)) {
+                        consumer.accept(entry);
+                    }
+                });
+            } catch (NoSuchFileException e) {
+                // compacted since the directory was listed
+                Path segmentFile = getSegmentFile(generation.nodeId, generation.number);
+                if (Files.exists(segmentFile)) {
+                    ColumnarSegment.open(segmentFile).scan(filter, factory, consumer);
+                }
+            }
+        }
+    }
+
+    public AuditPartition(Path directory, LocalDate day, Function<Serializable, ExtendedInfo> factory) {
+        this(directory, day, DEFAULT_NODE_ID, DEFAULT_MAX_ROWS, factory);
+    }
+
+    /**
+     * @param nodeId the id of this node, distinct for each node sharing the directory
+     * @param maxRows the number of entries after which a new row log is started, bounding the memory of a compaction
+     */
+    public AuditPartition(Path directory, LocalDate day, String nodeId, int maxRows,
+            Function<Serializable, ExtendedInfo> factory) {
+        this.directory = directory;
+        this.day = day;
+        this.nodeId = nodeId.replaceAll("\\W", "_");
+        this.maxRows = maxRows;
+        this.factory = factory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to open audit partition: " + directory, e);
+        }
+        refresh();
+    }
+
+    /**
+     * Gets the day of the partition holding an entry logged at the given date.
+     */
+    public static LocalDate dayOf(Date logDate) {
+        return logDate.toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    protected Path getRowsFile(String node, long number) {
+        return directory.resolve(ROWS + '-' + node + '-' + number + ".log");
+    }
+
+    protected Path getSegmentFile(String node, long number) {
+        return directory.resolve(SEGMENT + '-' + node + '-' + number + ".col");
+    }
+
+    /**
+     * Gets the statistics of the partition, segments and row logs of all the nodes included.
+     */
+    public PartitionStats getStats() {
+        refresh();
+        synchronized (generations) {
+            PartitionStats stats = new PartitionStats();
+            generations.values().forEach(generation -> stats.merge(generation.getStats()));
+            return stats;
+        }
+    }
+
+    /**
+     * Returns {@code true} if some entries written by this node are not compacted yet.
+     */
+    public boolean hasRows() {
+        refresh();
+        synchronized (generations) {
+            return generations.values()
+                              .stream()
+                              .anyMatch(generation -> generation.segment == null && nodeId.equals(generation.nodeId)
+                                      && generation.rowStats.getCount() > 0);
+        }
+    }
+
+    /**
+     * Appends entries to the row log of this node, they are synced to disk when the method returns.
+     */
+    public void append(List<LogEntry> entries) {
+        appendLock.lock();
+        try {
+            openWriter();
+            for (LogEntry entry : entries) {
+                if (generationRows >= maxRows) {
+                    sealGeneration();
+                }
+                if (rowsOut == null) {
+                    rowsStream = new FileOutputStream(getRowsFile(nodeId, generation).toFile(), true);
+                    rowsOut = new DataOutputStream(new BufferedOutputStream(rowsStream));
+                }
+                byte[] record = LogEntryCodec.encode(entry);
+                rowsOut.writeInt(record.length);
+                rowsOut.write(record);
+                generationRows++;
+            }
+            syncRows();
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to append to audit partition: " + directory, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Tests whether a segment or a row log may contain entries matching the filter.
+     * <p>
+     * This is more selective than testing the merged {@link #getStats() statistics}, whose document ids summary is
+     * lost when several files have entries.
+     */
+    public boolean mayMatch(EntryFilter filter) {
+        refresh();
+        synchronized (generations) {
+            return generations.values().stream().anyMatch(generation -> filter.mayMatch(generation.getStats()));
+        }
+    }
+
+    /**
+     * Reads the entries matching the filter.
+     */
+    public List<LogEntry> scan(EntryFilter filter) {
+        List<LogEntry> entries = new ArrayList<>();
+        scan(filter, entries::add);
+        return entries;
+    }
+
+    /**
+     * Passes the entries matching the filter to the consumer, without keeping them.
+     */
+    public void scan(EntryFilter filter, Consumer<LogEntry> consumer) {
+        try {
+            for (Source source : getSources(filter)) {
+                source.scan(filter, consumer);
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to read audit partition: " + directory, e);
+        }
+    }
+
+    /**
+     * Counts the entries matching the filter.
+     */
+    public long count(EntryFilter filter) {
+        try {
+            long count = 0;
+            for (Source source : getSources(filter)) {
+                if (source.segment != null) {
+                    count += source.segment.count(filter, factory);
+                } else if (filter.getConditions().isEmpty()) {
+                    count += source.count;
+                } else {
+                    long[] matching = new long[1];
+                    source.scan(filter, entry -> matching[0]++);
+                    count += matching[0];
+                }
+            }
+            return count;
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to read audit partition: " + directory, e);
+        }
+    }
+
+    /**
+     * Gets the generations that may contain entries matching the filter, the files are read without holding a lock.
+     */
+    protected List<Source> getSources(EntryFilter filter) {
+        refresh();
+        List<Source> sources = new ArrayList<>();
+        synchronized (generations) {
+            for (Generation generation : generations.values()) {
+                if (filter.mayMatch(generation.getStats())) {
+                    sources.add(new Source(generation));
+                }
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Compacts the row logs of this node into segments, one generation at a time.
+     * <p>
+     * The current row log is sealed first, so that the appends are not blocked during the compaction.
+     */
+    public void compact() {
+        compactLock.lock();
+        try {
+            Set<Long> rows = new TreeSet<>();
+            Set<Long> segments = new TreeSet<>();
+            long current;
+            appendLock.lock();
+            try {
+                openWriter();
+                if (generationRows > 0) {
+                    sealGeneration();
+                }
+                current = generation;
+                listGenerations(rows, segments);
+            } finally {
+                appendLock.unlock();
+            }
+            rows.removeAll(segments);
+            for (Long number : rows) {
+                if (number.longValue() < current) {
+                    compact(number.longValue());
+                }
+            }
+            appendLock.lock();
+            try {
+                if (rowsOut == null) {
+                    // nothing was appended meanwhile, don't keep the lock of a past day
+                    closeWriter();
+                }
+            } finally {
+                appendLock.unlock();
+            }
+            refresh();
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to compact audit partition: " + directory, e);
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * Compacts one sealed generation of this node, holding at most {@link #maxRows} entries in memory.
+     */
+    protected void compact(long number) throws IOException {
+        long start = System.currentTimeMillis();
+        Path rowsFile = getRowsFile(nodeId, number);
+        Path segmentFile = getSegmentFile(nodeId, number);
+        List<LogEntry> entries = new ArrayList<>();
+        readRows(rowsFile, 0, entries::add);
+        if (!entries.isEmpty()) {
+            entries.sort(Comparator.comparingLong(LogEntry::getId));
+            Path tmp = directory.resolve(segmentFile.getFileName() + ".tmp");
+            ColumnarSegment.write(tmp, entries);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            // the readers switch to the segment as soon as it exists
+            Files.move(tmp, segmentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        // a crash before the removal of the row log is repaired when this node writes again
+        Files.delete(rowsFile);
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Compacted audit partition: %s, generation: %s-%d, %d entries in %dms", day,
+                    nodeId, number, entries.size(), System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Takes the writer lock of this node, then finds its current generation and repairs the files left by a crash.
+     * Called under the append lock.
+     */
+    protected void openWriter() throws IOException {
+        if (writerLock != null) {
+            return;
+        }
+        FileChannel channel = FileChannel.open(directory.resolve(nodeId + ".lock"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new NuxeoException(
+                    "Audit partition: " + directory + " is already written by another process with node id: " + nodeId);
+        }
+        lockChannel = channel;
+        writerLock = lock;
+        Set<Long> rows = new TreeSet<>();
+        Set<Long> segments = new TreeSet<>();
+        listGenerations(rows, segments);
+        for (Long number : segments) {
+            if (rows.remove(number)) {
+                // a compaction was interrupted after the segment was written
+                Files.delete(getRowsFile(nodeId, number.longValue()));
+            }
+        }
+        long last = -1;
+        for (Long number : rows) {
+            last = Math.max(last, number.longValue());
+        }
+        for (Long number : segments) {
+            last = Math.max(last, number.longValue());
+        }
+        generationRows = 0;
+        if (last >= 0 && rows.contains(Long.valueOf(last))) {
+            generation = last;
+            repairRows(getRowsFile(nodeId, last));
+        } else {
+            generation = last + 1;
+        }
+    }
+
+    /**
+     * Truncates an incomplete last record left by a crash during an append, and counts the complete ones.
+     */
+    protected void repairRows(Path rowsFile) throws IOException {
+        long[] count = new long[1];
+        long valid = readRows(rowsFile, 0, entry -> count[0]++);
+        if (valid < Files.size(rowsFile)) {
+            log.warn("Truncate incomplete record at the end of audit row log: " + rowsFile);
+            try (FileChannel channel = FileChannel.open(rowsFile, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        generationRows = count[0];
+    }
+
+    /**
+     * Lists the generations of this node having a row log, and those having a segment.
+     */
+    protected void listGenerations(Set<Long> rows, Set<Long> segments) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                Matcher m = FILE_PATTERN.matcher(path.getFileName().toString());
+                if (m.matches() && nodeId.equals(m.group(2))) {
+                    (ROWS.equals(m.group(1)) ? rows : segments).add(Long.valueOf(m.group(3)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the row log of the current generation, the next append starts a new one.
+     */
+    protected void sealGeneration() throws IOException {
+        closeRows();
+        generation++;
+        generationRows = 0;
+    }
+
+    protected void syncRows() throws IOException {
+        if (rowsOut != null) {
+            rowsOut.flush();
+            rowsStream.getChannel().force(false);
+        }
+    }
+
+    protected void closeRows() throws IOException {
+        if (rowsOut != null) {
+            syncRows();
+            rowsOut.close();
+            rowsOut = null;
+            rowsStream = null;
+        }
+    }
+
+    protected void closeWriter() throws IOException {
+        closeRows();
+        if (lockChannel != null) {
+            // closing the channel releases the lock
+            lockChannel.close();
+            lockChannel = null;
+            writerLock = null;
+        }
+    }
+
+    /**
+     * Updates the generations from the directory: opens the new segments and reads the records appended to the row
+     * logs since the last refresh, by this node or by the other ones.
+     */
+    protected void refresh() {
+        synchronized (generations) {
+            Map<String, Boolean> listed = new HashMap<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    Matcher m = FILE_PATTERN.matcher(path.getFileName().toString());
+                    if (!m.matches()) {
+                        continue;
+                    }
+                    String node = m.group(2);
+                    long number = Long.parseLong(m.group(3));
+                    String key = node + '-' + String.format("%019d", Long.valueOf(number));
+                    generations.computeIfAbsent(key, k -> new Generation(node, number));
+                    listed.merge(key, Boolean.valueOf(SEGMENT.equals(m.group(1))), Boolean::logicalOr);
+                }
+                generations.keySet().retainAll(listed.keySet());
+                for (Map.Entry<String, Boolean> es : listed.entrySet()) {
+                    Generation generation = generations.get(es.getKey());
+                    if (generation.segment == null) {
+                        if (es.getValue().booleanValue()) {
+                            openSegment(generation);
+                        } else {
+                            readTail(generation);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new NuxeoException("Unable to read audit partition: " + directory, e);
+            }
+        }
+    }
+
+    protected void openSegment(Generation generation) throws IOException {
+        generation.segment = ColumnarSegment.open(getSegmentFile(generation.nodeId, generation.number));
+        generation.rowStats = null;
+    }
+
+    protected void readTail(Generation generation) throws IOException {
+        try {
+            generation.rowsLength = readRows(getRowsFile(generation.nodeId, generation.number),
+                    generation.rowsLength, generation.rowStats::update);
+        } catch (NoSuchFileException e) {
+            // compacted since the directory was listed
+            if (Files.exists(getSegmentFile(generation.nodeId, generation.number))) {
+                openSegment(generation);
+            }
+        }
+    }
+
+    /**
+     * Passes the complete records of a row log after the given position to the consumer, and returns the position
+     * after the last complete record. An incomplete last record, being written or left by a crash, is ignored.
+     */
+    protected long readRows(Path rowsFile, long position, Consumer<LogEntry> consumer) throws IOException {
+        long valid = position;
+        try (FileChannel channel = FileChannel.open(rowsFile, StandardOpenOption.READ);
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Channels.newInputStream(channel.position(position))))) {
+            for (;;) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                consumer.accept(LogEntryCodec.decode(record, factory));
+                valid += 4 + length;
+            }
+        }
+        return valid;
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            closeWriter();
+        } catch (IOException e) {
+            log.error("Unable to close audit partition: " + directory, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AuditPartition(" + day + ")";
+    }
+
+}
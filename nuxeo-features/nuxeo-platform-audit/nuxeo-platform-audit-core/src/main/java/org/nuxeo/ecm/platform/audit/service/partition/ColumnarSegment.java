@@ -0,0 +1,550 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.platform.audit.service.partition;
+
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_CATEGORY;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_COMMENT;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_LIFE_CYCLE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_PATH;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_TYPE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_UUID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_DATE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_ID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EXTENDED;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_ID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_LOG_DATE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_PRINCIPAL_NAME;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_REPOSITORY_ID;
+import static org.nuxeo.ecm.platform.audit.service.partition.LogEntryCodec.readExtendedInfos;
+import static org.nuxeo.ecm.platform.audit.service.partition.LogEntryCodec.readString;
+import static org.nuxeo.ecm.platform.audit.service.partition.LogEntryCodec.readVarLong;
+import static org.nuxeo.ecm.platform.audit.service.partition.LogEntryCodec.unzigzag;
+import static org.nuxeo.ecm.platform.audit.service.partition.LogEntryCodec.writeExtendedInfos;
+import static org.nuxeo.ecm.platform.audit.service.partition.LogEntryCodec.writeString;
+import static org.nuxeo.ecm.platform.audit.service.partition.LogEntryCodec.writeVarLong;
+import static org.nuxeo.ecm.platform.audit.service.partition.LogEntryCodec.zigzag;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.platform.audit.api.ExtendedInfo;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+
+/**
+ * Immutable file storing log entries column by column.
+ * <p>
+ * Each column is compressed separately: the ids and dates are stored as deltas, the strings as indexes in a dictionary
+ * of the column values. A scan only reads and decodes the columns needed by the filter, evaluates the conditions on
+ * string columns once per distinct value, and materializes the matching rows only.
+ *
+ * @since 10.1
+ */
+public class ColumnarSegment {
+
+    protected static final int MAGIC = 0x4E584153; // NXAS
+
+    protected static final int VERSION = 2;
+
+    /** The version before the event ids and document ids summaries were added to the statistics. */
+    protected static final int VERSION_RANGES = 1;
+
+    protected static final String[] STRING_COLUMNS = { LOG_EVENT_ID, LOG_CATEGORY, LOG_PRINCIPAL_NAME, LOG_DOC_UUID,
+            LOG_DOC_PATH, LOG_DOC_TYPE, LOG_DOC_LIFE_CYCLE, LOG_REPOSITORY_ID, LOG_COMMENT };
+
+    protected static class ColumnRef {
+
+        protected final long offset;
+
+        protected final int length;
+
+        protected final int rawLength;
+
+        protected ColumnRef(long offset, int length, int rawLength) {
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /**
+     * A string column: the distinct values and the index of the value of each row, {@code -1} for {@code null}.
+     */
+    protected static class StringColumn {
+
+        protected final String[] dictionary;
+
+        protected final int[] codes;
+
+        protected StringColumn(String[] dictionary, int[] codes) {
+            this.dictionary = dictionary;
+            this.codes = codes;
+        }
+
+        protected String get(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary[code];
+        }
+    }
+
+    protected final Path file;
+
+    protected final int count;
+
+    protected final PartitionStats stats;
+
+    protected final Map<String, ColumnRef> columns;
+
+    protected ColumnarSegment(Path file, int count, PartitionStats stats, Map<String, ColumnRef> columns) {
+        this.file = file;
+        this.count = count;
+        this.stats = stats;
+        this.columns = columns;
+    }
+
+    public PartitionStats getStats() {
+        return stats;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the entries, sorted by id, to a new segment file.
+     */
+    public static void write(Path file, List<LogEntry> entries) throws IOException {
+        PartitionStats stats = PartitionStats.forDocUUIDs(
+                entries.stream().map(LogEntry::getDocUUID).filter(Objects::nonNull).distinct().count());
+        entries.forEach(stats::update);
+        Map<String, byte[]> raw = new LinkedHashMap<>();
+        raw.put(LOG_ID, encodeLongs(entries, entry -> Long.valueOf(entry.getId())));
+        raw.put(LOG_EVENT_DATE, encodeLongs(entries, entry -> time(entry.getEventDate())));
+        raw.put(LOG_LOG_DATE, encodeLongs(entries, entry -> time(entry.getLogDate())));
+        for (String column : STRING_COLUMNS) {
+            raw.put(column, encodeStrings(entries, entry -> (String) EntryFilter.getValue(entry, column)));
+        }
+        raw.put(LOG_EXTENDED, encodeExtendedInfos(entries));
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        List<byte[]> blocks = new ArrayList<>(raw.size());
+        try (DataOutputStream out = new DataOutputStream(header)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            stats.write(out);
+            out.writeInt(raw.size());
+            long offset = 0;
+            for (Map.Entry<String, byte[]> column : raw.entrySet()) {
+                byte[] block = deflate(column.getValue());
+                blocks.add(block);
+                out.writeUTF(column.getKey());
+                out.writeLong(offset);
+                out.writeInt(block.length);
+                out.writeInt(column.getValue().length);
+                offset += block.length;
+            }
+        }
+        try (OutputStream os = Files.newOutputStream(file); DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(os))) {
+            out.writeInt(header.size());
+            header.writeTo(out);
+            for (byte[] block : blocks) {
+                out.write(block);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Opens an existing segment file, only its header is read.
+     */
+    public static ColumnarSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer length = readFully(channel, 0, 4);
+            int headerLength = length.getInt();
+            ByteBuffer buffer = readFully(channel, 4, headerLength);
+            try (DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(buffer.array(), 0, headerLength))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not an audit segment: " + file);
+                }
+                int version = in.readInt();
+                if (version != VERSION && version != VERSION_RANGES) {
+                    throw new IOException("Unsupported audit segment version: " + version + " for: " + file);
+                }
+                int count = in.readInt();
+                PartitionStats stats = PartitionStats.read(in, version != VERSION_RANGES);
+                int size = in.readInt();
+                long dataOffset = 4L + headerLength;
+                Map<String, ColumnRef> columns = new HashMap<>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    String name = in.readUTF();
+                    columns.put(name, new ColumnRef(dataOffset + in.readLong(), in.readInt(), in.readInt()));
+                }
+                return new ColumnarSegment(file, count, stats, columns);
+            }
+        }
+    }
+
+    /**
+     * Reads all the entries of the segment.
+     */
+    public List<LogEntry> readAll(Function<Serializable, ExtendedInfo> factory) {
+        return scan(EntryFilter.ALL, factory);
+    }
+
+    /**
+     * Reads the ids of all the entries of the segment.
+     */
+    public long[] readIds() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return getLongs(channel, new HashMap<>(), LOG_ID);
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to read audit segment: " + file, e);
+        }
+    }
+
+    /**
+     * Reads the entries matching the filter.
+     */
+    public List<LogEntry> scan(EntryFilter filter, Function<Serializable, ExtendedInfo> factory) {
+        List<LogEntry> entries = new ArrayList<>();
+        scan(filter, factory, entries::add);
+        return entries;
+    }
+
+    /**
+     * Passes the entries matching the filter to the consumer, in order of id, without keeping them.
+     */
+    public void scan(EntryFilter filter, Function<Serializable, ExtendedInfo> factory, Consumer<LogEntry> consumer) {
+        if (!filter.mayMatch(stats)) {
+            return;
+        }
+        Map<String, Object> decoded = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BitSet selected = select(channel, decoded, filter, factory);
+            if (!selected.isEmpty()) {
+                materialize(channel, decoded, selected, factory, consumer);
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to read audit segment: " + file, e);
+        }
+    }
+
+    /**
+     * Counts the entries matching the filter, only the columns needed by the filter are read.
+     */
+    public long count(EntryFilter filter, Function<Serializable, ExtendedInfo> factory) {
+        if (!filter.mayMatch(stats)) {
+            return 0;
+        } else if (filter.getConditions().isEmpty()) {
+            return count;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return select(channel, new HashMap<>(), filter, factory).cardinality();
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to read audit segment: " + file, e);
+        }
+    }
+
+    protected BitSet select(FileChannel channel, Map<String, Object> decoded, EntryFilter filter,
+            Function<Serializable, ExtendedInfo> factory) throws IOException {
+        BitSet selected = new BitSet(count);
+        selected.set(0, count);
+        for (EntryFilter.Condition condition : filter.getConditions()) {
+            if (selected.isEmpty()) {
+                break;
+            }
+            evaluate(channel, decoded, condition, selected, factory);
+        }
+        return selected;
+    }
+
+    protected void evaluate(FileChannel channel, Map<String, Object> decoded, EntryFilter.Condition condition,
+            BitSet selected, Function<Serializable, ExtendedInfo> factory) throws IOException {
+        String field = condition.getField();
+        if (LOG_ID.equals(field) || LOG_EVENT_DATE.equals(field) || LOG_LOG_DATE.equals(field)) {
+            long[] values = getLongs(channel, decoded, field);
+            for (int row = selected.nextSetBit(0); row >= 0; row = selected.nextSetBit(row + 1)) {
+                long value = values[row];
+                if (!condition.test(value == Long.MIN_VALUE ? null : Long.valueOf(value))) {
+                    selected.clear(row);
+                }
+            }
+        } else if (field.startsWith(EntryFilter.EXTENDED_PREFIX)) {
+            List<Map<String, ExtendedInfo>> values = getExtendedInfos(channel, decoded, factory);
+            for (int row = selected.nextSetBit(0); row >= 0; row = selected.nextSetBit(row + 1)) {
+                if (!condition.test(EntryFilter.getExtendedValue(values.get(row), field))) {
+                    selected.clear(row);
+                }
+            }
+        } else if (columns.containsKey(field)) {
+            StringColumn column = getStrings(channel, decoded, field);
+            // evaluate the condition once per distinct value
+            boolean[] matches = new boolean[column.dictionary.length];
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = condition.test(column.dictionary[i]);
+            }
+            boolean matchesNull = condition.test(null);
+            for (int row = selected.nextSetBit(0); row >= 0; row = selected.nextSetBit(row + 1)) {
+                int code = column.codes[row];
+                if (!(code < 0 ? matchesNull : matches[code])) {
+                    selected.clear(row);
+                }
+            }
+        } else {
+            throw new NuxeoException("Unknown log entry field: " + field);
+        }
+    }
+
+    protected void materialize(FileChannel channel, Map<String, Object> decoded, BitSet selected,
+            Function<Serializable, ExtendedInfo> factory, Consumer<LogEntry> consumer) throws IOException {
+        long[] ids = getLongs(channel, decoded, LOG_ID);
+        long[] eventDates = getLongs(channel, decoded, LOG_EVENT_DATE);
+        long[] logDates = getLongs(channel, decoded, LOG_LOG_DATE);
+        Map<String, StringColumn> strings = new HashMap<>();
+        for (String column : STRING_COLUMNS) {
+            strings.put(column, getStrings(channel, decoded, column));
+        }
+        List<Map<String, ExtendedInfo>> extended = getExtendedInfos(channel, decoded, factory);
+        for (int row = selected.nextSetBit(0); row >= 0; row = selected.nextSetBit(row + 1)) {
+            LogEntry entry = new LogEntryImpl();
+            entry.setId(ids[row]);
+            entry.setEventDate(date(eventDates[row]));
+            entry.setLogDate(date(logDates[row]));
+            entry.setEventId(strings.get(LOG_EVENT_ID).get(row));
+            entry.setCategory(strings.get(LOG_CATEGORY).get(row));
+            entry.setPrincipalName(strings.get(LOG_PRINCIPAL_NAME).get(row));
+            entry.setDocUUID(strings.get(LOG_DOC_UUID).get(row));
+            entry.setDocPath(strings.get(LOG_DOC_PATH).get(row));
+            entry.setDocType(strings.get(LOG_DOC_TYPE).get(row));
+            entry.setDocLifeCycle(strings.get(LOG_DOC_LIFE_CYCLE).get(row));
+            entry.setRepositoryId(strings.get(LOG_REPOSITORY_ID).get(row));
+            entry.setComment(strings.get(LOG_COMMENT).get(row));
+            entry.setExtendedInfos(extended.get(row));
+            consumer.accept(entry);
+        }
+    }
+
+    protected long[] getLongs(FileChannel channel, Map<String, Object> decoded, String name) throws IOException {
+        long[] values = (long[]) decoded.get(name);
+        if (values == null) {
+            values = new long[count];
+            try (DataInputStream in = readColumn(channel, name)) {
+                long previous = 0;
+                for (int row = 0; row < count; row++) {
+                    long value = readVarLong(in);
+                    if (value == 0) {
+                        values[row] = Long.MIN_VALUE;
+                    } else {
+                        previous += unzigzag(value - 1);
+                        values[row] = previous;
+                    }
+                }
+            }
+            decoded.put(name, values);
+        }
+        return values;
+    }
+
+    protected StringColumn getStrings(FileChannel channel, Map<String, Object> decoded, String name)
+            throws IOException {
+        StringColumn column = (StringColumn) decoded.get(name);
+        if (column == null) {
+            try (DataInputStream in = readColumn(channel, name)) {
+                String[] dictionary = new String[(int) readVarLong(in)];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = readString(in);
+                }
+                int[] codes = new int[count];
+                for (int row = 0; row < count; row++) {
+                    codes[row] = (int) readVarLong(in) - 1;
+                }
+                column = new StringColumn(dictionary, codes);
+            }
+            decoded.put(name, column);
+        }
+        return column;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<Map<String, ExtendedInfo>> getExtendedInfos(FileChannel channel, Map<String, Object> decoded,
+            Function<Serializable, ExtendedInfo> factory) throws IOException {
+        List<Map<String, ExtendedInfo>> values = (List<Map<String, ExtendedInfo>>) decoded.get(LOG_EXTENDED);
+        if (values == null) {
+            values = new ArrayList<>(count);
+            try (DataInputStream in = readColumn(channel, LOG_EXTENDED)) {
+                for (int row = 0; row < count; row++) {
+                    values.add(readExtendedInfos(in, factory));
+                }
+            }
+            decoded.put(LOG_EXTENDED, values);
+        }
+        return values;
+    }
+
+    protected DataInputStream readColumn(FileChannel channel, String name) throws IOException {
+        ColumnRef ref = columns.get(name);
+        if (ref == null) {
+            throw new IOException("Missing column: " + name + " in segment: " + file);
+        }
+        ByteBuffer block = readFully(channel, ref.offset, ref.length);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block.array(), 0, ref.length);
+            byte[] raw = new byte[ref.rawLength];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, raw.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != raw.length) {
+                throw new IOException("Truncated column: " + name + " in segment: " + file);
+            }
+            return new DataInputStream(new ByteArrayInputStream(raw));
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted column: " + name + " in segment: " + file, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    protected static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encodes nullable longs as deltas from the previous non null value, shifted by one to encode {@code null}.
+     */
+    protected static byte[] encodeLongs(List<LogEntry> entries, Function<LogEntry, Long> getter) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 2);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            long previous = 0;
+            for (LogEntry entry : entries) {
+                Long value = getter.apply(entry);
+                if (value == null) {
+                    writeVarLong(out, 0);
+                } else {
+                    writeVarLong(out, zigzag(value.longValue() - previous) + 1);
+                    previous = value.longValue();
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    protected static byte[] encodeStrings(List<LogEntry> entries, Function<LogEntry, String> getter)
+            throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[] codes = new int[entries.size()];
+        for (int row = 0; row < codes.length; row++) {
+            String value = getter.apply(entries.get(row));
+            codes[row] = value == null ? -1 : dictionary.computeIfAbsent(value, k -> dictionary.size()).intValue();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 2);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeVarLong(out, dictionary.size());
+            for (String value : dictionary.keySet()) {
+                writeString(out, value);
+            }
+            for (int code : codes) {
+                writeVarLong(out, code + 1L);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    protected static byte[] encodeExtendedInfos(List<LogEntry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 4);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (LogEntry entry : entries) {
+                writeExtendedInfos(out, entry.getExtendedInfos());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    protected static byte[] deflate(byte[] raw) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+            out.write(raw);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    protected static Long time(Date date) {
+        return date == null ? null : Long.valueOf(date.getTime());
+    }
+
+    protected static Date date(long time) {
+        return time == Long.MIN_VALUE ? null : new Date(time);
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarSegment(" + file + ", " + stats + ", columns=" + Arrays.toString(columns.keySet().toArray())
+                + ")";
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.platform.audit.service.partition;
+
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_CATEGORY;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_COMMENT;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_LIFE_CYCLE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_PATH;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_TYPE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_UUID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_DATE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_ID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EXTENDED;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_ID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_LOG_DATE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_PRINCIPAL_NAME;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_REPOSITORY_ID;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.query.sql.model.Literals;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.query.sql.model.Predicate;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.platform.audit.api.ExtendedInfo;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+
+/**
+ * Filter on log entries compiled from the predicate of an {@link org.nuxeo.ecm.platform.audit.api.AuditQueryBuilder}.
+ * <p>
+ * As for the other audit backends only a conjunction of predicates comparing a field to a literal is supported. The
+ * extended infos are referenced with the {@code extended.} prefix. Dates are compared by their epoch milliseconds.
+ *
+ * @since 10.1
+ */
+public class EntryFilter {
+
+    public static final String EXTENDED_PREFIX = LOG_EXTENDED + '.';
+
+    /**
+     * A comparison between a field and a literal.
+     */
+    public static class Condition {
+
+        protected final String field;
+
+        protected final Operator operator;
+
+        protected final Object value;
+
+        protected final Pattern pattern;
+
+        public Condition(String field, Operator operator, Object value) {
+            if (!Operator.EQ.equals(operator) && !Operator.NOTEQ.equals(operator) && !Operator.LT.equals(operator)
+                    && !Operator.LTEQ.equals(operator) && !Operator.GT.equals(operator)
+                    && !Operator.GTEQ.equals(operator) && !Operator.IN.equals(operator)
+                    && !Operator.LIKE.equals(operator)) {
+                throw new NuxeoException("Unsupported operator: " + operator + " on field: " + field);
+            }
+            if (Operator.IN.equals(operator) && !(value instanceof List)) {
+                throw new NuxeoException("IN operator requires a list on field: " + field);
+            }
+            this.field = field;
+            this.operator = operator;
+            this.value = normalize(value);
+            pattern = Operator.LIKE.equals(operator) ? toPattern(String.valueOf(value)) : null;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * Tests the value of the field of an entry.
+         */
+        public boolean test(Object fieldValue) {
+            Object actual = normalize(fieldValue);
+            if (Operator.EQ.equals(operator)) {
+                return same(actual, value);
+            } else if (Operator.NOTEQ.equals(operator)) {
+                return !same(actual, value);
+            } else if (Operator.IN.equals(operator)) {
+                for (Object item : (List<?>) value) {
+                    if (same(actual, item)) {
+                        return true;
+                    }
+                }
+                return false;
+            } else if (Operator.LIKE.equals(operator)) {
+                return actual != null && pattern.matcher(actual.toString()).matches();
+            }
+            if (actual == null || value == null) {
+                return false;
+            }
+            int cmp = compare(actual, value);
+            if (Operator.LT.equals(operator)) {
+                return cmp < 0;
+            } else if (Operator.LTEQ.equals(operator)) {
+                return cmp <= 0;
+            } else if (Operator.GT.equals(operator)) {
+                return cmp > 0;
+            }
+            return cmp >= 0;
+        }
+
+        /**
+         * Tests whether a value in the given range can match the condition.
+         */
+        protected boolean mayMatch(long min, long max) {
+            if (min > max) {
+                // no value
+                return Operator.NOTEQ.equals(operator);
+            }
+            if (Operator.IN.equals(operator)) {
+                for (Object item : (List<?>) value) {
+                    if (!(item instanceof Long) || inRange((Long) item, min, max)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (!(value instanceof Long)) {
+                return true;
+            }
+            long v = ((Long) value).longValue();
+            if (Operator.EQ.equals(operator)) {
+                return inRange(v, min, max);
+            } else if (Operator.LT.equals(operator)) {
+                return min < v;
+            } else if (Operator.LTEQ.equals(operator)) {
+                return min <= v;
+            } else if (Operator.GT.equals(operator)) {
+                return max > v;
+            } else if (Operator.GTEQ.equals(operator)) {
+                return max >= v;
+            }
+            return true;
+        }
+
+        /**
+         * Tests whether a field holding some of the values accepted by the given summary can match the condition.
+         */
+        protected boolean mayContain(java.util.function.Predicate<String> summary) {
+            if (Operator.EQ.equals(operator)) {
+                return !(value instanceof String) || summary.test((String) value);
+            } else if (Operator.IN.equals(operator)) {
+                for (Object item : (List<?>) value) {
+                    if (!(item instanceof String) || summary.test((String) item)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+
+        protected static boolean inRange(long v, long min, long max) {
+            return min <= v && v <= max;
+        }
+
+        @Override
+        public String toString() {
+            return field + " " + operator + " " + value;
+        }
+    }
+
+    public static final EntryFilter ALL = new EntryFilter(Collections.emptyList());
+
+    protected final List<Condition> conditions;
+
+    public EntryFilter(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * Compiles the predicate of an audit query.
+     */
+    public static EntryFilter of(Predicate predicate) {
+        if (predicate == null) {
+            return ALL;
+        }
+        List<Predicate> predicates = new ArrayList<>();
+        if (predicate instanceof MultiExpression) {
+            if (!Operator.AND.equals(predicate.operator)) {
+                throw new NuxeoException("Only AND predicates are supported: " + predicate);
+            }
+            for (Object value : ((MultiExpression) predicate).values) {
+                predicates.add((Predicate) value);
+            }
+        } else {
+            predicates.add(predicate);
+        }
+        List<Condition> conditions = new ArrayList<>(predicates.size());
+        for (Predicate p : predicates) {
+            if (!(p.lvalue instanceof Reference)) {
+                throw new NuxeoException("Unsupported predicate: " + p);
+            }
+            conditions.add(new Condition(((Reference) p.lvalue).name, p.operator, Literals.valueOf(p.rvalue)));
+        }
+        return conditions.isEmpty() ? ALL : new EntryFilter(conditions);
+    }
+
+    public List<Condition> getConditions() {
+        return conditions;
+    }
+
+    public boolean matches(LogEntry entry) {
+        for (Condition condition : conditions) {
+            if (!condition.test(getValue(entry, condition.field))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests whether the partition or segment with the given statistics may contain matching entries.
+     */
+    public boolean mayMatch(PartitionStats stats) {
+        if (stats.getCount() == 0) {
+            return false;
+        }
+        for (Condition condition : conditions) {
+            boolean mayMatch;
+            switch (condition.field) {
+            case LOG_ID:
+                mayMatch = condition.mayMatch(stats.getMinId(), stats.getMaxId());
+                break;
+            case LOG_EVENT_DATE:
+                mayMatch = condition.mayMatch(stats.getMinEventDate(), stats.getMaxEventDate());
+                break;
+            case LOG_LOG_DATE:
+                mayMatch = condition.mayMatch(stats.getMinLogDate(), stats.getMaxLogDate());
+                break;
+            case LOG_EVENT_ID:
+                mayMatch = condition.mayContain(stats::mayContainEventId);
+                break;
+            case LOG_DOC_UUID:
+                mayMatch = condition.mayContain(stats::mayContainDocUUID);
+                break;
+            default:
+                mayMatch = true;
+            }
+            if (!mayMatch) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the value of a field of a log entry.
+     */
+    public static Object getValue(LogEntry entry, String field) {
+        switch (field) {
+        case LOG_ID:
+            return Long.valueOf(entry.getId());
+        case LOG_EVENT_DATE:
+            return entry.getEventDate();
+        case LOG_LOG_DATE:
+            return entry.getLogDate();
+        case LOG_EVENT_ID:
+            return entry.getEventId();
+        case LOG_CATEGORY:
+            return entry.getCategory();
+        case LOG_PRINCIPAL_NAME:
+            return entry.getPrincipalName();
+        case LOG_DOC_UUID:
+            return entry.getDocUUID();
+        case LOG_DOC_PATH:
+            return entry.getDocPath();
+        case LOG_DOC_TYPE:
+            return entry.getDocType();
+        case LOG_DOC_LIFE_CYCLE:
+            return entry.getDocLifeCycle();
+        case LOG_REPOSITORY_ID:
+            return entry.getRepositoryId();
+        case LOG_COMMENT:
+            return entry.getComment();
+        default:
+            if (field.startsWith(EXTENDED_PREFIX)) {
+                return getExtendedValue(entry.getExtendedInfos(), field);
+            }
+            throw new NuxeoException("Unknown log entry field: " + field);
+        }
+    }
+
+    public static Object getExtendedValue(Map<String, ExtendedInfo> infos, String field) {
+        if (infos == null) {
+            return null;
+        }
+        ExtendedInfo info = infos.get(field.substring(EXTENDED_PREFIX.length()));
+        return info == null ? null : info.getSerializableValue();
+    }
+
+    /**
+     * Converts dates to their epoch milliseconds and integers to longs.
+     */
+    protected static Object normalize(Object value) {
+        if (value instanceof Date) {
+            return Long.valueOf(((Date) value).getTime());
+        } else if (value instanceof Calendar) {
+            return Long.valueOf(((Calendar) value).getTimeInMillis());
+        } else if (value instanceof ZonedDateTime) {
+            return Long.valueOf(((ZonedDateTime) value).toInstant().toEpochMilli());
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return Long.valueOf(((Number) value).longValue());
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>(((List<?>) value).size());
+            for (Object item : (List<?>) value) {
+                list.add(normalize(item));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    protected static boolean same(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return compare(a, b) == 0;
+        }
+        return Objects.equals(a, b);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected static int compare(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            return ((Long) a).compareTo((Long) b);
+        } else if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        } else if (a instanceof Comparable && a.getClass() == b.getClass()) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    /**
+     * Converts a LIKE pattern to a regular expression, a pattern without wildcard matches the values containing it.
+     */
+    protected static Pattern toPattern(String like) {
+        if (like.indexOf('%') < 0 && like.indexOf('_') < 0) {
+            return Pattern.compile(".*" + Pattern.quote(like) + ".*", Pattern.DOTALL);
+        }
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : like.toCharArray()) {
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    @Override
+    public String toString() {
+        return "EntryFilter" + conditions;
+    }
+
+}
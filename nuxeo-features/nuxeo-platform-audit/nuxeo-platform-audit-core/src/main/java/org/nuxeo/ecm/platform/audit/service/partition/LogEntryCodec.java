@@ -0,0 +1,276 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.platform.audit.service.partition;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.platform.audit.api.ExtendedInfo;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+
+/**
+ * Compact binary encoding of the log entries.
+ * <p>
+ * Numbers are written as variable length integers, dates as their epoch milliseconds and the extended infos as a typed
+ * value instead of the serialized {@link ExtendedInfo} object. Only the values that are neither a string, a number, a
+ * boolean nor a date fall back to the Java serialization.
+ *
+ * @since 10.1
+ */
+public final class LogEntryCodec {
+
+    protected static final int TYPE_NULL = 0;
+
+    protected static final int TYPE_STRING = 1;
+
+    protected static final int TYPE_LONG = 2;
+
+    protected static final int TYPE_DOUBLE = 3;
+
+    protected static final int TYPE_TRUE = 4;
+
+    protected static final int TYPE_FALSE = 5;
+
+    protected static final int TYPE_DATE = 6;
+
+    protected static final int TYPE_SERIALIZED = 7;
+
+    private LogEntryCodec() {
+    }
+
+    /**
+     * Encodes a log entry.
+     */
+    public static byte[] encode(LogEntry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeVarLong(out, entry.getId());
+            writeDate(out, entry.getEventDate());
+            writeDate(out, entry.getLogDate());
+            writeString(out, entry.getEventId());
+            writeString(out, entry.getCategory());
+            writeString(out, entry.getPrincipalName());
+            writeString(out, entry.getDocUUID());
+            writeString(out, entry.getDocPath());
+            writeString(out, entry.getDocType());
+            writeString(out, entry.getDocLifeCycle());
+            writeString(out, entry.getRepositoryId());
+            writeString(out, entry.getComment());
+            writeExtendedInfos(out, entry.getExtendedInfos());
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to encode log entry: " + entry.getId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a log entry.
+     *
+     * @param factory creates the extended infos from their values
+     */
+    public static LogEntry decode(byte[] data, Function<Serializable, ExtendedInfo> factory) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            LogEntry entry = new LogEntryImpl();
+            entry.setId(readVarLong(in));
+            entry.setEventDate(readDate(in));
+            entry.setLogDate(readDate(in));
+            entry.setEventId(readString(in));
+            entry.setCategory(readString(in));
+            entry.setPrincipalName(readString(in));
+            entry.setDocUUID(readString(in));
+            entry.setDocPath(readString(in));
+            entry.setDocType(readString(in));
+            entry.setDocLifeCycle(readString(in));
+            entry.setRepositoryId(readString(in));
+            entry.setComment(readString(in));
+            entry.setExtendedInfos(readExtendedInfos(in, factory));
+            return entry;
+        } catch (IOException e) {
+            throw new NuxeoException("Unable to decode log entry", e);
+        }
+    }
+
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes a nullable string, its length is shifted by one to encode {@code null}.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a nullable date, its time is shifted by one to encode {@code null}.
+     */
+    public static void writeDate(DataOutput out, Date value) throws IOException {
+        writeVarLong(out, value == null ? 0 : zigzag(value.getTime()) + 1);
+    }
+
+    public static Date readDate(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        return value == 0 ? null : new Date(unzigzag(value - 1));
+    }
+
+    public static void writeExtendedInfos(DataOutput out, Map<String, ExtendedInfo> infos) throws IOException {
+        if (infos == null || infos.isEmpty()) {
+            writeVarLong(out, 0);
+            return;
+        }
+        writeVarLong(out, infos.size());
+        for (Map.Entry<String, ExtendedInfo> info : infos.entrySet()) {
+            writeString(out, info.getKey());
+            writeValue(out, info.getValue() == null ? null : info.getValue().getSerializableValue());
+        }
+    }
+
+    public static Map<String, ExtendedInfo> readExtendedInfos(DataInput in,
+            Function<Serializable, ExtendedInfo> factory) throws IOException {
+        int size = (int) readVarLong(in);
+        if (size == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, ExtendedInfo> infos = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            Serializable value = readValue(in);
+            if (value != null) {
+                infos.put(key, factory.apply(value));
+            }
+        }
+        return infos;
+    }
+
+    protected static void writeValue(DataOutput out, Serializable value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            out.writeByte(TYPE_LONG);
+            writeVarLong(out, zigzag(((Number) value).longValue()));
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(((Boolean) value).booleanValue() ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Date) {
+            out.writeByte(TYPE_DATE);
+            writeVarLong(out, zigzag(((Date) value).getTime()));
+        } else {
+            out.writeByte(TYPE_SERIALIZED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                oos.writeObject(value);
+            }
+            writeVarLong(out, bytes.size());
+            out.write(bytes.toByteArray());
+        }
+    }
+
+    protected static Serializable readValue(DataInput in) throws IOException {
+        int type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_STRING:
+            return readString(in);
+        case TYPE_LONG:
+            return Long.valueOf(unzigzag(readVarLong(in)));
+        case TYPE_DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case TYPE_TRUE:
+            return Boolean.TRUE;
+        case TYPE_FALSE:
+            return Boolean.FALSE;
+        case TYPE_DATE:
+            return new Date(unzigzag(readVarLong(in)));
+        case TYPE_SERIALIZED:
+            byte[] bytes = new byte[(int) readVarLong(in)];
+            in.readFully(bytes);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (Serializable) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unable to deserialize extended info", e);
+            }
+        default:
+            throw new IOException("Unknown extended info type: " + type);
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.platform.audit.service.partition;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+
+/**
+ * Number of entries, value ranges of the ids and dates, and summaries of the event ids and document ids of a set of
+ * log entries, used to skip the partitions that cannot match a query.
+ * <p>
+ * The distinct event ids are kept up to {@link #MAX_EVENT_IDS} values. The document ids are summarized by a bloom
+ * filter, which may report a document that is not there but never misses one.
+ *
+ * @since 10.1
+ */
+public class PartitionStats {
+
+    public static final int MAX_EVENT_IDS = 256;
+
+    public static final int DEFAULT_DOC_UUID_BITS = 1 << 16;
+
+    protected static final int DOC_UUID_HASHES = 3;
+
+    protected long count;
+
+    protected long minId = Long.MAX_VALUE;
+
+    protected long maxId = Long.MIN_VALUE;
+
+    protected long minEventDate = Long.MAX_VALUE;
+
+    protected long maxEventDate = Long.MIN_VALUE;
+
+    protected long minLogDate = Long.MAX_VALUE;
+
+    protected long maxLogDate = Long.MIN_VALUE;
+
+    /** The distinct event ids, {@code null} if there are too many or they are unknown. */
+    protected Set<String> eventIds = new HashSet<>();
+
+    protected int docUUIDBits;
+
+    /** The bits of the document ids bloom filter, {@code null} until a document id is added. */
+    protected long[] docUUIDs;
+
+    protected boolean docUUIDsKnown = true;
+
+    public PartitionStats() {
+        this(DEFAULT_DOC_UUID_BITS);
+    }
+
+    /**
+     * Creates statistics whose document ids bloom filter is sized for the given number of distinct document ids.
+     */
+    public static PartitionStats forDocUUIDs(long distinct) {
+        long bits = Math.max(1024, Long.highestOneBit(Math.min(distinct, 1 << 26) * 10) << 1);
+        return new PartitionStats((int) bits);
+    }
+
+    protected PartitionStats(int docUUIDBits) {
+        this.docUUIDBits = docUUIDBits;
+    }
+
+    public void update(LogEntry entry) {
+        count++;
+        minId = Math.min(minId, entry.getId());
+        maxId = Math.max(maxId, entry.getId());
+        Date eventDate = entry.getEventDate();
+        if (eventDate != null) {
+            minEventDate = Math.min(minEventDate, eventDate.getTime());
+            maxEventDate = Math.max(maxEventDate, eventDate.getTime());
+        }
+        Date logDate = entry.getLogDate();
+        if (logDate != null) {
+            minLogDate = Math.min(minLogDate, logDate.getTime());
+            maxLogDate = Math.max(maxLogDate, logDate.getTime());
+        }
+        addEventId(entry.getEventId());
+        String docUUID = entry.getDocUUID();
+        if (docUUID != null && docUUIDsKnown) {
+            if (docUUIDs == null) {
+                docUUIDs = new long[docUUIDBits / 64];
+            }
+            int hash = docUUID.hashCode();
+            int step = mix(hash);
+            for (int i = 0; i < DOC_UUID_HASHES; i++) {
+                int bit = (hash + i * step) & (docUUIDBits - 1);
+                docUUIDs[bit >>> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    protected void addEventId(String eventId) {
+        if (eventIds != null && eventIds.add(eventId) && eventIds.size() > MAX_EVENT_IDS) {
+            eventIds = null;
+        }
+    }
+
+    public void merge(PartitionStats other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            eventIds = other.eventIds == null ? null : new HashSet<>(other.eventIds);
+            docUUIDBits = other.docUUIDBits;
+            docUUIDs = other.docUUIDs == null ? null : other.docUUIDs.clone();
+            docUUIDsKnown = other.docUUIDsKnown;
+        } else {
+            if (other.eventIds == null) {
+                eventIds = null;
+            } else {
+                other.eventIds.forEach(this::addEventId);
+            }
+            if (!other.docUUIDsKnown) {
+                docUUIDsKnown = false;
+            }
+            if (docUUIDsKnown && other.docUUIDs != null) {
+                if (docUUIDs == null) {
+                    docUUIDBits = other.docUUIDBits;
+                    docUUIDs = other.docUUIDs.clone();
+                } else if (docUUIDBits == other.docUUIDBits) {
+                    for (int i = 0; i < docUUIDs.length; i++) {
+                        docUUIDs[i] |= other.docUUIDs[i];
+                    }
+                } else {
+                    // filters of different sizes cannot be combined
+                    docUUIDsKnown = false;
+                }
+            }
+            if (!docUUIDsKnown) {
+                docUUIDs = null;
+            }
+        }
+        count += other.count;
+        minId = Math.min(minId, other.minId);
+        maxId = Math.max(maxId, other.maxId);
+        minEventDate = Math.min(minEventDate, other.minEventDate);
+        maxEventDate = Math.max(maxEventDate, other.maxEventDate);
+        minLogDate = Math.min(minLogDate, other.minLogDate);
+        maxLogDate = Math.max(maxLogDate, other.maxLogDate);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMinId() {
+        return minId;
+    }
+
+    public long getMaxId() {
+        return maxId;
+    }
+
+    public long getMinEventDate() {
+        return minEventDate;
+    }
+
+    public long getMaxEventDate() {
+        return maxEventDate;
+    }
+
+    public long getMinLogDate() {
+        return minLogDate;
+    }
+
+    public long getMaxLogDate() {
+        return maxLogDate;
+    }
+
+    /**
+     * Returns {@code false} if no entry has the given event id.
+     */
+    public boolean mayContainEventId(String eventId) {
+        return eventIds == null || eventIds.contains(eventId);
+    }
+
+    /**
+     * Returns {@code false} if no entry has the given document id.
+     */
+    public boolean mayContainDocUUID(String docUUID) {
+        if (!docUUIDsKnown) {
+            return true;
+        } else if (docUUIDs == null || docUUID == null) {
+            return docUUID == null;
+        }
+        int hash = docUUID.hashCode();
+        int step = mix(hash);
+        for (int i = 0; i < DOC_UUID_HASHES; i++) {
+            int bit = (hash + i * step) & (docUUIDBits - 1);
+            if ((docUUIDs[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Derives a second hash, odd so that the probes of the bloom filter are distinct.
+     */
+    protected static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) | 1;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(minId);
+        out.writeLong(maxId);
+        out.writeLong(minEventDate);
+        out.writeLong(maxEventDate);
+        out.writeLong(minLogDate);
+        out.writeLong(maxLogDate);
+        if (eventIds == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(eventIds.size());
+            for (String eventId : eventIds) {
+                out.writeBoolean(eventId != null);
+                if (eventId != null) {
+                    out.writeUTF(eventId);
+                }
+            }
+        }
+        if (!docUUIDsKnown) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(docUUIDBits);
+            out.writeBoolean(docUUIDs != null);
+            if (docUUIDs != null) {
+                for (long bits : docUUIDs) {
+                    out.writeLong(bits);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads statistics written by {@link #write}, the ones written before the summaries were added only hold the
+     * ranges.
+     */
+    public static PartitionStats read(DataInput in, boolean withSummaries) throws IOException {
+        PartitionStats stats = new PartitionStats();
+        stats.count = in.readLong();
+        stats.minId = in.readLong();
+        stats.maxId = in.readLong();
+        stats.minEventDate = in.readLong();
+        stats.maxEventDate = in.readLong();
+        stats.minLogDate = in.readLong();
+        stats.maxLogDate = in.readLong();
+        if (!withSummaries) {
+            stats.eventIds = null;
+            stats.docUUIDsKnown = false;
+            return stats;
+        }
+        int size = in.readInt();
+        if (size < 0) {
+            stats.eventIds = null;
+        } else {
+            for (int i = 0; i < size; i++) {
+                stats.eventIds.add(in.readBoolean() ? in.readUTF() : null);
+            }
+        }
+        int bits = in.readInt();
+        if (bits < 0) {
+            stats.docUUIDsKnown = false;
+        } else {
+            stats.docUUIDBits = bits;
+            if (in.readBoolean()) {
+                stats.docUUIDs = new long[bits / 64];
+                for (int i = 0; i < stats.docUUIDs.length; i++) {
+                    stats.docUUIDs[i] = in.readLong();
+                }
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionStats(count=" + count + ", ids=[" + minId + ", " + maxId + "], eventDates=[" + minEventDate
+                + ", " + maxEventDate + "], logDates=[" + minLogDate + ", " + maxLogDate + "])";
+    }
+
+}
@@ -0,0 +1,302 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.platform.audit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_UUID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_DATE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_ID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_ID;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.ScrollResult;
+import org.nuxeo.ecm.core.query.sql.model.Predicate;
+import org.nuxeo.ecm.platform.audit.api.AuditQueryBuilder;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.api.OrderByExprs;
+import org.nuxeo.ecm.platform.audit.api.Predicates;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+import org.nuxeo.ecm.platform.audit.service.partition.AuditPartition;
+import org.nuxeo.ecm.platform.audit.service.partition.EntryFilter;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+import org.nuxeo.runtime.test.runner.RuntimeFeature;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@RunWith(FeaturesRunner.class)
+@Features(RuntimeFeature.class)
+@LocalDeploy({ "org.nuxeo.ecm.core:OSGI-INF/uidgenerator-service.xml",
+        "org.nuxeo.ecm.platform.audit.tests:test-audit-sequencer-contrib.xml" })
+public class TestPartitionedAuditBackend {
+
+    protected static final LocalDate DAY = LocalDate.of(2018, 3, 1);
+
+    protected static final long START = DAY.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected final List<PartitionedAuditBackend> backends = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        backends.forEach(PartitionedAuditBackend::onApplicationStopped);
+        Framework.getProperties().remove(PartitionedAuditBackend.DIRECTORY_PROPERTY);
+        Framework.getProperties().remove(PartitionedAuditBackend.NODE_ID_PROPERTY);
+    }
+
+    protected PartitionedAuditBackend newBackend(String name) {
+        return newBackend(name, AuditPartition.DEFAULT_NODE_ID);
+    }
+
+    protected PartitionedAuditBackend newBackend(String name, String nodeId) {
+        Framework.getProperties().setProperty(PartitionedAuditBackend.DIRECTORY_PROPERTY,
+                new File(folder.getRoot(), name).getPath());
+        Framework.getProperties().setProperty(PartitionedAuditBackend.NODE_ID_PROPERTY, nodeId);
+        PartitionedAuditBackend backend = new PartitionedAuditBackend();
+        backend.onApplicationStarted();
+        backends.add(backend);
+        return backend;
+    }
+
+    protected List<LogEntry> newEntries(int count) {
+        List<LogEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LogEntry entry = new LogEntryImpl();
+            entry.setEventId("documentModified");
+            entry.setEventDate(new Date());
+            entry.setDocUUID("doc" + i);
+            entry.setCategory("eventDocumentCategory");
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    protected String toJson(long id, int day, String eventId, String docUUID) throws Exception {
+        LogEntry entry = new LogEntryImpl();
+        entry.setId(id);
+        entry.setEventId(eventId);
+        Date date = new Date(START + TimeUnit.DAYS.toMillis(day) + id * 1000L);
+        entry.setEventDate(date);
+        entry.setLogDate(date);
+        entry.setDocUUID(docUUID);
+        entry.setCategory("eventDocumentCategory");
+        entry.setRepositoryId("test");
+        return MAPPER.writeValueAsString(entry);
+    }
+
+    /**
+     * Appends 20 entries per day on 3 days, with ids 1 to 60.
+     */
+    protected void appendEntries(PartitionedAuditBackend backend) throws Exception {
+        List<String> entries = new ArrayList<>();
+        for (long id = 1; id <= 60; id++) {
+            entries.add(toJson(id, (int) (id - 1) / 20, id % 2 == 0 ? "documentModified" : "documentCreated",
+                    "doc" + id % 5));
+        }
+        backend.append(entries);
+    }
+
+    protected static List<Long> ids(List<LogEntry> entries) {
+        return entries.stream().map(entry -> Long.valueOf(entry.getId())).collect(Collectors.toList());
+    }
+
+    protected static List<Long> ids(long from, long to, long step) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = from; step > 0 ? id <= to : id >= to; id += step) {
+            ids.add(Long.valueOf(id));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testIdsAreUniqueAcrossNodes() throws Exception {
+        // two nodes sharing the storage and the sequence
+        PartitionedAuditBackend node1 = newBackend("cluster", "node1");
+        PartitionedAuditBackend node2 = newBackend("cluster", "node2");
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            List<LogEntry> entries = newEntries(3);
+            node1.addLogEntries(entries);
+            entries.forEach(entry -> assertTrue(ids.add(Long.valueOf(entry.getId()))));
+            entries = newEntries(3);
+            node2.addLogEntries(entries);
+            entries.forEach(entry -> assertTrue(ids.add(Long.valueOf(entry.getId()))));
+        }
+        assertEquals(30, ids.size());
+
+        // the ids allocated after a restore come after the restored ones
+        node1.append(Collections.singletonList(toJson(1000, 0, "documentCreated", "restored")));
+        List<LogEntry> entries = newEntries(1);
+        node2.addLogEntries(entries);
+        assertTrue(entries.get(0).getId() > 1000);
+        // each node sees the entries of the other one, including in a day only written by the other one
+        assertEquals("restored", node1.getLogEntryByID(1000).getDocUUID());
+        assertEquals("restored", node2.getLogEntryByID(1000).getDocUUID());
+        assertEquals(Long.valueOf(31), node1.getEventsCount("documentModified"));
+        assertEquals(Long.valueOf(31), node2.getEventsCount("documentModified"));
+    }
+
+    @Test
+    public void testCompactionWhileAnotherNodeAppends() throws Exception {
+        PartitionedAuditBackend node1 = newBackend("compaction", "node1");
+        PartitionedAuditBackend node2 = newBackend("compaction", "node2");
+        appendEntries(node1);
+        node2.append(Collections.singletonList(toJson(61, 0, "documentLocked", "locked")));
+        // node1 only compacts its own row logs, node2 keeps on appending to the same days
+        node1.compact(DAY.plusDays(3));
+        node2.append(Collections.singletonList(toJson(62, 1, "documentLocked", "locked")));
+        for (PartitionedAuditBackend backend : backends) {
+            assertEquals(ids(1, 62, 1), ids(backend.queryLogs(new AuditQueryBuilder())));
+            assertEquals(Long.valueOf(2), backend.getEventsCount("documentLocked"));
+        }
+        node2.compact(DAY.plusDays(3));
+        assertEquals(ids(1, 62, 1), ids(node1.queryLogs(new AuditQueryBuilder())));
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        PartitionedAuditBackend backend = newBackend("paging");
+        appendEntries(backend);
+        // first day in a segment, the other ones in row logs
+        backend.compact(DAY.plusDays(1));
+
+        AuditQueryBuilder history = new AuditQueryBuilder().predicates(Predicates.eq(LOG_DOC_UUID, "doc1"))
+                                                           .order(OrderByExprs.desc(LOG_ID));
+        List<LogEntry> all = backend.queryLogs(history);
+        assertEquals(ids(56, 1, -5), ids(all));
+        List<Long> paged = new ArrayList<>();
+        for (long offset = 0; offset < all.size(); offset += 5) {
+            paged.addAll(ids(backend.queryLogs(new AuditQueryBuilder().predicates(Predicates.eq(LOG_DOC_UUID, "doc1"))
+                                                                      .order(OrderByExprs.desc(LOG_ID))
+                                                                      .offset(offset)
+                                                                      .limit(5))));
+        }
+        assertEquals(ids(all), paged);
+        assertEquals(Collections.emptyList(),
+                backend.queryLogs(new AuditQueryBuilder().offset(100).limit(5)));
+
+        // sorted on the id by default
+        assertEquals(ids(1, 3, 1), ids(backend.queryLogs(new AuditQueryBuilder().limit(3))));
+        assertEquals(ids(39, 41, 1), ids(backend.queryLogs(new AuditQueryBuilder().offset(38).limit(3))));
+
+        // sorted on a field partitions cannot be pruned on
+        List<LogEntry> page = backend.queryLogs(
+                new AuditQueryBuilder().predicates(Predicates.eq(LOG_EVENT_ID, "documentCreated"))
+                                       .orders(OrderByExprs.asc(LOG_DOC_UUID), OrderByExprs.desc(LOG_EVENT_DATE))
+                                       .offset(1)
+                                       .limit(2));
+        assertEquals(ids(45, 35, -10), ids(page));
+
+        assertEquals("documentModified", backend.getLogEntryByID(42).getEventId());
+        assertNull(backend.getLogEntryByID(999));
+    }
+
+    @Test
+    public void testScroll() throws Exception {
+        PartitionedAuditBackend backend = newBackend("scroll");
+        appendEntries(backend);
+        backend.compact(DAY.plusDays(1));
+
+        ScrollResult<String> result = backend.scroll(
+                new AuditQueryBuilder().predicates(Predicates.eq(LOG_DOC_UUID, "doc2")), 5, 10);
+        List<Long> ids = new ArrayList<>();
+        while (result.hasResults()) {
+            assertTrue(result.getResults().size() <= 5);
+            for (String json : result.getResults()) {
+                ids.add(Long.valueOf(MAPPER.readValue(json, LogEntryImpl.class).getId()));
+            }
+            result = backend.scroll(result.getScrollId());
+        }
+        assertEquals(ids(2, 57, 5), ids);
+    }
+
+    @Test
+    public void testEventsCount() throws Exception {
+        PartitionedAuditBackend backend = newBackend("count");
+        appendEntries(backend);
+        assertEquals(Long.valueOf(30), backend.getEventsCount("documentModified"));
+        assertEquals(Long.valueOf(30), backend.getEventsCount("documentCreated"));
+        assertEquals(Long.valueOf(0), backend.getEventsCount("documentLocked"));
+
+        backend.compact(DAY.plusDays(2));
+        backend.addLogEntries(newEntries(4));
+        assertEquals(Long.valueOf(34), backend.getEventsCount("documentModified"));
+        assertEquals(Long.valueOf(30), backend.getEventsCount("documentCreated"));
+        assertEquals(Long.valueOf(0), backend.getEventsCount("documentLocked"));
+    }
+
+    @Test
+    public void testPruningOnEventAndDocument() throws Exception {
+        PartitionedAuditBackend backend = newBackend("pruning");
+        appendEntries(backend);
+        backend.append(Collections.singletonList(toJson(61, 2, "documentLocked", "locked")));
+        checkPruning(backend);
+        // the summaries are kept in the segments
+        backend.compact(DAY.plusDays(3));
+        checkPruning(backend);
+        backend.onApplicationStopped();
+        backends.remove(backend);
+        checkPruning(newBackend("pruning"));
+    }
+
+    protected void checkPruning(PartitionedAuditBackend backend) {
+        List<LocalDate> lastDay = Collections.singletonList(DAY.plusDays(2));
+        assertEquals(lastDay, getCandidateDays(backend, Predicates.eq(LOG_EVENT_ID, "documentLocked")));
+        assertEquals(lastDay, getCandidateDays(backend, Predicates.eq(LOG_DOC_UUID, "locked")));
+        assertEquals(Collections.emptyList(), getCandidateDays(backend, Predicates.eq(LOG_EVENT_ID, "unknown")));
+        assertEquals(3, getCandidateDays(backend, Predicates.eq(LOG_DOC_UUID, "doc1")).size());
+        assertEquals(Long.valueOf(1), backend.getEventsCount("documentLocked"));
+        assertEquals(ids(61, 61, 1), ids(backend.queryLogs(
+                new AuditQueryBuilder().predicates(Predicates.eq(LOG_DOC_UUID, "locked")))));
+    }
+
+    protected List<LocalDate> getCandidateDays(PartitionedAuditBackend backend, Predicate predicate) {
+        EntryFilter filter = EntryFilter.of(predicate);
+        return backend.partitions.values()
+                                 .stream()
+                                 .filter(partition -> partition.mayMatch(filter))
+                                 .map(AuditPartition::getDay)
+                                 .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.platform.audit.service.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_UUID;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_DATE;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_EVENT_ID;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.platform.audit.api.AuditQueryBuilder;
+import org.nuxeo.ecm.platform.audit.api.ExtendedInfo;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.api.Predicates;
+import org.nuxeo.ecm.platform.audit.impl.ExtendedInfoImpl;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+
+public class TestAuditPartition {
+
+    protected static final LocalDate DAY = LocalDate.of(2018, 3, 1);
+
+    protected static final long START = DAY.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected AuditPartition newPartition() throws Exception {
+        return new AuditPartition(new File(folder.getRoot(), DAY.toString()).toPath(), DAY,
+                ExtendedInfoImpl::createExtendedInfo);
+    }
+
+    protected AuditPartition newPartition(String nodeId, int maxRows) throws Exception {
+        return new AuditPartition(new File(folder.getRoot(), DAY.toString()).toPath(), DAY, nodeId, maxRows,
+                ExtendedInfoImpl::createExtendedInfo);
+    }
+
+    protected List<LogEntry> newEntries(int count) {
+        List<LogEntry> entries = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            LogEntry entry = new LogEntryImpl();
+            entry.setId(i);
+            entry.setEventId(i % 2 == 0 ? "documentModified" : "documentCreated");
+            entry.setEventDate(new Date(START + i * 1000L));
+            entry.setLogDate(new Date(START + i * 1000L));
+            entry.setDocUUID("doc" + (i % 10));
+            entry.setCategory("eventDocumentCategory");
+            entry.setRepositoryId("test");
+            Map<String, ExtendedInfo> infos = new HashMap<>();
+            infos.put("index", ExtendedInfoImpl.createExtendedInfo(Long.valueOf(i)));
+            infos.put("title", ExtendedInfoImpl.createExtendedInfo("title" + i));
+            entry.setExtendedInfos(infos);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    protected EntryFilter filter(AuditQueryBuilder builder) {
+        return EntryFilter.of(builder.predicate());
+    }
+
+    @Test
+    public void testCodec() {
+        LogEntry entry = newEntries(1).get(0);
+        entry.setComment(null);
+        entry.getExtendedInfos().put("flag", ExtendedInfoImpl.createExtendedInfo(Boolean.TRUE));
+        entry.getExtendedInfos().put("date", ExtendedInfoImpl.createExtendedInfo(new Date(START)));
+        LogEntry decoded = LogEntryCodec.decode(LogEntryCodec.encode(entry), ExtendedInfoImpl::createExtendedInfo);
+        assertEquals(entry.getId(), decoded.getId());
+        assertEquals(entry.getEventDate(), decoded.getEventDate());
+        assertEquals(entry.getDocUUID(), decoded.getDocUUID());
+        assertNull(decoded.getComment());
+        assertEquals(Long.valueOf(1), decoded.getExtendedInfos().get("index").getValue(Long.class));
+        assertEquals("title1", decoded.getExtendedInfos().get("title").getValue(String.class));
+        assertEquals(Boolean.TRUE, decoded.getExtendedInfos().get("flag").getValue(Boolean.class));
+        assertEquals(new Date(START), decoded.getExtendedInfos().get("date").getValue(Date.class));
+    }
+
+    @Test
+    public void testScanBeforeAndAfterCompaction() throws Exception {
+        AuditPartition partition = newPartition();
+        partition.append(newEntries(100));
+        assertTrue(partition.hasRows());
+        checkScan(partition);
+
+        partition.compact();
+        assertFalse(partition.hasRows());
+        assertEquals(100, partition.getStats().getCount());
+        checkScan(partition);
+
+        // appended after compaction
+        List<LogEntry> more = newEntries(110).subList(100, 110);
+        partition.append(more);
+        assertEquals(110, partition.getStats().getCount());
+        assertEquals(11, partition.scan(filter(new AuditQueryBuilder().predicates(
+                Predicates.eq(LOG_DOC_UUID, "doc3")))).size());
+        partition.close();
+
+        // reopen
+        partition = newPartition();
+        assertEquals(110, partition.getStats().getCount());
+        partition.compact();
+        assertEquals(110, partition.scan(EntryFilter.ALL).size());
+        partition.close();
+    }
+
+    protected void checkScan(AuditPartition partition) {
+        assertEquals(100, partition.scan(EntryFilter.ALL).size());
+        assertEquals(50, partition.scan(filter(new AuditQueryBuilder().predicates(
+                Predicates.eq(LOG_EVENT_ID, "documentModified")))).size());
+        List<LogEntry> entries = partition.scan(filter(new AuditQueryBuilder().predicates(
+                Predicates.eq(LOG_DOC_UUID, "doc3"), Predicates.gt(LOG_EVENT_DATE, new Date(START + 50000L)))));
+        assertEquals(5, entries.size());
+        entries = partition.scan(filter(new AuditQueryBuilder().predicates(Predicates.eq("extended.index", 42L))));
+        assertEquals(1, entries.size());
+        assertEquals(42, entries.get(0).getId());
+        assertEquals("title42", entries.get(0).getExtendedInfos().get("title").getValue(String.class));
+    }
+
+    @Test
+    public void testPruning() throws Exception {
+        AuditPartition partition = newPartition();
+        partition.append(newEntries(10));
+        PartitionStats stats = partition.getStats();
+        assertTrue(filter(new AuditQueryBuilder().predicates(
+                Predicates.lt(LOG_EVENT_DATE, new Date(START + 5000L)))).mayMatch(stats));
+        assertFalse(filter(new AuditQueryBuilder().predicates(
+                Predicates.gt(LOG_EVENT_DATE, new Date(START + 20000L)))).mayMatch(stats));
+        assertFalse(filter(new AuditQueryBuilder().predicates(Predicates.eq("id", 42L))).mayMatch(stats));
+        partition.close();
+    }
+
+    @Test
+    public void testTruncatedRowLog() throws Exception {
+        AuditPartition partition = newPartition();
+        partition.append(newEntries(10));
+        partition.close();
+        // simulate a crash in the middle of an append
+        File rows = partition.getRowsFile(AuditPartition.DEFAULT_NODE_ID, 0).toFile();
+        try (FileOutputStream out = new FileOutputStream(rows, true)) {
+            out.write(new byte[] { 0, 0, 0, 50, 1, 2 });
+        }
+        partition = newPartition();
+        assertEquals(10, partition.getStats().getCount());
+        partition.append(Collections.singletonList(newEntries(11).get(10)));
+        assertEquals(11, partition.scan(EntryFilter.ALL).size());
+        partition.close();
+    }
+
+    @Test
+    public void testCompactionIsBoundedByGeneration() throws Exception {
+        AuditPartition partition = newPartition("node1", 30);
+        partition.append(newEntries(100));
+        assertEquals(100, partition.getStats().getCount());
+        partition.compact();
+        assertFalse(partition.hasRows());
+        // each generation is compacted into its own segment
+        String[] segments = partition.directory.toFile().list((dir, name) -> name.startsWith(AuditPartition.SEGMENT));
+        assertEquals(4, segments.length);
+        checkScan(partition);
+        partition.close();
+    }
+
+    @Test
+    public void testSharedDirectory() throws Exception {
+        List<LogEntry> entries = newEntries(100);
+        AuditPartition partition1 = newPartition("node1", 20);
+        AuditPartition partition2 = newPartition("node2", 20);
+        partition1.append(entries.subList(0, 50));
+        partition2.append(entries.subList(50, 70));
+        // each node reads the row logs of the other one
+        assertEquals(70, partition1.getStats().getCount());
+        assertEquals(70, partition2.scan(EntryFilter.ALL).size());
+
+        // node1 compacts its own row logs while node2 keeps on appending
+        partition1.compact();
+        assertFalse(partition1.hasRows());
+        assertTrue(partition2.hasRows());
+        partition2.append(entries.subList(70, 100));
+        checkScan(partition1);
+        checkScan(partition2);
+
+        partition2.compact();
+        checkScan(partition1);
+        assertEquals(100, partition1.count(EntryFilter.ALL));
+        partition1.close();
+        partition2.close();
+    }
+
+    @Test
+    public void testScanDuringCompaction() throws Exception {
+        AuditPartition writer = newPartition("node1", 10);
+        AuditPartition reader = newPartition("node2", 10);
+        writer.append(newEntries(100));
+        List<LogEntry> scanned = new ArrayList<>();
+        // the generations compacted while the reader is in the middle of its scan are neither lost nor read twice
+        reader.scan(EntryFilter.ALL, entry -> {
+            if (scanned.isEmpty()) {
+                writer.compact();
+            }
+            scanned.add(entry);
+        });
+        assertEquals(100, scanned.size());
+        assertEquals(100, scanned.stream().mapToLong(LogEntry::getId).distinct().count());
+        writer.close();
+        reader.close();
+    }
+
+    @Test
+    public void testSameNodeIdIsRejected() throws Exception {
+        AuditPartition partition1 = newPartition("node1", 10);
+        AuditPartition partition2 = newPartition("node1", 10);
+        partition1.append(newEntries(1));
+        try {
+            partition2.append(newEntries(1));
+            fail();
+        } catch (NuxeoException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("already written"));
+        }
+        partition1.close();
+        // the lock is released once the writer is closed
+        partition2.append(newEntries(2).subList(1, 2));
+        assertEquals(2, partition2.scan(EntryFilter.ALL).size());
+        partition2.close();
+    }
+
+}
@@ -52,6 +52,15 @@ public class PictureViewsGenerationWork extends AbstractWork {
 
     protected final String xpath;
 
+    /**
+     * Constructor used by {@link org.nuxeo.ecm.core.work.BinaryWorkCodec} when decoding.
+     *
+     * @since 10.1
+     */
+    protected PictureViewsGenerationWork() {
+        xpath = null;
+    }
+
     public PictureViewsGenerationWork(String repositoryName, String docId, String xpath) {
         super(repositoryName + ':' + docId + ':' + xpath + ":pictureView");
         setDocument(repositoryName, docId);
@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.platform.picture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.BinaryWorkCodec;
+import org.nuxeo.ecm.core.work.WorkComputation;
+
+/**
+ * Checks that the {@link PictureViewsGenerationWork} is encoded field by field by the {@link BinaryWorkCodec}.
+ *
+ * @since 10.1
+ */
+public class TestPictureViewsGenerationWorkCodec {
+
+    @Test
+    public void testRoundTrip() {
+        BinaryWorkCodec codec = new BinaryWorkCodec();
+        PictureViewsGenerationWork work = new PictureViewsGenerationWork("test", "doc1", "file:content");
+        byte[] data = codec.encode(work);
+        // encoded field by field, not as a Java serialized fallback
+        assertTrue(data.length < WorkComputation.serialize(work).length);
+        PictureViewsGenerationWork decoded = (PictureViewsGenerationWork) codec.decode(data);
+        assertEquals("test:doc1:file:content:pictureView", decoded.getId());
+        assertEquals("file:content", decoded.xpath);
+        assertEquals("test", decoded.getDocument().getServerName());
+        assertEquals("doc1", decoded.getDocument().getIdRef().value);
+    }
+
+}
@@ -69,6 +69,15 @@ public interface KeyValueStore {
      */
     void put(String key, String value, long ttl);
 
+    /**
+     * Sets the values associated to the keys, and a TTL.
+     *
+     * @param values the key/value map, where a {@code null} value removes the key
+     * @param ttl the TTL, in seconds (0 for infinite)
+     * @since 10.1
+     */
+    void put(Map<String, byte[]> values, long ttl);
+
     /**
      * Sets the TTL for an existing key.
      *
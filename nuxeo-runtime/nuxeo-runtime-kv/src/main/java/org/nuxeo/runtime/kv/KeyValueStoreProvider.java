@@ -44,6 +44,20 @@ public interface KeyValueStoreProvider extends KeyValueStore {
      */
     Stream<String> keyStream();
 
+    /**
+     * Gets the remaining time to live of a key.
+     * <p>
+     * The default implementation cannot tell and returns {@code -1}.
+     *
+     * @param key the key
+     * @return the remaining TTL in seconds, {@code 0} if the key has no TTL, or {@code -1} if the key has no value, if
+     *         it expires in less than a second, or if the remaining TTL is unknown
+     * @since 10.1
+     */
+    default long getTTL(String key) {
+        return -1;
+    }
+
     /**
      * Closes this Key/Value store provider.
      */
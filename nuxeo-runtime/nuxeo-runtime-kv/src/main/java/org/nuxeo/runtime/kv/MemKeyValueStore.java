@@ -20,6 +20,7 @@ package org.nuxeo.runtime.kv;
 
 import java.lang.reflect.Field;
 import java.util.Arrays;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
@@ -105,6 +106,21 @@ public class MemKeyValueStore extends AbstractKeyValueStoreProvider {
         return true;
     }
 
+    @Override
+    public long getTTL(String key) {
+        Objects.requireNonNull(key);
+        try {
+            // the keys without TTL have the default map expiration
+            if (map.getExpiration(key) == map.getExpiration()) {
+                return 0;
+            }
+            long remaining = TimeUnit.MILLISECONDS.toSeconds(map.getExpectedExpiration(key));
+            return remaining > 0 ? remaining : -1;
+        } catch (NoSuchElementException e) {
+            return -1;
+        }
+    }
+
     protected void doSetTTL(String key, long ttl) {
         if (ttl == 0) {
             map.setExpiration(key, Integer.MAX_VALUE, TimeUnit.DAYS);
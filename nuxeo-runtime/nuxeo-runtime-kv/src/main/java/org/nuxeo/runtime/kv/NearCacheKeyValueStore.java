@@ -0,0 +1,486 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.kv;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.pubsub.AbstractPubSubBroker;
+import org.nuxeo.runtime.pubsub.PubSubService;
+import org.nuxeo.runtime.pubsub.SerializableMessage;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.SharedMetricRegistries;
+
+import net.jodah.expiringmap.ExpirationPolicy;
+import net.jodah.expiringmap.ExpiringMap;
+
+/**
+ * Key/Value store keeping a bounded local copy of the values of another Key/Value store.
+ * <p>
+ * The values read or written through this store are kept locally for at most {@link #NEAR_CACHE_TTL_PROP} seconds,
+ * or less if their own TTL is shorter, absent values included. The remaining TTL of a value read from the underlying
+ * store is asked to it through {@link KeyValueStoreProvider#getTTL}, and the value is not kept locally if it's
+ * unknown. When clustering is enabled, each write is notified to
+ * the other nodes through the {@link PubSubService} so that they invalidate their local copy; without clustering the
+ * local copy can only be outdated by writes done directly on the underlying store, and for at most the local TTL.
+ * <p>
+ * The underlying store is configured by the {@link #DELEGATE_PROP} property, the other properties are passed to it:
+ *
+ * <pre>
+ * &lt;store name="default" class="org.nuxeo.runtime.kv.NearCacheKeyValueStore"&gt;
+ *   &lt;property name="delegate"&gt;org.nuxeo.ecm.core.redis.contribs.RedisKeyValueStore&lt;/property&gt;
+ *   &lt;property name="nearCache.maxSize"&gt;10000&lt;/property&gt;
+ *   &lt;property name="nearCache.ttl"&gt;30&lt;/property&gt;
+ * &lt;/store&gt;
+ * </pre>
+ *
+ * @since 10.1
+ */
+public class NearCacheKeyValueStore extends AbstractKeyValueStoreProvider {
+
+    private static final Log log = LogFactory.getLog(NearCacheKeyValueStore.class);
+
+    public static final String DELEGATE_PROP = "delegate";
+
+    public static final String NEAR_CACHE_MAX_SIZE_PROP = "nearCache.maxSize";
+
+    public static final String NEAR_CACHE_TTL_PROP = "nearCache.ttl";
+
+    public static final int DEFAULT_NEAR_CACHE_MAX_SIZE = 10000;
+
+    public static final long DEFAULT_NEAR_CACHE_TTL = 30;
+
+    public static final String INVALIDATION_TOPIC_PREFIX = "kvinval-";
+
+    public static final String CLUSTERING_ENABLED_PROP = "repository.clustering.enabled";
+
+    public static final String NODE_ID_PROP = "repository.clustering.id";
+
+    protected static final Random RANDOM = new Random();
+
+    /**
+     * A value in the near-cache, {@code null} when the key has no value in the underlying store.
+     */
+    protected static final class CachedValue {
+
+        protected final byte[] value;
+
+        protected CachedValue(byte[] value) {
+            this.value = value;
+        }
+    }
+
+    protected KeyValueStoreProvider delegate;
+
+    protected ExpiringMap<String, CachedValue> cache;
+
+    protected long nearCacheTTL;
+
+    protected String name;
+
+    /**
+     * Incremented on each invalidation, a value read from the underlying store is not cached if an invalidation
+     * happened during the read.
+     */
+    protected final AtomicLong invalidationCount = new AtomicLong();
+
+    protected NearCacheInvalidator invalidator;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected Meter hits;
+
+    protected Meter misses;
+
+    protected Counter invalidations;
+
+    protected String hitRatioName;
+
+    protected String sizeName;
+
+    @Override
+    public void initialize(KeyValueStoreDescriptor descriptor) {
+        name = descriptor.name;
+        Map<String, String> properties = descriptor.getProperties();
+        String delegateClass = properties.get(DELEGATE_PROP);
+        if (StringUtils.isBlank(delegateClass)) {
+            throw new IllegalArgumentException("Missing " + DELEGATE_PROP + " property for key/value store: " + name);
+        }
+        try {
+            delegate = (KeyValueStoreProvider) Thread.currentThread()
+                                                     .getContextClassLoader()
+                                                     .loadClass(delegateClass.trim())
+                                                     .newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Invalid " + DELEGATE_PROP + " class for key/value store: " + name, e);
+        }
+        delegate.initialize(descriptor);
+        int maxSize = Integer.parseInt(
+                properties.getOrDefault(NEAR_CACHE_MAX_SIZE_PROP, String.valueOf(DEFAULT_NEAR_CACHE_MAX_SIZE)));
+        nearCacheTTL = Long.parseLong(
+                properties.getOrDefault(NEAR_CACHE_TTL_PROP, String.valueOf(DEFAULT_NEAR_CACHE_TTL)));
+        cache = ExpiringMap.builder()
+                           .maxSize(maxSize)
+                           .expirationPolicy(ExpirationPolicy.CREATED)
+                           .expiration(nearCacheTTL, TimeUnit.SECONDS)
+                           .variableExpiration()
+                           .build();
+        registerMetrics();
+        initializeInvalidator();
+    }
+
+    protected void registerMetrics() {
+        hits = registry.meter(MetricRegistry.name("nuxeo", "kv", name, "nearcache", "hits"));
+        misses = registry.meter(MetricRegistry.name("nuxeo", "kv", name, "nearcache", "misses"));
+        invalidations = registry.counter(MetricRegistry.name("nuxeo", "kv", name, "nearcache", "invalidations"));
+        hitRatioName = MetricRegistry.name("nuxeo", "kv", name, "nearcache", "hit-ratio");
+        registry.remove(hitRatioName);
+        registry.register(hitRatioName, new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+            }
+        });
+        sizeName = MetricRegistry.name("nuxeo", "kv", name, "nearcache", "size");
+        registry.remove(sizeName);
+        registry.register(sizeName, (Gauge<Integer>) () -> cache.size());
+    }
+
+    protected void initializeInvalidator() {
+        if (Framework.getRuntime() == null || !Framework.isBooleanPropertyTrue(CLUSTERING_ENABLED_PROP)
+                || Framework.getService(PubSubService.class) == null) {
+            log.info("Not registering a near-cache invalidator for key/value store: " + name
+                    + " because clustering is not enabled");
+            return;
+        }
+        String nodeId = Framework.getProperty(NODE_ID_PROP);
+        if (StringUtils.isBlank(nodeId)) {
+            nodeId = String.valueOf(RANDOM.nextLong());
+            log.warn("Missing cluster node id configuration, please define it explicitly "
+                    + "(usually through repository.clustering.id). Using random cluster node id instead: " + nodeId);
+        } else {
+            nodeId = nodeId.trim();
+        }
+        invalidator = new NearCacheInvalidator();
+        invalidator.initialize(INVALIDATION_TOPIC_PREFIX + name, nodeId);
+    }
+
+    /**
+     * Gets the underlying store.
+     */
+    public KeyValueStoreProvider getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Stream<String> keyStream() {
+        return delegate.keyStream();
+    }
+
+    @Override
+    public void close() {
+        if (invalidator != null) {
+            invalidator.close();
+            invalidator = null;
+        }
+        registry.remove(hitRatioName);
+        registry.remove(sizeName);
+        cache.clear();
+        delegate.close();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        invalidateLocalAll();
+        sendInvalidation(NearCacheInvalidation.ALL_KEYS);
+    }
+
+    protected static byte[] clone(byte[] value) {
+        return value == null ? null : value.clone();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        Objects.requireNonNull(key);
+        CachedValue cached = cache.get(key);
+        if (cached != null) {
+            hits.mark();
+            return clone(cached.value);
+        }
+        misses.mark();
+        long count = invalidationCount.get();
+        byte[] value = delegate.get(key);
+        cacheValue(key, value, getTTL(key, value), count);
+        return clone(value);
+    }
+
+    @Override
+    public Map<String, byte[]> get(Collection<String> keys) {
+        Map<String, byte[]> map = new HashMap<>(keys.size());
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            CachedValue cached = cache.get(key);
+            if (cached == null) {
+                missing.add(key);
+            } else if (cached.value != null) {
+                map.put(key, clone(cached.value));
+            }
+        }
+        hits.mark(keys.size() - missing.size());
+        if (!missing.isEmpty()) {
+            misses.mark(missing.size());
+            long count = invalidationCount.get();
+            Map<String, byte[]> values = delegate.get(missing);
+            for (String key : missing) {
+                byte[] value = values.get(key);
+                cacheValue(key, value, getTTL(key, value), count);
+                if (value != null) {
+                    map.put(key, clone(value));
+                }
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public Map<String, String> getStrings(Collection<String> keys) {
+        Map<String, byte[]> values = get(keys);
+        Map<String, String> map = new HashMap<>(values.size());
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            try {
+                map.put(entry.getKey(), bytesToString(entry.getValue()));
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException("Value is not a String for key: " + entry.getKey());
+            }
+        }
+        return map;
+    }
+
+    // the other nodes are notified only once the underlying store is written, otherwise they could reload and keep the
+    // previous value in between
+
+    @Override
+    public void put(String key, byte[] value, long ttl) {
+        Objects.requireNonNull(key);
+        invalidateLocal(key);
+        long count = invalidationCount.get();
+        delegate.put(key, value, ttl);
+        sendInvalidation(key);
+        cacheValue(key, clone(value), ttl, count);
+    }
+
+    @Override
+    public void put(Map<String, byte[]> values, long ttl) {
+        if (values.isEmpty()) {
+            return;
+        }
+        values.keySet().forEach(this::invalidateLocal);
+        long count = invalidationCount.get();
+        delegate.put(values, ttl);
+        sendInvalidations(values.keySet());
+        values.forEach((key, value) -> cacheValue(key, clone(value), ttl, count));
+    }
+
+    @Override
+    public boolean setTTL(String key, long ttl) {
+        Objects.requireNonNull(key);
+        invalidateLocal(key);
+        boolean set = delegate.setTTL(key, ttl);
+        if (set) {
+            sendInvalidation(key);
+        }
+        return set;
+    }
+
+    @Override
+    public boolean compareAndSet(String key, byte[] expected, byte[] value, long ttl) {
+        Objects.requireNonNull(key);
+        // the local value is outdated if the comparison fails, and must be invalidated otherwise
+        invalidateLocal(key);
+        long count = invalidationCount.get();
+        boolean set = delegate.compareAndSet(key, expected, value, ttl);
+        if (set) {
+            sendInvalidation(key);
+            cacheValue(key, clone(value), ttl, count);
+        }
+        return set;
+    }
+
+    /**
+     * Gets the remaining TTL in the underlying store of a value read from it, {@code 0} for an absent value.
+     */
+    protected long getTTL(String key, byte[] value) {
+        return value == null ? 0 : delegate.getTTL(key);
+    }
+
+    /**
+     * Caches a value unless the key was invalidated since the given invalidation count.
+     *
+     * @param ttl the TTL of the value, {@code 0} for none, or {@code -1} if unknown in which case it's not cached
+     */
+    protected void cacheValue(String key, byte[] value, long ttl, long count) {
+        if (ttl < 0) {
+            return;
+        }
+        long expiration = ttl > 0 ? Math.min(ttl, nearCacheTTL) : nearCacheTTL;
+        if (expiration <= 0) {
+            return;
+        }
+        // don't overwrite a concurrent invalidation with an outdated value
+        synchronized (this) {
+            if (invalidationCount.get() == count) {
+                cache.put(key, new CachedValue(value), expiration, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the local value of a key.
+     */
+    public void invalidateLocal(String key) {
+        synchronized (this) {
+            invalidationCount.incrementAndGet();
+            cache.remove(key);
+        }
+        invalidations.inc();
+    }
+
+    /**
+     * Invalidates all the local values.
+     */
+    public void invalidateLocalAll() {
+        synchronized (this) {
+            invalidationCount.incrementAndGet();
+            cache.clear();
+        }
+        invalidations.inc();
+    }
+
+    protected void sendInvalidation(String key) {
+        sendInvalidations(Collections.singletonList(key));
+    }
+
+    protected void sendInvalidations(Collection<String> keys) {
+        if (invalidator != null) {
+            // a single message for all the keys
+            invalidator.sendMessage(new NearCacheInvalidation(keys));
+        }
+    }
+
+    /**
+     * Gets the ratio of the reads served by the near-cache.
+     */
+    public double getHitRatio() {
+        long total = hits.getCount() + misses.getCount();
+        return total == 0 ? 0 : (double) hits.getCount() / total;
+    }
+
+    protected static class NearCacheInvalidation implements SerializableMessage {
+
+        private static final long serialVersionUID = 1L;
+
+        public static final String ALL_KEYS = "__ALL__";
+
+        public final List<String> keys;
+
+        public NearCacheInvalidation(Collection<String> keys) {
+            this.keys = new ArrayList<>(keys);
+        }
+
+        @Override
+        public void serialize(OutputStream out) throws IOException {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(keys.size());
+            for (String key : keys) {
+                byte[] bytes = key.getBytes(UTF_8);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+            data.flush();
+        }
+
+        public static NearCacheInvalidation deserialize(InputStream in) throws IOException {
+            DataInputStream data = new DataInputStream(in);
+            int size = data.readInt();
+            List<String> keys = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte[] bytes = new byte[data.readInt()];
+                data.readFully(bytes);
+                keys.add(new String(bytes, UTF_8));
+            }
+            return new NearCacheInvalidation(keys);
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(" + keys + ")";
+        }
+    }
+
+    protected class NearCacheInvalidator extends AbstractPubSubBroker<NearCacheInvalidation> {
+
+        @Override
+        public NearCacheInvalidation deserialize(InputStream in) throws IOException {
+            return NearCacheInvalidation.deserialize(in);
+        }
+
+        @Override
+        public void receivedMessage(NearCacheInvalidation invalidation) {
+            if (invalidation.keys.contains(NearCacheInvalidation.ALL_KEYS)) {
+                invalidateLocalAll();
+            } else {
+                invalidation.keys.forEach(NearCacheKeyValueStore.this::invalidateLocal);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + name + "," + delegate + ")";
+    }
+
+}
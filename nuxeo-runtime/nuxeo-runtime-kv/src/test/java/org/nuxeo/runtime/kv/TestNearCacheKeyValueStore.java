@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.kv;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nuxeo.runtime.kv.NearCacheKeyValueStore.NearCacheInvalidation;
+
+/**
+ * @since 10.1
+ */
+public class TestNearCacheKeyValueStore extends AbstractKeyValueStoreTest {
+
+    protected static final AtomicInteger COUNTER = new AtomicInteger();
+
+    @Override
+    protected KeyValueStoreProvider newKeyValueStore() {
+        store = new NearCacheKeyValueStore();
+        KeyValueStoreDescriptor descriptor = new KeyValueStoreDescriptor();
+        // metrics are shared by stores with the same name
+        descriptor.name = "nearcache" + COUNTER.incrementAndGet();
+        descriptor.properties.put(NearCacheKeyValueStore.DELEGATE_PROP, MemKeyValueStore.class.getName());
+        // short enough for the TTL test, values expiring in the delegate are kept at most that long locally
+        descriptor.properties.put(NearCacheKeyValueStore.NEAR_CACHE_TTL_PROP, "1");
+        store.initialize(descriptor);
+        return store;
+    }
+
+    protected NearCacheKeyValueStore nearCache() {
+        return (NearCacheKeyValueStore) store;
+    }
+
+    @Test
+    public void testHitRatio() {
+        store.put("foo", "bar");
+        assertEquals("bar", store.getString("foo"));
+        assertEquals(1, nearCache().getHitRatio(), 0);
+        // absent values are cached too
+        assertNull(store.get("gee"));
+        assertNull(store.get("gee"));
+        assertEquals(2 / 3d, nearCache().getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testLocalInvalidation() {
+        store.put("foo", "bar");
+        assertEquals("bar", store.getString("foo"));
+        // a write from another node
+        nearCache().getDelegate().put("foo", "moo");
+        assertEquals("bar", store.getString("foo"));
+        nearCache().invalidateLocal("foo");
+        assertEquals("moo", store.getString("foo"));
+    }
+
+    @Test
+    public void testPutMany() {
+        Map<String, byte[]> values = new HashMap<>();
+        values.put("foo", "bar".getBytes(UTF_8));
+        values.put("gee", "moo".getBytes(UTF_8));
+        store.put(values, 0);
+        Map<String, String> strings = store.getStrings(Arrays.asList("foo", "gee", "none"));
+        assertEquals(2, strings.size());
+        assertEquals("bar", strings.get("foo"));
+        assertEquals("moo", nearCache().getDelegate().getString("gee"));
+    }
+
+    protected NearCacheKeyValueStore newNearCache(long nearCacheTTL) {
+        NearCacheKeyValueStore nearCache = new NearCacheKeyValueStore();
+        KeyValueStoreDescriptor descriptor = new KeyValueStoreDescriptor();
+        descriptor.name = "nearcache" + COUNTER.incrementAndGet();
+        descriptor.properties.put(NearCacheKeyValueStore.DELEGATE_PROP, MemKeyValueStore.class.getName());
+        descriptor.properties.put(NearCacheKeyValueStore.NEAR_CACHE_TTL_PROP, String.valueOf(nearCacheTTL));
+        nearCache.initialize(descriptor);
+        return nearCache;
+    }
+
+    @Test
+    public void testDelegateTTL() throws Exception {
+        NearCacheKeyValueStore nearCache = newNearCache(30);
+        try {
+            // written by another node with a TTL shorter than the near-cache one
+            nearCache.getDelegate().put("foo", "bar", 2);
+            nearCache.getDelegate().put("gee", "moo", 2);
+            nearCache.getDelegate().put("baz", "qux");
+            assertEquals(0, nearCache.getDelegate().getTTL("baz"));
+            assertEquals(-1, nearCache.getDelegate().getTTL("none"));
+            assertEquals("bar", nearCache.getString("foo"));
+            assertEquals(2, nearCache.getStrings(Arrays.asList("gee", "baz")).size());
+            Thread.sleep(2500);
+            // expired in the delegate, not served by the near-cache
+            assertNull(nearCache.getDelegate().get("foo"));
+            assertNull(nearCache.getString("foo"));
+            Map<String, String> strings = nearCache.getStrings(Arrays.asList("gee", "baz"));
+            assertEquals(Collections.singletonMap("baz", "qux"), strings);
+        } finally {
+            nearCache.close();
+        }
+    }
+
+    @Test
+    public void testInvalidationMessage() throws Exception {
+        NearCacheInvalidation invalidation = new NearCacheInvalidation(Arrays.asList("foo", "g\u00e9e", ""));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        invalidation.serialize(out);
+        NearCacheInvalidation read = NearCacheInvalidation.deserialize(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(invalidation.keys, read.keys);
+    }
+
+    /**
+     * A near-cache whose invalidations are delivered synchronously to another one.
+     */
+    protected static class LinkedNearCacheKeyValueStore extends NearCacheKeyValueStore {
+
+        protected NearCacheKeyValueStore remote;
+
+        @Override
+        protected void sendInvalidation(String key) {
+            if (remote != null) {
+                remote.invalidateLocal(key);
+                // a read on the remote node right after the invalidation, before any further write
+                remote.get(key);
+            }
+        }
+
+        protected int messages;
+
+        @Override
+        protected void sendInvalidations(Collection<String> keys) {
+            messages++;
+            keys.forEach(this::sendInvalidation);
+        }
+    }
+
+    @Test
+    public void testClusterInvalidationAfterWrite() {
+        LinkedNearCacheKeyValueStore writer = new LinkedNearCacheKeyValueStore();
+        KeyValueStoreDescriptor descriptor = new KeyValueStoreDescriptor();
+        descriptor.name = "nearcache" + COUNTER.incrementAndGet();
+        descriptor.properties.put(NearCacheKeyValueStore.DELEGATE_PROP, MemKeyValueStore.class.getName());
+        writer.initialize(descriptor);
+        NearCacheKeyValueStore reader = new NearCacheKeyValueStore();
+        descriptor.name = "nearcache" + COUNTER.incrementAndGet();
+        reader.initialize(descriptor);
+        // both nodes share the underlying store
+        reader.delegate = writer.delegate;
+        writer.remote = reader;
+        try {
+            writer.put("foo", "bar");
+            assertEquals("bar", reader.getString("foo"));
+            writer.put("foo", "moo");
+            assertEquals("moo", reader.getString("foo"));
+
+            Map<String, byte[]> values = new HashMap<>();
+            values.put("foo", "baz".getBytes(UTF_8));
+            values.put("gee", "moo".getBytes(UTF_8));
+            writer.messages = 0;
+            writer.put(values, 0);
+            // a single message for all the keys
+            assertEquals(1, writer.messages);
+            assertEquals("baz", reader.getString("foo"));
+            assertEquals("moo", reader.getString("gee"));
+
+            assertFalse(writer.compareAndSet("foo", "nope", "gee"));
+            assertEquals("baz", reader.getString("foo"));
+            assertTrue(writer.compareAndSet("foo", "baz", "gee"));
+            assertEquals("gee", reader.getString("foo"));
+        } finally {
+            writer.close();
+            reader.close();
+        }
+    }
+
+}
@@ -22,6 +22,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -102,7 +103,7 @@ public abstract class AbstractPubSubBroker<T extends SerializableMessage> {
         }
         baout.write(DISCRIMINATOR_SEP);
         try {
-            message.serialize(baout);
+            writeMessage(message, baout);
         } catch (IOException e) {
             log.error("Failed to serialize message", e);
             // don't crash for this
@@ -113,6 +114,24 @@ public abstract class AbstractPubSubBroker<T extends SerializableMessage> {
         pubSubService.publish(topic, bytes);
     }
 
+    /**
+     * Writes the payload of a message, after the discriminator.
+     *
+     * @since 10.1
+     */
+    protected void writeMessage(T message, OutputStream out) throws IOException {
+        message.serialize(out);
+    }
+
+    /**
+     * Reads the payload of a message, after the discriminator.
+     *
+     * @since 10.1
+     */
+    protected T readMessage(InputStream in) throws IOException {
+        return deserialize(in);
+    }
+
     /**
      * PubSubService subscriber, called from a separate thread.
      */
@@ -125,7 +144,7 @@ public abstract class AbstractPubSubBroker<T extends SerializableMessage> {
         InputStream bain = new ByteArrayInputStream(bytes, start, bytes.length - start);
         T message;
         try {
-            message = deserialize(bain);
+            message = readMessage(bain);
         } catch (IOException e) {
             log.error("Failed to deserialize message", e);
             // don't crash for this
@@ -18,11 +18,34 @@
  */
 package org.nuxeo.runtime.pubsub;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 
 /**
  * Encapsulates invalidations management through the {@link PubSubService}.
+ * <p>
+ * When the {@value #WINDOW_PROP} property is set to a positive number of milliseconds, the invalidations sent during
+ * that window are coalesced into a single message. Messages are stamped with their send time, which gives the
+ * invalidation lag measured by the receiving nodes.
  *
  * @since 9.3
  */
@@ -31,19 +54,78 @@ public abstract class AbstractPubSubInvalidationsAccumulator<T extends Serializa
 
     private static final Log log = LogFactory.getLog(AbstractPubSubInvalidationsAccumulator.class);
 
+    /**
+     * The window in milliseconds during which sent invalidations are coalesced, {@code 0} to send them immediately.
+     *
+     * @since 10.1
+     */
+    public static final String WINDOW_PROP = "nuxeo.pubsub.invalidations.window";
+
+    /** Marks a message payload starting with its send time. */
+    protected static final int TIMESTAMP_MARKER = 0;
+
     protected volatile T bufferedInvalidations;
 
+    /** @since 10.1 */
+    protected long window;
+
+    /** @since 10.1 */
+    protected final Object pendingLock = new Object();
+
+    /** Invalidations waiting for the end of the window, null when empty. @since 10.1 */
+    protected T pendingInvalidations;
+
+    /** @since 10.1 */
+    protected ScheduledExecutorService flusher;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    /** @since 10.1 */
+    protected Counter sentCount;
+
+    /** @since 10.1 */
+    protected Counter coalescedCount;
+
+    /** @since 10.1 */
+    protected Counter receivedCount;
+
+    /** @since 10.1 */
+    protected Histogram receivedSize;
+
+    /** @since 10.1 */
+    protected Timer lag;
+
     /** Constructs new empty invalidations, of type {@link T}. */
     public abstract T newInvalidations();
 
     @Override
     public void initialize(String topic, String discriminator) {
         bufferedInvalidations = newInvalidations();
+        window = Long.parseLong(Framework.getProperty(WINDOW_PROP, "0"));
+        String prefix = MetricRegistry.name("nuxeo", "pubsub", "invalidations", topic);
+        sentCount = registry.counter(MetricRegistry.name(prefix, "sent"));
+        coalescedCount = registry.counter(MetricRegistry.name(prefix, "coalesced"));
+        receivedCount = registry.counter(MetricRegistry.name(prefix, "received"));
+        receivedSize = registry.histogram(MetricRegistry.name(prefix, "received-size"));
+        lag = registry.timer(MetricRegistry.name(prefix, "lag"));
+        if (window > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Nuxeo-PubSub-Invalidations-" + topic);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
         super.initialize(topic, discriminator);
     }
 
     @Override
     public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+            // don't lose the invalidations of the last window
+            flush();
+        }
         super.close();
         // not null to avoid crashing subscriber thread still in flight
         bufferedInvalidations = newInvalidations();
@@ -53,7 +135,74 @@ public abstract class AbstractPubSubInvalidationsAccumulator<T extends Serializa
      * Sends invalidations to other nodes.
      */
     public void sendInvalidations(T invalidations) {
+        if (flusher == null) {
+            send(invalidations);
+            return;
+        }
+        synchronized (pendingLock) {
+            if (pendingInvalidations == null) {
+                pendingInvalidations = newInvalidations();
+                flusher.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+            } else {
+                coalescedCount.inc();
+            }
+            pendingInvalidations.add(invalidations);
+        }
+    }
+
+    /**
+     * Sends the invalidations coalesced during the current window.
+     *
+     * @since 10.1
+     */
+    public void flush() {
+        T invalidations;
+        synchronized (pendingLock) {
+            invalidations = pendingInvalidations;
+            pendingInvalidations = null;
+        }
+        if (invalidations != null) {
+            try {
+                send(invalidations);
+            } catch (RuntimeException e) {
+                log.error("Failed to send invalidations", e);
+            }
+        }
+    }
+
+    protected void send(T invalidations) {
         sendMessage(invalidations);
+        sentCount.inc();
+    }
+
+    @Override
+    protected void writeMessage(T message, OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.write(TIMESTAMP_MARKER);
+        dout.writeLong(System.currentTimeMillis());
+        dout.flush();
+        super.writeMessage(message, out);
+    }
+
+    @Override
+    protected T readMessage(InputStream in) throws IOException {
+        receivedSize.update(in.available());
+        PushbackInputStream pin = new PushbackInputStream(in);
+        int first = pin.read();
+        if (first == TIMESTAMP_MARKER) {
+            long sent;
+            try {
+                sent = new DataInputStream(pin).readLong();
+            } catch (EOFException e) {
+                // invalid message
+                return null;
+            }
+            lag.update(Math.max(0, System.currentTimeMillis() - sent), TimeUnit.MILLISECONDS);
+        } else if (first != -1) {
+            // message from a node not stamping its messages
+            pin.unread(first);
+        }
+        return super.readMessage(pin);
     }
 
     @Override
@@ -61,6 +210,7 @@ public abstract class AbstractPubSubInvalidationsAccumulator<T extends Serializa
         if (log.isTraceEnabled()) {
             log.trace("Received invalidations: " + invalidations);
         }
+        receivedCount.inc();
         synchronized (this) {
             bufferedInvalidations.add(invalidations);
         }
@@ -68,6 +218,8 @@ public abstract class AbstractPubSubInvalidationsAccumulator<T extends Serializa
 
     /**
      * Receives invalidations from other nodes.
+     * <p>
+     * All the invalidations received since the previous call are returned at once, to be applied in bulk.
      */
     public T receiveInvalidations() {
         T newInvalidations = newInvalidations();
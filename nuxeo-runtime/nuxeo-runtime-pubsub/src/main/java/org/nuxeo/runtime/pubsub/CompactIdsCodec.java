@@ -0,0 +1,255 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.pubsub;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Compact binary encoding of a collection of ids, used to serialize invalidations.
+ * <p>
+ * Ids are split into four groups, each written as a count followed by the ids of the group:
+ * <ul>
+ * <li>{@link Long} ids, sorted and delta-encoded as variable-length integers,</li>
+ * <li>numeric {@link String} ids, sorted and delta-encoded as variable-length integers,</li>
+ * <li>{@link String} ids in the canonical UUID form, written as 16 bytes,</li>
+ * <li>other {@link String} ids, written as a length followed by their UTF-8 bytes.</li>
+ * </ul>
+ *
+ * @since 10.1
+ */
+public class CompactIdsCodec {
+
+    protected static final Pattern NUMERIC = Pattern.compile("0|-?[1-9][0-9]{0,18}");
+
+    private CompactIdsCodec() {
+        // utility class
+    }
+
+    /**
+     * Checks if the ids can be encoded, i.e., if they are all {@link String} or {@link Long}.
+     */
+    public static boolean canEncode(Collection<? extends Serializable> ids) {
+        for (Serializable id : ids) {
+            if (!(id instanceof String) && !(id instanceof Long)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the compact encoding is smaller than the plain text of the ids, i.e., if some of them are numbers or
+     * UUIDs.
+     */
+    public static boolean isWorthEncoding(Collection<? extends Serializable> ids) {
+        for (Serializable id : ids) {
+            if (id instanceof Long || parseNumeric((String) id) != null || parseUUID((String) id) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes ids, which must all be {@link String} or {@link Long}.
+     *
+     * @see #canEncode
+     */
+    public static void writeIds(OutputStream out, Collection<? extends Serializable> ids) throws IOException {
+        List<Long> longs = new ArrayList<>();
+        List<Long> numerics = new ArrayList<>();
+        List<UUID> uuids = new ArrayList<>();
+        List<String> strings = new ArrayList<>();
+        for (Serializable id : ids) {
+            if (id instanceof Long) {
+                longs.add((Long) id);
+                continue;
+            }
+            if (!(id instanceof String)) {
+                throw new IllegalArgumentException("Cannot encode id: " + id);
+            }
+            String string = (String) id;
+            Long numeric = parseNumeric(string);
+            if (numeric != null) {
+                numerics.add(numeric);
+                continue;
+            }
+            UUID uuid = parseUUID(string);
+            if (uuid != null) {
+                uuids.add(uuid);
+            } else {
+                strings.add(string);
+            }
+        }
+        writeLongs(out, longs);
+        writeLongs(out, numerics);
+        writeVarLong(out, uuids.size());
+        for (UUID uuid : uuids) {
+            writeFixedLong(out, uuid.getMostSignificantBits());
+            writeFixedLong(out, uuid.getLeastSignificantBits());
+        }
+        writeVarLong(out, strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    /**
+     * Reads ids written by {@link #writeIds}.
+     */
+    public static void readIds(InputStream in, Consumer<Serializable> consumer) throws IOException {
+        readLongs(in, consumer::accept);
+        readLongs(in, value -> consumer.accept(value.toString()));
+        long count = readVarLong(in);
+        for (long i = 0; i < count; i++) {
+            consumer.accept(new UUID(readFixedLong(in), readFixedLong(in)).toString());
+        }
+        count = readVarLong(in);
+        for (long i = 0; i < count; i++) {
+            consumer.accept(readString(in));
+        }
+    }
+
+    protected static void writeLongs(OutputStream out, List<Long> values) throws IOException {
+        values.sort(null);
+        writeVarLong(out, values.size());
+        long previous = 0;
+        for (Long value : values) {
+            writeVarLong(out, zigzag(value.longValue() - previous));
+            previous = value.longValue();
+        }
+    }
+
+    protected static void readLongs(InputStream in, Consumer<Long> consumer) throws IOException {
+        long count = readVarLong(in);
+        long previous = 0;
+        for (long i = 0; i < count; i++) {
+            previous += unzigzag(readVarLong(in));
+            consumer.accept(Long.valueOf(previous));
+        }
+    }
+
+    /** Parses a number whose string form is canonical, so that it can be written back identically. */
+    protected static Long parseNumeric(String string) {
+        if (!NUMERIC.matcher(string).matches()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(string);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Parses a UUID whose string form is canonical, so that it can be written back identically. */
+    protected static UUID parseUUID(String string) {
+        if (string.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(string);
+            return uuid.toString().equals(string) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static void writeString(OutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(InputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        byte[] bytes = new byte[length];
+        int n = 0;
+        while (n < length) {
+            int read = in.read(bytes, n, length - n);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            n += read;
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /** Writes a non-negative value using 7 bits per byte. */
+    public static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable-length integer");
+    }
+
+    protected static void writeFixedLong(OutputStream out, long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    protected static long readFixedLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value = value << 8 | b;
+        }
+        return value;
+    }
+
+    protected static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    protected static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
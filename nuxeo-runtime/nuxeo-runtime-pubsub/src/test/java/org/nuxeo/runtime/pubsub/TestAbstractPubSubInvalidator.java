@@ -24,7 +24,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -36,6 +39,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.mockito.MockitoFeature;
 import org.nuxeo.runtime.mockito.RuntimeService;
 import org.nuxeo.runtime.test.runner.Features;
@@ -182,4 +186,43 @@ public class TestAbstractPubSubInvalidator {
         assertTrue(invals.isEmpty());
     }
 
+    @Test
+    public void testStampedMessage() throws Exception {
+        DummyInvalidator invalidator = new DummyInvalidator();
+        invalidator.initialize("stamped", "d");
+
+        // timestamp marker, then send time
+        byte[] bytes = new byte[] { 'z', ':', 0, 0, 0, 0, 0, 0, 0, 0, 1, 'Y' };
+        invalidator.subscriber("stamped", bytes);
+        assertFalse(invalidator.receiveInvalidations().isEmpty());
+        assertEquals(1, invalidator.lag.getCount());
+
+        // truncated timestamp
+        invalidator.subscriber("stamped", new byte[] { 'z', ':', 0, 0, 0 });
+        assertTrue(invalidator.receiveInvalidations().isEmpty());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        Framework.getProperties().setProperty(AbstractPubSubInvalidationsAccumulator.WINDOW_PROP, "60000");
+        DummyInvalidator invalidator = new DummyInvalidator();
+        try {
+            invalidator.initialize("topic", "d");
+        } finally {
+            Framework.getProperties().remove(AbstractPubSubInvalidationsAccumulator.WINDOW_PROP);
+        }
+        for (int i = 0; i < 3; i++) {
+            DummyInvalidations invals = new DummyInvalidations();
+            invals.inval();
+            invalidator.sendInvalidations(invals);
+        }
+        verify(pubSubService, times(0)).publish(eq("topic"), any());
+        // end of the window
+        invalidator.flush();
+        verify(pubSubService, times(1)).publish(eq("topic"), any());
+        invalidator.flush();
+        verify(pubSubService, times(1)).publish(eq("topic"), any());
+        invalidator.close();
+    }
+
 }
@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.pubsub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class TestCompactIdsCodec {
+
+    protected Set<Serializable> roundTrip(List<Serializable> ids) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompactIdsCodec.writeIds(out, ids);
+        Set<Serializable> read = new HashSet<>();
+        CompactIdsCodec.readIds(new ByteArrayInputStream(out.toByteArray()), read::add);
+        return read;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        String uuid = UUID.randomUUID().toString();
+        List<Serializable> ids = Arrays.asList(Long.valueOf(-5), Long.valueOf(Long.MAX_VALUE), Long.valueOf(12), "12",
+                "0", "007", "-1", uuid, uuid.toUpperCase(), "foo", "");
+        assertEquals(new HashSet<>(ids), roundTrip(ids));
+        assertEquals(Collections.emptySet(), roundTrip(Collections.emptyList()));
+    }
+
+    @Test
+    public void testSize() throws IOException {
+        List<Serializable> ids = Arrays.asList(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompactIdsCodec.writeIds(out, ids);
+        // counts and 16 bytes per UUID
+        assertEquals(4 + 2 * 16, out.size());
+
+        ids = Arrays.asList("1000", "1001", "1002");
+        out.reset();
+        CompactIdsCodec.writeIds(out, ids);
+        // counts, first value and deltas of 1
+        assertEquals(4 + 2 + 2, out.size());
+    }
+
+    @Test
+    public void testWorthEncoding() {
+        assertTrue(CompactIdsCodec.canEncode(Arrays.asList("foo", Long.valueOf(1))));
+        assertFalse(CompactIdsCodec.canEncode(Arrays.asList("foo", Integer.valueOf(1))));
+        assertFalse(CompactIdsCodec.isWorthEncoding(Arrays.asList("foo", "bar")));
+        assertTrue(CompactIdsCodec.isWorthEncoding(Arrays.asList("foo", "123")));
+        assertTrue(CompactIdsCodec.isWorthEncoding(Arrays.asList("foo", UUID.randomUUID().toString())));
+    }
+
+}
@@ -39,6 +39,14 @@ public class LogConfigDescriptor {
     @XNode("@type")
     public String type;
 
+    /**
+     * The codec used for the messages of the logs, unless defined at the log level.
+     *
+     * @since 10.1
+     */
+    @XNode("@codec")
+    public String codec;
+
     @XNodeMap(value = "option", key = "@name", type = HashMap.class, componentType = String.class)
     public Map<String, String> options = new HashMap<>();
 
@@ -57,6 +65,24 @@ public class LogConfigDescriptor {
         return options.getOrDefault(key, defaultValue);
     }
 
+    /**
+     * @since 10.1
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Returns the codecs defined at the log level.
+     *
+     * @since 10.1
+     */
+    public Map<String, String> getLogCodecs() {
+        Map<String, String> ret = new HashMap<>();
+        logs.stream().filter(d -> d.codec != null).forEach(d -> ret.put(d.name, d.codec));
+        return ret;
+    }
+
     public Map<String, Integer> getLogsToCreate() {
         Map<String, Integer> ret = new HashMap<>();
         logs.forEach(d -> ret.put(d.name, d.size));
@@ -73,6 +99,12 @@ public class LogConfigDescriptor {
         @XNode("@size")
         public Integer size = DEFAULT_PARTITIONS;
 
+        /**
+         * @since 10.1
+         */
+        @XNode("@codec")
+        public String codec;
+
         public StreamDescriptor() {
         }
     }
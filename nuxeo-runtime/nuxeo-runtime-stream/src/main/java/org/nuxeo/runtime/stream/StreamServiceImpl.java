@@ -28,12 +28,19 @@ import java.util.Objects;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.Environment;
+import org.nuxeo.lib.stream.codec.BinaryRecordCodec;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.NoCodec;
+import org.nuxeo.lib.stream.codec.SerializableCodec;
+import org.nuxeo.lib.stream.computation.Record;
 import org.nuxeo.lib.stream.computation.Settings;
 import org.nuxeo.lib.stream.computation.StreamProcessor;
 import org.nuxeo.lib.stream.computation.Topology;
 import org.nuxeo.lib.stream.computation.log.LogStreamProcessor;
+import org.nuxeo.lib.stream.log.BatchPolicy;
 import org.nuxeo.lib.stream.log.LogManager;
 import org.nuxeo.lib.stream.log.chronicle.ChronicleLogManager;
+import org.nuxeo.lib.stream.log.internals.AbstractLogManager;
 import org.nuxeo.lib.stream.log.kafka.KafkaLogManager;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.kafka.KafkaConfigService;
@@ -51,6 +58,20 @@ public class StreamServiceImpl extends DefaultComponent implements StreamService
 
     public static final String NUXEO_STREAM_RET_DURATION_PROP = "nuxeo.stream.chronicle.retention.duration";
 
+    /**
+     * logConfig option: the maximum number of messages written at once by an asynchronous append.
+     *
+     * @since 10.1
+     */
+    public static final String APPEND_BATCH_SIZE_OPTION = "appendBatchSize";
+
+    /**
+     * logConfig option: the maximum time in milliseconds an asynchronous append waits for a batch to be complete.
+     *
+     * @since 10.1
+     */
+    public static final String APPEND_LINGER_MS_OPTION = "appendLingerMs";
+
     protected static final String LOG_CONFIG_XP = "logConfig";
 
     protected static final String STREAM_PROCESSOR_XP = "streamProcessor";
@@ -79,23 +100,64 @@ public class StreamServiceImpl extends DefaultComponent implements StreamService
                 throw new IllegalArgumentException("Unknown logConfig: " + name);
             }
             LogConfigDescriptor config = configs.get(name);
+            AbstractLogManager manager;
             if (config.isKafkaLog()) {
-                managers.put(name, createKafkaLogManager(config));
+                manager = createKafkaLogManager(config);
             } else {
-                managers.put(name, createChronicleLogManager(config));
+                manager = createChronicleLogManager(config);
             }
+            initCodecs(manager, config);
+            initBatchPolicy(manager, config);
+            managers.put(name, manager);
         }
         return managers.get(name);
     }
 
-    protected LogManager createKafkaLogManager(LogConfigDescriptor config) {
+    protected void initCodecs(AbstractLogManager manager, LogConfigDescriptor config) {
+        if (config.getCodec() != null) {
+            manager.setDefaultCodec(getCodec(config.getCodec()));
+        }
+        config.getLogCodecs().forEach((logName, codec) -> manager.setCodec(logName, getCodec(codec)));
+    }
+
+    protected void initBatchPolicy(AbstractLogManager manager, LogConfigDescriptor config) {
+        String batchSize = config.getOption(APPEND_BATCH_SIZE_OPTION, null);
+        String linger = config.getOption(APPEND_LINGER_MS_OPTION, null);
+        if (batchSize == null && linger == null) {
+            return;
+        }
+        manager.setBatchPolicy(BatchPolicy.of(
+                batchSize == null ? BatchPolicy.DEFAULT_BATCH_SIZE : Integer.parseInt(batchSize),
+                linger == null ? BatchPolicy.DEFAULT_LINGER : Duration.ofMillis(Long.parseLong(linger))));
+    }
+
+    /**
+     * Gets a {@link Record} codec by name.
+     *
+     * @since 10.1
+     */
+    @SuppressWarnings("unchecked")
+    protected Codec<Record> getCodec(String name) {
+        switch (name) {
+        case NoCodec.NAME:
+            return NoCodec.NO_CODEC;
+        case SerializableCodec.NAME:
+            return new SerializableCodec<>();
+        case BinaryRecordCodec.NAME:
+            return new BinaryRecordCodec();
+        default:
+            throw new IllegalArgumentException("Unknown codec: " + name);
+        }
+    }
+
+    protected AbstractLogManager createKafkaLogManager(LogConfigDescriptor config) {
         String kafkaConfig = config.getOption("kafkaConfig", "default");
         KafkaConfigService service = Framework.getService(KafkaConfigService.class);
         return new KafkaLogManager(service.getZkServers(kafkaConfig), service.getTopicPrefix(kafkaConfig),
                 service.getProducerProperties(kafkaConfig), service.getConsumerProperties(kafkaConfig));
     }
 
-    protected LogManager createChronicleLogManager(LogConfigDescriptor config) {
+    protected AbstractLogManager createChronicleLogManager(LogConfigDescriptor config) {
         String basePath = config.getOption("basePath", null);
         String directory = config.getOption("directory", config.getName());
         Path path = getChroniclePath(basePath, directory);
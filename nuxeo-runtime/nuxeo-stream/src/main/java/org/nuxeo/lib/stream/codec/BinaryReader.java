@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.lib.stream.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads values written by a {@link BinaryWriter}.
+ * <p>
+ * Not thread safe.
+ *
+ * @since 10.1
+ */
+public class BinaryReader {
+
+    protected final byte[] buffer;
+
+    protected int position;
+
+    public BinaryReader(byte[] buffer) {
+        this(buffer, 0);
+    }
+
+    public BinaryReader(byte[] buffer, int position) {
+        this.buffer = buffer;
+        this.position = position;
+    }
+
+    protected void checkAvailable(int length) {
+        if (length < 0 || position + length > buffer.length) {
+            throw new IllegalArgumentException(
+                    "Corrupted data, cannot read " + length + " bytes at position " + position + "/" + buffer.length);
+        }
+    }
+
+    public int readByte() {
+        checkAvailable(1);
+        return buffer[position++];
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Corrupted data, invalid variable-length integer at position " + position);
+    }
+
+    public long readZigZagLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public int readVarInt() {
+        return (int) readVarLong();
+    }
+
+    public double readDouble() {
+        checkAvailable(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (buffer[position++] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    public byte[] readBytes() {
+        int length = readVarInt() - 1;
+        if (length == -1) {
+            return null;
+        }
+        checkAvailable(length);
+        byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+        position += length;
+        return bytes;
+    }
+
+    public String readString() {
+        int length = readVarInt() - 1;
+        if (length == -1) {
+            return null;
+        }
+        checkAvailable(length);
+        String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return string;
+    }
+
+    public int position() {
+        return position;
+    }
+
+}
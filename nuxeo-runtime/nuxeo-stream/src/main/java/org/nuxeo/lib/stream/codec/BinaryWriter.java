@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.lib.stream.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes values in a compact binary form to a growing byte array, integers are written as variable-length quantities
+ * (7 bits per byte), like in Avro or Protocol Buffers.
+ * <p>
+ * Not thread safe.
+ *
+ * @see BinaryReader
+ * @since 10.1
+ */
+public class BinaryWriter {
+
+    protected byte[] buffer;
+
+    protected int size;
+
+    public BinaryWriter() {
+        this(64);
+    }
+
+    public BinaryWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    protected void ensureCapacity(int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+        }
+    }
+
+    public BinaryWriter writeByte(int b) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) b;
+        return this;
+    }
+
+    public BinaryWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a non-negative {@code long} using 1 to 10 bytes, small values are the most compact.
+     */
+    public BinaryWriter writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Writes a signed {@code long}, values close to zero are the most compact.
+     */
+    public BinaryWriter writeZigZagLong(long value) {
+        return writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public BinaryWriter writeVarInt(int value) {
+        return writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    public BinaryWriter writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        ensureCapacity(8);
+        for (int i = 56; i >= 0; i -= 8) {
+            buffer[size++] = (byte) (bits >>> i);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a nullable byte array.
+     */
+    public BinaryWriter writeBytes(byte[] bytes) {
+        if (bytes == null) {
+            return writeVarInt(0);
+        }
+        writeVarInt(bytes.length + 1);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    /**
+     * Writes a nullable string, UTF-8 encoded.
+     */
+    public BinaryWriter writeString(String string) {
+        return writeBytes(string == null ? null : string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+}
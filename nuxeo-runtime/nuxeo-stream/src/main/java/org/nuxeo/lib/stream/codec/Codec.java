@@ -0,0 +1,37 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.lib.stream.codec;
+
+/**
+ * Encodes and decodes objects to and from bytes. Implementations must be thread safe.
+ *
+ * @since 10.1
+ */
+public interface Codec<T> {
+
+    /**
+     * The name of the codec, as used in configurations.
+     */
+    String getName();
+
+    byte[] encode(T object);
+
+    T decode(byte[] data);
+
+}
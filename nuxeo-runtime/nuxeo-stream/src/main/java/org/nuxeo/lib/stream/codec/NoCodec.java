@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.lib.stream.codec;
+
+import java.io.Serializable;
+
+/**
+ * Marker codec meaning that the Log implementation uses its own legacy format for messages.
+ * <p>
+ * Log implementations check for this codec and write messages their own way. When used directly, messages are encoded
+ * with Java serialization, the legacy format of the logs storing bytes.
+ *
+ * @since 10.1
+ */
+public class NoCodec<T> implements Codec<T> {
+
+    public static final String NAME = "legacy";
+
+    @SuppressWarnings("rawtypes")
+    public static final NoCodec NO_CODEC = new NoCodec();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    protected final SerializableCodec<Serializable> javaCodec = new SerializableCodec<>();
+
+    @Override
+    public byte[] encode(T object) {
+        if (object != null && !(object instanceof Serializable)) {
+            throw new IllegalArgumentException("Cannot encode non serializable: " + object.getClass().getName());
+        }
+        return javaCodec.encode((Serializable) object);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T decode(byte[] data) {
+        return (T) javaCodec.decode(data);
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Codecs used to encode the messages of a Log.
+ */
+package org.nuxeo.lib.stream.codec;
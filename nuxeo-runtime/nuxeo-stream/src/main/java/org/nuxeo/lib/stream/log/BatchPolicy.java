@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.lib.stream.log;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Group commit policy of the asynchronous appends: appends are written in batch of at most {@code batchSize}
+ * messages, a batch waits up to {@code linger} for more messages before being written.
+ *
+ * @since 10.1
+ */
+public class BatchPolicy {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final Duration DEFAULT_LINGER = Duration.ofMillis(5);
+
+    public static final BatchPolicy DEFAULT = new BatchPolicy(DEFAULT_BATCH_SIZE, DEFAULT_LINGER);
+
+    /** No grouping, each message is written as soon as possible. */
+    public static final BatchPolicy NONE = new BatchPolicy(1, Duration.ZERO);
+
+    protected final int batchSize;
+
+    protected final Duration linger;
+
+    public BatchPolicy(int batchSize, Duration linger) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        if (linger.isNegative()) {
+            throw new IllegalArgumentException("Invalid linger: " + linger);
+        }
+        this.batchSize = batchSize;
+        this.linger = Objects.requireNonNull(linger);
+    }
+
+    public static BatchPolicy of(int batchSize, Duration linger) {
+        return new BatchPolicy(batchSize, linger);
+    }
+
+    /**
+     * Returns the maximum number of messages written at once.
+     */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the maximum time to wait for a batch to be complete.
+     */
+    public Duration linger() {
+        return linger;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchPolicy{" + "batchSize=" + batchSize + ", linger=" + linger + '}';
+    }
+}
@@ -20,7 +20,10 @@ package org.nuxeo.lib.stream.log;
 
 import java.io.Externalizable;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An appender is used to append message into a Log. Implementations must be thread safe.
@@ -51,13 +54,64 @@ public interface LogAppender<M extends Externalizable> {
      * Same as {@link #append(int, Externalizable)}, the queue is chosen using a hash of {@param key}.
      */
     default LogOffset append(String key, M message) {
+        return append(partition(key), message);
+    }
+
+    /**
+     * Returns the partition used by {@link #append(String, Externalizable)} for a key.
+     *
+     * @since 10.1
+     */
+    default int partition(String key) {
         Objects.requireNonNull(key);
         // Provide a basic partitioning that works because:
         // 1. String.hashCode is known to be constant even with different JVM (this is not the case for all objects)
         // 2. the modulo operator is not optimal when rebalancing on partitions resizing but this should not happen.
         // and yes hashCode can be negative.
-        int queue = (key.hashCode() & 0x7fffffff) % size();
-        return append(queue, message);
+        return (key.hashCode() & 0x7fffffff) % size();
+    }
+
+    /**
+     * Append a batch of messages into a partition, the messages are appended in order. Returns the {@link LogOffset}
+     * of each message. Implementations should write the batch at once, this is more efficient than appending the
+     * messages one by one.
+     *
+     * @param partition index lower than {@link #size()}
+     * @since 10.1
+     */
+    default List<LogOffset> appendAll(int partition, List<M> messages) {
+        List<LogOffset> ret = new ArrayList<>(messages.size());
+        for (M message : messages) {
+            ret.add(append(partition, message));
+        }
+        return ret;
+    }
+
+    /**
+     * Append a message into a partition without waiting for the write. Implementations group the concurrent appends
+     * according to their {@link BatchPolicy}. The returned future completes with the {@link LogOffset} of the message
+     * once written, or exceptionally if the write failed.
+     *
+     * @param partition index lower than {@link #size()}
+     * @since 10.1
+     */
+    default CompletableFuture<LogOffset> appendAsync(int partition, M message) {
+        CompletableFuture<LogOffset> ret = new CompletableFuture<>();
+        try {
+            ret.complete(append(partition, message));
+        } catch (RuntimeException e) {
+            ret.completeExceptionally(e);
+        }
+        return ret;
+    }
+
+    /**
+     * Same as {@link #appendAsync(int, Externalizable)}, the queue is chosen using a hash of {@param key}.
+     *
+     * @since 10.1
+     */
+    default CompletableFuture<LogOffset> appendAsync(String key, M message) {
+        return appendAsync(partition(key), message);
     }
 
     /**
@@ -18,6 +18,8 @@
  */
 package org.nuxeo.lib.stream.log.chronicle;
 
+import static org.nuxeo.lib.stream.codec.NoCodec.NO_CODEC;
+
 import java.io.Externalizable;
 import java.io.File;
 import java.io.IOException;
@@ -27,15 +29,19 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Stream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.log.BatchPolicy;
 import org.nuxeo.lib.stream.log.LogOffset;
 import org.nuxeo.lib.stream.log.LogPartition;
 import org.nuxeo.lib.stream.log.LogTailer;
 import org.nuxeo.lib.stream.log.internals.CloseableLogAppender;
+import org.nuxeo.lib.stream.log.internals.GroupCommitWriter;
 import org.nuxeo.lib.stream.log.internals.LogOffsetImpl;
 
 import net.openhft.chronicle.queue.ChronicleQueue;
@@ -57,6 +63,8 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
 
     protected static final int MAX_PARTITIONS = 100;
 
+    protected static final String MSG_KEY = "msg";
+
     protected final List<ChronicleQueue> partitions;
 
     protected final int nbPartitions;
@@ -70,9 +78,18 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
 
     protected final ChronicleRetentionDuration retention;
 
+    protected final Codec<M> codec;
+
+    protected final GroupCommitWriter<M> groupCommitWriter;
+
     protected volatile boolean closed;
 
-    protected ChronicleLogAppender(File basePath, int size, ChronicleRetentionDuration retention) {
+    protected ChronicleLogAppender(File basePath, int size, ChronicleRetentionDuration retention, Codec<M> codec) {
+        this(basePath, size, retention, codec, BatchPolicy.DEFAULT);
+    }
+
+    protected ChronicleLogAppender(File basePath, int size, ChronicleRetentionDuration retention, Codec<M> codec,
+            BatchPolicy batchPolicy) {
         if (size == 0) {
             // open
             if (!exists(basePath)) {
@@ -97,6 +114,8 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
         this.name = basePath.getName();
         this.basePath = basePath;
         this.retention = retention;
+        this.codec = codec;
+        this.groupCommitWriter = new GroupCommitWriter<>(name, batchPolicy, this::appendAll);
         partitions = new ArrayList<>(this.nbPartitions);
         if (log.isDebugEnabled()) {
             log.debug(((size == 0) ? "Opening: " : "Creating: ") + toString());
@@ -137,21 +156,21 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
      */
     public static <M extends Externalizable> ChronicleLogAppender<M> create(File basePath, int size,
             ChronicleRetentionDuration retention) {
-        return new ChronicleLogAppender<>(basePath, size, retention);
+        return new ChronicleLogAppender<>(basePath, size, retention, NO_CODEC);
     }
 
     /**
      * Create a new log.
      */
     public static <M extends Externalizable> ChronicleLogAppender<M> create(File basePath, int size) {
-        return new ChronicleLogAppender<>(basePath, size, ChronicleRetentionDuration.DISABLE);
+        return new ChronicleLogAppender<>(basePath, size, ChronicleRetentionDuration.DISABLE, NO_CODEC);
     }
 
     /**
      * Open an existing log.
      */
     public static <M extends Externalizable> ChronicleLogAppender<M> open(File basePath) {
-        return new ChronicleLogAppender<>(basePath, 0, ChronicleRetentionDuration.DISABLE);
+        return new ChronicleLogAppender<>(basePath, 0, ChronicleRetentionDuration.DISABLE, NO_CODEC);
     }
 
     /**
@@ -159,7 +178,27 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
      */
     public static <M extends Externalizable> ChronicleLogAppender<M> open(File basePath,
             ChronicleRetentionDuration retention) {
-        return new ChronicleLogAppender<>(basePath, 0, retention);
+        return new ChronicleLogAppender<>(basePath, 0, retention, NO_CODEC);
+    }
+
+    /**
+     * Open an existing log using a codec to encode messages.
+     *
+     * @since 10.1
+     */
+    public static <M extends Externalizable> ChronicleLogAppender<M> open(File basePath,
+            ChronicleRetentionDuration retention, Codec<M> codec) {
+        return new ChronicleLogAppender<>(basePath, 0, retention, codec);
+    }
+
+    /**
+     * Open an existing log using a codec to encode messages and a policy to group the asynchronous appends.
+     *
+     * @since 10.1
+     */
+    public static <M extends Externalizable> ChronicleLogAppender<M> open(File basePath,
+            ChronicleRetentionDuration retention, Codec<M> codec, BatchPolicy batchPolicy) {
+        return new ChronicleLogAppender<>(basePath, 0, retention, codec, batchPolicy);
     }
 
     public String getBasePath() {
@@ -179,7 +218,32 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
     @Override
     public LogOffset append(int partition, M message) {
         ExcerptAppender appender = partitions.get(partition).acquireAppender();
-        appender.writeDocument(w -> w.write("msg").object(message));
+        return write(appender, partition, message);
+    }
+
+    @Override
+    public List<LogOffset> appendAll(int partition, List<M> messages) {
+        ExcerptAppender appender = partitions.get(partition).acquireAppender();
+        List<LogOffset> ret = new ArrayList<>(messages.size());
+        for (M message : messages) {
+            ret.add(write(appender, partition, message));
+        }
+        return ret;
+    }
+
+    @Override
+    public CompletableFuture<LogOffset> appendAsync(int partition, M message) {
+        return groupCommitWriter.append(partition, message);
+    }
+
+    protected LogOffset write(ExcerptAppender appender, int partition, M message) {
+        if (NO_CODEC.equals(codec)) {
+            // legacy format
+            appender.writeDocument(w -> w.write(MSG_KEY).object(message));
+        } else {
+            byte[] encoded = codec.encode(message);
+            appender.writeDocument(w -> w.write(MSG_KEY).bytes(encoded));
+        }
         long offset = appender.lastIndexAppended();
         LogOffset ret = new LogOffsetImpl(name, partition, offset);
         if (log.isDebugEnabled()) {
@@ -190,7 +254,7 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
 
     public LogTailer<M> createTailer(LogPartition partition, String group) {
         return addTailer(new ChronicleLogTailer<>(basePath.toString(),
-                partitions.get(partition.partition()).createTailer(), partition, group, retention));
+                partitions.get(partition.partition()).createTailer(), partition, group, retention, codec));
     }
 
     public long endOffset(int partition) {
@@ -261,6 +325,7 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
     @Override
     public void close() {
         log.debug("Closing: " + toString());
+        groupCommitWriter.close();
         tailers.stream().filter(Objects::nonNull).forEach(ChronicleLogTailer::close);
         tailers.clear();
         partitions.stream().filter(Objects::nonNull).forEach(ChronicleQueue::close);
@@ -292,4 +357,8 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
     public ChronicleRetentionDuration getRetention() {
         return retention;
     }
+
+    public Codec<M> getCodec() {
+        return codec;
+    }
 }
@@ -187,7 +187,8 @@ public class ChronicleLogManager extends AbstractLogManager {
 
     @Override
     public <M extends Externalizable> CloseableLogAppender<M> createAppender(String name) {
-        return ChronicleLogAppender.open(basePath.resolve(name).toFile(), retention);
+        return ChronicleLogAppender.open(basePath.resolve(name).toFile(), retention, getCodec(name),
+                getBatchPolicy());
     }
 
     @Override
@@ -18,6 +18,8 @@
  */
 package org.nuxeo.lib.stream.log.chronicle;
 
+import static org.nuxeo.lib.stream.codec.NoCodec.NO_CODEC;
+
 import java.io.Externalizable;
 import java.time.Duration;
 import java.util.ArrayList;
@@ -30,6 +32,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.lib.stream.codec.Codec;
 import org.nuxeo.lib.stream.log.LogOffset;
 import org.nuxeo.lib.stream.log.LogPartition;
 import org.nuxeo.lib.stream.log.LogRecord;
@@ -61,11 +64,23 @@ public class ChronicleLogTailer<M extends Externalizable> implements LogTailer<M
 
     protected final LogPartition partition;
 
+    protected final Codec<M> codec;
+
     protected volatile boolean closed = false;
 
+    @SuppressWarnings("unchecked")
     public ChronicleLogTailer(String basePath, ExcerptTailer cqTailer, LogPartition partition, String group,
             ChronicleRetentionDuration retention) {
+        this(basePath, cqTailer, partition, group, retention, NO_CODEC);
+    }
+
+    /**
+     * @since 10.1
+     */
+    public ChronicleLogTailer(String basePath, ExcerptTailer cqTailer, LogPartition partition, String group,
+            ChronicleRetentionDuration retention, Codec<M> codec) {
         Objects.requireNonNull(group);
+        this.codec = codec;
         this.basePath = basePath;
         this.cqTailer = cqTailer;
         this.partition = partition;
@@ -108,7 +123,14 @@ public class ChronicleLogTailer<M extends Externalizable> implements LogTailer<M
         }
         List<M> value = new ArrayList<>(1);
         long offset = cqTailer.index();
-        if (!cqTailer.readDocument(w -> value.add((M) w.read("msg").object()))) {
+        boolean read;
+        if (NO_CODEC.equals(codec)) {
+            // legacy format
+            read = cqTailer.readDocument(w -> value.add((M) w.read(ChronicleLogAppender.MSG_KEY).object()));
+        } else {
+            read = cqTailer.readDocument(w -> value.add(codec.decode(w.read(ChronicleLogAppender.MSG_KEY).bytes())));
+        }
+        if (!read) {
             return null;
         }
         return new LogRecord<>(value.get(0), new LogOffsetImpl(partition, offset));
@@ -18,6 +18,8 @@
  */
 package org.nuxeo.lib.stream.log.internals;
 
+import static org.nuxeo.lib.stream.codec.NoCodec.NO_CODEC;
+
 import java.io.Externalizable;
 import java.util.Collection;
 import java.util.Collections;
@@ -26,6 +28,8 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.log.BatchPolicy;
 import org.nuxeo.lib.stream.log.LogAppender;
 import org.nuxeo.lib.stream.log.LogManager;
 import org.nuxeo.lib.stream.log.LogPartition;
@@ -40,6 +44,15 @@ public abstract class AbstractLogManager implements LogManager {
     // this define a concurrent set of tailers
     protected final Set<LogTailer> tailers = Collections.newSetFromMap(new ConcurrentHashMap<LogTailer, Boolean>());
 
+    @SuppressWarnings("rawtypes")
+    protected final Map<String, Codec> codecs = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("rawtypes")
+    protected volatile Codec defaultCodec = NO_CODEC;
+
+    // null when not configured, the implementation default applies
+    protected volatile BatchPolicy batchPolicy;
+
     protected abstract void create(String name, int size);
 
     protected abstract <M extends Externalizable> CloseableLogAppender<M> createAppender(String name);
@@ -86,6 +99,58 @@ public abstract class AbstractLogManager implements LogManager {
         return ret;
     }
 
+    /**
+     * Sets the codec used for the messages of the Logs that don't have a specific codec.
+     *
+     * @since 10.1
+     */
+    public void setDefaultCodec(Codec<? extends Externalizable> codec) {
+        defaultCodec = Objects.requireNonNull(codec);
+    }
+
+    /**
+     * Sets the codec used for the messages of a Log. All the producers and consumers of a Log must use the same
+     * codec, it must be set before the first access to the Log.
+     *
+     * @since 10.1
+     */
+    public void setCodec(String name, Codec<? extends Externalizable> codec) {
+        if (appenders.containsKey(name)) {
+            throw new IllegalStateException("Cannot change the codec of Log: " + name + ", already in use");
+        }
+        codecs.put(name, Objects.requireNonNull(codec));
+    }
+
+    /**
+     * Gets the codec used for the messages of a Log, {@link org.nuxeo.lib.stream.codec.NoCodec#NO_CODEC} for the
+     * legacy format.
+     *
+     * @since 10.1
+     */
+    @SuppressWarnings("unchecked")
+    public <M extends Externalizable> Codec<M> getCodec(String name) {
+        return codecs.getOrDefault(name, defaultCodec);
+    }
+
+    /**
+     * Sets the policy used by the appenders to group the asynchronous appends, it must be set before the first access
+     * to the Logs.
+     *
+     * @since 10.1
+     */
+    public void setBatchPolicy(BatchPolicy batchPolicy) {
+        this.batchPolicy = Objects.requireNonNull(batchPolicy);
+    }
+
+    /**
+     * Gets the policy used by the appenders to group the asynchronous appends.
+     *
+     * @since 10.1
+     */
+    public BatchPolicy getBatchPolicy() {
+        return batchPolicy == null ? BatchPolicy.DEFAULT : batchPolicy;
+    }
+
     protected void checkInvalidAssignment(String group, LogPartition partition) {
         LogPartitionGroup key = new LogPartitionGroup(group, partition);
         LogTailer ret = tailersAssignments.get(key);
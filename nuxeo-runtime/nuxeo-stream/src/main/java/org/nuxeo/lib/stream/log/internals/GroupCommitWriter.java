@@ -0,0 +1,187 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.lib.stream.log.internals;
+
+import java.io.Externalizable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.lib.stream.log.BatchPolicy;
+import org.nuxeo.lib.stream.log.LogOffset;
+
+/**
+ * Groups the asynchronous appends of an appender and writes them in batch from a single thread, following a
+ * {@link BatchPolicy}. The thread is started on the first append.
+ *
+ * @since 10.1
+ */
+public class GroupCommitWriter<M extends Externalizable> implements AutoCloseable {
+    private static final Log log = LogFactory.getLog(GroupCommitWriter.class);
+
+    protected static final long POLL_INTERVAL_MS = 100;
+
+    /**
+     * Writes a batch of messages into a partition.
+     */
+    @FunctionalInterface
+    public interface BatchWriter<M> {
+        List<LogOffset> write(int partition, List<M> messages);
+    }
+
+    protected final String name;
+
+    protected final BatchPolicy policy;
+
+    protected final BatchWriter<M> writer;
+
+    protected final BlockingQueue<Pending<M>> queue = new LinkedBlockingQueue<>();
+
+    protected Thread thread;
+
+    protected volatile boolean closed;
+
+    public GroupCommitWriter(String name, BatchPolicy policy, BatchWriter<M> writer) {
+        this.name = name;
+        this.policy = policy;
+        this.writer = writer;
+    }
+
+    protected static class Pending<M> {
+        protected final int partition;
+
+        protected final M message;
+
+        protected final CompletableFuture<LogOffset> future = new CompletableFuture<>();
+
+        protected Pending(int partition, M message) {
+            this.partition = partition;
+            this.message = message;
+        }
+    }
+
+    public CompletableFuture<LogOffset> append(int partition, M message) {
+        Pending<M> pending = new Pending<>(partition, message);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Appender is closed: " + name);
+            }
+            if (thread == null) {
+                thread = new Thread(this::run, "stream-" + name + "-writer");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            queue.add(pending);
+        }
+        return pending.future;
+    }
+
+    protected void run() {
+        List<Pending<M>> batch = new ArrayList<>(policy.batchSize());
+        long lingerNs = policy.linger().toNanos();
+        Throwable failure = null;
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Pending<M> first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNs;
+                while (batch.size() < policy.batchSize()) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending<M> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                try {
+                    flush(batch);
+                } catch (RuntimeException e) {
+                    log.error("Failed to append " + batch.size() + " messages to: " + name, e);
+                    batch.forEach(pending -> pending.future.completeExceptionally(e));
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } finally {
+            // let the next append start a new writer, nobody would drain the queue otherwise
+            synchronized (this) {
+                thread = null;
+                batch.addAll(queue);
+                queue.clear();
+            }
+            if (!batch.isEmpty()) {
+                Throwable cause = failure != null ? failure
+                        : new IllegalStateException("Writer stopped: " + name);
+                batch.forEach(pending -> pending.future.completeExceptionally(cause));
+            }
+        }
+    }
+
+    protected void flush(List<Pending<M>> batch) {
+        // keep the order of the messages within a partition
+        Map<Integer, List<Pending<M>>> partitions = new LinkedHashMap<>();
+        batch.forEach(pending -> partitions.computeIfAbsent(pending.partition, k -> new ArrayList<>()).add(pending));
+        partitions.forEach((partition, pendings) -> {
+            List<M> messages = new ArrayList<>(pendings.size());
+            pendings.forEach(pending -> messages.add(pending.message));
+            try {
+                List<LogOffset> offsets = writer.write(partition, messages);
+                for (int i = 0; i < pendings.size(); i++) {
+                    pendings.get(i).future.complete(offsets.get(i));
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to append " + messages.size() + " messages to: " + name + ":" + partition, e);
+                pendings.forEach(pending -> pending.future.completeExceptionally(e));
+            }
+        });
+    }
+
+    /**
+     * Writes the pending messages and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            t = thread;
+        }
+        if (t == null) {
+            return;
+        }
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            t.interrupt();
+        }
+    }
+}
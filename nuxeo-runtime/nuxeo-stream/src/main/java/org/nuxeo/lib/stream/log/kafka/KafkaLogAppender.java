@@ -18,15 +18,20 @@
  */
 package org.nuxeo.lib.stream.log.kafka;
 
+import static org.nuxeo.lib.stream.codec.NoCodec.NO_CODEC;
+
 import java.io.ByteArrayOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -40,6 +45,7 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.utils.Bytes;
+import org.nuxeo.lib.stream.codec.Codec;
 import org.nuxeo.lib.stream.log.LogOffset;
 import org.nuxeo.lib.stream.log.internals.CloseableLogAppender;
 import org.nuxeo.lib.stream.log.internals.LogOffsetImpl;
@@ -65,13 +71,17 @@ public class KafkaLogAppender<M extends Externalizable> implements CloseableLogA
 
     protected final String name;
 
+    protected final Codec<M> codec;
+
     protected KafkaProducer<String, Bytes> producer;
 
     protected boolean closed;
 
-    private KafkaLogAppender(String topic, String name, Properties producerProperties, Properties consumerProperties) {
+    private KafkaLogAppender(String topic, String name, Properties producerProperties, Properties consumerProperties,
+            Codec<M> codec) {
         this.topic = topic;
         this.name = name;
+        this.codec = codec;
         this.producerProps = producerProperties;
         this.consumerProps = consumerProperties;
         this.producer = new KafkaProducer<>(this.producerProps);
@@ -81,9 +91,18 @@ public class KafkaLogAppender<M extends Externalizable> implements CloseableLogA
         }
     }
 
+    @SuppressWarnings("unchecked")
     public static <M extends Externalizable> KafkaLogAppender<M> open(String topic, String name,
             Properties producerProperties, Properties consumerProperties) {
-        return new KafkaLogAppender<>(topic, name, producerProperties, consumerProperties);
+        return new KafkaLogAppender<>(topic, name, producerProperties, consumerProperties, NO_CODEC);
+    }
+
+    /**
+     * @since 10.1
+     */
+    public static <M extends Externalizable> KafkaLogAppender<M> open(String topic, String name,
+            Properties producerProperties, Properties consumerProperties, Codec<M> codec) {
+        return new KafkaLogAppender<>(topic, name, producerProperties, consumerProperties, codec);
     }
 
     @Override
@@ -101,11 +120,49 @@ public class KafkaLogAppender<M extends Externalizable> implements CloseableLogA
     }
 
     @Override
-    public LogOffset append(int partition, Externalizable message) {
-        Bytes value = Bytes.wrap(messageAsByteArray(message));
+    public LogOffset append(int partition, M message) {
+        ProducerRecord<String, Bytes> record = newRecord(partition, message);
+        return waitForSend(record, producer.send(record), message);
+    }
+
+    @Override
+    public List<LogOffset> appendAll(int partition, List<M> messages) {
+        // send all the records before waiting, the producer groups them in batch
+        List<ProducerRecord<String, Bytes>> records = new ArrayList<>(messages.size());
+        List<Future<RecordMetadata>> futures = new ArrayList<>(messages.size());
+        for (M message : messages) {
+            ProducerRecord<String, Bytes> record = newRecord(partition, message);
+            records.add(record);
+            futures.add(producer.send(record));
+        }
+        List<LogOffset> ret = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            ret.add(waitForSend(records.get(i), futures.get(i), messages.get(i)));
+        }
+        return ret;
+    }
+
+    @Override
+    public CompletableFuture<LogOffset> appendAsync(int partition, M message) {
+        CompletableFuture<LogOffset> ret = new CompletableFuture<>();
+        ProducerRecord<String, Bytes> record = newRecord(partition, message);
+        producer.send(record, (result, exception) -> {
+            if (exception != null) {
+                ret.completeExceptionally(new RuntimeException("Unable to send record: " + record, exception));
+            } else {
+                ret.complete(new LogOffsetImpl(name, partition, result.offset()));
+            }
+        });
+        return ret;
+    }
+
+    protected ProducerRecord<String, Bytes> newRecord(int partition, M message) {
+        Bytes value = Bytes.wrap(NO_CODEC.equals(codec) ? messageAsByteArray(message) : codec.encode(message));
         String key = String.valueOf(partition);
-        ProducerRecord<String, Bytes> record = new ProducerRecord<>(topic, partition, key, value);
-        Future<RecordMetadata> future = producer.send(record);
+        return new ProducerRecord<>(topic, partition, key, value);
+    }
+
+    protected LogOffset waitForSend(ProducerRecord<String, Bytes> record, Future<RecordMetadata> future, M message) {
         RecordMetadata result;
         try {
             result = future.get();
@@ -115,11 +172,11 @@ public class KafkaLogAppender<M extends Externalizable> implements CloseableLogA
         } catch (ExecutionException e) {
             throw new RuntimeException("Unable to send record: " + record, e);
         }
-        LogOffset ret = new LogOffsetImpl(name, partition, result.offset());
+        LogOffset ret = new LogOffsetImpl(name, record.partition(), result.offset());
         if (log.isDebugEnabled()) {
             int len = record.value().get().length;
-            log.debug(String.format("append to %s-%02d:+%d, len: %d, key: %s, value: %s", name, partition, ret.offset(),
-                    len, key, message));
+            log.debug(String.format("append to %s-%02d:+%d, len: %d, key: %s, value: %s", name, record.partition(),
+                    ret.offset(), len, record.key(), message));
         }
         return ret;
     }
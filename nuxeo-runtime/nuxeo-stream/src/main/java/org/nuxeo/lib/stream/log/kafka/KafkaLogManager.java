@@ -33,6 +33,7 @@ import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.utils.Bytes;
+import org.nuxeo.lib.stream.log.BatchPolicy;
 import org.nuxeo.lib.stream.log.LogLag;
 import org.nuxeo.lib.stream.log.LogPartition;
 import org.nuxeo.lib.stream.log.LogTailer;
@@ -101,14 +102,30 @@ public class KafkaLogManager extends AbstractLogManager {
 
     @Override
     public <M extends Externalizable> CloseableLogAppender<M> createAppender(String name) {
-        return KafkaLogAppender.open(getTopicName(name), name, producerProperties, consumerProperties);
+        return KafkaLogAppender.open(getTopicName(name), name, getAppenderProducerProperties(), consumerProperties,
+                getCodec(name));
+    }
+
+    /**
+     * The Kafka producer already groups the records in batch, a configured {@link BatchPolicy} linger is used unless
+     * the producer {@code linger.ms} is explicitly set.
+     */
+    protected Properties getAppenderProducerProperties() {
+        BatchPolicy policy = batchPolicy;
+        if (policy == null || producerProperties.containsKey(ProducerConfig.LINGER_MS_CONFIG)) {
+            return producerProperties;
+        }
+        Properties ret = (Properties) producerProperties.clone();
+        ret.put(ProducerConfig.LINGER_MS_CONFIG, String.valueOf(policy.linger().toMillis()));
+        return ret;
     }
 
     @Override
     protected <M extends Externalizable> LogTailer<M> doCreateTailer(Collection<LogPartition> partitions,
             String group) {
         partitions.forEach(this::checkValidPartition);
-        return KafkaLogTailer.createAndAssign(prefix, partitions, group, (Properties) consumerProperties.clone());
+        return KafkaLogTailer.createAndAssign(prefix, partitions, group, (Properties) consumerProperties.clone(),
+                this::getCodec);
     }
 
     protected void checkValidPartition(LogPartition partition) {
@@ -147,7 +164,7 @@ public class KafkaLogManager extends AbstractLogManager {
     protected <M extends Externalizable> LogTailer<M> doSubscribe(String group, Collection<String> names,
             RebalanceListener listener) {
         return KafkaLogTailer.createAndSubscribe(prefix, names, group, (Properties) consumerProperties.clone(),
-                listener);
+                listener, this::getCodec);
     }
 
     protected Properties normalizeProducerProperties(Properties producerProperties) {
@@ -19,6 +19,7 @@
 package org.nuxeo.lib.stream.log.kafka;
 
 import static java.util.stream.Collectors.toMap;
+import static org.nuxeo.lib.stream.codec.NoCodec.NO_CODEC;
 
 import java.io.ByteArrayInputStream;
 import java.io.Externalizable;
@@ -35,6 +36,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Queue;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.commons.logging.Log;
@@ -49,6 +51,7 @@ import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.InterruptException;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.utils.Bytes;
+import org.nuxeo.lib.stream.codec.Codec;
 import org.nuxeo.lib.stream.log.LogOffset;
 import org.nuxeo.lib.stream.log.LogPartition;
 import org.nuxeo.lib.stream.log.LogRecord;
@@ -92,18 +95,32 @@ public class KafkaLogTailer<M extends Externalizable> implements LogTailer<M>, C
 
     protected boolean consumerMoved;
 
-    protected KafkaLogTailer(String prefix, String group, Properties consumerProps) {
+    /** Gives the codec to use for a Log name. */
+    protected final Function<String, Codec<M>> codecs;
+
+    protected KafkaLogTailer(String prefix, String group, Properties consumerProps, Function<String, Codec<M>> codecs) {
         Objects.requireNonNull(group);
         this.prefix = prefix;
         this.group = group;
+        this.codecs = codecs;
         consumerProps.put(ConsumerConfig.GROUP_ID_CONFIG, group);
         this.consumer = new KafkaConsumer<>(consumerProps);
 
     }
 
+    @SuppressWarnings("unchecked")
     public static <M extends Externalizable> KafkaLogTailer<M> createAndAssign(String prefix,
             Collection<LogPartition> partitions, String group, Properties consumerProps) {
-        KafkaLogTailer<M> ret = new KafkaLogTailer<>(prefix, group, consumerProps);
+        return createAndAssign(prefix, partitions, group, consumerProps, name -> NO_CODEC);
+    }
+
+    /**
+     * @since 10.1
+     */
+    public static <M extends Externalizable> KafkaLogTailer<M> createAndAssign(String prefix,
+            Collection<LogPartition> partitions, String group, Properties consumerProps,
+            Function<String, Codec<M>> codecs) {
+        KafkaLogTailer<M> ret = new KafkaLogTailer<>(prefix, group, consumerProps, codecs);
         ret.id = buildId(ret.group, partitions);
         ret.partitions = partitions;
         ret.topicPartitions = partitions.stream()
@@ -115,9 +132,19 @@ public class KafkaLogTailer<M extends Externalizable> implements LogTailer<M>, C
         return ret;
     }
 
+    @SuppressWarnings("unchecked")
     public static <M extends Externalizable> KafkaLogTailer<M> createAndSubscribe(String prefix,
             Collection<String> names, String group, Properties consumerProps, RebalanceListener listener) {
-        KafkaLogTailer<M> ret = new KafkaLogTailer<>(prefix, group, consumerProps);
+        return createAndSubscribe(prefix, names, group, consumerProps, listener, name -> NO_CODEC);
+    }
+
+    /**
+     * @since 10.1
+     */
+    public static <M extends Externalizable> KafkaLogTailer<M> createAndSubscribe(String prefix,
+            Collection<String> names, String group, Properties consumerProps, RebalanceListener listener,
+            Function<String, Codec<M>> codecs) {
+        KafkaLogTailer<M> ret = new KafkaLogTailer<>(prefix, group, consumerProps, codecs);
         ret.id = buildSubscribeId(ret.group, names);
         ret.names = names;
         Collection<String> topics = names.stream().map(name -> prefix + name).collect(Collectors.toList());
@@ -158,8 +185,9 @@ public class KafkaLogTailer<M extends Externalizable> implements LogTailer<M>, C
         }
         ConsumerRecord<String, Bytes> record = records.poll();
         lastOffsets.put(new TopicPartition(record.topic(), record.partition()), record.offset());
-        M value = messageOf(record.value());
         LogPartition partition = LogPartition.of(getNameForTopic(record.topic()), record.partition());
+        Codec<M> codec = codecs.apply(partition.name());
+        M value = NO_CODEC.equals(codec) ? messageOf(record.value()) : codec.decode(record.value().get());
         LogOffset offset = new LogOffsetImpl(partition, record.offset());
         consumerMoved = false;
         if (log.isDebugEnabled()) {
@@ -0,0 +1,127 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.nuxeo.lib.stream.tests.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.EnumSet;
+
+import org.junit.Test;
+import org.nuxeo.lib.stream.codec.BinaryReader;
+import org.nuxeo.lib.stream.codec.BinaryRecordCodec;
+import org.nuxeo.lib.stream.codec.BinaryWriter;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.NoCodec;
+import org.nuxeo.lib.stream.codec.SerializableCodec;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.tests.KeyValueMessage;
+
+/**
+ * @since 10.1
+ */
+public class TestCodec {
+
+    @Test
+    public void testBinaryWriterReader() {
+        BinaryWriter writer = new BinaryWriter(1);
+        writer.writeVarLong(0)
+              .writeVarLong(300)
+              .writeVarLong(Long.MAX_VALUE)
+              .writeZigZagLong(-1)
+              .writeZigZagLong(Long.MIN_VALUE)
+              .writeVarInt(-1)
+              .writeBoolean(true)
+              .writeDouble(1.5)
+              .writeString("héllo")
+              .writeString(null)
+              .writeString("")
+              .writeBytes(new byte[] { 1, 2, 3 })
+              .writeBytes(null);
+        byte[] data = writer.toByteArray();
+        assertEquals(writer.size(), data.length);
+
+        BinaryReader reader = new BinaryReader(data);
+        assertEquals(0, reader.readVarLong());
+        assertEquals(300, reader.readVarLong());
+        assertEquals(Long.MAX_VALUE, reader.readVarLong());
+        assertEquals(-1, reader.readZigZagLong());
+        assertEquals(Long.MIN_VALUE, reader.readZigZagLong());
+        assertEquals(-1, reader.readVarInt());
+        assertTrue(reader.readBoolean());
+        assertEquals(1.5, reader.readDouble(), 0);
+        assertEquals("héllo", reader.readString());
+        assertEquals(null, reader.readString());
+        assertEquals("", reader.readString());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, reader.readBytes());
+        assertEquals(null, reader.readBytes());
+        assertEquals(data.length, reader.position());
+    }
+
+    @Test
+    public void testBinaryRecordCodec() {
+        Codec<Record> codec = new BinaryRecordCodec();
+        Record record = new Record("key", new byte[] { 4, 5, 6 }, 123456789L,
+                EnumSet.of(Record.Flag.COMMIT, Record.Flag.POISON_PILL));
+        Record decoded = codec.decode(codec.encode(record));
+        assertEquals("key", decoded.key);
+        assertArrayEquals(new byte[] { 4, 5, 6 }, decoded.data);
+        assertEquals(123456789L, decoded.watermark);
+        assertEquals(record.flags, decoded.flags);
+
+        decoded = codec.decode(codec.encode(new Record(null, null, 0, EnumSet.noneOf(Record.Flag.class))));
+        assertEquals(null, decoded.key);
+        assertEquals(null, decoded.data);
+        assertEquals(0, decoded.watermark);
+        assertTrue(decoded.flags.isEmpty());
+    }
+
+    @Test
+    public void testBinaryRecordCodecRejectsInvalidData() {
+        Codec<Record> codec = new BinaryRecordCodec();
+        byte[] data = codec.encode(Record.of("key", null));
+        data[0] = 0;
+        try {
+            codec.decode(data);
+            fail("Invalid magic should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSerializableCodec() {
+        Codec<KeyValueMessage> codec = new SerializableCodec<>();
+        KeyValueMessage message = KeyValueMessage.of("id", "value".getBytes());
+        KeyValueMessage decoded = codec.decode(codec.encode(message));
+        assertEquals(message, decoded);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNoCodec() {
+        Codec<KeyValueMessage> codec = NoCodec.NO_CODEC;
+        KeyValueMessage message = KeyValueMessage.of("id", "value".getBytes());
+        byte[] data = codec.encode(message);
+        assertEquals(message, codec.decode(data));
+        // same bytes as the legacy format of the logs storing bytes
+        assertArrayEquals(new SerializableCodec<KeyValueMessage>().encode(message), data);
+    }
+
+}
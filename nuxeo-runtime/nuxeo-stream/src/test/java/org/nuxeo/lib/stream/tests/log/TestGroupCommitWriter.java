@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2018 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.lib.stream.tests.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nuxeo.lib.stream.log.BatchPolicy;
+import org.nuxeo.lib.stream.log.LogOffset;
+import org.nuxeo.lib.stream.log.internals.GroupCommitWriter;
+import org.nuxeo.lib.stream.log.internals.LogOffsetImpl;
+import org.nuxeo.lib.stream.tests.KeyValueMessage;
+
+/**
+ * @since 10.1
+ */
+public class TestGroupCommitWriter {
+
+    protected static final BatchPolicy POLICY = BatchPolicy.of(10, Duration.ofMillis(1));
+
+    protected final AtomicInteger writes = new AtomicInteger();
+
+    protected List<LogOffset> offsets(int partition, List<KeyValueMessage> messages) {
+        List<LogOffset> offsets = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            offsets.add(new LogOffsetImpl("test", partition, writes.get() * 100 + i));
+        }
+        return offsets;
+    }
+
+    @Test
+    public void testFlushFailure() throws Exception {
+        try (GroupCommitWriter<KeyValueMessage> writer = new GroupCommitWriter<>("test", POLICY,
+                (partition, messages) -> {
+                    if (writes.incrementAndGet() == 1) {
+                        throw new IllegalStateException("first write fails");
+                    }
+                    return offsets(partition, messages);
+                })) {
+            CompletableFuture<LogOffset> failed = writer.append(0, KeyValueMessage.of("id1"));
+            try {
+                failed.get(5, TimeUnit.SECONDS);
+                fail("the first write should fail");
+            } catch (ExecutionException e) {
+                assertEquals("first write fails", e.getCause().getMessage());
+            }
+            // the writer keeps going
+            LogOffset offset = writer.append(0, KeyValueMessage.of("id2")).get(5, TimeUnit.SECONDS);
+            assertEquals(0, offset.partition().partition());
+        }
+    }
+
+    @Test
+    public void testWriterRestart() throws Exception {
+        try (GroupCommitWriter<KeyValueMessage> writer = new GroupCommitWriter<>("test", POLICY,
+                (partition, messages) -> {
+                    if (writes.incrementAndGet() == 1) {
+                        // stops the writer thread once this batch is written
+                        Thread.currentThread().interrupt();
+                    }
+                    return offsets(partition, messages);
+                })) {
+            writer.append(1, KeyValueMessage.of("id1")).get(5, TimeUnit.SECONDS);
+            // wait for the writer thread to stop, a later append must not hang
+            Thread.sleep(200);
+            LogOffset offset = writer.append(1, KeyValueMessage.of("id2")).get(5, TimeUnit.SECONDS);
+            assertEquals(1, offset.partition().partition());
+            assertEquals(2, writes.get());
+        }
+    }
+
+}
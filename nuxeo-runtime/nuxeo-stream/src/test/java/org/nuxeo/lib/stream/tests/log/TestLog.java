@@ -24,9 +24,11 @@ import static org.junit.Assert.fail;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -38,6 +40,8 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
+import org.nuxeo.lib.stream.codec.BinaryRecordCodec;
+import org.nuxeo.lib.stream.computation.Record;
 import org.nuxeo.lib.stream.log.LogAppender;
 import org.nuxeo.lib.stream.log.LogLag;
 import org.nuxeo.lib.stream.log.LogManager;
@@ -46,6 +50,7 @@ import org.nuxeo.lib.stream.log.LogPartition;
 import org.nuxeo.lib.stream.log.LogRecord;
 import org.nuxeo.lib.stream.log.LogTailer;
 import org.nuxeo.lib.stream.log.RebalanceException;
+import org.nuxeo.lib.stream.log.internals.AbstractLogManager;
 import org.nuxeo.lib.stream.tests.KeyValueMessage;
 
 public abstract class TestLog {
@@ -750,4 +755,65 @@ public abstract class TestLog {
         }
     }
 
+    @Test
+    public void testCodec() throws Exception {
+        ((AbstractLogManager) manager).setCodec(logName, new BinaryRecordCodec());
+        manager.createIfNotExists(logName, 1);
+        LogAppender<Record> appender = manager.getAppender(logName);
+        appender.append(0, Record.of("key", "value".getBytes("UTF-8")));
+        appender.append(0, Record.of("empty", null));
+
+        try (LogTailer<Record> tailer = manager.createTailer("group", logName)) {
+            Record record = tailer.read(DEF_TIMEOUT).message();
+            assertEquals("key", record.key);
+            assertEquals("value", new String(record.data, "UTF-8"));
+            record = tailer.read(DEF_TIMEOUT).message();
+            assertEquals("empty", record.key);
+            assertEquals(null, record.data);
+            assertEquals(null, tailer.read(SMALL_TIMEOUT));
+        }
+    }
+
+    @Test
+    public void testAppendAll() throws Exception {
+        manager.createIfNotExists(logName, 2);
+        LogAppender<KeyValueMessage> appender = manager.getAppender(logName);
+        List<LogOffset> offsets = appender.appendAll(1,
+                Arrays.asList(KeyValueMessage.of("id1"), KeyValueMessage.of("id2"), KeyValueMessage.of("id3")));
+        assertEquals(3, offsets.size());
+        assertEquals(LogPartition.of(logName, 1), offsets.get(0).partition());
+        assertTrue(offsets.get(0).offset() < offsets.get(1).offset());
+        assertTrue(offsets.get(1).offset() < offsets.get(2).offset());
+
+        try (LogTailer<KeyValueMessage> tailer = manager.createTailer("group", LogPartition.of(logName, 1))) {
+            assertEquals("id1", tailer.read(DEF_TIMEOUT).message().key());
+            assertEquals("id2", tailer.read(DEF_TIMEOUT).message().key());
+            assertEquals("id3", tailer.read(DEF_TIMEOUT).message().key());
+            assertEquals(null, tailer.read(SMALL_TIMEOUT));
+        }
+    }
+
+    @Test
+    public void testAppendAsync() throws Exception {
+        final int NB_MSG = 250;
+        manager.createIfNotExists(logName, 1);
+        LogAppender<KeyValueMessage> appender = manager.getAppender(logName);
+        List<CompletableFuture<LogOffset>> futures = new ArrayList<>(NB_MSG);
+        for (int i = 0; i < NB_MSG; i++) {
+            futures.add(appender.appendAsync(0, KeyValueMessage.of("id" + i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(DEF_TIMEOUT.toMillis(),
+                TimeUnit.MILLISECONDS);
+        for (int i = 1; i < NB_MSG; i++) {
+            assertTrue(futures.get(i - 1).get().offset() < futures.get(i).get().offset());
+        }
+
+        try (LogTailer<KeyValueMessage> tailer = manager.createTailer("group", logName)) {
+            for (int i = 0; i < NB_MSG; i++) {
+                assertEquals("id" + i, tailer.read(DEF_TIMEOUT).message().key());
+            }
+            assertEquals(null, tailer.read(SMALL_TIMEOUT));
+        }
+    }
+
 }